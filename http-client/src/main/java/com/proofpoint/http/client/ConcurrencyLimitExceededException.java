@@ -0,0 +1,48 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Thrown without sending a request when the client already has as many
+ * requests in flight to the destination as its adaptive concurrency limit
+ * allows.
+ */
+public class ConcurrencyLimitExceededException
+        extends RuntimeException
+{
+    private final String destination;
+    private final int limit;
+
+    public ConcurrencyLimitExceededException(String destination, int limit)
+    {
+        super(format("Limit of %d concurrent requests to %s exceeded", limit, destination));
+        this.destination = requireNonNull(destination, "destination is null");
+        this.limit = limit;
+    }
+
+    public String getDestination()
+    {
+        return destination;
+    }
+
+    public int getLimit()
+    {
+        return limit;
+    }
+}
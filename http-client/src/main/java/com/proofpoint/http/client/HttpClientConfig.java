@@ -26,6 +26,7 @@ import com.proofpoint.units.MaxDataSize;
 import com.proofpoint.units.MinDataSize;
 import com.proofpoint.units.MinDuration;
 
+import javax.validation.constraints.AssertFalse;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 
@@ -67,6 +68,10 @@ public class HttpClientConfig
     private DataSize http2InputBufferSize = new DataSize(8, KILOBYTE);
     private int selectorCount = 2;
 
+    private ConcurrencyLimitPolicy concurrencyLimitPolicy = ConcurrencyLimitPolicy.NONE;
+    private int initialConcurrencyLimit = 20;
+    private int maxConcurrencyLimit = 200;
+
     public boolean isHttp2Enabled()
     {
         return http2Enabled;
@@ -364,4 +369,76 @@ public class HttpClientConfig
         this.timeoutConcurrency = timeoutConcurrency;
         return this;
     }
+
+    @NotNull
+    public ConcurrencyLimitPolicy getConcurrencyLimitPolicy()
+    {
+        return concurrencyLimitPolicy;
+    }
+
+    @Config("http-client.concurrency-limit.policy")
+    @ConfigDescription("Algorithm for adapting the limit on in-flight requests to each destination")
+    public HttpClientConfig setConcurrencyLimitPolicy(ConcurrencyLimitPolicy concurrencyLimitPolicy)
+    {
+        this.concurrencyLimitPolicy = concurrencyLimitPolicy;
+        return this;
+    }
+
+    @Min(1)
+    public int getInitialConcurrencyLimit()
+    {
+        return initialConcurrencyLimit;
+    }
+
+    @Config("http-client.concurrency-limit.initial")
+    @ConfigDescription("Limit on in-flight requests to a destination before any have completed")
+    public HttpClientConfig setInitialConcurrencyLimit(int initialConcurrencyLimit)
+    {
+        this.initialConcurrencyLimit = initialConcurrencyLimit;
+        return this;
+    }
+
+    @Min(1)
+    public int getMaxConcurrencyLimit()
+    {
+        return maxConcurrencyLimit;
+    }
+
+    @Config("http-client.concurrency-limit.max")
+    @ConfigDescription("Upper bound on the adaptive limit on in-flight requests to a destination")
+    public HttpClientConfig setMaxConcurrencyLimit(int maxConcurrencyLimit)
+    {
+        this.maxConcurrencyLimit = maxConcurrencyLimit;
+        return this;
+    }
+
+    @AssertFalse
+    public boolean isInitialConcurrencyLimitGreaterThanMax()
+    {
+        return initialConcurrencyLimit > maxConcurrencyLimit;
+    }
+
+    public enum ConcurrencyLimitPolicy
+    {
+        /**
+         * Do not limit in-flight requests beyond the connection and queue
+         * limits.
+         */
+        NONE,
+
+        /**
+         * Raise the limit by one for each limit's worth of successful
+         * responses and cut it by a tenth on each failure or overload
+         * response.
+         */
+        AIMD,
+
+        /**
+         * Estimate the requests queued at the destination from how far the
+         * round-trip time exceeds the lowest one seen, raising the limit
+         * while the queue is short and lowering it when the queue grows or
+         * on a failure or overload response.
+         */
+        VEGAS,
+    }
 }
@@ -18,6 +18,8 @@ package com.proofpoint.http.client.balancing;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Ticker;
 import com.google.common.cache.Cache;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.AbstractFuture;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
@@ -26,15 +28,22 @@ import com.proofpoint.http.client.Request;
 import com.proofpoint.http.client.RequestStats;
 import com.proofpoint.http.client.ResponseHandler;
 import com.proofpoint.http.client.jetty.JettyHttpClient;
+import com.proofpoint.stats.SparseCounterStat;
 import com.proofpoint.tracetoken.TraceToken;
 import com.proofpoint.tracetoken.TraceTokenScope;
 import com.proofpoint.units.Duration;
 import org.weakref.jmx.Flatten;
 import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import javax.inject.Inject;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
@@ -47,11 +56,13 @@ import static com.proofpoint.tracetoken.TraceTokenManager.registerTraceToken;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 public class BalancingHttpClient
         implements HttpClient
 {
     private static final Duration ZERO_DURATION = new Duration(0, TimeUnit.MILLISECONDS);
+    private static final Set<String> HEDGED_METHODS = ImmutableSet.of("GET", "HEAD");
 
     private final HttpServiceBalancer pool;
     private final HttpClient httpClient;
@@ -59,6 +70,13 @@ public class BalancingHttpClient
     private final RetryBudget retryBudget;
     private final BackoffPolicy backoffPolicy;
     private final ScheduledExecutorService retryExecutor;
+    private final Ticker ticker;
+    @Nullable
+    private final HedgeDelay hedgeDelay;
+    private final SparseCounterStat hedges = new SparseCounterStat();
+    private final SparseCounterStat hedgeWins = new SparseCounterStat();
+    private final SparseCounterStat hedgeFailures = new SparseCounterStat();
+    private final SparseCounterStat hedgesBudgetExhausted = new SparseCounterStat();
     private final Cache<Class<? extends Exception>, Boolean> exceptionCache = newBuilder()
             .expireAfterWrite(30, TimeUnit.SECONDS)
             .build();
@@ -85,8 +103,27 @@ public class BalancingHttpClient
         retryBudget = TokenRetryBudget.tokenRetryBudget(config.getRetryBudgetRatio(), config.getRetryBudgetRatioPeriod(), config.getRetryBudgetMinPerSecond(), ticker);
         backoffPolicy = new DecorrelatedJitteredBackoffPolicy(config.getMinBackoff(), config.getMaxBackoff());
         this.retryExecutor = requireNonNull(retryExecutor, "retryExecutor is null");
+        this.ticker = requireNonNull(ticker, "ticker is null");
+        if (config.getHedgeDelay() == null || maxAttempts < 2) {
+            hedgeDelay = null;
+        }
+        else {
+            hedgeDelay = new HedgeDelay(config.getHedgeDelay(), config.getHedgePercentile(), ticker);
+        }
     }
 
+    /**
+     * Executes the request through the underlying client's synchronous
+     * execute(), so the response handler can stream the response body on the
+     * calling thread. The calling thread sleeps through each retry backoff,
+     * up to {@code http-client.max-backoff}; callers which must not hold a
+     * thread for that long should use
+     * {@link #executeAsync(Request, ResponseHandler)}, which schedules the
+     * backoff on the retry executor. A request rejected by the underlying
+     * client's concurrency limit is tried on another instance without
+     * backoff. Requests are only hedged by
+     * {@link #executeAsync(Request, ResponseHandler)}.
+     */
     @Override
     public <T, E extends Exception> T execute(Request request, ResponseHandler<T, E> responseHandler)
             throws E
@@ -141,6 +178,18 @@ public class BalancingHttpClient
                 //noinspection unchecked
                 return (T) e.result;
             }
+            catch (LocalRejectionException e) {
+                attempt.markCanceled();
+                if (attemptsLeft <= 0) {
+                    return responseHandler.handleException(e.request, e.getCause());
+                }
+                try {
+                    attempt = attempt.next();
+                }
+                catch (RuntimeException e1) {
+                    return responseHandler.handleException(request, e1);
+                }
+            }
             catch (RetryException e) {
                 attempt.markBad(e.getFailureCategory());
                 Duration backoff = attemptBackoffPolicy.backoff(previousBackoff);
@@ -186,11 +235,14 @@ public class BalancingHttpClient
         }
         retryBudget.initialAttempt();
         RetryFuture<T, E> retryFuture = new RetryFuture<>(request, responseHandler);
-        attemptQuery(retryFuture, request, responseHandler, attempt, maxAttempts);
+        attemptQuery(retryFuture, request, responseHandler, attempt, maxAttempts, false);
+        if (hedgeDelay != null && HEDGED_METHODS.contains(request.getMethod())) {
+            retryFuture.scheduleHedge(hedgeDelay.getDelayNanos());
+        }
         return retryFuture;
     }
 
-    private <T, E extends Exception> void attemptQuery(RetryFuture<T, E> retryFuture, Request request, ResponseHandler<T, E> responseHandler, HttpServiceAttempt attempt, int attemptsLeft)
+    private <T, E extends Exception> void attemptQuery(RetryFuture<T, E> retryFuture, Request request, ResponseHandler<T, E> responseHandler, HttpServiceAttempt attempt, int attemptsLeft, boolean isHedge)
     {
         RetryingResponseHandler<T, E> retryingResponseHandler = new RetryingResponseHandler<>(
                 responseHandler,
@@ -210,7 +262,7 @@ public class BalancingHttpClient
 
         --attemptsLeft;
         HttpResponseFuture<T> future = httpClient.executeAsync(subRequest, retryingResponseHandler);
-        retryFuture.newAttempt(future, attempt, uri, attemptsLeft);
+        retryFuture.newAttempt(future, attempt, uri, attemptsLeft, isHedge);
     }
 
     @Flatten
@@ -225,6 +277,30 @@ public class BalancingHttpClient
         return retryBudget;
     }
 
+    @Nested
+    SparseCounterStat getHedges()
+    {
+        return hedges;
+    }
+
+    @Nested
+    SparseCounterStat getHedgeWins()
+    {
+        return hedgeWins;
+    }
+
+    @Nested
+    SparseCounterStat getHedgeFailures()
+    {
+        return hedgeFailures;
+    }
+
+    @Nested
+    SparseCounterStat getHedgesBudgetExhausted()
+    {
+        return hedgesBudgetExhausted;
+    }
+
     @Managed
     public String dump()
     {
@@ -263,6 +339,7 @@ public class BalancingHttpClient
 
         private final Request request;
         private final ResponseHandler<T,E> responseHandler;
+        private final long startTick = ticker.read();
         private final Object subFutureLock = new Object();
         @GuardedBy("subFutureLock")
         private HttpServiceAttempt attempt = null;
@@ -274,6 +351,10 @@ public class BalancingHttpClient
         private URI uri = null;
         @GuardedBy("subFutureLock")
         private HttpResponseFuture<T> subFuture = null;
+        @GuardedBy("subFutureLock")
+        private final List<HttpResponseFuture<T>> inFlight = new ArrayList<>();
+        @GuardedBy("subFutureLock")
+        private ScheduledFuture<?> hedgeTask = null;
 
         RetryFuture(Request request, ResponseHandler<T, E> responseHandler)
         {
@@ -281,12 +362,13 @@ public class BalancingHttpClient
             this.responseHandler = responseHandler;
         }
 
-        void newAttempt(final HttpResponseFuture<T> future, final HttpServiceAttempt attempt, URI uri, final int attemptsLeft)
+        void newAttempt(final HttpResponseFuture<T> future, final HttpServiceAttempt attempt, URI uri, final int attemptsLeft, boolean isHedge)
         {
             synchronized (subFutureLock) {
                 this.attempt = attempt;
                 this.subFuture = future;
                 this.uri = uri;
+                inFlight.add(future);
             }
             final RetryFuture<T, E> retryFuture = this;
             final Request request = this.request;
@@ -297,47 +379,92 @@ public class BalancingHttpClient
                 public void onSuccess(T result)
                 {
                     attempt.markGood();
-                    set(result);
+                    completed(future);
+                    if (set(result)) {
+                        if (hedgeDelay != null) {
+                            // From the start of the request, as is the hedge delay
+                            hedgeDelay.recordLatency(ticker.read() - startTick);
+                        }
+                        if (isHedge) {
+                            hedgeWins.add(1);
+                        }
+                    }
+                    cancelInFlight();
                 }
 
                 @Override
                 public void onFailure(Throwable t)
                 {
-                    if (t instanceof InnerHandlerException) {
+                    if (t instanceof CancellationException) {
+                        attempt.markCanceled();
+                        completed(future);
+                    }
+                    else if (t instanceof InnerHandlerException) {
                         InnerHandlerException innerHandlerException = (InnerHandlerException) t;
                         attempt.markBad(innerHandlerException.getFailureCategory(), innerHandlerException.getHandlerCategory());
-                        setException(t.getCause());
+                        if (completed(future) && setException(t.getCause()) && isHedge) {
+                            hedgeFailures.add(1);
+                        }
                     }
                     else if (t instanceof FailureStatusException) {
                         attempt.markBad(((FailureStatusException) t).getFailureCategory());
                         //noinspection unchecked
-                        set((T) ((FailureStatusException) t).result);
+                        if (completed(future) && set((T) ((FailureStatusException) t).result) && isHedge) {
+                            hedgeFailures.add(1);
+                        }
+                    }
+                    else if (t instanceof LocalRejectionException) {
+                        attempt.markCanceled();
+                        synchronized (subFutureLock) {
+                            if (!completed(future) || isDone()) {
+                                return;
+                            }
+                            if (attemptsLeft <= 0) {
+                                LocalRejectionException localRejectionException = (LocalRejectionException) t;
+                                failWith(localRejectionException.request, localRejectionException.getCause());
+                                return;
+                            }
+                            HttpServiceAttempt nextAttempt;
+                            try {
+                                // The most recent attempt, which excludes the instance of any hedge
+                                nextAttempt = RetryFuture.this.attempt.next();
+                            }
+                            catch (RuntimeException e) {
+                                failWith(request, e);
+                                return;
+                            }
+                            try {
+                                attemptQuery(retryFuture, request, responseHandler, nextAttempt, attemptsLeft, isHedge);
+                            }
+                            catch (RuntimeException e) {
+                                setException(e);
+                            }
+                        }
                     }
                     else if (t instanceof RetryException) {
                         attempt.markBad(((RetryException) t).getFailureCategory());
                         TraceToken traceToken = getCurrentTraceToken();
                         synchronized (subFutureLock) {
+                            if (!completed(future) || isDone()) {
+                                return;
+                            }
                             Duration backoff = attemptBackoffPolicy.backoff(previousBackoff);
                             ScheduledFuture<?> scheduledFuture = retryExecutor.schedule(() -> {
                                 try (TraceTokenScope scope = registerTraceToken(traceToken)){
                                     synchronized (subFutureLock) {
                                         HttpServiceAttempt nextAttempt;
                                         try {
-                                            nextAttempt = attempt.next();
+                                            // The most recent attempt, which excludes the instance of any hedge
+                                            nextAttempt = RetryFuture.this.attempt.next();
                                             previousBackoff = backoff;
                                             attemptBackoffPolicy = attemptBackoffPolicy.nextAttempt();
                                         }
                                         catch (RuntimeException e1) {
-                                            try {
-                                                set(responseHandler.handleException(request, e1));
-                                            }
-                                            catch (Exception e2) {
-                                                setException(e2);
-                                            }
+                                            failWith(request, e1);
                                             return;
                                         }
                                         try {
-                                            attemptQuery(retryFuture, request, responseHandler, nextAttempt, attemptsLeft);
+                                            attemptQuery(retryFuture, request, responseHandler, nextAttempt, attemptsLeft, isHedge);
                                         }
                                         catch (RuntimeException e1) {
                                             setException(e1);
@@ -352,15 +479,103 @@ public class BalancingHttpClient
             }, directExecutor());
         }
 
+        private void failWith(Request request, Exception exception)
+        {
+            try {
+                set(responseHandler.handleException(request, exception));
+            }
+            catch (Exception e) {
+                setException(e);
+            }
+        }
+
+        /**
+         * Records that an attempt has completed.
+         *
+         * @return true if no other attempt is still in flight, so the outcome
+         * of this one is the outcome of the request
+         */
+        private boolean completed(HttpResponseFuture<T> future)
+        {
+            synchronized (subFutureLock) {
+                inFlight.remove(future);
+                return inFlight.isEmpty();
+            }
+        }
+
+        private void cancelInFlight()
+        {
+            List<HttpResponseFuture<T>> losers;
+            synchronized (subFutureLock) {
+                losers = ImmutableList.copyOf(inFlight);
+            }
+            for (HttpResponseFuture<T> loser : losers) {
+                loser.cancel(true);
+            }
+        }
+
+        void scheduleHedge(long delayNanos)
+        {
+            TraceToken traceToken = getCurrentTraceToken();
+            synchronized (subFutureLock) {
+                if (isDone()) {
+                    return;
+                }
+                hedgeTask = retryExecutor.schedule(() -> {
+                    try (TraceTokenScope scope = registerTraceToken(traceToken)) {
+                        hedge();
+                    }
+                }, delayNanos, NANOSECONDS);
+            }
+        }
+
+        private void hedge()
+        {
+            synchronized (subFutureLock) {
+                // Not while the request is done or delaying for a retry
+                if (isDone() || inFlight.size() != 1) {
+                    return;
+                }
+
+                HttpServiceAttempt hedgeAttempt;
+                try {
+                    hedgeAttempt = attempt.next();
+                }
+                catch (RuntimeException e) {
+                    return;
+                }
+                if (hedgeAttempt.getUri().equals(attempt.getUri())) {
+                    hedgeAttempt.markCanceled();
+                    return;
+                }
+                if (!retryBudget.canHedge()) {
+                    hedgesBudgetExhausted.add(1);
+                    hedgeAttempt.markCanceled();
+                    return;
+                }
+
+                hedges.add(1);
+                try {
+                    attemptQuery(this, request, responseHandler, hedgeAttempt, maxAttempts - 1, true);
+                }
+                catch (RuntimeException e) {
+                    hedgeAttempt.markCanceled();
+                }
+            }
+        }
+
         @Override
         public boolean cancel(boolean mayInterruptIfRunning)
         {
 
             if (super.cancel(mayInterruptIfRunning)) {
-                // todo attempt.cancel() ?
                 synchronized (subFutureLock) {
+                    if (hedgeTask != null) {
+                        hedgeTask.cancel(false);
+                    }
                     subFuture.cancel(mayInterruptIfRunning);
                 }
+                cancelInFlight();
                 return true;
             }
             return false;
@@ -37,6 +37,8 @@ public class BalancingHttpClientConfig
     private BigDecimal retryBudgetRatio = new BigDecimal(2).movePointLeft(1);
     private Duration retryBudgetRatioPeriod = new Duration(10, SECONDS);
     private int retryBudgetMinPerSecond = 10;
+    private Duration hedgeDelay = null;
+    private BigDecimal hedgePercentile = null;
 
     @Min(1)
     public int getMaxAttempts()
@@ -121,9 +123,43 @@ public class BalancingHttpClientConfig
         return this;
     }
 
+    public Duration getHedgeDelay()
+    {
+        return hedgeDelay;
+    }
+
+    @Config("http-client.hedge.delay")
+    @ConfigDescription("Delay after which a GET or HEAD request still in progress is also sent to another instance. Unset to disable hedging")
+    public BalancingHttpClientConfig setHedgeDelay(Duration hedgeDelay)
+    {
+        this.hedgeDelay = hedgeDelay;
+        return this;
+    }
+
+    @Min(1)
+    @Max(100)
+    public BigDecimal getHedgePercentile()
+    {
+        return hedgePercentile;
+    }
+
+    @Config("http-client.hedge.percentile")
+    @ConfigDescription("If set, hedge after this percentile of recent request latencies, using the hedge delay until there are enough of them")
+    public BalancingHttpClientConfig setHedgePercentile(BigDecimal hedgePercentile)
+    {
+        this.hedgePercentile = hedgePercentile;
+        return this;
+    }
+
     @AssertFalse
     public boolean isMaxBackoffLessThanMinBackoff()
     {
         return maxBackoff.compareTo(minBackoff) < 0;
     }
+
+    @AssertFalse
+    public boolean isHedgePercentileWithoutDelay()
+    {
+        return hedgePercentile != null && hedgeDelay == null;
+    }
 }
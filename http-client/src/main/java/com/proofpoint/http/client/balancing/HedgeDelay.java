@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client.balancing;
+
+import com.google.common.base.Ticker;
+import com.proofpoint.stats.LogLinearHistogram;
+import com.proofpoint.units.Duration;
+
+import javax.annotation.Nullable;
+import java.math.BigDecimal;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * The delay after which a request is hedged. This is either a fixed delay
+ * or a percentile of the latencies of successful requests, measured from
+ * the start of the request, over the previous window, falling back to the
+ * fixed delay when that window had too few samples.
+ */
+final class HedgeDelay
+{
+    private static final long WINDOW_NANOS = SECONDS.toNanos(10);
+    private static final int MIN_SAMPLES = 100;
+
+    private final long fixedDelayNanos;
+    @Nullable
+    private final Double quantile;
+    private final Ticker ticker;
+    private final AtomicReference<Window> window;
+
+    HedgeDelay(Duration delay, @Nullable BigDecimal percentile, Ticker ticker)
+    {
+        fixedDelayNanos = requireNonNull(delay, "delay is null").roundTo(NANOSECONDS);
+        quantile = percentile == null ? null : percentile.movePointLeft(2).doubleValue();
+        this.ticker = requireNonNull(ticker, "ticker is null");
+        window = new AtomicReference<>(new Window(ticker.read(), fixedDelayNanos));
+    }
+
+    long getDelayNanos()
+    {
+        return currentWindow().delayNanos;
+    }
+
+    void recordLatency(long nanos)
+    {
+        if (quantile != null) {
+            currentWindow().latencies.add(nanos);
+        }
+    }
+
+    private Window currentWindow()
+    {
+        Window current = window.get();
+        if (quantile == null) {
+            return current;
+        }
+        long now = ticker.read();
+        if (now - current.startTick < WINDOW_NANOS) {
+            return current;
+        }
+
+        long delayNanos = fixedDelayNanos;
+        if (current.latencies.getCount() >= MIN_SAMPLES) {
+            delayNanos = current.latencies.getQuantile(quantile);
+        }
+        Window next = new Window(now, delayNanos);
+        if (window.compareAndSet(current, next)) {
+            return next;
+        }
+        return window.get();
+    }
+
+    private static class Window
+    {
+        private final long startTick;
+        private final long delayNanos;
+        private final LogLinearHistogram latencies = new LogLinearHistogram();
+
+        Window(long startTick, long delayNanos)
+        {
+            this.startTick = startTick;
+            this.delayNanos = delayNanos;
+        }
+    }
+}
@@ -23,5 +23,19 @@ public interface HttpServiceAttempt
     void markGood();
     void markBad(String failureCategory);
     void markBad(String failureCategory, String handlerCategory);
+
+    /**
+     * Marks the attempt as abandoned before it completed, such as when a
+     * hedged request got its response from another attempt. Does not count
+     * as a success or a failure of the instance.
+     */
+    default void markCanceled()
+    {
+    }
+
+    /**
+     * Creates an attempt to a different instance, if possible. May be
+     * called while this attempt is still in progress, in order to hedge it.
+     */
     HttpServiceAttempt next();
 }
@@ -18,9 +18,11 @@ package com.proofpoint.http.client.balancing;
 import com.proofpoint.configuration.Config;
 import com.proofpoint.configuration.ConfigDescription;
 import com.proofpoint.units.Duration;
+import com.proofpoint.units.MinDuration;
 
 import javax.validation.constraints.AssertFalse;
 import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
 
 import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -30,6 +32,8 @@ public class HttpServiceBalancerConfig
     private int consecutiveFailures = 5;
     private Duration minBackoff = new Duration(5, SECONDS);
     private Duration maxBackoff = new Duration(2, MINUTES);
+    private SelectionPolicy selectionPolicy = SelectionPolicy.LEAST_CONCURRENCY;
+    private Duration peakEwmaDecayTime = new Duration(10, SECONDS);
 
     @Min(1)
     public int getConsecutiveFailures()
@@ -71,10 +75,61 @@ public class HttpServiceBalancerConfig
         return this;
     }
 
+    @NotNull
+    public SelectionPolicy getSelectionPolicy()
+    {
+        return selectionPolicy;
+    }
+
+    @Config("selection-policy")
+    @ConfigDescription("How an instance is selected for each attempt: LEAST_CONCURRENCY, POWER_OF_TWO_CHOICES, or PEAK_EWMA")
+    public HttpServiceBalancerConfig setSelectionPolicy(SelectionPolicy selectionPolicy)
+    {
+        this.selectionPolicy = selectionPolicy;
+        return this;
+    }
+
+    @MinDuration("1ms")
+    public Duration getPeakEwmaDecayTime()
+    {
+        return peakEwmaDecayTime;
+    }
+
+    @Config("peak-ewma.decay-time")
+    @ConfigDescription("Time constant over which the PEAK_EWMA selection policy decays the round-trip time of an instance")
+    public HttpServiceBalancerConfig setPeakEwmaDecayTime(Duration peakEwmaDecayTime)
+    {
+        this.peakEwmaDecayTime = peakEwmaDecayTime;
+        return this;
+    }
 
     @AssertFalse
     public boolean isMaxBackoffLessThanMinBackoff()
     {
         return maxBackoff.compareTo(minBackoff) < 0;
     }
+
+    public enum SelectionPolicy
+    {
+        /**
+         * Select among all the live instances with the fewest in-flight
+         * requests per unit of weight.
+         */
+        LEAST_CONCURRENCY,
+
+        /**
+         * Select the instance with fewer in-flight requests per unit of
+         * weight out of two chosen at random, without taking any lock
+         * shared between instances.
+         */
+        POWER_OF_TWO_CHOICES,
+
+        /**
+         * Select out of two instances chosen at random the one with the
+         * lower round-trip time, as a moving average which immediately
+         * rises to any slower response, multiplied by one more than its
+         * in-flight requests.
+         */
+        PEAK_EWMA,
+    }
 }
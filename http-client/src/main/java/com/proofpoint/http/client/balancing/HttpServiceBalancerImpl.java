@@ -22,12 +22,14 @@ import com.google.common.collect.ImmutableMultiset;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Multiset;
 import com.google.common.collect.Multiset.Entry;
+import com.proofpoint.http.client.balancing.HttpServiceBalancerConfig.SelectionPolicy;
 import com.proofpoint.http.client.balancing.HttpServiceBalancerStats.Status;
 import com.proofpoint.stats.MaxGauge;
 import com.proofpoint.units.Duration;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.weakref.jmx.Nested;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import java.net.URI;
 import java.util.ArrayList;
@@ -35,10 +37,13 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkState;
@@ -51,15 +56,20 @@ public class HttpServiceBalancerImpl
 {
     private static final InstanceState INSTANCE_STATE_WORST = new InstanceState(Liveness.DEAD, Integer.MAX_VALUE);
     private static final Duration ZERO_DURATION = new Duration(0, SECONDS);
+    private static final double UNMEASURED_PENALTY = Double.MAX_VALUE / 2;
     private final AtomicReference<ImmutableMultiset<URI>> httpUris = new AtomicReference<>(ImmutableMultiset.of());
+    private final AtomicReference<Instance[]> instances = new AtomicReference<>(new Instance[0]);
 
     @GuardedBy("uriStates")
     private final Map<URI, InstanceState> uriStates = new HashMap<>();
     private final String description;
     private final HttpServiceBalancerStats httpServiceBalancerStats;
+    private final SelectionPolicy selectionPolicy;
+    private final double peakEwmaDecayNanos;
     private final int consecutiveFailures;
     private final BackoffPolicy backoffPolicy;
     private final Ticker ticker;
+    private final Supplier<Random> randomSupplier;
     private final MaxGauge concurrency = new MaxGauge();
 
     public HttpServiceBalancerImpl(String description, HttpServiceBalancerStats httpServiceBalancerStats, HttpServiceBalancerConfig config)
@@ -68,24 +78,61 @@ public class HttpServiceBalancerImpl
     }
 
     HttpServiceBalancerImpl(String description, HttpServiceBalancerStats httpServiceBalancerStats, HttpServiceBalancerConfig config, Ticker ticker)
+    {
+        this(description, httpServiceBalancerStats, config, ticker, ThreadLocalRandom::current);
+    }
+
+    HttpServiceBalancerImpl(String description, HttpServiceBalancerStats httpServiceBalancerStats, HttpServiceBalancerConfig config, Ticker ticker, Supplier<Random> randomSupplier)
     {
         this.description = requireNonNull(description, "description is null");
         this.httpServiceBalancerStats = requireNonNull(httpServiceBalancerStats, "httpServiceBalancerStats is null");
-        consecutiveFailures = requireNonNull(config, "config is null").getConsecutiveFailures();
+        selectionPolicy = requireNonNull(config, "config is null").getSelectionPolicy();
+        peakEwmaDecayNanos = config.getPeakEwmaDecayTime().getValue(NANOSECONDS);
+        consecutiveFailures = config.getConsecutiveFailures();
         backoffPolicy = new DecorrelatedJitteredBackoffPolicy(config.getMinBackoff(), config.getMaxBackoff());
         this.ticker = requireNonNull(ticker, "ticker is null");
+        this.randomSupplier = requireNonNull(randomSupplier, "randomSupplier is null");
     }
 
     @Override
     public HttpServiceAttempt createAttempt()
     {
+        if (selectionPolicy != SelectionPolicy.LEAST_CONCURRENCY) {
+            return new PowerOfTwoChoicesAttempt(ImmutableSet.of());
+        }
         return new HttpServiceAttemptImpl(ImmutableSet.of());
     }
 
     @Beta
     public void updateHttpUris(Collection<URI> newHttpUris)
     {
-        httpUris.set(ImmutableMultiset.copyOf(newHttpUris));
+        ImmutableMultiset<URI> uris = ImmutableMultiset.copyOf(newHttpUris);
+        if (selectionPolicy != SelectionPolicy.LEAST_CONCURRENCY) {
+            updateInstances(uris);
+        }
+        else {
+            httpUris.set(uris);
+        }
+    }
+
+    private synchronized void updateInstances(ImmutableMultiset<URI> uris)
+    {
+        // Keep the state of the instances which remain, so their in-flight
+        // counts and liveness carry over to the new snapshot
+        Map<URI, Instance> existing = new HashMap<>();
+        for (Instance instance : instances.get()) {
+            existing.put(instance.uri, instance);
+        }
+        List<Instance> newInstances = new ArrayList<>();
+        for (Entry<URI> entry : uris.entrySet()) {
+            Instance instance = existing.get(entry.getElement());
+            if (instance == null) {
+                instance = new Instance(entry.getElement());
+            }
+            instance.weight = entry.getCount();
+            newInstances.add(instance);
+        }
+        instances.set(newInstances.toArray(new Instance[0]));
     }
 
     private class HttpServiceAttemptImpl
@@ -146,7 +193,7 @@ public class HttpServiceBalancerImpl
                     attempted = ImmutableSet.of();
                 }
 
-                uri = leastUris.get(ThreadLocalRandom.current().nextInt(0, leastUris.size()));
+                uri = leastUris.get(randomSupplier.get().nextInt(leastUris.size()));
 
                 InstanceState uriState = uriStates.get(uri);
                 if (uriState.liveness == Liveness.PROBING && uriState.concurrency == 0) {
@@ -191,20 +238,31 @@ public class HttpServiceBalancerImpl
             httpServiceBalancerStats.failure(uri, failureCategory, handlerCategory).add(1);
         }
 
-        private void decrementConcurrency(boolean isFailure)
+        @Override
+        public void markCanceled()
+        {
+            decrementConcurrency(null);
+        }
+
+        /**
+         * @param isFailure null if the attempt was canceled
+         */
+        private void decrementConcurrency(@Nullable Boolean isFailure)
         {
             checkState(inProgress, "is in progress");
             inProgress = false;
             synchronized (uriStates) {
                 InstanceState uriState = uriStates.get(uri);
 
-                uriState.liveness.mark(isFailure, uriState, this, HttpServiceBalancerImpl.this);
+                if (isFailure != null) {
+                    uriState.liveness.mark(isFailure, uriState, uri, HttpServiceBalancerImpl.this);
+                }
                 int oldConcurrency = uriState.concurrency;
                 if (oldConcurrency > 0) {
                     --uriState.concurrency;
                 }
 
-                if (oldConcurrency == 1 && !isFailure && uriState.liveness == Liveness.ALIVE) {
+                if (oldConcurrency == 1 && isFailure != Boolean.TRUE && uriState.liveness == Liveness.ALIVE) {
                     uriStates.remove(uri);
                     if (uriStates.isEmpty()) {
                         concurrency.update(0);
@@ -225,7 +283,6 @@ public class HttpServiceBalancerImpl
         @Override
         public HttpServiceAttempt next()
         {
-            checkState(!inProgress, "is not still in progress");
             Set<URI> newAttempted = ImmutableSet.<URI>builder()
                     .add(uri)
                     .addAll(attempted)
@@ -234,26 +291,259 @@ public class HttpServiceBalancerImpl
         }
     }
 
+    private class PowerOfTwoChoicesAttempt
+            implements HttpServiceAttempt
+    {
+        private final Set<URI> attempted;
+        private final Instance instance;
+        private final long startTick;
+        private boolean inProgress = true;
+
+        PowerOfTwoChoicesAttempt(Set<URI> attempted)
+        {
+            Instance[] instances = HttpServiceBalancerImpl.this.instances.get();
+            if (instances.length == 0) {
+                throw new ServiceUnavailableException(description);
+            }
+
+            long now = ticker.read();
+            Instance selected = select(instances, attempted, now);
+            if (selected == null || (!selected.isAvailable(now) && !attempted.isEmpty())) {
+                attempted = ImmutableSet.of();
+                selected = select(instances, attempted, now);
+            }
+
+            int instanceConcurrency = acquire(selected, now, selected.isAvailable(now));
+            if (instanceConcurrency == 0) {
+                // Another attempt started probing the instance after it was
+                // selected, so choose again from the others
+                Set<URI> excluded = ImmutableSet.<URI>builder()
+                        .addAll(attempted)
+                        .add(selected.uri)
+                        .build();
+                Instance other = select(instances, excluded, now);
+                if (other != null && other.isAvailable(now)) {
+                    selected = other;
+                }
+                instanceConcurrency = acquire(selected, now, false);
+            }
+            instance = selected;
+            concurrency.updateInstantaneous(instanceConcurrency);
+
+            this.attempted = ImmutableSet.copyOf(attempted);
+            startTick = ticker.read();
+        }
+
+        /**
+         * Adds an in-flight request to an instance.
+         *
+         * @param onlyIfAvailable whether to fail if the instance is not alive
+         * and another attempt is already probing it
+         * @return the instance's new number of in-flight requests, or 0 if
+         * the instance is not available
+         */
+        private int acquire(Instance instance, long now, boolean onlyIfAvailable)
+        {
+            if (instance.liveness == Liveness.ALIVE) {
+                return instance.concurrency.incrementAndGet();
+            }
+            synchronized (instance) {
+                if (instance.liveness == Liveness.DEAD && instance.deadUntil <= now) {
+                    instance.liveness = Liveness.PROBING;
+                }
+                if (instance.liveness == Liveness.PROBING && instance.concurrency.get() == 0) {
+                    httpServiceBalancerStats.probe(instance.uri).add(1);
+                }
+                else if (onlyIfAvailable && instance.liveness != Liveness.ALIVE) {
+                    return 0;
+                }
+                return instance.concurrency.incrementAndGet();
+            }
+        }
+
+        @Override
+        public URI getUri()
+        {
+            return instance.uri;
+        }
+
+        @Override
+        public void markGood()
+        {
+            release(false);
+            httpServiceBalancerStats.requestTime(instance.uri, Status.SUCCESS).add(ticker.read() - startTick, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void markBad(String failureCategory)
+        {
+            release(true);
+            httpServiceBalancerStats.requestTime(instance.uri, Status.FAILURE).add(ticker.read() - startTick, TimeUnit.NANOSECONDS);
+            httpServiceBalancerStats.failure(instance.uri, failureCategory).add(1);
+        }
+
+        @Override
+        public void markBad(String failureCategory, String handlerCategory)
+        {
+            release(true);
+            httpServiceBalancerStats.requestTime(instance.uri, Status.FAILURE).add(ticker.read() - startTick, TimeUnit.NANOSECONDS);
+            httpServiceBalancerStats.failure(instance.uri, failureCategory, handlerCategory).add(1);
+        }
+
+        @Override
+        public void markCanceled()
+        {
+            release(null);
+        }
+
+        /**
+         * @param isFailure null if the attempt was canceled
+         */
+        private void release(@Nullable Boolean isFailure)
+        {
+            checkState(inProgress, "is in progress");
+            inProgress = false;
+            synchronized (instance) {
+                if (isFailure != null) {
+                    instance.liveness.mark(isFailure, instance, instance.uri, HttpServiceBalancerImpl.this);
+                }
+                if (selectionPolicy == SelectionPolicy.PEAK_EWMA) {
+                    long now = ticker.read();
+                    if (isFailure == null) {
+                        // The elapsed time of a canceled attempt is only a
+                        // lower bound on the instance's round-trip time
+                        instance.rttEstimate = instance.rttEstimate.observeLowerBound(now - startTick, now, peakEwmaDecayNanos);
+                    }
+                    else {
+                        instance.rttEstimate = instance.rttEstimate.observe(now - startTick, now, peakEwmaDecayNanos);
+                    }
+                }
+            }
+            instance.concurrency.decrementAndGet();
+        }
+
+        @Override
+        public HttpServiceAttempt next()
+        {
+            Set<URI> newAttempted = ImmutableSet.<URI>builder()
+                    .add(instance.uri)
+                    .addAll(attempted)
+                    .build();
+            return new PowerOfTwoChoicesAttempt(newAttempted);
+        }
+    }
+
+    /**
+     * Selects the preferred of two distinct instances chosen at random from
+     * those not yet attempted, or the only one not yet attempted. If neither
+     * of the two is available, selects an available instance not yet
+     * attempted, if there is one.
+     *
+     * @return null if all the instances have been attempted
+     */
+    @Nullable
+    private Instance select(Instance[] instances, Set<URI> attempted, long now)
+    {
+        Random random = randomSupplier.get();
+        int first = findUnattempted(instances, random.nextInt(instances.length), attempted, -1);
+        if (first < 0) {
+            return null;
+        }
+        if (instances.length == 1) {
+            return instances[first];
+        }
+
+        // Start the second search anywhere but at the first choice, so the
+        // instance after it is not favored
+        int start = random.nextInt(instances.length - 1);
+        if (start >= first) {
+            ++start;
+        }
+        int second = findUnattempted(instances, start, attempted, first);
+        if (second < 0) {
+            return instances[first];
+        }
+        Instance selected = preferred(instances[first], instances[second], now, random);
+        if (selected.isAvailable(now)) {
+            return selected;
+        }
+
+        // Neither choice is available, so look for one which is, leaving
+        // the preferred choice for when every instance is dead or probing
+        int index = random.nextInt(instances.length);
+        for (int i = 0; i < instances.length; i++) {
+            Instance instance = instances[index];
+            if ((attempted.isEmpty() || !attempted.contains(instance.uri)) && instance.isAvailable(now)) {
+                return instance;
+            }
+            if (++index == instances.length) {
+                index = 0;
+            }
+        }
+        return selected;
+    }
+
+    private Instance preferred(Instance first, Instance second, long now, Random random)
+    {
+        boolean available = first.isAvailable(now);
+        if (available != second.isAvailable(now)) {
+            return available ? first : second;
+        }
+        if (selectionPolicy == SelectionPolicy.PEAK_EWMA) {
+            double load = first.getPeakEwmaLoad(now, peakEwmaDecayNanos);
+            double secondLoad = second.getPeakEwmaLoad(now, peakEwmaDecayNanos);
+            if (load != secondLoad) {
+                return load < secondLoad ? first : second;
+            }
+        }
+        return first.hasLessConcurrencyThan(second, random) ? first : second;
+    }
+
+    private static int findUnattempted(Instance[] instances, int start, Set<URI> attempted, int exclude)
+    {
+        int index = start;
+        for (int i = 0; i < instances.length; i++) {
+            if (index != exclude && (attempted.isEmpty() || !attempted.contains(instances[index].uri))) {
+                return index;
+            }
+            if (++index == instances.length) {
+                index = 0;
+            }
+        }
+        return -1;
+    }
+
     @Nested
     public MaxGauge getConcurrency()
     {
         return concurrency;
     }
 
+    private static class LivenessState
+    {
+        // Written under a lock, but read without one by POWER_OF_TWO_CHOICES and PEAK_EWMA selection
+        volatile Liveness liveness;
+        volatile long deadUntil;
+        int numFailures = 0;
+        BackoffPolicy backoffPolicy;
+        Duration lastBackoff;
+
+        LivenessState(Liveness liveness)
+        {
+            this.liveness = liveness;
+        }
+    }
+
     @SuppressFBWarnings(value = "EQ_COMPARETO_USE_OBJECT_EQUALS", justification = "Object does not implement Comparable")
     private static class InstanceState
+            extends LivenessState
     {
-        Liveness liveness;
         int weight = 1;
         int concurrency;
-        int numFailures = 0;
-        BackoffPolicy backoffPolicy;
-        Duration lastBackoff;
-        long deadUntil;
 
         InstanceState(Liveness liveness, int concurrency)
         {
-            this.liveness = liveness;
+            super(liveness);
             this.concurrency = concurrency;
         }
 
@@ -272,11 +562,125 @@ public class HttpServiceBalancerImpl
         }
     }
 
+    /**
+     * An instance in the POWER_OF_TWO_CHOICES or PEAK_EWMA snapshot. Its
+     * liveness state is guarded by the instance itself.
+     */
+    private static class Instance
+            extends LivenessState
+    {
+        final URI uri;
+        final AtomicInteger concurrency = new AtomicInteger();
+        volatile int weight = 1;
+        // Replaced under the instance lock
+        volatile RttEstimate rttEstimate = RttEstimate.NONE;
+
+        Instance(URI uri)
+        {
+            super(Liveness.ALIVE);
+            this.uri = requireNonNull(uri, "uri is null");
+        }
+
+        boolean isAvailable(long now)
+        {
+            Liveness liveness = this.liveness;
+            if (liveness == Liveness.ALIVE) {
+                return true;
+            }
+            return (liveness == Liveness.PROBING || deadUntil <= now) && concurrency.get() == 0;
+        }
+
+        /**
+         * The decayed round-trip time in nanoseconds times one more than the
+         * number of in-flight requests, per unit of weight. An instance with
+         * at least as many requests in flight as its weight but no measured
+         * round-trip time is given a penalty, so it is sent one request per
+         * unit of weight at a time until it responds. Instances with equal
+         * loads are compared by their in-flight requests.
+         */
+        double getPeakEwmaLoad(long now, double decayNanos)
+        {
+            int concurrency = this.concurrency.get();
+            double cost = rttEstimate.getCost(now, decayNanos);
+            if (cost == 0 && concurrency >= weight) {
+                return UNMEASURED_PENALTY;
+            }
+            return cost * (concurrency + 1) / weight;
+        }
+
+        /**
+         * Whether this instance has fewer in-flight requests per unit of
+         * weight than the other. Ties are broken at random in proportion to
+         * the remaining capacity at the current level, as with
+         * LEAST_CONCURRENCY.
+         */
+        boolean hasLessConcurrencyThan(Instance that, Random random)
+        {
+            int concurrency = this.concurrency.get();
+            int weight = this.weight;
+            int thatConcurrency = that.concurrency.get();
+            int thatWeight = that.weight;
+            int comparison = Integer.compare(concurrency / weight, thatConcurrency / thatWeight);
+            if (comparison != 0) {
+                return comparison < 0;
+            }
+            int remaining = weight - concurrency % weight;
+            int thatRemaining = thatWeight - thatConcurrency % thatWeight;
+            return random.nextInt(remaining + thatRemaining) < remaining;
+        }
+    }
+
+    /**
+     * A peak-sensitive exponentially weighted moving average of round-trip
+     * times. A round-trip time above the average replaces it, and the
+     * average otherwise decays towards more recent times with the time
+     * constant of the decay time.
+     */
+    private static final class RttEstimate
+    {
+        static final RttEstimate NONE = new RttEstimate(0, 0);
+
+        private final double cost;
+        private final long tick;
+
+        private RttEstimate(double cost, long tick)
+        {
+            this.cost = cost;
+            this.tick = tick;
+        }
+
+        double getCost(long now, double decayNanos)
+        {
+            return cost * Math.exp(-Math.max(now - tick, 0) / decayNanos);
+        }
+
+        RttEstimate observe(long rttNanos, long now, double decayNanos)
+        {
+            if (rttNanos > cost) {
+                return new RttEstimate(rttNanos, now);
+            }
+            double weight = Math.exp(-Math.max(now - tick, 0) / decayNanos);
+            return new RttEstimate(cost * weight + rttNanos * (1 - weight), now);
+        }
+
+        /**
+         * Raises the average to a time which the round-trip time is known
+         * to be at least, without letting a shorter time lower it.
+         */
+        RttEstimate observeLowerBound(long rttNanos, long now, double decayNanos)
+        {
+            if (rttNanos > getCost(now, decayNanos)) {
+                return new RttEstimate(rttNanos, now);
+            }
+            return this;
+        }
+    }
+
     private enum Liveness
     {
         ALIVE {
             @Override
-            public void mark(boolean isFailure, InstanceState uriState, HttpServiceAttemptImpl attempt, HttpServiceBalancerImpl balancer)
+            public void mark(boolean isFailure, LivenessState uriState, URI uri, HttpServiceBalancerImpl balancer)
             {
                 if (isFailure) {
                     if (++uriState.numFailures >= balancer.consecutiveFailures) {
@@ -284,7 +688,7 @@ public class HttpServiceBalancerImpl
                         uriState.backoffPolicy = balancer.backoffPolicy;
                         uriState.lastBackoff = uriState.backoffPolicy.backoff(ZERO_DURATION);
                         uriState.deadUntil = balancer.ticker.read() + uriState.lastBackoff.roundTo(NANOSECONDS);
-                        balancer.httpServiceBalancerStats.removal(attempt.uri).add(uriState.lastBackoff);
+                        balancer.httpServiceBalancerStats.removal(uri).add(uriState.lastBackoff);
                     }
                 }
                 else {
@@ -295,39 +699,39 @@ public class HttpServiceBalancerImpl
 
         DEAD {
             @Override
-            public void mark(boolean isFailure, InstanceState uriState, HttpServiceAttemptImpl attempt, HttpServiceBalancerImpl balancer)
+            public void mark(boolean isFailure, LivenessState uriState, URI uri, HttpServiceBalancerImpl balancer)
             {
                 if (!isFailure) {
                     uriState.liveness = ALIVE;
                     uriState.numFailures = 0;
                     uriState.backoffPolicy = null;
                     uriState.lastBackoff = null;
-                    balancer.httpServiceBalancerStats.revival(attempt.uri).add(1);
+                    balancer.httpServiceBalancerStats.revival(uri).add(1);
                 }
             }
         },
 
         PROBING {
             @Override
-            public void mark(boolean isFailure, InstanceState uriState, HttpServiceAttemptImpl attempt, HttpServiceBalancerImpl balancer)
+            public void mark(boolean isFailure, LivenessState uriState, URI uri, HttpServiceBalancerImpl balancer)
             {
                 if (isFailure) {
                     uriState.liveness = DEAD;
                     uriState.backoffPolicy = uriState.backoffPolicy.nextAttempt();
                     uriState.lastBackoff = uriState.backoffPolicy.backoff(uriState.lastBackoff);
                     uriState.deadUntil = balancer.ticker.read() + uriState.lastBackoff.roundTo(NANOSECONDS);
-                    balancer.httpServiceBalancerStats.removal(attempt.uri).add(uriState.lastBackoff);
+                    balancer.httpServiceBalancerStats.removal(uri).add(uriState.lastBackoff);
                 }
                 else {
                     uriState.liveness = ALIVE;
                     uriState.numFailures = 0;
                     uriState.backoffPolicy = null;
                     uriState.lastBackoff = null;
-                    balancer.httpServiceBalancerStats.revival(attempt.uri).add(1);
+                    balancer.httpServiceBalancerStats.revival(uri).add(1);
                 }
             }
         };
 
-        public abstract void mark(boolean isFailure, InstanceState uriState, HttpServiceAttemptImpl attempt, HttpServiceBalancerImpl balancer);
+        public abstract void mark(boolean isFailure, LivenessState uriState, URI uri, HttpServiceBalancerImpl balancer);
     }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client.balancing;
+
+import com.proofpoint.http.client.ConcurrencyLimitExceededException;
+import com.proofpoint.http.client.Request;
+
+/**
+ * The request was not sent because the client's own concurrency limit for
+ * the instance was reached, which says nothing about the instance's health.
+ */
+class LocalRejectionException extends RetryException
+{
+    final Request request;
+
+    LocalRejectionException(Request request, ConcurrencyLimitExceededException cause)
+    {
+        super(cause);
+        this.request = request;
+    }
+
+    @Override
+    public synchronized ConcurrencyLimitExceededException getCause()
+    {
+        return (ConcurrencyLimitExceededException) super.getCause();
+    }
+}
@@ -34,4 +34,10 @@ class NoRetryBudget
     {
         return false;
     }
+
+    @Override
+    public boolean canHedge()
+    {
+        return false;
+    }
 }
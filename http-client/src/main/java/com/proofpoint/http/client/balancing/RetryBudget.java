@@ -20,4 +20,11 @@ interface RetryBudget
     void initialAttempt();
 
     boolean canRetry();
+
+    /**
+     * Withdraws from the budget for a hedged request. Unlike
+     * {@link #canRetry()}, a denial does not count as the budget being
+     * exhausted for retries.
+     */
+    boolean canHedge();
 }
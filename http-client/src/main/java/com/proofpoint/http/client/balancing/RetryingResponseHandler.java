@@ -18,6 +18,7 @@ package com.proofpoint.http.client.balancing;
 import com.google.common.cache.Cache;
 import com.google.common.collect.ImmutableSet;
 import com.proofpoint.http.client.BodySource;
+import com.proofpoint.http.client.ConcurrencyLimitExceededException;
 import com.proofpoint.http.client.LimitedRetryable;
 import com.proofpoint.http.client.Request;
 import com.proofpoint.http.client.Response;
@@ -47,6 +48,11 @@ final class RetryingResponseHandler<T, E extends Exception>
     public T handleException(Request request, final Exception exception)
             throws RetryException
     {
+        if (exception instanceof ConcurrencyLimitExceededException) {
+            // Nothing was sent, so the caller decides whether to try another instance
+            throw new LocalRejectionException(request, (ConcurrencyLimitExceededException) exception);
+        }
+
         final AtomicBoolean isLogged = new AtomicBoolean(false);
         try {
             exceptionCache.get(exception.getClass(), () -> {
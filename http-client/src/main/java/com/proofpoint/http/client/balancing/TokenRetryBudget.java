@@ -86,6 +86,12 @@ class TokenRetryBudget
         return false;
     }
 
+    @Override
+    public boolean canHedge()
+    {
+        return tokenBucket.tryGet(withdrawalAmount);
+    }
+
     @Nested
     public SparseCounterStat getRetryBudgetExhausted()
     {
@@ -0,0 +1,313 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.http.client.jetty;
+
+import com.google.common.base.Ticker;
+import com.proofpoint.http.client.ConcurrencyLimitExceededException;
+import com.proofpoint.http.client.HttpClientConfig.ConcurrencyLimitPolicy;
+import com.proofpoint.reporting.Gauge;
+import com.proofpoint.stats.SparseCounterStat;
+import org.weakref.jmx.Nested;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.proofpoint.http.client.HttpClientConfig.ConcurrencyLimitPolicy.NONE;
+import static java.lang.Math.log10;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Locale.ENGLISH;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+/**
+ * Limits the requests in flight to each destination, adapting the limit
+ * from the round-trip times and failures of the requests that complete.
+ * A destination with no requests in flight for {@link #IDLE_EXPIRY_NANOS}
+ * is forgotten, so its limit starts over from the initial limit.
+ */
+class ConcurrencyLimiter
+{
+    private static final double AIMD_BACKOFF_RATIO = 0.9;
+    private static final int MIN_RTT_PROBE_MULTIPLIER = 30;
+    static final long IDLE_EXPIRY_NANOS = MINUTES.toNanos(10);
+
+    private final ConcurrencyLimitPolicy policy;
+    private final int initialLimit;
+    private final int maxLimit;
+    private final Ticker ticker;
+    private final ConcurrentMap<String, DestinationLimit> limits = new ConcurrentHashMap<>();
+    private final SparseCounterStat rejected = new SparseCounterStat();
+    private final AtomicLong nextExpiryTick;
+
+    ConcurrencyLimiter(ConcurrencyLimitPolicy policy, int initialLimit, int maxLimit, Ticker ticker)
+    {
+        this.policy = requireNonNull(policy, "policy is null");
+        checkArgument(policy != NONE, "policy is NONE");
+        checkArgument(initialLimit >= 1, "initialLimit must be at least 1");
+        checkArgument(maxLimit >= initialLimit, "maxLimit must be at least initialLimit");
+        this.initialLimit = initialLimit;
+        this.maxLimit = maxLimit;
+        this.ticker = requireNonNull(ticker, "ticker is null");
+        nextExpiryTick = new AtomicLong(ticker.read() + IDLE_EXPIRY_NANOS);
+    }
+
+    /**
+     * Takes one of the in-flight requests allowed to the destination of a
+     * URI. The permit must be released or canceled when the request
+     * completes.
+     *
+     * @throws ConcurrencyLimitExceededException if the destination already
+     * has as many requests in flight as its limit
+     */
+    Permit acquire(URI uri)
+    {
+        String destination = destination(uri);
+        long now = ticker.read();
+        expireIdleDestinations(now);
+        while (true) {
+            DestinationLimit limit = limits.computeIfAbsent(destination, key -> new DestinationLimit(now));
+            synchronized (limit) {
+                if (limit.expired) {
+                    // Removed concurrently; use its replacement
+                    continue;
+                }
+                if (!limit.tryAcquire(now)) {
+                    rejected.add(1);
+                    throw new ConcurrencyLimitExceededException(destination, limit.getLimit());
+                }
+            }
+            return new Permit(limit, now);
+        }
+    }
+
+    private void expireIdleDestinations(long now)
+    {
+        long expiryTick = nextExpiryTick.get();
+        if (now - expiryTick < 0 || !nextExpiryTick.compareAndSet(expiryTick, now + IDLE_EXPIRY_NANOS)) {
+            return;
+        }
+        limits.forEach((destination, limit) -> {
+            if (limit.expireIfIdle(now)) {
+                limits.remove(destination, limit);
+            }
+        });
+    }
+
+    @Gauge(description = "Destinations being limited")
+    public int getDestinations()
+    {
+        return limits.size();
+    }
+
+    @Gauge(description = "Limit on in-flight requests, summed over destinations")
+    public int getLimit()
+    {
+        int sum = 0;
+        for (DestinationLimit limit : limits.values()) {
+            sum += limit.getLimit();
+        }
+        return sum;
+    }
+
+    @Gauge(description = "Requests in flight, summed over destinations")
+    public int getInFlight()
+    {
+        int sum = 0;
+        for (DestinationLimit limit : limits.values()) {
+            sum += limit.getInFlight();
+        }
+        return sum;
+    }
+
+    @Nested
+    public SparseCounterStat getRejected()
+    {
+        return rejected;
+    }
+
+    private static String destination(URI uri)
+    {
+        String scheme = String.valueOf(uri.getScheme()).toLowerCase(ENGLISH);
+        int port = uri.getPort();
+        if (port == -1) {
+            port = "https".equals(scheme) ? 443 : 80;
+        }
+        return scheme + "://" + String.valueOf(uri.getHost()).toLowerCase(ENGLISH) + ":" + port;
+    }
+
+    class Permit
+    {
+        private final DestinationLimit limit;
+        private final long startTick;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private Permit(DestinationLimit limit, long startTick)
+        {
+            this.limit = limit;
+            this.startTick = startTick;
+        }
+
+        /**
+         * Returns the permit and adapts the limit to the round-trip time of
+         * the request.
+         *
+         * @param dropped whether the request failed or the destination
+         * responded that it was overloaded
+         */
+        void release(boolean dropped)
+        {
+            if (done.compareAndSet(false, true)) {
+                long now = ticker.read();
+                limit.release(now, now - startTick, dropped);
+            }
+        }
+
+        /**
+         * Returns the permit without adapting the limit, for a request that
+         * was abandoned by the client.
+         */
+        void cancel()
+        {
+            if (done.compareAndSet(false, true)) {
+                limit.cancel(ticker.read());
+            }
+        }
+    }
+
+    private class DestinationLimit
+    {
+        @GuardedBy("this")
+        private double limit = initialLimit;
+        @GuardedBy("this")
+        private int inFlight = 0;
+        @GuardedBy("this")
+        private long minRttNanos = Long.MAX_VALUE;
+        @GuardedBy("this")
+        private long samplesSinceMinRtt = 0;
+        @GuardedBy("this")
+        private long lastUsedTick;
+        @GuardedBy("this")
+        private boolean expired = false;
+
+        DestinationLimit(long now)
+        {
+            lastUsedTick = now;
+        }
+
+        synchronized boolean tryAcquire(long now)
+        {
+            lastUsedTick = now;
+            if (inFlight >= (int) limit) {
+                return false;
+            }
+            ++inFlight;
+            return true;
+        }
+
+        /**
+         * Marks the destination expired if it has had no requests in flight
+         * for {@link #IDLE_EXPIRY_NANOS}. An expired destination is never
+         * acquired again.
+         */
+        synchronized boolean expireIfIdle(long now)
+        {
+            if (inFlight == 0 && now - lastUsedTick >= IDLE_EXPIRY_NANOS) {
+                expired = true;
+            }
+            return expired;
+        }
+
+        synchronized void cancel(long now)
+        {
+            lastUsedTick = now;
+            --inFlight;
+        }
+
+        synchronized void release(long now, long rttNanos, boolean dropped)
+        {
+            lastUsedTick = now;
+            // Only a limit that was nearly reached is evidence that it can grow
+            boolean limitInUse = inFlight * 2 >= limit;
+            --inFlight;
+
+            double newLimit;
+            if (policy == ConcurrencyLimitPolicy.AIMD) {
+                if (dropped) {
+                    newLimit = limit * AIMD_BACKOFF_RATIO;
+                }
+                else if (limitInUse) {
+                    newLimit = limit + 1 / limit;
+                }
+                else {
+                    return;
+                }
+            }
+            else {
+                newLimit = vegasLimit(rttNanos, dropped, limitInUse);
+            }
+            limit = min(maxLimit, max(1, newLimit));
+        }
+
+        @GuardedBy("this")
+        private double vegasLimit(long rttNanos, boolean dropped, boolean limitInUse)
+        {
+            // Take a fresh lowest round-trip time from time to time, so that
+            // a destination which has become slower is not seen as queuing
+            // forever
+            ++samplesSinceMinRtt;
+            if (rttNanos < minRttNanos || samplesSinceMinRtt > MIN_RTT_PROBE_MULTIPLIER * limit) {
+                minRttNanos = max(1, rttNanos);
+                samplesSinceMinRtt = 0;
+            }
+
+            double step = max(1, log10(limit));
+            if (dropped) {
+                return limit - step;
+            }
+            if (!limitInUse) {
+                return limit;
+            }
+
+            double queued = limit * (1 - (double) minRttNanos / max(1, rttNanos));
+            if (queued <= step) {
+                return limit + 6 * step;
+            }
+            if (queued < 3 * step) {
+                return limit + step;
+            }
+            if (queued > 6 * step) {
+                return limit - step;
+            }
+            return limit;
+        }
+
+        synchronized int getLimit()
+        {
+            return (int) limit;
+        }
+
+        synchronized int getInFlight()
+        {
+            return inFlight;
+        }
+    }
+}
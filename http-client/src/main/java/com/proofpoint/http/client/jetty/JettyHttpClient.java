@@ -1,11 +1,13 @@
 package com.proofpoint.http.client.jetty;
 
+import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Ordering;
 import com.google.common.io.Closeables;
 import com.google.common.net.HostAndPort;
 import com.google.common.primitives.Ints;
 import com.proofpoint.http.client.BodySource;
+import com.proofpoint.http.client.ConcurrencyLimitExceededException;
 import com.proofpoint.http.client.DynamicBodySource;
 import com.proofpoint.http.client.HttpClientConfig;
 import com.proofpoint.http.client.HttpRequestFilter;
@@ -13,7 +15,9 @@ import com.proofpoint.http.client.InputStreamBodySource;
 import com.proofpoint.http.client.Request;
 import com.proofpoint.http.client.RequestStats;
 import com.proofpoint.http.client.ResponseHandler;
+import com.proofpoint.http.client.ResponseTooLargeException;
 import com.proofpoint.http.client.StaticBodyGenerator;
+import com.proofpoint.http.client.jetty.ConcurrencyLimiter.Permit;
 import com.proofpoint.log.Logger;
 import com.proofpoint.units.Duration;
 import org.eclipse.jetty.client.DuplexConnectionPool;
@@ -25,6 +29,7 @@ import org.eclipse.jetty.client.PoolingHttpDestination;
 import org.eclipse.jetty.client.Socks4Proxy;
 import org.eclipse.jetty.client.api.Destination;
 import org.eclipse.jetty.client.api.Response;
+import org.eclipse.jetty.client.api.Result;
 import org.eclipse.jetty.client.http.HttpClientTransportOverHTTP;
 import org.eclipse.jetty.client.http.HttpConnectionOverHTTP;
 import org.eclipse.jetty.client.util.BytesContentProvider;
@@ -43,14 +48,17 @@ import org.weakref.jmx.Flatten;
 import org.weakref.jmx.Managed;
 import org.weakref.jmx.Nested;
 
+import javax.annotation.Nullable;
 import java.io.InputStream;
 import java.net.URI;
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
 import java.nio.channels.ClosedByInterruptException;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Objects;
 import java.util.Queue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeoutException;
@@ -61,6 +69,9 @@ import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Throwables.throwIfUnchecked;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.proofpoint.http.client.HttpClientConfig.ConcurrencyLimitPolicy.NONE;
+import static com.proofpoint.http.client.HttpStatus.SERVICE_UNAVAILABLE;
+import static com.proofpoint.http.client.HttpStatus.TOO_MANY_REQUESTS;
 import static com.proofpoint.http.client.jetty.AuthorizationPreservingHttpClient.setPreserveAuthorization;
 import static com.proofpoint.http.client.jetty.Stats.stats;
 import static java.lang.Math.max;
@@ -98,6 +109,7 @@ public class JettyHttpClient
     private final long maxContentLength;
     private final Long requestTimeoutMillis;
     private final long idleTimeoutMillis;
+    private final ConcurrencyLimiter concurrencyLimiter;
     private final Stats stats;
     private final CachedDistribution queuedRequestsPerDestination;
     private final CachedDistribution activeConnectionsPerDestination;
@@ -213,7 +225,17 @@ public class JettyHttpClient
 
         httpClient.setByteBufferPool(new MappedByteBufferPool());
         QueuedThreadPool executor = createExecutor(name, config.getMinThreads(), config.getMaxThreads());
-        stats = stats(executor);
+        if (config.getConcurrencyLimitPolicy() == NONE) {
+            concurrencyLimiter = null;
+        }
+        else {
+            concurrencyLimiter = new ConcurrencyLimiter(
+                    config.getConcurrencyLimitPolicy(),
+                    config.getInitialConcurrencyLimit(),
+                    config.getMaxConcurrencyLimit(),
+                    Ticker.systemTicker());
+        }
+        stats = stats(executor, concurrencyLimiter);
         httpClient.setExecutor(executor);
         // add executor as a managed bean to get its state in the client dumps
         httpClient.addBean(executor, true);
@@ -370,6 +392,13 @@ public class JettyHttpClient
 
         // create jetty request and response listener
         HttpRequest jettyRequest = buildJettyRequest(request, bytesWritten);
+        Permit permit;
+        try {
+            permit = acquireConcurrencyPermit(request, jettyRequest);
+        }
+        catch (ConcurrencyLimitExceededException e) {
+            return responseHandler.handleException(request, e);
+        }
         InputStreamResponseListener listener = new InputStreamResponseListener()
         {
             @Override
@@ -384,7 +413,13 @@ public class JettyHttpClient
         };
 
         // fire the request
-        jettyRequest.send(listener);
+        try {
+            jettyRequest.send(listener);
+        }
+        catch (RuntimeException e) {
+            cancelConcurrencyPermit(permit);
+            throw e;
+        }
 
         // wait for response to begin
         Response response;
@@ -464,10 +499,20 @@ public class JettyHttpClient
 
         BufferingResponseListener listener = new BufferingResponseListener(future, Ints.saturatedCast(maxContentLength));
 
+        Permit permit;
+        try {
+            permit = acquireConcurrencyPermit(request, jettyRequest);
+        }
+        catch (ConcurrencyLimitExceededException e) {
+            future.failed(e);
+            return future;
+        }
+
         try {
             jettyRequest.send(listener);
         }
         catch (RuntimeException e) {
+            cancelConcurrencyPermit(permit);
             if (!(e instanceof RejectedExecutionException)) {
                 e = new RejectedExecutionException(e);
             }
@@ -477,6 +522,50 @@ public class JettyHttpClient
         return future;
     }
 
+    /**
+     * Takes a permit from the concurrency limiter, if there is one, which is
+     * returned when the request completes.
+     *
+     * @throws ConcurrencyLimitExceededException if the destination already
+     * has as many requests in flight as its limit
+     */
+    @Nullable
+    private Permit acquireConcurrencyPermit(Request request, HttpRequest jettyRequest)
+    {
+        if (concurrencyLimiter == null) {
+            return null;
+        }
+        Permit permit = concurrencyLimiter.acquire(request.getUri());
+        jettyRequest.onComplete(result -> releaseConcurrencyPermit(permit, result));
+        return permit;
+    }
+
+    private static void releaseConcurrencyPermit(Permit permit, Result result)
+    {
+        Throwable failure = result.getFailure();
+        if (failure == null) {
+            int statusCode = result.getResponse().getStatus();
+            permit.release(statusCode == SERVICE_UNAVAILABLE.code() || statusCode == TOO_MANY_REQUESTS.code());
+        }
+        else if (failure instanceof CancellationException
+                || failure instanceof InterruptedException
+                || failure instanceof AsynchronousCloseException
+                || failure instanceof ResponseTooLargeException) {
+            // The client abandoned the request, which says nothing about the destination
+            permit.cancel();
+        }
+        else {
+            permit.release(true);
+        }
+    }
+
+    private static void cancelConcurrencyPermit(@Nullable Permit permit)
+    {
+        if (permit != null) {
+            permit.cancel();
+        }
+    }
+
     private Request applyRequestFilters(Request request)
     {
         for (HttpRequestFilter requestFilter : requestFilters) {
@@ -20,6 +20,8 @@ import com.proofpoint.http.client.RequestStats;
 import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.weakref.jmx.Nested;
 
+import javax.annotation.Nullable;
+
 @AutoValue
 abstract class Stats
     extends RequestStats
@@ -27,7 +29,11 @@ abstract class Stats
     @Nested
     abstract IoPoolStats getIoPool();
 
-    static Stats stats(QueuedThreadPool executor) {
-        return new AutoValue_Stats(new IoPoolStats(executor));
+    @Nested
+    @Nullable
+    abstract ConcurrencyLimiter getConcurrencyLimit();
+
+    static Stats stats(QueuedThreadPool executor, @Nullable ConcurrencyLimiter concurrencyLimiter) {
+        return new AutoValue_Stats(new IoPoolStats(executor), concurrencyLimiter);
     }
 }
@@ -17,10 +17,12 @@ package com.proofpoint.http.client;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.net.HostAndPort;
+import com.proofpoint.http.client.HttpClientConfig.ConcurrencyLimitPolicy;
 import com.proofpoint.units.DataSize;
 import com.proofpoint.units.Duration;
 import org.testng.annotations.Test;
 
+import javax.validation.constraints.AssertFalse;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.util.Map;
@@ -66,7 +68,10 @@ public class TestHttpClientConfig
                 .setMaxThreads(200)
                 .setMinThreads(8)
                 .setTimeoutConcurrency(1)
-                .setTimeoutThreads(1));
+                .setTimeoutThreads(1)
+                .setConcurrencyLimitPolicy(ConcurrencyLimitPolicy.NONE)
+                .setInitialConcurrencyLimit(20)
+                .setMaxConcurrencyLimit(200));
         ;
     }
 
@@ -96,6 +101,9 @@ public class TestHttpClientConfig
                 .put("http-client.min-threads", "11")
                 .put("http-client.timeout-concurrency", "33")
                 .put("http-client.timeout-threads", "44")
+                .put("http-client.concurrency-limit.policy", "VEGAS")
+                .put("http-client.concurrency-limit.initial", "5")
+                .put("http-client.concurrency-limit.max", "50")
                 .build();
 
         HttpClientConfig expected = new HttpClientConfig()
@@ -121,7 +129,10 @@ public class TestHttpClientConfig
                 .setMaxThreads(33)
                 .setMinThreads(11)
                 .setTimeoutConcurrency(33)
-                .setTimeoutThreads(44);
+                .setTimeoutThreads(44)
+                .setConcurrencyLimitPolicy(ConcurrencyLimitPolicy.VEGAS)
+                .setInitialConcurrencyLimit(5)
+                .setMaxConcurrencyLimit(50);
 
         assertFullMapping(properties, expected);
     }
@@ -151,5 +162,8 @@ public class TestHttpClientConfig
         assertFailsValidation(new HttpClientConfig().setMaxConnectionsPerServer(0), "maxConnectionsPerServer", "must be greater than or equal to 1", Min.class);
         assertFailsValidation(new HttpClientConfig().setMaxRequestsQueuedPerDestination(0), "maxRequestsQueuedPerDestination", "must be greater than or equal to 1", Min.class);
         assertFailsValidation(new HttpClientConfig().setMaxContentLength(null), "maxContentLength", "must not be null", NotNull.class);
+        assertFailsValidation(new HttpClientConfig().setConcurrencyLimitPolicy(null), "concurrencyLimitPolicy", "must not be null", NotNull.class);
+        assertFailsValidation(new HttpClientConfig().setInitialConcurrencyLimit(0), "initialConcurrencyLimit", "must be greater than or equal to 1", Min.class);
+        assertFailsValidation(new HttpClientConfig().setInitialConcurrencyLimit(201), "initialConcurrencyLimitGreaterThanMax", "must be false", AssertFalse.class);
     }
 }
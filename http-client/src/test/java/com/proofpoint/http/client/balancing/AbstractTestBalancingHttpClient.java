@@ -16,6 +16,7 @@
 package com.proofpoint.http.client.balancing;
 
 import com.proofpoint.http.client.BodySource;
+import com.proofpoint.http.client.ConcurrencyLimitExceededException;
 import com.proofpoint.http.client.HttpClient;
 import com.proofpoint.http.client.LimitedRetryable;
 import com.proofpoint.http.client.Request;
@@ -259,6 +260,68 @@ public abstract class AbstractTestBalancingHttpClient<T extends HttpClient>
         verifyNoMoreInteractions(serviceAttempt1, serviceAttempt2, responseHandler);
     }
 
+    @Test
+    public void testTriesAnotherInstanceOnConcurrencyLimit()
+            throws Exception
+    {
+        httpClient.expectCall("http://s1.example.com/v1/service", new ConcurrencyLimitExceededException("http://s1.example.com:80", 10));
+        httpClient.expectCall("http://s2.example.com/v1/service", response);
+
+        ResponseHandler<String, Exception> responseHandler = mock(ResponseHandler.class);
+        when(responseHandler.handle(any(Request.class), same(response))).thenReturn("test response");
+
+        String returnValue = balancingHttpClient.execute(request, responseHandler);
+        assertEquals(returnValue, "test response", "return value from .execute()");
+
+        httpClient.assertDone();
+
+        verify(serviceAttempt1, atLeastOnce()).getUri();
+        verify(serviceAttempt1).markCanceled();
+        verify(serviceAttempt1).next();
+        verify(serviceAttempt2, atLeastOnce()).getUri();
+        verify(serviceAttempt2).markGood();
+        verify(responseHandler).handle(requestArgumentCaptor.capture(), same(response));
+        assertEquals(requestArgumentCaptor.getValue().getUri().toString(), "http://s2.example.com/v1/service");
+        verifyNoMoreInteractions(serviceAttempt1, serviceAttempt2, responseHandler);
+    }
+
+    @Test
+    public void testGiveUpOnConcurrencyLimit()
+            throws Exception
+    {
+        ConcurrencyLimitExceededException limitException = new ConcurrencyLimitExceededException("http://s1.example.com:80", 10);
+
+        httpClient.expectCall("http://s1.example.com/v1/service", new ConcurrencyLimitExceededException("http://s1.example.com:80", 10));
+        httpClient.expectCall("http://s2.example.com/v1/service", new ConcurrencyLimitExceededException("http://s2.example.com:80", 10));
+        httpClient.expectCall("http://s1.example.com/v1/service", limitException);
+
+        ResponseHandler<String, Exception> responseHandler = mock(ResponseHandler.class);
+        Exception testException = new Exception("test exception");
+        when(responseHandler.handleException(any(Request.class), same(limitException))).thenThrow(testException);
+
+        try {
+            String returnValue = balancingHttpClient.execute(request, responseHandler);
+            fail("expected exception, got " + returnValue);
+        }
+        catch (Exception e) {
+            assertSame(e, testException);
+        }
+
+        httpClient.assertDone();
+
+        verify(serviceAttempt1, atLeastOnce()).getUri();
+        verify(serviceAttempt1).markCanceled();
+        verify(serviceAttempt1).next();
+        verify(serviceAttempt2, atLeastOnce()).getUri();
+        verify(serviceAttempt2).markCanceled();
+        verify(serviceAttempt2).next();
+        verify(serviceAttempt3, atLeastOnce()).getUri();
+        verify(serviceAttempt3).markCanceled();
+        verify(responseHandler).handleException(requestArgumentCaptor.capture(), same(limitException));
+        assertEquals(requestArgumentCaptor.getValue().getUri().toString(), "http://s1.example.com/v1/service");
+        verifyNoMoreInteractions(serviceAttempt1, serviceAttempt2, serviceAttempt3, responseHandler);
+    }
+
     @Test(dataProvider = "retryStatus")
     public void testRetryOnRetryableStatus(int retryStatus)
             throws Exception
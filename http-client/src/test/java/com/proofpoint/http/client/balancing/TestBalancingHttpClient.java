@@ -1,5 +1,6 @@
 package com.proofpoint.http.client.balancing;
 
+import com.google.common.io.ByteStreams;
 import com.proofpoint.http.client.HttpClient;
 import com.proofpoint.http.client.LimitedRetryable;
 import com.proofpoint.http.client.Request;
@@ -8,9 +9,12 @@ import com.proofpoint.http.client.Response;
 import com.proofpoint.http.client.ResponseHandler;
 import org.testng.annotations.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.ScheduledExecutorService;
 
@@ -94,6 +98,74 @@ public class TestBalancingHttpClient
         verifyNoMoreInteractions(mockClient, serviceBalancer);
     }
 
+    @Test
+    public void testStreamsLargeResponseBody()
+            throws Exception
+    {
+        // Larger than the default http-client.max-content-length, which
+        // limits responses that are buffered
+        long bodySize = 64L * 1024 * 1024;
+        Response largeResponse = mock(Response.class);
+        when(largeResponse.getStatusCode()).thenReturn(200);
+        when(largeResponse.getInputStream()).thenReturn(new GeneratedInputStream(bodySize));
+        httpClient.expectCall("http://s1.example.com/v1/service", largeResponse);
+
+        Thread callingThread = Thread.currentThread();
+        long bytesRead = balancingHttpClient.execute(request, new ResponseHandler<Long, IOException>()
+        {
+            @Override
+            public Long handleException(Request request, Exception exception)
+            {
+                throw new AssertionError("Unexpected exception", exception);
+            }
+
+            @Override
+            public Long handle(Request request, Response response)
+                    throws IOException
+            {
+                assertSame(Thread.currentThread(), callingThread, "handler thread");
+                return ByteStreams.exhaust(response.getInputStream());
+            }
+        });
+
+        assertEquals(bytesRead, bodySize);
+        httpClient.assertDone();
+        verify(serviceAttempt1).markGood();
+    }
+
+    private static class GeneratedInputStream
+            extends InputStream
+    {
+        private long remaining;
+
+        GeneratedInputStream(long size)
+        {
+            remaining = size;
+        }
+
+        @Override
+        public int read()
+        {
+            if (remaining == 0) {
+                return -1;
+            }
+            --remaining;
+            return 'x';
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len)
+        {
+            if (remaining == 0) {
+                return -1;
+            }
+            int count = (int) Math.min(len, remaining);
+            Arrays.fill(b, off, off + count, (byte) 'x');
+            remaining -= count;
+            return count;
+        }
+    }
+
     class TestingHttpClient
             implements HttpClient, TestingClient
     {
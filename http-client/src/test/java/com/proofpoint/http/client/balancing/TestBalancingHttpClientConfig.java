@@ -30,7 +30,9 @@ public class TestBalancingHttpClientConfig
                 .setMaxBackoff(new Duration(10, SECONDS))
                 .setRetryBudgetRatio(new BigDecimal(2).movePointLeft(1))
                 .setRetryBudgetRatioPeriod(new Duration(10, SECONDS))
-                .setRetryBudgetMinPerSecond(10));
+                .setRetryBudgetMinPerSecond(10)
+                .setHedgeDelay(null)
+                .setHedgePercentile(null));
     }
 
     @Test
@@ -43,6 +45,8 @@ public class TestBalancingHttpClientConfig
                 .put("http-client.retry-budget.ratio", "0.3")
                 .put("http-client.retry-budget.ratio-period", "15s")
                 .put("http-client.retry-budget.min-per-second", "19")
+                .put("http-client.hedge.delay", "25ms")
+                .put("http-client.hedge.percentile", "99.5")
                 .build();
 
         BalancingHttpClientConfig expected = new BalancingHttpClientConfig()
@@ -51,7 +55,9 @@ public class TestBalancingHttpClientConfig
                 .setMaxBackoff(new Duration(50, MILLISECONDS))
                 .setRetryBudgetRatio(new BigDecimal(3).movePointLeft(1))
                 .setRetryBudgetRatioPeriod(new Duration(15, SECONDS))
-                .setRetryBudgetMinPerSecond(19);
+                .setRetryBudgetMinPerSecond(19)
+                .setHedgeDelay(new Duration(25, MILLISECONDS))
+                .setHedgePercentile(new BigDecimal(995).movePointLeft(1));
 
         ConfigAssertions.assertFullMapping(properties, expected);
     }
@@ -108,4 +114,17 @@ public class TestBalancingHttpClientConfig
         assertFailsValidation(new BalancingHttpClientConfig().setRetryBudgetMinPerSecond(0),
                 "retryBudgetMinPerSecond", "must be greater than or equal to 1", Min.class);
     }
+
+    @Test
+    public void TestHedgePercentileBeanValidation()
+    {
+        assertValidates(new BalancingHttpClientConfig().setHedgeDelay(new Duration(10, MILLISECONDS)).setHedgePercentile(new BigDecimal(1)));
+        assertFailsValidation(new BalancingHttpClientConfig().setHedgeDelay(new Duration(10, MILLISECONDS)).setHedgePercentile(new BigDecimal(9).movePointLeft(1)),
+                "hedgePercentile", "must be greater than or equal to 1", Min.class);
+        assertValidates(new BalancingHttpClientConfig().setHedgeDelay(new Duration(10, MILLISECONDS)).setHedgePercentile(new BigDecimal(100)));
+        assertFailsValidation(new BalancingHttpClientConfig().setHedgeDelay(new Duration(10, MILLISECONDS)).setHedgePercentile(new BigDecimal(1001).movePointLeft(1)),
+                "hedgePercentile", "must be less than or equal to 100", Max.class);
+        assertFailsValidation(new BalancingHttpClientConfig().setHedgePercentile(new BigDecimal(99)),
+                "hedgePercentileWithoutDelay", "must be false", AssertFalse.class);
+    }
 }
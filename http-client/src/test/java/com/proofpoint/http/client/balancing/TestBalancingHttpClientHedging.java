@@ -0,0 +1,388 @@
+package com.proofpoint.http.client.balancing;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.AbstractFuture;
+import com.proofpoint.http.client.HttpClient;
+import com.proofpoint.http.client.HttpClient.HttpResponseFuture;
+import com.proofpoint.http.client.HttpStatus;
+import com.proofpoint.http.client.Request;
+import com.proofpoint.http.client.RequestStats;
+import com.proofpoint.http.client.ResponseHandler;
+import com.proofpoint.http.client.ResponseStatusCodeHandler;
+import com.proofpoint.testing.TestingTicker;
+import com.proofpoint.units.Duration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.proofpoint.http.client.Request.Builder.prepareGet;
+import static com.proofpoint.http.client.Request.Builder.preparePut;
+import static com.proofpoint.http.client.testing.TestingResponse.mockResponse;
+import static java.math.BigDecimal.ZERO;
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestBalancingHttpClientHedging
+{
+    private TestingAttempt attempt1;
+    private TestingAttempt attempt2;
+    private TestingAttempt attempt3;
+    private PendingHttpClient httpClient;
+    private CapturingExecutor executor;
+    private BalancingHttpClientConfig config;
+    private Request request;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        attempt3 = new TestingAttempt("http://s3.example.com", null);
+        attempt2 = new TestingAttempt("http://s2.example.com", attempt3);
+        attempt1 = new TestingAttempt("http://s1.example.com", attempt2);
+        httpClient = new PendingHttpClient();
+        executor = new CapturingExecutor();
+        config = new BalancingHttpClientConfig()
+                .setMaxAttempts(3)
+                .setMinBackoff(new Duration(1, MILLISECONDS))
+                .setMaxBackoff(new Duration(2, MILLISECONDS))
+                .setHedgeDelay(new Duration(10, MILLISECONDS));
+        request = prepareGet().setUri(URI.create("v1/service")).build();
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testHedgeWins()
+            throws Exception
+    {
+        HttpResponseFuture<Integer> future = createClient().executeAsync(request, new ResponseStatusCodeHandler());
+        assertEquals(httpClient.calls.size(), 1);
+        assertEquals(executor.delays, ImmutableList.of(10L));
+
+        executor.runScheduled();
+        assertEquals(httpClient.calls.size(), 2);
+        assertEquals(httpClient.calls.get(1).request.getUri(), URI.create("http://s2.example.com/v1/service"));
+        assertFalse(future.isDone());
+
+        httpClient.calls.get(1).respond(HttpStatus.OK);
+        assertEquals(future.get(), (Integer) 200);
+        assertTrue(httpClient.calls.get(0).future.isCancelled());
+        assertEquals(attempt1.outcomes, ImmutableList.of("canceled"));
+        assertEquals(attempt2.outcomes, ImmutableList.of("good"));
+    }
+
+    @Test
+    public void testFirstAttemptWins()
+            throws Exception
+    {
+        HttpResponseFuture<Integer> future = createClient().executeAsync(request, new ResponseStatusCodeHandler());
+        executor.runScheduled();
+
+        httpClient.calls.get(0).respond(HttpStatus.OK);
+        assertEquals(future.get(), (Integer) 200);
+        assertTrue(httpClient.calls.get(1).future.isCancelled());
+        assertEquals(attempt1.outcomes, ImmutableList.of("good"));
+        assertEquals(attempt2.outcomes, ImmutableList.of("canceled"));
+    }
+
+    @Test
+    public void testNoHedgeAfterResponse()
+            throws Exception
+    {
+        HttpResponseFuture<Integer> future = createClient().executeAsync(request, new ResponseStatusCodeHandler());
+        httpClient.calls.get(0).respond(HttpStatus.OK);
+        assertEquals(future.get(), (Integer) 200);
+
+        executor.runScheduled();
+        assertEquals(httpClient.calls.size(), 1);
+        assertEquals(attempt2.outcomes, ImmutableList.of());
+    }
+
+    @Test
+    public void testFailureWaitsForOtherAttempt()
+            throws Exception
+    {
+        HttpResponseFuture<Integer> future = createClient().executeAsync(request, new ResponseStatusCodeHandler());
+        executor.runScheduled();
+
+        httpClient.calls.get(0).respond(HttpStatus.SERVICE_UNAVAILABLE);
+        assertFalse(future.isDone());
+        assertTrue(executor.tasks.isEmpty(), "no retry scheduled");
+
+        httpClient.calls.get(1).respond(HttpStatus.OK);
+        assertEquals(future.get(), (Integer) 200);
+        assertEquals(httpClient.calls.size(), 2);
+        assertEquals(attempt1.outcomes, ImmutableList.of("bad"));
+        assertEquals(attempt2.outcomes, ImmutableList.of("good"));
+    }
+
+    @Test
+    public void testRetryAfterBothAttemptsFail()
+            throws Exception
+    {
+        HttpResponseFuture<Integer> future = createClient().executeAsync(request, new ResponseStatusCodeHandler());
+        executor.runScheduled();
+
+        httpClient.calls.get(1).respond(HttpStatus.SERVICE_UNAVAILABLE);
+        httpClient.calls.get(0).respond(HttpStatus.SERVICE_UNAVAILABLE);
+        assertFalse(future.isDone());
+
+        executor.runScheduled();
+        assertEquals(httpClient.calls.size(), 3);
+        assertEquals(httpClient.calls.get(2).request.getUri(), URI.create("http://s3.example.com/v1/service"));
+        httpClient.calls.get(2).respond(HttpStatus.OK);
+        assertEquals(future.get(), (Integer) 200);
+    }
+
+    @Test
+    public void testPercentileMeasuredFromRequestStart()
+            throws Exception
+    {
+        config.setHedgePercentile(new BigDecimal(50));
+        TestingTicker ticker = new TestingTicker();
+        BalancingHttpClient client = new BalancingHttpClient(() -> attempt1, httpClient, config, executor, ticker);
+        for (int i = 0; i < 100; i++) {
+            HttpResponseFuture<Integer> future = client.executeAsync(request, new ResponseStatusCodeHandler());
+            ticker.increment(10, MILLISECONDS);
+            executor.runScheduled();
+            ticker.increment(30, MILLISECONDS);
+            httpClient.calls.get(httpClient.calls.size() - 1).respond(HttpStatus.OK);
+            assertEquals(future.get(), (Integer) 200);
+        }
+
+        ticker.increment(10, SECONDS);
+        executor.delays.clear();
+        client.executeAsync(request, new ResponseStatusCodeHandler());
+        long delay = executor.delays.get(0);
+        assertTrue(delay >= 39 && delay <= 41, "delay " + delay);
+    }
+
+    @Test
+    public void testNoHedgeForPut()
+    {
+        request = preparePut().setUri(URI.create("v1/service")).build();
+        createClient().executeAsync(request, new ResponseStatusCodeHandler());
+        assertTrue(executor.tasks.isEmpty());
+    }
+
+    @Test
+    public void testNoHedgeWhenDisabled()
+    {
+        config.setHedgeDelay(null);
+        createClient().executeAsync(request, new ResponseStatusCodeHandler());
+        assertTrue(executor.tasks.isEmpty());
+    }
+
+    @Test
+    public void testNoHedgeWithoutRetryBudget()
+    {
+        config.setRetryBudgetRatio(ZERO)
+                .setRetryBudgetMinPerSecond(0);
+        createClient().executeAsync(request, new ResponseStatusCodeHandler());
+        executor.runScheduled();
+        assertEquals(httpClient.calls.size(), 1);
+        assertEquals(attempt2.outcomes, ImmutableList.of("canceled"));
+    }
+
+    @Test
+    public void testCancelCancelsAllAttempts()
+    {
+        HttpResponseFuture<Integer> future = createClient().executeAsync(request, new ResponseStatusCodeHandler());
+        executor.runScheduled();
+
+        assertTrue(future.cancel(true));
+        assertTrue(httpClient.calls.get(0).future.isCancelled());
+        assertTrue(httpClient.calls.get(1).future.isCancelled());
+        assertEquals(attempt1.outcomes, ImmutableList.of("canceled"));
+        assertEquals(attempt2.outcomes, ImmutableList.of("canceled"));
+    }
+
+    private BalancingHttpClient createClient()
+    {
+        return new BalancingHttpClient(() -> attempt1, httpClient, config, executor, new TestingTicker());
+    }
+
+    private static class TestingAttempt
+            implements HttpServiceAttempt
+    {
+        private final URI uri;
+        private final TestingAttempt next;
+        private final List<String> outcomes = new ArrayList<>();
+
+        TestingAttempt(String uri, TestingAttempt next)
+        {
+            this.uri = URI.create(uri);
+            this.next = next;
+        }
+
+        @Override
+        public URI getUri()
+        {
+            return uri;
+        }
+
+        @Override
+        public void markGood()
+        {
+            outcomes.add("good");
+        }
+
+        @Override
+        public void markBad(String failureCategory)
+        {
+            outcomes.add("bad");
+        }
+
+        @Override
+        public void markBad(String failureCategory, String handlerCategory)
+        {
+            outcomes.add("bad");
+        }
+
+        @Override
+        public void markCanceled()
+        {
+            outcomes.add("canceled");
+        }
+
+        @Override
+        public HttpServiceAttempt next()
+        {
+            if (next == null) {
+                throw new AssertionError("Unexpected call to next()");
+            }
+            return next;
+        }
+    }
+
+    private static class PendingHttpClient
+            implements HttpClient
+    {
+        private final List<PendingCall<?>> calls = new ArrayList<>();
+
+        @Override
+        public <T, E extends Exception> HttpResponseFuture<T> executeAsync(Request request, ResponseHandler<T, E> responseHandler)
+        {
+            PendingCall<T> call = new PendingCall<>(request, responseHandler);
+            calls.add(call);
+            return call.future;
+        }
+
+        @Override
+        public <T, E extends Exception> T execute(Request request, ResponseHandler<T, E> responseHandler)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RequestStats getStats()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close()
+        {
+        }
+
+        @Override
+        public boolean isClosed()
+        {
+            return false;
+        }
+    }
+
+    private static class PendingCall<T>
+    {
+        private final Request request;
+        private final ResponseHandler<T, ?> responseHandler;
+        private final PendingFuture<T> future = new PendingFuture<>();
+
+        PendingCall(Request request, ResponseHandler<T, ?> responseHandler)
+        {
+            this.request = request;
+            this.responseHandler = responseHandler;
+        }
+
+        void respond(HttpStatus status)
+        {
+            try {
+                future.set(responseHandler.handle(request, mockResponse(status)));
+            }
+            catch (Exception e) {
+                future.setException(e);
+            }
+        }
+    }
+
+    private static class PendingFuture<T>
+            extends AbstractFuture<T>
+            implements HttpResponseFuture<T>
+    {
+        @Override
+        protected boolean set(T value)
+        {
+            return super.set(value);
+        }
+
+        @Override
+        protected boolean setException(Throwable throwable)
+        {
+            return super.setException(throwable);
+        }
+
+        @Override
+        public String getState()
+        {
+            return "pending";
+        }
+    }
+
+    /**
+     * Records scheduled tasks instead of running them, so that tests can run
+     * them at the point of interest.
+     */
+    private static class CapturingExecutor
+            extends ScheduledThreadPoolExecutor
+    {
+        private final List<Runnable> tasks = new ArrayList<>();
+        private final List<Long> delays = new ArrayList<>();
+
+        CapturingExecutor()
+        {
+            super(1);
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit)
+        {
+            tasks.add(command);
+            delays.add(unit.toMillis(delay));
+            return super.schedule(() -> {}, 1, DAYS);
+        }
+
+        void runScheduled()
+        {
+            List<Runnable> toRun = new ArrayList<>(tasks);
+            tasks.clear();
+            for (Runnable task : toRun) {
+                task.run();
+            }
+        }
+    }
+}
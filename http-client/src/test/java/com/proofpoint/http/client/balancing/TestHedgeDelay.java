@@ -0,0 +1,59 @@
+package com.proofpoint.http.client.balancing;
+
+import com.proofpoint.testing.TestingTicker;
+import com.proofpoint.units.Duration;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestHedgeDelay
+{
+    private final TestingTicker ticker = new TestingTicker();
+
+    @Test
+    public void testFixedDelay()
+    {
+        HedgeDelay hedgeDelay = new HedgeDelay(new Duration(15, MILLISECONDS), null, ticker);
+        for (int i = 0; i < 1000; i++) {
+            hedgeDelay.recordLatency(MILLISECONDS.toNanos(100));
+        }
+        ticker.increment(1, SECONDS);
+        assertEquals(hedgeDelay.getDelayNanos(), MILLISECONDS.toNanos(15));
+    }
+
+    @Test
+    public void testPercentileOfPreviousWindow()
+    {
+        HedgeDelay hedgeDelay = new HedgeDelay(new Duration(15, MILLISECONDS), new BigDecimal(90), ticker);
+        for (int i = 1; i <= 1000; i++) {
+            hedgeDelay.recordLatency(MILLISECONDS.toNanos(i));
+        }
+        assertEquals(hedgeDelay.getDelayNanos(), MILLISECONDS.toNanos(15));
+
+        ticker.increment(10, SECONDS);
+        long delayNanos = hedgeDelay.getDelayNanos();
+        assertTrue(Math.abs(delayNanos - MILLISECONDS.toNanos(900)) < MILLISECONDS.toNanos(900) / 32, "delay " + delayNanos);
+    }
+
+    @Test
+    public void testTooFewSamples()
+    {
+        HedgeDelay hedgeDelay = new HedgeDelay(new Duration(15, MILLISECONDS), new BigDecimal(90), ticker);
+        for (int i = 0; i < 1000; i++) {
+            hedgeDelay.recordLatency(MILLISECONDS.toNanos(100));
+        }
+        ticker.increment(10, SECONDS);
+        assertTrue(hedgeDelay.getDelayNanos() > MILLISECONDS.toNanos(15));
+
+        for (int i = 0; i < 99; i++) {
+            hedgeDelay.recordLatency(MILLISECONDS.toNanos(100));
+        }
+        ticker.increment(10, SECONDS);
+        assertEquals(hedgeDelay.getDelayNanos(), MILLISECONDS.toNanos(15));
+    }
+}
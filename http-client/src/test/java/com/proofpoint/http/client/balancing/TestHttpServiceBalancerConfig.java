@@ -2,11 +2,14 @@ package com.proofpoint.http.client.balancing;
 
 import com.google.common.collect.ImmutableMap;
 import com.proofpoint.configuration.testing.ConfigAssertions;
+import com.proofpoint.http.client.balancing.HttpServiceBalancerConfig.SelectionPolicy;
 import com.proofpoint.units.Duration;
+import com.proofpoint.units.MinDuration;
 import org.testng.annotations.Test;
 
 import javax.validation.constraints.AssertFalse;
 import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
 import java.util.Map;
 
 import static com.proofpoint.testing.ValidationAssertions.assertFailsValidation;
@@ -23,7 +26,9 @@ public class TestHttpServiceBalancerConfig
         ConfigAssertions.assertRecordedDefaults(ConfigAssertions.recordDefaults(HttpServiceBalancerConfig.class)
                 .setConsecutiveFailures(5)
                 .setMinBackoff(new Duration(5, SECONDS))
-                .setMaxBackoff(new Duration(2, MINUTES)));
+                .setMaxBackoff(new Duration(2, MINUTES))
+                .setSelectionPolicy(SelectionPolicy.LEAST_CONCURRENCY)
+                .setPeakEwmaDecayTime(new Duration(10, SECONDS)));
     }
 
     @Test
@@ -33,12 +38,16 @@ public class TestHttpServiceBalancerConfig
                 .put("consecutive-failures", "4")
                 .put("min-backoff", "20ms")
                 .put("max-backoff", "50ms")
+                .put("selection-policy", "PEAK_EWMA")
+                .put("peak-ewma.decay-time", "1m")
                 .build();
 
         HttpServiceBalancerConfig expected = new HttpServiceBalancerConfig()
                 .setConsecutiveFailures(4)
                 .setMinBackoff(new Duration(20, MILLISECONDS))
-                .setMaxBackoff(new Duration(50, MILLISECONDS));
+                .setMaxBackoff(new Duration(50, MILLISECONDS))
+                .setSelectionPolicy(SelectionPolicy.PEAK_EWMA)
+                .setPeakEwmaDecayTime(new Duration(1, MINUTES));
 
         ConfigAssertions.assertFullMapping(properties, expected);
     }
@@ -59,5 +68,7 @@ public class TestHttpServiceBalancerConfig
         assertValidates(new HttpServiceBalancerConfig().setMinBackoff(new Duration(20, MILLISECONDS)).setMaxBackoff(new Duration(20, MILLISECONDS)));
         assertFailsValidation(new HttpServiceBalancerConfig().setMinBackoff(new Duration(20, MILLISECONDS)).setMaxBackoff(new Duration(19, MILLISECONDS)),
                 "maxBackoffLessThanMinBackoff", "must be false", AssertFalse.class);
+        assertFailsValidation(new HttpServiceBalancerConfig().setSelectionPolicy(null), "selectionPolicy", "must not be null", NotNull.class);
+        assertFailsValidation(new HttpServiceBalancerConfig().setPeakEwmaDecayTime(new Duration(0, MILLISECONDS)), "peakEwmaDecayTime", "{com.proofpoint.units.MinDuration.message}", MinDuration.class);
     }
 }
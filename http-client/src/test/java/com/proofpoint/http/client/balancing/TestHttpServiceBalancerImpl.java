@@ -46,28 +46,33 @@ import static org.testng.Assert.fail;
 
 public class TestHttpServiceBalancerImpl
 {
-    private HttpServiceBalancerImpl httpServiceBalancer;
+    protected HttpServiceBalancerImpl httpServiceBalancer;
     @Mock
-    private HttpServiceBalancerStats httpServiceBalancerStats;
+    protected HttpServiceBalancerStats httpServiceBalancerStats;
     @Mock
     private SparseTimeStat failureTimeStat;
     @Mock
     private SparseTimeStat successTimeStat;
     @Mock
     private SparseCounterStat counterStat;
-    private TestingTicker testingTicker;
+    protected TestingTicker testingTicker;
 
     @BeforeMethod
     protected void setUp()
     {
         initMocks(this);
         testingTicker = new TestingTicker();
-        httpServiceBalancer = new HttpServiceBalancerImpl("type=[apple], pool=[pool]", httpServiceBalancerStats, new HttpServiceBalancerConfig().setConsecutiveFailures(5), testingTicker);
+        httpServiceBalancer = new HttpServiceBalancerImpl("type=[apple], pool=[pool]", httpServiceBalancerStats, createConfig().setConsecutiveFailures(5), testingTicker);
         when(httpServiceBalancerStats.requestTime(any(URI.class), eq(Status.FAILURE))).thenReturn(failureTimeStat);
         when(httpServiceBalancerStats.requestTime(any(URI.class), eq(Status.SUCCESS))).thenReturn(successTimeStat);
         when(httpServiceBalancerStats.failure(any(URI.class), eq("testing failure"))).thenReturn(counterStat);
     }
 
+    protected HttpServiceBalancerConfig createConfig()
+    {
+        return new HttpServiceBalancerConfig();
+    }
+
     @Test(expectedExceptions = ServiceUnavailableException.class)
     public void testNotStartedEmpty()
     {
@@ -0,0 +1,14 @@
+package com.proofpoint.http.client.balancing;
+
+import com.proofpoint.http.client.balancing.HttpServiceBalancerConfig.SelectionPolicy;
+
+public class TestHttpServiceBalancerImplPeakEwma
+        extends TestHttpServiceBalancerImplPowerOfTwoChoices
+{
+    @Override
+    protected HttpServiceBalancerConfig createConfig()
+    {
+        return super.createConfig()
+                .setSelectionPolicy(SelectionPolicy.PEAK_EWMA);
+    }
+}
@@ -0,0 +1,166 @@
+package com.proofpoint.http.client.balancing;
+
+import com.google.common.collect.ImmutableSet;
+import com.proofpoint.http.client.balancing.HttpServiceBalancerConfig.SelectionPolicy;
+import com.proofpoint.stats.SparseCounterStat;
+import com.proofpoint.stats.SparseTimeStat;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.proofpoint.testing.Assertions.assertLessThanOrEqual;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestHttpServiceBalancerImplPowerOfTwoChoices
+        extends TestHttpServiceBalancerImpl
+{
+    @Override
+    protected HttpServiceBalancerConfig createConfig()
+    {
+        return super.createConfig()
+                .setSelectionPolicy(SelectionPolicy.POWER_OF_TWO_CHOICES);
+    }
+
+    @Override
+    @Test
+    public void testMinimizeConcurrentAvoidsRemovedInstances()
+    {
+        // Only two of the three instances are compared, so a concurrent
+        // attempt can go to an instance which is not the least loaded
+        URI goodUri1 = URI.create("http://good1.example.com");
+        URI goodUri2 = URI.create("http://good2.example.com");
+        URI badUri = URI.create("https://bad.example.com");
+        SparseTimeStat removalStat = mock(SparseTimeStat.class);
+        when(httpServiceBalancerStats.removal(badUri)).thenReturn(removalStat);
+
+        httpServiceBalancer.updateHttpUris(ImmutableSet.of(goodUri1, goodUri2, badUri));
+
+        HttpServiceAttempt attempt = httpServiceBalancer.createAttempt();
+        for (int i = 0; i < 5; i++) {
+            while (!attempt.getUri().equals(badUri)) {
+                attempt.markGood();
+                attempt = httpServiceBalancer.createAttempt();
+            }
+            attempt.markBad("testing failure");
+            attempt = httpServiceBalancer.createAttempt();
+        }
+        verify(removalStat).add(any());
+
+        for (int i = 0; i < 1000; i++) {
+            assertNotEquals(attempt.getUri(), badUri);
+            attempt.markGood();
+            attempt = httpServiceBalancer.createAttempt();
+        }
+    }
+
+    @Test
+    public void testSpreadsConcurrentAttempts()
+    {
+        List<URI> uris = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            uris.add(URI.create("http://apple-" + i + ".example.com"));
+        }
+        httpServiceBalancer.updateHttpUris(uris);
+
+        Map<URI, Integer> concurrency = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            concurrency.merge(httpServiceBalancer.createAttempt().getUri(), 1, Integer::sum);
+        }
+        for (int instanceConcurrency : concurrency.values()) {
+            assertLessThanOrEqual(instanceConcurrency, 15);
+        }
+    }
+
+    @Test
+    public void testAvoidsRemovedInstancesWhenBothChoicesRemoved()
+    {
+        List<URI> uris = new ArrayList<>();
+        Set<URI> goodUris = new HashSet<>();
+        for (int i = 0; i < 10; i++) {
+            URI uri = URI.create("http://apple-" + i + ".example.com");
+            uris.add(uri);
+            if (i < 2) {
+                goodUris.add(uri);
+            }
+        }
+        when(httpServiceBalancerStats.removal(any(URI.class))).thenReturn(mock(SparseTimeStat.class));
+        httpServiceBalancer.updateHttpUris(uris);
+
+        for (int i = 0; i < 1000; i++) {
+            HttpServiceAttempt attempt = httpServiceBalancer.createAttempt();
+            if (goodUris.contains(attempt.getUri())) {
+                attempt.markGood();
+            }
+            else {
+                attempt.markBad("testing failure");
+            }
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            HttpServiceAttempt attempt = httpServiceBalancer.createAttempt();
+            assertTrue(goodUris.contains(attempt.getUri()), "attempt went to removed instance " + attempt.getUri());
+            attempt.markGood();
+        }
+    }
+
+    @Test
+    public void testConcurrentAttemptsDoNotProbeTwice()
+            throws Exception
+    {
+        URI goodUri = URI.create("http://good.example.com");
+        URI badUri = URI.create("https://bad.example.com");
+        when(httpServiceBalancerStats.removal(badUri)).thenReturn(mock(SparseTimeStat.class));
+        when(httpServiceBalancerStats.probe(badUri)).thenReturn(mock(SparseCounterStat.class));
+        httpServiceBalancer.updateHttpUris(ImmutableSet.of(goodUri, badUri));
+
+        for (int i = 0; i < 5; i++) {
+            HttpServiceAttempt attempt = httpServiceBalancer.createAttempt();
+            while (!attempt.getUri().equals(badUri)) {
+                attempt.markGood();
+                attempt = httpServiceBalancer.createAttempt();
+            }
+            attempt.markBad("testing failure");
+        }
+        testingTicker.elapseTime(10, TimeUnit.SECONDS);
+
+        int threads = 8;
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        ExecutorService executor = newFixedThreadPool(threads);
+        try {
+            List<Future<URI>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    barrier.await();
+                    return httpServiceBalancer.createAttempt().getUri();
+                }));
+            }
+            int badAttempts = 0;
+            for (Future<URI> future : futures) {
+                if (future.get().equals(badUri)) {
+                    ++badAttempts;
+                }
+            }
+            assertEquals(badAttempts, 1);
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
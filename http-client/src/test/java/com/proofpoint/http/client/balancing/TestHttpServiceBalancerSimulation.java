@@ -0,0 +1,157 @@
+package com.proofpoint.http.client.balancing;
+
+import com.proofpoint.http.client.balancing.HttpServiceBalancerConfig.SelectionPolicy;
+import com.proofpoint.stats.SparseCounterStat;
+import com.proofpoint.stats.SparseTimeStat;
+import com.proofpoint.testing.TestingTicker;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static com.proofpoint.testing.Assertions.assertLessThan;
+import static java.util.Comparator.comparingLong;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Runs a simulated clock through a steady stream of requests to synthetic
+ * backends, two of which respond ten times slower than the others, and
+ * compares the resulting latency distribution across selection policies.
+ */
+public class TestHttpServiceBalancerSimulation
+{
+    private static final int BACKENDS = 20;
+    private static final int SLOW_BACKENDS = 2;
+    private static final int REQUESTS = 60_000;
+    private static final long REQUEST_INTERVAL_NANOS = MICROSECONDS.toNanos(250);
+    private static final long FAST_LATENCY_NANOS = MILLISECONDS.toNanos(5);
+    private static final long SLOW_LATENCY_NANOS = MILLISECONDS.toNanos(50);
+
+    @Test
+    public void testPeakEwmaReducesTailLatency()
+    {
+        long leastConcurrencyP99 = simulateP99(SelectionPolicy.LEAST_CONCURRENCY);
+        long powerOfTwoChoicesP99 = simulateP99(SelectionPolicy.POWER_OF_TWO_CHOICES);
+        long peakEwmaP99 = simulateP99(SelectionPolicy.PEAK_EWMA);
+
+        // The concurrency-based policies keep sending the slow backends
+        // a share of the requests which exceeds 1%
+        assertLessThan(FAST_LATENCY_NANOS * 2, leastConcurrencyP99);
+        assertLessThan(FAST_LATENCY_NANOS * 2, powerOfTwoChoicesP99);
+        assertLessThan(peakEwmaP99, FAST_LATENCY_NANOS * 2);
+    }
+
+    private static long simulateP99(SelectionPolicy selectionPolicy)
+    {
+        TestingTicker ticker = new TestingTicker();
+        // Seeded, along with the backend latencies, so each run of the
+        // simulation makes the same choices
+        Random balancerRandom = new Random(2);
+        HttpServiceBalancerImpl balancer = new HttpServiceBalancerImpl("simulation", new SimulationStats(),
+                new HttpServiceBalancerConfig().setSelectionPolicy(selectionPolicy), ticker, () -> balancerRandom);
+        List<URI> uris = new ArrayList<>();
+        for (int i = 0; i < BACKENDS; i++) {
+            uris.add(URI.create("http://backend-" + i + ".example.com"));
+        }
+        balancer.updateHttpUris(uris);
+
+        Random random = new Random(1);
+        PriorityQueue<Completion> completions = new PriorityQueue<>(comparingLong(Completion::getTime));
+        long[] latencies = new long[REQUESTS];
+        long now = 0;
+        for (int i = 0; i < REQUESTS; i++) {
+            long arrival = i * REQUEST_INTERVAL_NANOS;
+            while (!completions.isEmpty() && completions.peek().getTime() <= arrival) {
+                Completion completion = completions.poll();
+                ticker.elapseTime(completion.getTime() - now, NANOSECONDS);
+                now = completion.getTime();
+                completion.getAttempt().markGood();
+            }
+            ticker.elapseTime(arrival - now, NANOSECONDS);
+            now = arrival;
+
+            HttpServiceAttempt attempt = balancer.createAttempt();
+            long latency = backendLatency(uris.indexOf(attempt.getUri()), random);
+            latencies[i] = latency;
+            completions.add(new Completion(arrival + latency, attempt));
+        }
+
+        Arrays.sort(latencies);
+        return latencies[(int) (REQUESTS * 0.99)];
+    }
+
+    private static long backendLatency(int backend, Random random)
+    {
+        long latency = backend < SLOW_BACKENDS ? SLOW_LATENCY_NANOS : FAST_LATENCY_NANOS;
+        // Up to 20% jitter
+        return latency + (long) (latency * random.nextDouble() * 0.2);
+    }
+
+    private static class Completion
+    {
+        private final long time;
+        private final HttpServiceAttempt attempt;
+
+        Completion(long time, HttpServiceAttempt attempt)
+        {
+            this.time = time;
+            this.attempt = attempt;
+        }
+
+        long getTime()
+        {
+            return time;
+        }
+
+        HttpServiceAttempt getAttempt()
+        {
+            return attempt;
+        }
+    }
+
+    private static class SimulationStats
+            implements HttpServiceBalancerStats
+    {
+        @Override
+        public SparseCounterStat failure(URI uri, String failureCategory)
+        {
+            return new SparseCounterStat();
+        }
+
+        @Override
+        public SparseCounterStat failure(URI uri, String failureCategory, String handlerCategory)
+        {
+            return new SparseCounterStat();
+        }
+
+        @Override
+        public SparseTimeStat requestTime(URI uri, Status status)
+        {
+            return new SparseTimeStat();
+        }
+
+        @Override
+        public SparseTimeStat removal(URI uri)
+        {
+            return new SparseTimeStat();
+        }
+
+        @Override
+        public SparseCounterStat revival(URI uri)
+        {
+            return new SparseCounterStat();
+        }
+
+        @Override
+        public SparseCounterStat probe(URI uri)
+        {
+            return new SparseCounterStat();
+        }
+    }
+}
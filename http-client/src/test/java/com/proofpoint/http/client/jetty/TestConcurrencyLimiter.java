@@ -0,0 +1,223 @@
+package com.proofpoint.http.client.jetty;
+
+import com.proofpoint.http.client.ConcurrencyLimitExceededException;
+import com.proofpoint.http.client.HttpClientConfig.ConcurrencyLimitPolicy;
+import com.proofpoint.http.client.jetty.ConcurrencyLimiter.Permit;
+import com.proofpoint.testing.TestingTicker;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.proofpoint.http.client.HttpClientConfig.ConcurrencyLimitPolicy.AIMD;
+import static com.proofpoint.http.client.HttpClientConfig.ConcurrencyLimitPolicy.VEGAS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestConcurrencyLimiter
+{
+    private static final URI SERVER_A = URI.create("http://a.example.com/v1/service");
+    private static final URI SERVER_B = URI.create("https://b.example.com:8443/v1/service");
+
+    private TestingTicker ticker;
+
+    @BeforeMethod
+    public void setUp()
+    {
+        ticker = new TestingTicker();
+    }
+
+    @Test
+    public void testRejectsOverLimit()
+    {
+        ConcurrencyLimiter limiter = createLimiter(AIMD, 2, 10);
+        Permit first = limiter.acquire(SERVER_A);
+        limiter.acquire(URI.create("http://A.example.com:80/other"));
+        try {
+            limiter.acquire(SERVER_A);
+            fail("expected ConcurrencyLimitExceededException");
+        }
+        catch (ConcurrencyLimitExceededException e) {
+            assertEquals(e.getDestination(), "http://a.example.com:80");
+            assertEquals(e.getLimit(), 2);
+        }
+        assertEquals(limiter.getInFlight(), 2);
+
+        first.cancel();
+        limiter.acquire(SERVER_A);
+        assertEquals(limiter.getInFlight(), 2);
+    }
+
+    @Test
+    public void testDestinationsLimitedSeparately()
+    {
+        ConcurrencyLimiter limiter = createLimiter(AIMD, 1, 10);
+        limiter.acquire(SERVER_A);
+        limiter.acquire(SERVER_B);
+        assertEquals(limiter.getInFlight(), 2);
+        assertEquals(limiter.getLimit(), 2);
+    }
+
+    @Test
+    public void testReleaseIsIdempotent()
+    {
+        ConcurrencyLimiter limiter = createLimiter(AIMD, 10, 10);
+        Permit permit = limiter.acquire(SERVER_A);
+        permit.release(false);
+        permit.release(false);
+        permit.cancel();
+        assertEquals(limiter.getInFlight(), 0);
+    }
+
+    @Test
+    public void testCancelKeepsLimit()
+    {
+        ConcurrencyLimiter limiter = createLimiter(AIMD, 10, 20);
+        fillAndRelease(limiter, SERVER_A);
+        assertEquals(limiter.getLimit(), 10);
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire(SERVER_A).cancel();
+        }
+        assertEquals(limiter.getLimit(), 10);
+    }
+
+    @Test
+    public void testAimdIncreasesWhenLimitInUse()
+    {
+        ConcurrencyLimiter limiter = createLimiter(AIMD, 2, 10);
+        fillAndRelease(limiter, SERVER_A);
+        fillAndRelease(limiter, SERVER_A);
+        assertEquals(limiter.getLimit(), 2);
+        fillAndRelease(limiter, SERVER_A);
+        assertEquals(limiter.getLimit(), 3);
+    }
+
+    @Test
+    public void testAimdKeepsLimitWhenNotInUse()
+    {
+        ConcurrencyLimiter limiter = createLimiter(AIMD, 10, 20);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire(SERVER_A).release(false);
+        }
+        assertEquals(limiter.getLimit(), 10);
+    }
+
+    @Test
+    public void testAimdDecreasesOnDrop()
+    {
+        ConcurrencyLimiter limiter = createLimiter(AIMD, 10, 20);
+        limiter.acquire(SERVER_A).release(true);
+        assertEquals(limiter.getLimit(), 9);
+        for (int i = 0; i < 100; i++) {
+            limiter.acquire(SERVER_A).release(true);
+        }
+        assertEquals(limiter.getLimit(), 1);
+    }
+
+    @Test
+    public void testAimdBoundedByMax()
+    {
+        ConcurrencyLimiter limiter = createLimiter(AIMD, 2, 2);
+        for (int i = 0; i < 20; i++) {
+            fillAndRelease(limiter, SERVER_A);
+        }
+        assertEquals(limiter.getLimit(), 2);
+    }
+
+    @Test
+    public void testVegasIncreasesWithoutQueuing()
+    {
+        ConcurrencyLimiter limiter = createLimiter(VEGAS, 10, 100);
+        fillAndRelease(limiter, SERVER_A);
+        assertTrue(limiter.getLimit() > 10, "limit increased");
+    }
+
+    @Test
+    public void testVegasDecreasesWhenQueuing()
+    {
+        ConcurrencyLimiter limiter = createLimiter(VEGAS, 10, 10);
+        List<Permit> permits = acquireAll(limiter, SERVER_A);
+
+        // Ten milliseconds is the round-trip time without queuing
+        ticker.increment(10, MILLISECONDS);
+        permits.remove(0).release(false);
+        assertEquals(limiter.getLimit(), 10);
+        permits.add(limiter.acquire(SERVER_A));
+
+        // Ninety percent of the time spent queued means nine of the ten requests are queued
+        ticker.increment(90, MILLISECONDS);
+        permits.remove(0).release(false);
+        assertEquals(limiter.getLimit(), 9);
+    }
+
+    @Test
+    public void testVegasDecreasesOnDrop()
+    {
+        ConcurrencyLimiter limiter = createLimiter(VEGAS, 100, 100);
+        limiter.acquire(SERVER_A).release(true);
+        assertEquals(limiter.getLimit(), 98);
+    }
+
+    @Test
+    public void testIdleDestinationsExpire()
+    {
+        ConcurrencyLimiter limiter = createLimiter(AIMD, 10, 20);
+        limiter.acquire(SERVER_A).release(true);
+        Permit permit = limiter.acquire(SERVER_B);
+        assertEquals(limiter.getDestinations(), 2);
+
+        ticker.increment(ConcurrencyLimiter.IDLE_EXPIRY_NANOS, NANOSECONDS);
+        limiter.acquire(SERVER_B).release(false);
+        assertEquals(limiter.getDestinations(), 1);
+        assertEquals(limiter.getInFlight(), 1);
+
+        limiter.acquire(SERVER_A);
+        assertEquals(limiter.getLimit(), 20, "expired destination starts over from the initial limit");
+        permit.release(false);
+    }
+
+    @Test
+    public void testRecentlyUsedDestinationsKept()
+    {
+        ConcurrencyLimiter limiter = createLimiter(AIMD, 10, 20);
+        limiter.acquire(SERVER_A).release(true);
+        ticker.increment(ConcurrencyLimiter.IDLE_EXPIRY_NANOS - 1, NANOSECONDS);
+        limiter.acquire(SERVER_A).release(false);
+        ticker.increment(1, NANOSECONDS);
+        limiter.acquire(SERVER_B).release(false);
+        assertEquals(limiter.getDestinations(), 2);
+        assertEquals(limiter.getLimit(), 19);
+    }
+
+    private ConcurrencyLimiter createLimiter(ConcurrencyLimitPolicy policy, int initialLimit, int maxLimit)
+    {
+        return new ConcurrencyLimiter(policy, initialLimit, maxLimit, ticker);
+    }
+
+    private void fillAndRelease(ConcurrencyLimiter limiter, URI uri)
+    {
+        List<Permit> permits = acquireAll(limiter, uri);
+        ticker.increment(10, MILLISECONDS);
+        for (Permit permit : permits) {
+            permit.release(false);
+        }
+    }
+
+    private static List<Permit> acquireAll(ConcurrencyLimiter limiter, URI uri)
+    {
+        List<Permit> permits = new ArrayList<>();
+        while (true) {
+            try {
+                permits.add(limiter.acquire(uri));
+            }
+            catch (ConcurrencyLimitExceededException e) {
+                return permits;
+            }
+        }
+    }
+}
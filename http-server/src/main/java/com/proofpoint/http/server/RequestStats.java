@@ -16,6 +16,7 @@
 package com.proofpoint.http.server;
 
 import com.proofpoint.stats.DistributionStat;
+import com.proofpoint.stats.StripedTimeStat;
 import com.proofpoint.stats.TimeStat;
 import com.proofpoint.units.Duration;
 import org.weakref.jmx.Nested;
@@ -31,7 +32,7 @@ public class RequestStats
     @Inject
     public RequestStats()
     {
-        requestTime = new TimeStat();
+        requestTime = new StripedTimeStat();
         readBytes = new DistributionStat();
         writtenBytes = new DistributionStat();
     }
@@ -31,6 +31,7 @@ import com.proofpoint.http.server.TheAdminServlet;
 import com.proofpoint.http.server.TheServlet;
 import com.proofpoint.reporting.InRotationResource;
 import com.proofpoint.reporting.LivenessResource;
+import com.proofpoint.reporting.MetricHistoryResource;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 import org.glassfish.jersey.internal.inject.InjectionManager;
@@ -108,6 +109,7 @@ public class JaxrsModule
 
         jaxrsBinder(binder).bindAdmin(OpenApiResource.class);
         jaxrsBinder(binder).bindAdmin(OpenApiAdminResource.class);
+        jaxrsBinder(binder).bindAdmin(MetricHistoryResource.class);
 
         bindConfig(binder).bind(JaxrsConfig.class);
 
@@ -18,24 +18,22 @@ package com.proofpoint.jaxrs;
 import com.proofpoint.bootstrap.StopTraffic;
 import com.proofpoint.reporting.HealthCheckRemoveFromRotation;
 
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class ShutdownMonitor
 {
-    private final AtomicBoolean isShuttingDown = new AtomicBoolean(false);
-
+    // Field checks are read on each request, so the server leaves rotation as soon as traffic stops
     @HealthCheckRemoveFromRotation("server shutdown state")
+    private final AtomicReference<String> shutdownState = new AtomicReference<>();
+
     public String getShutdownState()
     {
-        if (isShuttingDown.get()) {
-            return "Server is shutting down";
-        }
-        return null;
+        return shutdownState.get();
     }
 
     @StopTraffic
     public void stopTraffic()
     {
-        isShuttingDown.set(true);
+        shutdownState.set("Server is shutting down");
     }
 }
@@ -17,10 +17,9 @@ package com.proofpoint.reporting;
 
 import com.proofpoint.jaxrs.AccessDoesNotRequireAuthentication;
 import com.proofpoint.reporting.HealthBeanAttribute.Type;
+import com.proofpoint.reporting.HealthChecker.Result;
 
 import javax.inject.Inject;
-import javax.management.MBeanException;
-import javax.management.ReflectionException;
 import javax.ws.rs.GET;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
@@ -33,12 +32,12 @@ import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
 @AccessDoesNotRequireAuthentication
 public class InRotationResource
 {
-    private final HealthBeanRegistry healthBeanRegistry;
+    private final HealthChecker healthChecker;
 
     @Inject
-    public InRotationResource(HealthBeanRegistry healthBeanRegistry)
+    public InRotationResource(HealthChecker healthChecker)
     {
-        this.healthBeanRegistry = requireNonNull(healthBeanRegistry, "healthBeanRegistry is null");
+        this.healthChecker = requireNonNull(healthChecker, "healthChecker is null");
     }
 
     @GET
@@ -46,19 +45,11 @@ public class InRotationResource
     public Response get()
     {
         StringBuilder sb = new StringBuilder();
-        healthBeanRegistry.getHealthAttributes().values().stream()
-                .filter(healthBeanAttribute -> healthBeanAttribute.getType() != Type.NORMAL)
-                .forEach(attribute -> {
-                    try {
-                        String value = attribute.getValue();
-                        if (value != null) {
-                            sb.append(value).append('\n');
-                        }
-                    }
-                    catch (MBeanException | ReflectionException e) {
-                        sb.append(e.toString()).append('\n');
-                    }
-                });
+        for (Result result : healthChecker.getResults()) {
+            if (result.getType() != Type.NORMAL && result.getValue() != null) {
+                sb.append(result.getValue()).append('\n');
+            }
+        }
 
         String failures = sb.toString();
         if (failures.isEmpty()) {
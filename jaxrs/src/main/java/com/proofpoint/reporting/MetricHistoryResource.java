@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.proofpoint.reporting.MetricHistory.SeriesHistory;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.MediaType.TEXT_PLAIN;
+
+/**
+ * Returns the recent values of collected metrics from the in-memory
+ * {@link MetricHistory}, selected either by exact {@code name} or by name
+ * {@code prefix}, optionally limited to a {@code from} and {@code to}
+ * time in milliseconds since the epoch.
+ */
+@Path("/admin/metrics/history")
+public class MetricHistoryResource
+{
+    private final MetricHistory metricHistory;
+
+    @Inject
+    public MetricHistoryResource(MetricHistory metricHistory)
+    {
+        this.metricHistory = requireNonNull(metricHistory, "metricHistory is null");
+    }
+
+    @GET
+    @Produces(APPLICATION_JSON)
+    public Response get(
+            @QueryParam("name") String name,
+            @QueryParam("prefix") String prefix,
+            @QueryParam("from") Long from,
+            @QueryParam("to") Long to)
+    {
+        Predicate<String> namePredicate;
+        if (name != null && prefix == null) {
+            namePredicate = name::equals;
+        }
+        else if (prefix != null && name == null) {
+            namePredicate = metricName -> metricName.startsWith(prefix);
+        }
+        else {
+            return Response.status(Response.Status.BAD_REQUEST)
+                    .type(TEXT_PLAIN)
+                    .entity("Exactly one of name and prefix must be specified")
+                    .build();
+        }
+
+        ImmutableList.Builder<Map<String, Object>> builder = ImmutableList.builder();
+        for (SeriesHistory series : metricHistory.query(namePredicate, from == null ? Long.MIN_VALUE : from, to == null ? Long.MAX_VALUE : to)) {
+            ImmutableList.Builder<List<Number>> points = ImmutableList.builder();
+            for (Entry<Long, Double> entry : series.getValues().entrySet()) {
+                points.add(ImmutableList.of(entry.getKey(), entry.getValue()));
+            }
+            builder.add(ImmutableMap.of(
+                    "name", series.getName(),
+                    "tags", series.getTags(),
+                    "values", points.build()));
+        }
+        return Response.ok(builder.build()).build();
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.proofpoint.log.Logger;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A {@link ReportSpool} kept in memory-mapped segment files, so that reports
+ * survive a restart of the process.
+ * <p>
+ * Each segment starts with a header holding the offset of its oldest
+ * unconsumed record, followed by records of a length, a CRC32 of the data,
+ * and the data. The length is written last, so a record torn by a crash
+ * reads as the end of the segment. Segments left by a previous process are
+ * replayed in order but never written to again, and a segment is deleted
+ * once all its records are consumed.
+ * <p>
+ * One consumed segment of the standard size is kept mapped and reused as the
+ * next segment, so steady-state rollover neither maps new files nor leaves
+ * released mappings waiting for garbage collection. As a reused segment
+ * holds stale records, the length of the next record is zeroed before each
+ * record is published.
+ * <p>
+ * Mapped pages are left to the operating system to write out, so a crash
+ * of the machine may lose recent reports or replay uploaded ones.
+ */
+@NotThreadSafe
+class MappedReportSpool
+        implements ReportSpool
+{
+    private static final Logger log = Logger.get(MappedReportSpool.class);
+
+    @VisibleForTesting
+    static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+    private static final int MAGIC = 0x5250_5331;
+    private static final int HEADER_SIZE = 8;
+    private static final int READ_OFFSET_POSITION = 4;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final String SEGMENT_SUFFIX = ".spool";
+    private static final Pattern SEGMENT_NAME_PATTERN = Pattern.compile("\\d{20}" + Pattern.quote(SEGMENT_SUFFIX));
+
+    private final File directory;
+    private final long maxBytes;
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private final ArrayDeque<Record> records = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private Segment spare = null;
+    private long nextSegmentId = 0;
+    private long nextSequence = 0;
+    private long spooledBytes = 0;
+
+    MappedReportSpool(File directory, long maxBytes)
+            throws IOException
+    {
+        this.directory = requireNonNull(directory, "directory is null");
+        checkArgument(maxBytes > 0, "maxBytes must be positive");
+        this.maxBytes = maxBytes;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create spool directory " + directory);
+        }
+        File[] files = directory.listFiles((dir, name) -> SEGMENT_NAME_PATTERN.matcher(name).matches());
+        if (files == null) {
+            throw new IOException("Unable to list spool directory " + directory);
+        }
+        Arrays.sort(files);
+        for (File file : files) {
+            recoverSegment(file);
+        }
+
+        // Drop the oldest recovered reports if the maximum size has been reduced
+        while (spooledBytes > maxBytes) {
+            removeFirst();
+        }
+    }
+
+    @Override
+    public int add(byte[] report)
+            throws IOException
+    {
+        checkArgument(report.length > 0, "report is empty");
+        int dropped = 0;
+        while (!records.isEmpty() && spooledBytes + report.length > maxBytes) {
+            removeFirst();
+            ++dropped;
+        }
+
+        Segment segment = segments.peekLast();
+        if (segment == null || !segment.writable || segment.buffer.capacity() - segment.writeOffset < RECORD_HEADER_SIZE + report.length) {
+            segment = createSegment(Math.max(SEGMENT_SIZE, HEADER_SIZE + RECORD_HEADER_SIZE + report.length));
+        }
+
+        int offset = segment.writeOffset;
+        crc.reset();
+        crc.update(report, 0, report.length);
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(report);
+        int nextOffset = offset + RECORD_HEADER_SIZE + report.length;
+        if (nextOffset <= segment.buffer.capacity() - 4) {
+            segment.buffer.putInt(nextOffset, 0);
+        }
+        segment.buffer.putInt(offset, report.length);
+        segment.writeOffset = nextOffset;
+
+        records.addLast(new Record(segment, offset, report.length, nextSequence++));
+        spooledBytes += report.length;
+        return dropped;
+    }
+
+    @Override
+    public List<SpooledReport> peek(int maxReports, long maxBytes)
+    {
+        ImmutableList.Builder<SpooledReport> builder = ImmutableList.builder();
+        int count = 0;
+        long bytes = 0;
+        for (Record record : records) {
+            if (count == maxReports || (count > 0 && bytes + record.length > maxBytes)) {
+                break;
+            }
+            byte[] data = new byte[record.length];
+            ByteBuffer buffer = record.segment.buffer.duplicate();
+            buffer.position(record.offset + RECORD_HEADER_SIZE);
+            buffer.get(data);
+            builder.add(new SpooledReport(record.sequence, data));
+            ++count;
+            bytes += record.length;
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void removeThrough(long sequence)
+    {
+        while (!records.isEmpty() && records.getFirst().sequence <= sequence) {
+            removeFirst();
+        }
+    }
+
+    @Override
+    public int getReportCount()
+    {
+        return records.size();
+    }
+
+    @Override
+    public long getSpooledBytes()
+    {
+        return spooledBytes;
+    }
+
+    @Override
+    public void close()
+    {
+        for (Segment segment : segments) {
+            segment.buffer.force();
+        }
+        segments.clear();
+        records.clear();
+        spare = null;
+        spooledBytes = 0;
+    }
+
+    @VisibleForTesting
+    int getSegmentCount()
+    {
+        return segments.size();
+    }
+
+    private void removeFirst()
+    {
+        Record record = records.removeFirst();
+        spooledBytes -= record.length;
+        record.segment.buffer.putInt(READ_OFFSET_POSITION, record.offset + RECORD_HEADER_SIZE + record.length);
+        deleteConsumedSegments();
+    }
+
+    private void deleteConsumedSegments()
+    {
+        while (!segments.isEmpty()) {
+            Segment segment = segments.getFirst();
+            if (segment.writable && segment == segments.getLast()) {
+                return;
+            }
+            if (!records.isEmpty() && records.getFirst().segment == segment) {
+                return;
+            }
+            segments.removeFirst();
+            if (spare == null && segment.buffer.capacity() == SEGMENT_SIZE) {
+                spare = segment;
+            }
+            else if (!segment.file.delete()) {
+                log.warn("Unable to delete consumed report spool segment %s", segment.file);
+            }
+        }
+    }
+
+    private Segment createSegment(int size)
+            throws IOException
+    {
+        Segment previous = segments.peekLast();
+        if (previous != null) {
+            previous.writable = false;
+        }
+
+        File file = new File(directory, format("%020d%s", nextSegmentId++, SEGMENT_SUFFIX));
+        Segment segment = null;
+        if (spare != null && size == SEGMENT_SIZE) {
+            segment = reuseSpare(file);
+        }
+        if (segment == null) {
+            try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+                randomAccessFile.setLength(size);
+                segment = new Segment(file, randomAccessFile.getChannel().map(READ_WRITE, 0, size));
+            }
+        }
+        segment.buffer.putInt(0, MAGIC);
+        segment.buffer.putInt(READ_OFFSET_POSITION, HEADER_SIZE);
+        segment.writeOffset = HEADER_SIZE;
+        segments.addLast(segment);
+
+        // The previous segment may have been left fully consumed
+        deleteConsumedSegments();
+        return segment;
+    }
+
+    @Nullable
+    private Segment reuseSpare(File file)
+    {
+        Segment segment = spare;
+        spare = null;
+        if (!segment.file.renameTo(file)) {
+            log.warn("Unable to rename report spool segment %s to %s", segment.file, file);
+            if (!segment.file.delete()) {
+                log.warn("Unable to delete consumed report spool segment %s", segment.file);
+            }
+            return null;
+        }
+
+        // The consumed segment is replayed as empty until its read offset is reset
+        segment.buffer.putInt(HEADER_SIZE, 0);
+        return new Segment(file, segment.buffer);
+    }
+
+    private void recoverSegment(File file)
+            throws IOException
+    {
+        nextSegmentId = Math.max(nextSegmentId, Long.parseLong(file.getName().substring(0, 20)) + 1);
+
+        Segment segment;
+        try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            segment = new Segment(file, randomAccessFile.getChannel().map(READ_WRITE, 0, randomAccessFile.length()));
+        }
+        segment.writable = false;
+        MappedByteBuffer buffer = segment.buffer;
+
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            log.warn("Ignoring invalid report spool segment %s", file);
+            return;
+        }
+
+        int offset = buffer.getInt(READ_OFFSET_POSITION);
+        boolean recovered = false;
+        while (offset >= HEADER_SIZE && offset <= buffer.capacity() - RECORD_HEADER_SIZE) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || length > buffer.capacity() - offset - RECORD_HEADER_SIZE) {
+                break;
+            }
+            byte[] data = new byte[length];
+            ByteBuffer duplicate = buffer.duplicate();
+            duplicate.position(offset + RECORD_HEADER_SIZE);
+            duplicate.get(data);
+            crc.reset();
+            crc.update(data, 0, length);
+            if (buffer.getInt(offset + 4) != (int) crc.getValue()) {
+                log.warn("Report spool segment %s is corrupt at offset %s", file, offset);
+                break;
+            }
+            records.addLast(new Record(segment, offset, length, nextSequence++));
+            spooledBytes += length;
+            recovered = true;
+            offset += RECORD_HEADER_SIZE + length;
+        }
+
+        segments.addLast(segment);
+        if (!recovered) {
+            deleteConsumedSegments();
+        }
+    }
+
+    private static class Segment
+    {
+        private final File file;
+        private final MappedByteBuffer buffer;
+        private int writeOffset;
+        private boolean writable = true;
+
+        Segment(File file, MappedByteBuffer buffer)
+        {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static class Record
+    {
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final long sequence;
+
+        Record(Segment segment, int offset, int length, long sequence)
+        {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+import com.google.common.collect.ImmutableList;
+
+import javax.annotation.concurrent.NotThreadSafe;
+import java.util.ArrayDeque;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+@NotThreadSafe
+class MemoryReportSpool
+        implements ReportSpool
+{
+    private final long maxBytes;
+    private final ArrayDeque<SpooledReport> reports = new ArrayDeque<>();
+    private long nextSequence = 0;
+    private long spooledBytes = 0;
+
+    MemoryReportSpool(long maxBytes)
+    {
+        checkArgument(maxBytes > 0, "maxBytes must be positive");
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public int add(byte[] report)
+    {
+        int dropped = 0;
+        while (!reports.isEmpty() && spooledBytes + report.length > maxBytes) {
+            removeFirst();
+            ++dropped;
+        }
+        reports.addLast(new SpooledReport(nextSequence++, report));
+        spooledBytes += report.length;
+        return dropped;
+    }
+
+    @Override
+    public List<SpooledReport> peek(int maxReports, long maxBytes)
+    {
+        ImmutableList.Builder<SpooledReport> builder = ImmutableList.builder();
+        int count = 0;
+        long bytes = 0;
+        for (SpooledReport report : reports) {
+            if (count == maxReports || (count > 0 && bytes + report.getData().length > maxBytes)) {
+                break;
+            }
+            builder.add(report);
+            ++count;
+            bytes += report.getData().length;
+        }
+        return builder.build();
+    }
+
+    @Override
+    public void removeThrough(long sequence)
+    {
+        while (!reports.isEmpty() && reports.getFirst().getSequence() <= sequence) {
+            removeFirst();
+        }
+    }
+
+    @Override
+    public int getReportCount()
+    {
+        return reports.size();
+    }
+
+    @Override
+    public long getSpooledBytes()
+    {
+        return spooledBytes;
+    }
+
+    @Override
+    public void close()
+    {
+    }
+
+    private void removeFirst()
+    {
+        spooledBytes -= reports.removeFirst().getData().length;
+    }
+}
@@ -19,7 +19,11 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonEncoding;
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
 import com.google.common.collect.Table;
@@ -30,17 +34,23 @@ import com.proofpoint.http.client.Request;
 import com.proofpoint.http.client.StringResponseHandler.StringResponse;
 import com.proofpoint.log.Logger;
 import com.proofpoint.node.NodeInfo;
+import com.proofpoint.reporting.ReportClientConfig.UploadFormat;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import javax.inject.Inject;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.regex.Pattern;
+import java.util.zip.Deflater;
 import java.util.zip.GZIPOutputStream;
 
+import static com.fasterxml.jackson.dataformat.smile.SmileConstants.HEADER_BYTE_1;
 import static com.proofpoint.http.client.Request.Builder.preparePost;
 import static com.proofpoint.http.client.StringResponseHandler.createStringResponseHandler;
 import static java.util.Objects.requireNonNull;
@@ -49,10 +59,14 @@ class ReportClient
 {
     private static final Logger logger = Logger.get(ReportClient.class);
     private static final JsonFactory JSON_FACTORY = new JsonFactory();
+    // Repeated metric names and tag values are written as back-references
+    private static final SmileFactory SMILE_FACTORY = new SmileFactory()
+            .enable(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES);
     private static final URI UPLOAD_URI = URI.create("api/v1/datapoints");
     private final Map<String, String> instanceTags;
     private final HttpClient httpClient;
     private final ObjectMapper objectMapper;
+    private final UploadFormat uploadFormat;
 
     @Inject
     ReportClient(NodeInfo nodeInfo, @ForReportClient HttpClient httpClient, ReportClientConfig reportClientConfig, ReportTagConfig reportTagConfig, ObjectMapper objectMapper)
@@ -71,26 +85,127 @@ class ReportClient
         builder.put("pool", nodeInfo.getPool());
         builder.putAll(reportTagConfig.getTags());
         this.instanceTags = builder.build();
+        this.uploadFormat = reportClientConfig.getUploadFormat();
 
         this.httpClient = requireNonNull(httpClient, "httpClient is null");
     }
 
-    public void report(long systemTimeMillis, Table<String, Map<String, String>, Object> collectedData)
+    /**
+     * Serializes a report as an array of data points, in the configured
+     * upload format.
+     */
+    byte[] serialize(long systemTimeMillis, Table<String, Map<String, String>, Object> collectedData)
+            throws IOException
     {
-        Request request = preparePost()
-                .setUri(UPLOAD_URI)
-                .setHeader("Content-Type", "application/gzip")
-                .setBodySource(new CompressBodySource(systemTimeMillis, collectedData))
-                .build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonGenerator generator = factory(uploadFormat).createGenerator(out, JsonEncoding.UTF8).setCodec(objectMapper)) {
+            generator.writeStartArray();
+            for (Cell<String, Map<String, String>, Object> cell : collectedData.cellSet()) {
+                generator.writeObject(new DataPoint(systemTimeMillis, cell, instanceTags));
+            }
+            generator.writeEndArray();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Uploads serialized reports in a single request.
+     */
+    UploadResult upload(List<byte[]> reports)
+    {
+        Request.Builder requestBuilder = preparePost()
+                .setUri(UPLOAD_URI);
+        if (uploadFormat == UploadFormat.SMILE) {
+            requestBuilder.setHeader("Content-Type", "application/x-jackson-smile")
+                    .setHeader("Content-Encoding", "gzip")
+                    .setBodySource(new CompressBodySource(convertReports(reports), false, Deflater.BEST_SPEED));
+        }
+        else {
+            requestBuilder.setHeader("Content-Type", "application/gzip")
+                    .setBodySource(new CompressBodySource(convertReports(reports), true, Deflater.DEFAULT_COMPRESSION));
+        }
+        Request request = requestBuilder.build();
         try {
             StringResponse response = httpClient.execute(request, createStringResponseHandler());
-            if (response.getStatusCode() != 204) {
-                logger.warn("Failed to report stats: %s %s %s", response.getStatusCode(), response.getStatusMessage(), response.getBody());
+            int statusCode = response.getStatusCode();
+            if (statusCode == 204) {
+                return UploadResult.SUCCESS;
+            }
+            logger.warn("Failed to report stats: %s %s %s", statusCode, response.getStatusMessage(), response.getBody());
+            if (statusCode == 413) {
+                return UploadResult.TOO_LARGE;
+            }
+            if (statusCode >= 400 && statusCode < 500 && statusCode != 408 && statusCode != 429) {
+                return UploadResult.REJECTED;
             }
         }
         catch (RuntimeException e) {
             logger.warn(e, "Exception when trying to report stats");
         }
+        return UploadResult.FAILED;
+    }
+
+    /**
+     * Converts any reports spooled in a different upload format, such as
+     * before a configuration change, to the configured one.
+     */
+    private List<byte[]> convertReports(List<byte[]> reports)
+    {
+        boolean smile = uploadFormat == UploadFormat.SMILE;
+        if (reports.stream().allMatch(report -> isSmile(report) == smile)) {
+            return reports;
+        }
+
+        ImmutableList.Builder<byte[]> builder = ImmutableList.builder();
+        for (byte[] report : reports) {
+            if (isSmile(report) == smile) {
+                builder.add(report);
+                continue;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try (JsonParser parser = (isSmile(report) ? SMILE_FACTORY : JSON_FACTORY).createParser(report);
+                    JsonGenerator generator = factory(uploadFormat).createGenerator(out, JsonEncoding.UTF8)) {
+                parser.nextToken();
+                generator.copyCurrentStructure(parser);
+            }
+            catch (IOException e) {
+                logger.warn(e, "Discarding unreadable spooled report");
+                continue;
+            }
+            builder.add(out.toByteArray());
+        }
+        return builder.build();
+    }
+
+    private static boolean isSmile(byte[] report)
+    {
+        return report.length > 0 && report[0] == HEADER_BYTE_1;
+    }
+
+    private static JsonFactory factory(UploadFormat uploadFormat)
+    {
+        if (uploadFormat == UploadFormat.SMILE) {
+            return SMILE_FACTORY;
+        }
+        return JSON_FACTORY;
+    }
+
+    enum UploadResult
+    {
+        SUCCESS,
+        /**
+         * The collector rejected the reports and will continue to do so.
+         */
+        REJECTED,
+        /**
+         * The collector rejected the upload as too large. Fewer reports may
+         * be accepted.
+         */
+        TOO_LARGE,
+        /**
+         * The upload failed and may be retried.
+         */
+        FAILED,
     }
 
     private static class DataPoint
@@ -129,39 +244,78 @@ class ReportClient
         }
     }
 
-    private class CompressBodySource implements DynamicBodySource
+    /**
+     * Writes the reports compressed. When merging, the reports are written
+     * as a single JSON array by removing the enclosing brackets of each
+     * report's array. Otherwise, the reports are written one after another,
+     * as a sequence of documents.
+     */
+    private static class CompressBodySource implements DynamicBodySource
     {
-        private final long systemTimeMillis;
-        private final Table<String, Map<String, String>, Object> collectedData;
+        private final List<byte[]> reports;
+        private final boolean merge;
+        private final int compressionLevel;
 
-        CompressBodySource(long systemTimeMillis, Table<String, Map<String, String>, Object> collectedData)
+        CompressBodySource(List<byte[]> reports, boolean merge, int compressionLevel)
         {
-            this.systemTimeMillis = systemTimeMillis;
-            this.collectedData = collectedData;
+            this.reports = reports;
+            this.merge = merge;
+            this.compressionLevel = compressionLevel;
         }
 
         @Override
         public Writer start(final OutputStream out)
                 throws Exception
         {
-            final GZIPOutputStream gzipOutputStream = new GZIPOutputStream(out);
-            final JsonGenerator generator = JSON_FACTORY.createGenerator(gzipOutputStream, JsonEncoding.UTF8)
-                .setCodec(objectMapper);
-            final Iterator<Cell<String, Map<String, String>, Object>> iterator = collectedData.cellSet().iterator();
+            final GZIPOutputStream gzipOutputStream = new LevelGzipOutputStream(out, compressionLevel);
+            final Iterator<byte[]> iterator = reports.iterator();
 
-            generator.writeStartArray();
+            if (merge) {
+                gzipOutputStream.write('[');
+            }
 
-            return () -> {
-                if (iterator.hasNext()) {
-                    generator.writeObject(new DataPoint(systemTimeMillis, iterator.next(), instanceTags));
-                }
-                else {
-                    generator.writeEndArray();
-                    generator.flush();
-                    gzipOutputStream.finish();
-                    out.close();
+            return new Writer()
+            {
+                private boolean empty = true;
+
+                @Override
+                public void write()
+                        throws Exception
+                {
+                    if (iterator.hasNext()) {
+                        byte[] report = iterator.next();
+                        if (!merge) {
+                            gzipOutputStream.write(report);
+                        }
+                        // Skip the reports with no data points
+                        else if (report.length > 2) {
+                            if (!empty) {
+                                gzipOutputStream.write(',');
+                            }
+                            gzipOutputStream.write(report, 1, report.length - 2);
+                            empty = false;
+                        }
+                    }
+                    else {
+                        if (merge) {
+                            gzipOutputStream.write(']');
+                        }
+                        gzipOutputStream.finish();
+                        out.close();
+                    }
                 }
             };
         }
     }
+
+    private static class LevelGzipOutputStream
+            extends GZIPOutputStream
+    {
+        LevelGzipOutputStream(OutputStream out, int level)
+                throws IOException
+        {
+            super(out);
+            def.setLevel(level);
+        }
+    }
 }
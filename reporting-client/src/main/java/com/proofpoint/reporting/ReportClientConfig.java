@@ -16,13 +16,28 @@
 package com.proofpoint.reporting;
 
 import com.proofpoint.configuration.Config;
+import com.proofpoint.configuration.ConfigDescription;
 import com.proofpoint.configuration.DefunctConfig;
+import com.proofpoint.units.DataSize;
+import com.proofpoint.units.Duration;
+import com.proofpoint.units.MinDataSize;
+import com.proofpoint.units.MinDuration;
+
+import javax.validation.constraints.NotNull;
+
+import static com.proofpoint.units.DataSize.Unit.MEGABYTE;
+import static java.util.concurrent.TimeUnit.MINUTES;
 
 @DefunctConfig("report.uri")
 public class ReportClientConfig
 {
     private boolean enabled = true;
     private boolean pulseIncludeHostTag = true;
+    private String spoolPath = null;
+    private DataSize maxQueueSize = new DataSize(32, MEGABYTE);
+    private UploadFormat uploadFormat = UploadFormat.JSON;
+    private boolean changesOnly = false;
+    private Duration fullReportInterval = new Duration(10, MINUTES);
 
     public boolean isEnabled()
     {
@@ -47,4 +62,80 @@ public class ReportClientConfig
         this.pulseIncludeHostTag = pulseIncludeHostTag;
         return this;
     }
+
+    public String getSpoolPath()
+    {
+        return spoolPath;
+    }
+
+    @Config("reporting.spool.path")
+    @ConfigDescription("Directory in which to spool reports awaiting upload. If not set, they are only kept in memory")
+    public ReportClientConfig setSpoolPath(String spoolPath)
+    {
+        this.spoolPath = spoolPath;
+        return this;
+    }
+
+    @NotNull
+    @MinDataSize("1MB")
+    public DataSize getMaxQueueSize()
+    {
+        return maxQueueSize;
+    }
+
+    @Config("reporting.queue.max-size")
+    @ConfigDescription("Maximum size of the reports awaiting upload, beyond which the oldest are dropped")
+    public ReportClientConfig setMaxQueueSize(DataSize maxQueueSize)
+    {
+        this.maxQueueSize = maxQueueSize;
+        return this;
+    }
+
+    @NotNull
+    public UploadFormat getUploadFormat()
+    {
+        return uploadFormat;
+    }
+
+    @Config("reporting.upload.format")
+    @ConfigDescription("Encoding of uploaded reports: JSON, or SMILE for a collector which accepts binary JSON")
+    public ReportClientConfig setUploadFormat(UploadFormat uploadFormat)
+    {
+        this.uploadFormat = uploadFormat;
+        return this;
+    }
+
+    public boolean isChangesOnly()
+    {
+        return changesOnly;
+    }
+
+    @Config("reporting.changes-only")
+    @ConfigDescription("Only report values which have changed since they were last reported, for a collector which carries values forward")
+    public ReportClientConfig setChangesOnly(boolean changesOnly)
+    {
+        this.changesOnly = changesOnly;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration(value = "1s", message = "must be greater than or equal to 1s")
+    public Duration getFullReportInterval()
+    {
+        return fullReportInterval;
+    }
+
+    @Config("reporting.full-report-interval")
+    @ConfigDescription("When only reporting changed values, the interval at which all values are reported")
+    public ReportClientConfig setFullReportInterval(Duration fullReportInterval)
+    {
+        this.fullReportInterval = fullReportInterval;
+        return this;
+    }
+
+    public enum UploadFormat
+    {
+        JSON,
+        SMILE,
+    }
 }
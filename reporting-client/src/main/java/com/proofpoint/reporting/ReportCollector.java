@@ -15,17 +15,23 @@
  */
 package com.proofpoint.reporting;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableTable;
 import com.proofpoint.log.Logger;
 import com.proofpoint.node.NodeInfo;
 import com.proofpoint.reporting.ReportedBeanRegistry.RegistrationInfo;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.management.AttributeNotFoundException;
 import javax.management.MBeanException;
 import javax.management.ReflectionException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 import static com.google.common.base.CaseFormat.LOWER_HYPHEN;
 import static com.google.common.base.CaseFormat.UPPER_CAMEL;
@@ -37,21 +43,33 @@ public class ReportCollector
     private static final Logger log = Logger.get(ReportCollector.class);
     private final String applicationPrefix;
     private final MinuteBucketIdProvider bucketIdProvider;
-    private final ReportedBeanRegistry reportedBeanRegistry;
+    private final CollectionPlan<PlannedAttribute> collectionPlan;
     private final ReportSink reportSink;
+    private final MetricHistory metricHistory;
     private final Map<String, String> versionTags;
+    private final boolean changesOnly;
+    private final long fullReportIntervalMillis;
+    private long nextFullReportMillis = Long.MIN_VALUE;
+
+    // Only accessed by the collection thread
+    private List<PlannedAttribute> lastEntries = ImmutableList.of();
+    private Object[] values = new Object[0];
+    private final List<PlannedAttribute> historySamples = new ArrayList<>();
 
     @Inject
     ReportCollector(
             NodeInfo nodeInfo,
             MinuteBucketIdProvider bucketIdProvider,
             ReportedBeanRegistry reportedBeanRegistry,
-            ReportSink reportSink)
+            ReportSink reportSink,
+            MetricHistory metricHistory,
+            ReportClientConfig reportClientConfig)
     {
         applicationPrefix = LOWER_HYPHEN.to(UPPER_CAMEL, nodeInfo.getApplication()) + ".";
         this.bucketIdProvider = requireNonNull(bucketIdProvider, "bucketIdProvider is null");
-        this.reportedBeanRegistry = requireNonNull(reportedBeanRegistry, "reportedBeanRegistry is null");
+        collectionPlan = new CollectionPlan<>(requireNonNull(reportedBeanRegistry, "reportedBeanRegistry is null"), this::planAttributes);
         this.reportSink = requireNonNull(reportSink, "reportSink is null");
+        this.metricHistory = requireNonNull(metricHistory, "metricHistory is null");
 
         ImmutableMap.Builder<String, String> versionTagsBuilder = ImmutableMap.builder();
         if (!nodeInfo.getApplicationVersion().isEmpty()) {
@@ -61,42 +79,78 @@ public class ReportCollector
             versionTagsBuilder.put("platformVersion", nodeInfo.getPlatformVersion());
         }
         this.versionTags = versionTagsBuilder.build();
+
+        changesOnly = reportClientConfig.isChangesOnly();
+        fullReportIntervalMillis = reportClientConfig.getFullReportInterval().toMillis();
     }
 
     public void collectData()
     {
         try {
             long lastSystemTimeMillis = bucketIdProvider.getLastSystemTimeMillis();
+            List<PlannedAttribute> entries = collectionPlan.getEntries();
+            if (values.length < entries.size()) {
+                values = new Object[entries.size()];
+            }
+
+            // A series which stops being reported is only noticed by the
+            // collector when it is missing from a full report
+            boolean seriesRemoved = false;
+            for (int i = 0; i < entries.size(); i++) {
+                PlannedAttribute plannedAttribute = entries.get(i);
+                Object value = null;
+
+                try {
+                    value = plannedAttribute.attribute.getValue(null);
+                }
+                catch (MBeanException | ReflectionException ignored) {
+                }
+
+                if (value != null && isReportable(value)) {
+                    if (!(value instanceof Number)) {
+                        value = value.toString();
+                    }
+                    values[i] = value;
+                }
+                else if (plannedAttribute.hasValue()) {
+                    seriesRemoved = true;
+                }
+            }
+            if (changesOnly && entries != lastEntries) {
+                seriesRemoved |= hasRemovedValue(lastEntries, entries);
+                lastEntries = entries;
+            }
+
+            boolean fullReport = !changesOnly || seriesRemoved || lastSystemTimeMillis >= nextFullReportMillis;
+            if (fullReport) {
+                nextFullReportMillis = lastSystemTimeMillis + fullReportIntervalMillis;
+            }
+            boolean recordHistory = metricHistory.isEnabled();
+            historySamples.clear();
             ImmutableTable.Builder<String, Map<String, String>, Object> builder = ImmutableTable.builder();
             int numAttributes = 0;
-            for (RegistrationInfo registrationInfo : reportedBeanRegistry.getReportedBeans()) {
-                for (ReportedBeanAttribute attribute : registrationInfo.getReportedBean().getAttributes()) {
-                    Object value = null;
+            for (int i = 0; i < entries.size(); i++) {
+                PlannedAttribute plannedAttribute = entries.get(i);
+                Object value = values[i];
+                values[i] = null;
 
-                    try {
-                        value = attribute.getValue(null);
-                    }
-                    catch (MBeanException | ReflectionException ignored) {
+                if (value != null) {
+                    ++numAttributes;
+                    boolean changed = changesOnly && plannedAttribute.recordValue(value);
+                    if (fullReport || changed) {
+                        builder.put(plannedAttribute.name, plannedAttribute.tags, value);
                     }
-
-                    if (value != null && isReportable(value)) {
-                        if (!(value instanceof Number)) {
-                            value = value.toString();
-                        }
-
-                        ++numAttributes;
-                        StringBuilder stringBuilder = new StringBuilder();
-                        if (registrationInfo.isApplicationPrefix()) {
-                            stringBuilder.append(applicationPrefix);
-                        }
-                        String name = stringBuilder
-                                .append(registrationInfo.getNamePrefix())
-                                .append('.')
-                                .append(attribute.getName())
-                                .toString();
-                        builder.put(name, registrationInfo.getTags(), value);
+                    if (recordHistory && value instanceof Number) {
+                        plannedAttribute.historyValue = ((Number) value).doubleValue();
+                        historySamples.add(plannedAttribute);
                     }
                 }
+                else if (changesOnly) {
+                    plannedAttribute.clearValue();
+                }
+            }
+            if (recordHistory) {
+                metricHistory.recordSlot(lastSystemTimeMillis, historySamples);
             }
             builder.put("ReportCollector.NumMetrics", versionTags, numAttributes);
             reportSink.report(lastSystemTimeMillis, builder.build());
@@ -106,8 +160,131 @@ public class ReportCollector
         }
     }
 
+    private static boolean hasRemovedValue(List<PlannedAttribute> oldEntries, List<PlannedAttribute> newEntries)
+    {
+        ImmutableSet<PlannedAttribute> newEntrySet = ImmutableSet.copyOf(newEntries);
+        for (PlannedAttribute plannedAttribute : oldEntries) {
+            if (plannedAttribute.hasValue() && !newEntrySet.contains(plannedAttribute)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<PlannedAttribute> planAttributes(RegistrationInfo registrationInfo)
+    {
+        String namePrefix = (registrationInfo.isApplicationPrefix() ? applicationPrefix : "") + registrationInfo.getNamePrefix() + ".";
+        ImmutableList.Builder<PlannedAttribute> builder = ImmutableList.builder();
+        for (ReportedBeanAttribute attribute : registrationInfo.getReportedBean().getAttributes()) {
+            builder.add(new PlannedAttribute(namePrefix + attribute.getName(), registrationInfo.getTags(), attribute));
+        }
+        return builder.build();
+    }
+
     Map<String, String> getVersionTags()
     {
         return versionTags;
     }
+
+    private static class PlannedAttribute
+            implements MetricHistory.Sample
+    {
+        private static final byte NO_VALUE = 0;
+        private static final byte INTEGRAL_VALUE = 1;
+        private static final byte FLOATING_VALUE = 2;
+        private static final byte STRING_VALUE = 3;
+
+        private final String name;
+        private final Map<String, String> tags;
+        private final ReportedBeanAttribute attribute;
+
+        // The last reported value, only accessed by the collection thread
+        private byte lastKind = NO_VALUE;
+        private long lastBits;
+        @Nullable
+        private String lastString;
+        @Nullable
+        private MetricHistory.Series historySeries;
+        private double historyValue;
+
+        PlannedAttribute(String name, Map<String, String> tags, ReportedBeanAttribute attribute)
+        {
+            this.name = name;
+            this.tags = tags;
+            this.attribute = attribute;
+        }
+
+        /**
+         * Records a reportable value, which is either a {@link Number} or a
+         * {@link String}.
+         *
+         * @return true if the value differs from the last recorded one
+         */
+        boolean recordValue(Object value)
+        {
+            byte kind;
+            long bits = 0;
+            String string = null;
+            if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                kind = INTEGRAL_VALUE;
+                bits = ((Number) value).longValue();
+            }
+            else if (value instanceof Number) {
+                kind = FLOATING_VALUE;
+                bits = Double.doubleToLongBits(((Number) value).doubleValue());
+            }
+            else {
+                kind = STRING_VALUE;
+                string = (String) value;
+            }
+
+            boolean changed = kind != lastKind || bits != lastBits || !Objects.equals(string, lastString);
+            lastKind = kind;
+            lastBits = bits;
+            lastString = string;
+            return changed;
+        }
+
+        @Override
+        public String getName()
+        {
+            return name;
+        }
+
+        @Override
+        public Map<String, String> getTags()
+        {
+            return tags;
+        }
+
+        @Override
+        public double getValue()
+        {
+            return historyValue;
+        }
+
+        @Nullable
+        @Override
+        public MetricHistory.Series getSeries()
+        {
+            return historySeries;
+        }
+
+        @Override
+        public void setSeries(MetricHistory.Series series)
+        {
+            historySeries = series;
+        }
+
+        boolean hasValue()
+        {
+            return lastKind != NO_VALUE;
+        }
+
+        void clearValue()
+        {
+            lastKind = NO_VALUE;
+            lastString = null;
+        }
+    }
 }
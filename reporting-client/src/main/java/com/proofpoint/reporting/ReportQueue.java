@@ -15,26 +15,88 @@
  */
 package com.proofpoint.reporting;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Table;
+import com.proofpoint.log.Logger;
+import com.proofpoint.reporting.ReportClient.UploadResult;
+import com.proofpoint.reporting.ReportSpool.SpooledReport;
+import com.proofpoint.stats.CounterStat;
+import com.proofpoint.units.Duration;
+import org.weakref.jmx.Nested;
 
+import javax.annotation.PreDestroy;
+import javax.annotation.concurrent.GuardedBy;
 import javax.inject.Inject;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
 
+/**
+ * Uploads reports in order from a bounded spool, retrying failed uploads
+ * with exponential backoff. When uploads fall behind, several reports are
+ * coalesced into one upload. An upload rejected as too large is split in
+ * half and retried, and a single report rejected as too large is dropped.
+ */
 class ReportQueue implements ReportSink
 {
+    private static final Logger log = Logger.get(ReportQueue.class);
+    private static final int MAX_REPORTS_PER_UPLOAD = 10;
+    private static final long MAX_BYTES_PER_UPLOAD = 8 * 1024 * 1024;
+    @VisibleForTesting
+    static final Duration INITIAL_RETRY_DELAY = new Duration(1, SECONDS);
+    private static final Duration MAX_RETRY_DELAY = new Duration(1, MINUTES);
+
     private final boolean enabled;
-    private final ExecutorService clientExecutorService;
+    private final ScheduledExecutorService clientExecutorService;
     private final ReportClient reportClient;
+    private final CounterStat dropped = new CounterStat();
+
+    @GuardedBy("this")
+    private final ReportSpool spool;
+
+    @GuardedBy("this")
+    private boolean uploadScheduled = false;
+
+    @GuardedBy("this")
+    private long retryDelayMillis = 0;
+
+    @GuardedBy("this")
+    private int maxReportsPerUpload = MAX_REPORTS_PER_UPLOAD;
+
+    // Sequence of the last report of an upload which was rejected as too large
+    @GuardedBy("this")
+    private long splitThroughSequence = -1;
 
     @Inject
-    ReportQueue(ReportClientConfig reportClientConfig, @ForReportClient ExecutorService clientExecutorService, ReportClient reportClient)
+    ReportQueue(ReportClientConfig reportClientConfig, @ForReportClient ScheduledExecutorService clientExecutorService, ReportClient reportClient)
+            throws IOException
     {
         enabled = reportClientConfig.isEnabled();
         this.clientExecutorService = requireNonNull(clientExecutorService, "clientExecutorService is null");
-        this.reportClient = reportClient;
+        this.reportClient = requireNonNull(reportClient, "reportClient is null");
+
+        long maxBytes = reportClientConfig.getMaxQueueSize().toBytes();
+        if (enabled && reportClientConfig.getSpoolPath() != null) {
+            spool = new MappedReportSpool(new File(reportClientConfig.getSpoolPath()), maxBytes);
+            if (spool.getReportCount() > 0) {
+                log.info("Replaying %s spooled reports", spool.getReportCount());
+                synchronized (this) {
+                    scheduleUpload(0);
+                }
+            }
+        }
+        else {
+            spool = new MemoryReportSpool(maxBytes);
+        }
     }
 
     @Override
@@ -44,6 +106,97 @@ class ReportQueue implements ReportSink
             return;
         }
 
-        clientExecutorService.submit(() -> reportClient.report(systemTimeMillis, collectedData));
+        byte[] report;
+        try {
+            report = reportClient.serialize(systemTimeMillis, collectedData);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        synchronized (this) {
+            try {
+                dropped.add(spool.add(report));
+            }
+            catch (IOException e) {
+                log.warn(e, "Unable to spool report");
+                dropped.add(1);
+                return;
+            }
+            if (!uploadScheduled) {
+                scheduleUpload(0);
+            }
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop()
+    {
+        spool.close();
+    }
+
+    @Reported
+    public synchronized int getQueuedReports()
+    {
+        return spool.getReportCount();
+    }
+
+    @Reported
+    public synchronized long getSpooledBytes()
+    {
+        return spool.getSpooledBytes();
+    }
+
+    @Nested
+    public CounterStat getDropped()
+    {
+        return dropped;
+    }
+
+    @GuardedBy("this")
+    private void scheduleUpload(long delayMillis)
+    {
+        uploadScheduled = true;
+        clientExecutorService.schedule(this::upload, delayMillis, MILLISECONDS);
+    }
+
+    private void upload()
+    {
+        List<SpooledReport> reports;
+        synchronized (this) {
+            reports = spool.peek(maxReportsPerUpload, MAX_BYTES_PER_UPLOAD);
+            if (reports.isEmpty()) {
+                uploadScheduled = false;
+                return;
+            }
+        }
+
+        UploadResult result = reportClient.upload(reports.stream()
+                .map(SpooledReport::getData)
+                .collect(toImmutableList()));
+
+        synchronized (this) {
+            if (result == UploadResult.FAILED) {
+                retryDelayMillis = Math.min(Math.max(retryDelayMillis * 2, INITIAL_RETRY_DELAY.toMillis()), MAX_RETRY_DELAY.toMillis());
+                scheduleUpload(retryDelayMillis);
+                return;
+            }
+            retryDelayMillis = 0;
+            long lastSequence = reports.get(reports.size() - 1).getSequence();
+            if (result == UploadResult.TOO_LARGE && reports.size() > 1) {
+                maxReportsPerUpload = reports.size() / 2;
+                splitThroughSequence = Math.max(splitThroughSequence, lastSequence);
+                scheduleUpload(0);
+                return;
+            }
+            if (result == UploadResult.REJECTED || result == UploadResult.TOO_LARGE) {
+                dropped.add(reports.size());
+            }
+            if (lastSequence >= splitThroughSequence) {
+                maxReportsPerUpload = MAX_REPORTS_PER_UPLOAD;
+            }
+            spool.removeThrough(lastSequence);
+            scheduleUpload(0);
+        }
     }
 }
@@ -20,32 +20,35 @@ import com.google.common.collect.ImmutableTable;
 import javax.annotation.PostConstruct;
 import javax.inject.Inject;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 import static java.lang.System.currentTimeMillis;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 class ReportScheduler
 {
     private final ScheduledExecutorService collectionExecutorService;
     private final ReportCollector reportCollector;
     private final ReportSink reportSink;
+    private final long intervalNanos;
 
     @Inject
     ReportScheduler(
             ReportCollector reportCollector,
             ReportSink reportSink,
+            ReportingConfig reportingConfig,
             @ForReportCollector ScheduledExecutorService collectionExecutorService)
     {
         this.reportCollector = requireNonNull(reportCollector, "reportCollector is null");
         this.reportSink = requireNonNull(reportSink, "reportQueue is null");
+        intervalNanos = reportingConfig.getBucketInterval().roundTo(NANOSECONDS);
         this.collectionExecutorService = requireNonNull(collectionExecutorService, "collectionExecutorService is null");
     }
 
     @PostConstruct
     public void start()
     {
-        collectionExecutorService.scheduleAtFixedRate(reportCollector::collectData, 1, 1, TimeUnit.MINUTES);
+        collectionExecutorService.scheduleAtFixedRate(reportCollector::collectData, intervalNanos, intervalNanos, NANOSECONDS);
 
         reportSink.report(currentTimeMillis(), ImmutableTable.of("ReportCollector.ServerStart", reportCollector.getVersionTags(), 1));
     }
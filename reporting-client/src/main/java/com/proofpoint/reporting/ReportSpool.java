@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A bounded FIFO of serialized reports awaiting upload. When adding a report
+ * would take the spool over its maximum size, the oldest reports are
+ * dropped. Implementations are not thread-safe.
+ */
+interface ReportSpool
+        extends Closeable
+{
+    /**
+     * @return the number of older reports dropped to make room
+     */
+    int add(byte[] report)
+            throws IOException;
+
+    /**
+     * Gets the oldest reports without removing them. Returns at least one
+     * report if the spool is not empty, even if it is larger than
+     * {@code maxBytes}.
+     */
+    List<SpooledReport> peek(int maxReports, long maxBytes);
+
+    /**
+     * Removes the reports with sequence numbers up to and including
+     * {@code sequence}, which may already have been dropped.
+     */
+    void removeThrough(long sequence);
+
+    int getReportCount();
+
+    long getSpooledBytes();
+
+    @Override
+    void close();
+
+    final class SpooledReport
+    {
+        private final long sequence;
+        private final byte[] data;
+
+        SpooledReport(long sequence, byte[] data)
+        {
+            this.sequence = sequence;
+            this.data = requireNonNull(data, "data is null");
+        }
+
+        long getSequence()
+        {
+            return sequence;
+        }
+
+        byte[] getData()
+        {
+            return data;
+        }
+    }
+}
@@ -19,17 +19,13 @@ import com.google.inject.Binder;
 import com.google.inject.Module;
 import com.google.inject.Provides;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.ThreadPoolExecutor.DiscardOldestPolicy;
-import java.util.concurrent.TimeUnit;
 
 import static com.google.inject.Scopes.SINGLETON;
 import static com.proofpoint.concurrent.Threads.daemonThreadsNamed;
 import static com.proofpoint.configuration.ConfigBinder.bindConfig;
 import static com.proofpoint.discovery.client.DiscoveryBinder.discoveryBinder;
+import static com.proofpoint.reporting.ReportBinder.reportBinder;
 import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 
 public class ReportingClientModule
@@ -40,7 +36,9 @@ public class ReportingClientModule
     {
         binder.bind(ReportScheduler.class).in(SINGLETON);
         binder.bind(ReportCollector.class).in(SINGLETON);
-        binder.bind(ReportSink.class).to(ReportQueue.class).in(SINGLETON);
+        binder.bind(ReportQueue.class).in(SINGLETON);
+        binder.bind(ReportSink.class).to(ReportQueue.class);
+        reportBinder(binder).export(ReportQueue.class).withNamePrefix("ReportCollector.Queue");
         binder.bind(ReportClient.class).in(SINGLETON);
 
         discoveryBinder(binder).bindDiscoveredHttpClient("reporting", ForReportClient.class);
@@ -58,10 +56,8 @@ public class ReportingClientModule
 
     @Provides
     @ForReportClient
-    private static ExecutorService createClientExecutorService()
+    private static ScheduledExecutorService createClientExecutorService()
     {
-        return new ThreadPoolExecutor(1, 1, 0, TimeUnit.NANOSECONDS, new LinkedBlockingQueue<>(5),
-                        daemonThreadsNamed("reporting-client-%s"),
-                        new DiscardOldestPolicy());
+        return newSingleThreadScheduledExecutor(daemonThreadsNamed("reporting-client-%s"));
     }
 }
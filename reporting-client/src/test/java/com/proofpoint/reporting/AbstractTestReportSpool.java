@@ -0,0 +1,90 @@
+package com.proofpoint.reporting;
+
+import com.google.common.collect.ImmutableList;
+import com.proofpoint.reporting.ReportSpool.SpooledReport;
+import org.testng.annotations.Test;
+
+import java.util.List;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.testng.Assert.assertEquals;
+
+public abstract class AbstractTestReportSpool
+{
+    protected abstract ReportSpool createSpool(long maxBytes)
+            throws Exception;
+
+    @Test
+    public void testEmpty()
+            throws Exception
+    {
+        try (ReportSpool spool = createSpool(1000)) {
+            assertEquals(spool.getReportCount(), 0);
+            assertEquals(spool.getSpooledBytes(), 0);
+            assertEquals(spool.peek(10, 1000).size(), 0);
+        }
+    }
+
+    @Test
+    public void testPeekAndRemove()
+            throws Exception
+    {
+        try (ReportSpool spool = createSpool(1000)) {
+            assertEquals(spool.add(bytes("[1]")), 0);
+            assertEquals(spool.add(bytes("[22]")), 0);
+            assertEquals(spool.add(bytes("[333]")), 0);
+            assertEquals(spool.getReportCount(), 3);
+            assertEquals(spool.getSpooledBytes(), 12);
+
+            assertContents(spool.peek(10, 1000), "[1]", "[22]", "[333]");
+            assertContents(spool.peek(2, 1000), "[1]", "[22]");
+            assertContents(spool.peek(10, 7), "[1]", "[22]");
+            assertContents(spool.peek(10, 1), "[1]");
+
+            List<SpooledReport> reports = spool.peek(2, 1000);
+            spool.removeThrough(reports.get(1).getSequence());
+            assertEquals(spool.getReportCount(), 1);
+            assertEquals(spool.getSpooledBytes(), 5);
+            assertContents(spool.peek(10, 1000), "[333]");
+
+            spool.removeThrough(reports.get(1).getSequence());
+            assertEquals(spool.getReportCount(), 1);
+        }
+    }
+
+    @Test
+    public void testDropsOldestWhenFull()
+            throws Exception
+    {
+        try (ReportSpool spool = createSpool(10)) {
+            assertEquals(spool.add(bytes("[1111]")), 0);
+            List<SpooledReport> inFlight = spool.peek(10, 1000);
+            assertEquals(spool.add(bytes("[2222]")), 1);
+            assertEquals(spool.add(bytes("[3]")), 0);
+            assertContents(spool.peek(10, 1000), "[2222]", "[3]");
+            assertEquals(spool.getSpooledBytes(), 9);
+
+            // Removing a report which has already been dropped leaves the rest
+            spool.removeThrough(inFlight.get(0).getSequence());
+            assertEquals(spool.getReportCount(), 2);
+
+            // A report larger than the spool is kept on its own
+            assertEquals(spool.add(bytes("[123456789]")), 2);
+            assertContents(spool.peek(10, 1000), "[123456789]");
+        }
+    }
+
+    protected static byte[] bytes(String value)
+    {
+        return value.getBytes(UTF_8);
+    }
+
+    protected static void assertContents(List<SpooledReport> reports, String... expected)
+    {
+        List<String> actual = reports.stream()
+                .map(report -> new String(report.getData(), UTF_8))
+                .collect(toImmutableList());
+        assertEquals(actual, ImmutableList.copyOf(expected));
+    }
+}
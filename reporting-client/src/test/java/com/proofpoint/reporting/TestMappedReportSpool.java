@@ -0,0 +1,165 @@
+package com.proofpoint.reporting;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import static com.proofpoint.reporting.MappedReportSpool.SEGMENT_SIZE;
+import static com.proofpoint.testing.FileUtils.createTempDir;
+import static com.proofpoint.testing.FileUtils.deleteRecursively;
+import static com.proofpoint.testing.FileUtils.listFiles;
+import static org.testng.Assert.assertEquals;
+
+public class TestMappedReportSpool
+        extends AbstractTestReportSpool
+{
+    private File tempDir;
+
+    @BeforeMethod
+    public void setup()
+    {
+        tempDir = createTempDir("report-spool");
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void teardown()
+    {
+        deleteRecursively(tempDir);
+    }
+
+    @Override
+    protected ReportSpool createSpool(long maxBytes)
+            throws Exception
+    {
+        return new MappedReportSpool(tempDir, maxBytes);
+    }
+
+    @Test
+    public void testRecovery()
+            throws Exception
+    {
+        try (ReportSpool spool = createSpool(1000)) {
+            spool.add(bytes("[1]"));
+            spool.add(bytes("[22]"));
+            spool.add(bytes("[333]"));
+            spool.removeThrough(spool.peek(1, 1000).get(0).getSequence());
+        }
+
+        try (ReportSpool spool = createSpool(1000)) {
+            assertEquals(spool.getReportCount(), 2);
+            assertEquals(spool.getSpooledBytes(), 9);
+            assertContents(spool.peek(10, 1000), "[22]", "[333]");
+
+            spool.add(bytes("[4]"));
+            assertContents(spool.peek(10, 1000), "[22]", "[333]", "[4]");
+        }
+
+        try (ReportSpool spool = createSpool(1000)) {
+            assertContents(spool.peek(10, 1000), "[22]", "[333]", "[4]");
+            spool.removeThrough(spool.peek(10, 1000).get(2).getSequence());
+        }
+
+        try (ReportSpool spool = createSpool(1000)) {
+            assertEquals(spool.getReportCount(), 0);
+        }
+    }
+
+    @Test
+    public void testRecoveryReducedMaxSize()
+            throws Exception
+    {
+        try (ReportSpool spool = createSpool(1000)) {
+            spool.add(bytes("[1]"));
+            spool.add(bytes("[22]"));
+            spool.add(bytes("[333]"));
+        }
+
+        try (ReportSpool spool = createSpool(8)) {
+            assertContents(spool.peek(10, 1000), "[333]");
+        }
+    }
+
+    @Test
+    public void testRecoveryTornWrite()
+            throws Exception
+    {
+        try (ReportSpool spool = createSpool(1000)) {
+            spool.add(bytes("[1]"));
+            spool.add(bytes("[22]"));
+        }
+
+        // Corrupt the data of the second record
+        File segment = listFiles(tempDir).get(0);
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.seek(8 + 8 + 3 + 8 + 1);
+            file.write('X');
+        }
+
+        try (ReportSpool spool = createSpool(1000)) {
+            assertContents(spool.peek(10, 1000), "[1]");
+        }
+    }
+
+    @Test
+    public void testSegments()
+            throws Exception
+    {
+        byte[] report = new byte[SEGMENT_SIZE / 3];
+        report[0] = '[';
+        report[report.length - 1] = ']';
+
+        try (MappedReportSpool spool = new MappedReportSpool(tempDir, SEGMENT_SIZE * 10L)) {
+            for (int i = 0; i < 5; i++) {
+                spool.add(report);
+            }
+            assertEquals(spool.getSegmentCount(), 3);
+            assertEquals(listFiles(tempDir).size(), 3);
+
+            // The consumed segment is kept for reuse
+            spool.removeThrough(spool.peek(3, Long.MAX_VALUE).get(2).getSequence());
+            assertEquals(spool.getSegmentCount(), 2);
+            assertEquals(listFiles(tempDir).size(), 3);
+
+            // Larger than a segment
+            spool.add(new byte[SEGMENT_SIZE * 2]);
+            assertEquals(spool.getSegmentCount(), 3);
+            assertEquals(spool.peek(10, Long.MAX_VALUE).get(2).getData().length, SEGMENT_SIZE * 2);
+
+            spool.removeThrough(spool.peek(10, Long.MAX_VALUE).get(2).getSequence());
+            assertEquals(spool.getSegmentCount(), 1);
+            assertEquals(listFiles(tempDir).size(), 2);
+        }
+    }
+
+    @Test
+    public void testSegmentReuse()
+            throws Exception
+    {
+        byte[] report = new byte[SEGMENT_SIZE / 3];
+        report[0] = '[';
+        report[report.length - 1] = ']';
+
+        try (MappedReportSpool spool = new MappedReportSpool(tempDir, SEGMENT_SIZE * 10L)) {
+            for (int i = 0; i < 4; i++) {
+                spool.add(report);
+            }
+            spool.removeThrough(spool.peek(10, Long.MAX_VALUE).get(3).getSequence());
+            assertEquals(listFiles(tempDir).size(), 2);
+
+            // Fill the second segment so the next report reuses the first
+            spool.add(new byte[SEGMENT_SIZE - 8 - 2 * (8 + report.length) - 8]);
+            spool.removeThrough(spool.peek(10, Long.MAX_VALUE).get(0).getSequence());
+            spool.add(bytes("[1]"));
+            assertEquals(spool.getSegmentCount(), 1);
+            assertEquals(listFiles(tempDir).size(), 2);
+        }
+
+        // The stale records of the reused segment are not replayed
+        try (ReportSpool spool = createSpool(SEGMENT_SIZE * 10L)) {
+            assertContents(spool.peek(10, Long.MAX_VALUE), "[1]");
+        }
+    }
+}
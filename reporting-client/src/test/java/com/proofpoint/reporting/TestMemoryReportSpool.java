@@ -0,0 +1,11 @@
+package com.proofpoint.reporting;
+
+public class TestMemoryReportSpool
+        extends AbstractTestReportSpool
+{
+    @Override
+    protected ReportSpool createSpool(long maxBytes)
+    {
+        return new MemoryReportSpool(maxBytes);
+    }
+}
@@ -16,7 +16,9 @@
 package com.proofpoint.reporting;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -32,14 +34,20 @@ import com.proofpoint.http.client.testing.TestingHttpClient.Processor;
 import com.proofpoint.json.ObjectMapperProvider;
 import com.proofpoint.node.NodeConfig;
 import com.proofpoint.node.NodeInfo;
+import com.proofpoint.reporting.ReportClient.UploadResult;
+import com.proofpoint.reporting.ReportClientConfig.UploadFormat;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.zip.GZIPInputStream;
 
 import static com.google.common.base.Throwables.throwIfUnchecked;
@@ -79,14 +87,14 @@ public class TestReportClient
     {
         httpClient = new TestingHttpClient();
         ReportClient client = new ReportClient(nodeInfo, httpClient, new ReportClientConfig().setEnabled(false), new ReportTagConfig(), objectMapper);
-        client.report(System.currentTimeMillis(), collectedData);
+        report(client, System.currentTimeMillis(), collectedData);
     }
 
     @Test
     public void testReportData()
     {
         ReportClient client = new ReportClient(nodeInfo, httpClient, new ReportClientConfig(), new ReportTagConfig(), objectMapper);
-        client.report(TEST_TIME, collectedData);
+        assertEquals(report(client, TEST_TIME, collectedData), UploadResult.SUCCESS);
         assertEquals(sentJson.size(), 2);
 
         for (Map<String, Object> map : sentJson) {
@@ -116,7 +124,7 @@ public class TestReportClient
         ReportClient client = new ReportClient(nodeInfo, httpClient, new ReportClientConfig(), new ReportTagConfig(), objectMapper);
         collectedData = HashBasedTable.create();
         collectedData.put("Foo.String", ImmutableMap.of(), "test value");
-        client.report(TEST_TIME, collectedData);
+        assertEquals(report(client, TEST_TIME, collectedData), UploadResult.SUCCESS);
         assertEquals(sentJson, ImmutableList.of(
                 ImmutableMap.of(
                         "name", "Foo.String",
@@ -139,7 +147,7 @@ public class TestReportClient
         ReportClient client = new ReportClient(nodeInfo, httpClient,
                 new ReportClientConfig(), new ReportTagConfig()
                         .setTags(ImmutableMap.of("foo", "ba:r", "baz", "quux")), objectMapper);
-        client.report(TEST_TIME, collectedData);
+        assertEquals(report(client, TEST_TIME, collectedData), UploadResult.SUCCESS);
         assertEquals(sentJson.size(), 2);
 
         for (Map<String, Object> map : sentJson) {
@@ -160,7 +168,7 @@ public class TestReportClient
         ReportClient client = new ReportClient(nodeInfo, httpClient,
                 new ReportClientConfig().setPulseIncludeHostTag(false), new ReportTagConfig()
                         .setTags(ImmutableMap.of("foo", "ba:r", "baz", "quux")), objectMapper);
-        client.report(TEST_TIME, collectedData);
+        assertEquals(report(client, TEST_TIME, collectedData), UploadResult.SUCCESS);
         assertEquals(sentJson.size(), 2);
 
         for (Map<String, Object> map : sentJson) {
@@ -175,6 +183,93 @@ public class TestReportClient
         assertEquals(tags.keySet(), ImmutableSet.of("application", "environment", "pool", "foo", "baz"));
     }
 
+    @Test
+    public void testCoalescedReports()
+            throws Exception
+    {
+        ReportClient client = new ReportClient(nodeInfo, httpClient, new ReportClientConfig(), new ReportTagConfig(), objectMapper);
+        Table<String, Map<String, String>, Object> emptyData = HashBasedTable.create();
+        Table<String, Map<String, String>, Object> laterData = HashBasedTable.create();
+        laterData.put("Foo.Later", ImmutableMap.of(), 2.1);
+
+        assertEquals(client.upload(ImmutableList.of(
+                client.serialize(TEST_TIME, collectedData),
+                client.serialize(TEST_TIME, emptyData),
+                client.serialize(TEST_TIME + 60_000, laterData))), UploadResult.SUCCESS);
+
+        assertEquals(sentJson.size(), 3);
+        assertEquals(sentJson.get(0).get("name"), "Foo.Ba_r.Size");
+        assertEquals(sentJson.get(1).get("name"), "Foo.Later");
+        assertEquals(sentJson.get(1).get("timestamp"), TEST_TIME + 60_000);
+        assertEquals(sentJson.get(2).get("name"), "Foo.Size");
+    }
+
+    @Test
+    public void testUploadResults()
+            throws Exception
+    {
+        for (Entry<HttpStatus, UploadResult> entry : ImmutableMap.of(
+                HttpStatus.NO_CONTENT, UploadResult.SUCCESS,
+                HttpStatus.BAD_REQUEST, UploadResult.REJECTED,
+                HttpStatus.REQUEST_ENTITY_TOO_LARGE, UploadResult.TOO_LARGE,
+                HttpStatus.TOO_MANY_REQUESTS, UploadResult.FAILED,
+                HttpStatus.SERVICE_UNAVAILABLE, UploadResult.FAILED).entrySet()) {
+            ReportClient client = new ReportClient(nodeInfo, new TestingHttpClient(request -> mockResponse(entry.getKey())), new ReportClientConfig(), new ReportTagConfig(), objectMapper);
+            assertEquals(report(client, TEST_TIME, collectedData), entry.getValue(), entry.getKey().toString());
+        }
+
+        ReportClient client = new ReportClient(nodeInfo, new TestingHttpClient(request -> {
+            throw new RuntimeException("testing");
+        }), new ReportClientConfig(), new ReportTagConfig(), objectMapper);
+        assertEquals(report(client, TEST_TIME, collectedData), UploadResult.FAILED);
+    }
+
+    @Test
+    public void testSmileFormat()
+            throws Exception
+    {
+        ReportClient client = new ReportClient(nodeInfo, httpClient, new ReportClientConfig().setUploadFormat(UploadFormat.SMILE), new ReportTagConfig(), objectMapper);
+        assertEquals(report(client, TEST_TIME, collectedData), UploadResult.SUCCESS);
+        List<Map<String, Object>> smileJson = sentJson;
+
+        sentJson = null;
+        client = new ReportClient(nodeInfo, httpClient, new ReportClientConfig(), new ReportTagConfig(), objectMapper);
+        assertEquals(report(client, TEST_TIME, collectedData), UploadResult.SUCCESS);
+        assertEquals(smileJson, sentJson);
+    }
+
+    @Test
+    public void testSmileCoalescedReports()
+            throws Exception
+    {
+        ReportClient jsonClient = new ReportClient(nodeInfo, httpClient, new ReportClientConfig(), new ReportTagConfig(), objectMapper);
+        ReportClient client = new ReportClient(nodeInfo, httpClient, new ReportClientConfig().setUploadFormat(UploadFormat.SMILE), new ReportTagConfig(), objectMapper);
+        Table<String, Map<String, String>, Object> laterData = HashBasedTable.create();
+        laterData.put("Foo.Later", ImmutableMap.of(), 2.1);
+
+        // A report spooled before the format was changed is converted
+        assertEquals(client.upload(ImmutableList.of(
+                jsonClient.serialize(TEST_TIME, collectedData),
+                client.serialize(TEST_TIME + 60_000, laterData))), UploadResult.SUCCESS);
+
+        assertEquals(sentJson.size(), 3);
+        assertEquals(sentJson.get(0).get("name"), "Foo.Ba_r.Size");
+        assertEquals(sentJson.get(1).get("name"), "Foo.Later");
+        assertEquals(sentJson.get(1).get("timestamp"), TEST_TIME + 60_000);
+        assertEquals(sentJson.get(2).get("name"), "Foo.Size");
+        assertEquals(((Map<?, ?>) sentJson.get(2).get("tags")).get("application"), "test-application");
+    }
+
+    private static UploadResult report(ReportClient client, long systemTimeMillis, Table<String, Map<String, String>, Object> collectedData)
+    {
+        try {
+            return client.upload(ImmutableList.of(client.serialize(systemTimeMillis, collectedData)));
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
     private class TestingResponseFunction
             implements Processor
     {
@@ -184,17 +279,29 @@ public class TestReportClient
             assertNull(sentJson);
             assertEquals(input.getMethod(), "POST");
             assertEquals(input.getUri().toString(), "api/v1/datapoints");
-            assertEquals(input.getHeader("Content-Type"), "application/gzip");
 
             ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
             try {
                 writeBodySourceTo(input.getBodySource(), outputStream);
                 GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(outputStream.toByteArray()));
 
-                sentJson = new ObjectMapper().readValue(inputStream, new TypeReference<List<Map<String, Object>>>()
-                {
-                });
-                sentJson = Lists.newArrayList(sentJson);
+                if ("application/x-jackson-smile".equals(input.getHeader("Content-Type"))) {
+                    assertEquals(input.getHeader("Content-Encoding"), "gzip");
+                    sentJson = new ArrayList<>();
+                    MappingIterator<List<Map<String, Object>>> iterator = new ObjectMapper(new SmileFactory()).readerFor(new TypeReference<List<Map<String, Object>>>()
+                    {
+                    }).readValues(inputStream);
+                    while (iterator.hasNext()) {
+                        sentJson.addAll(iterator.next());
+                    }
+                }
+                else {
+                    assertEquals(input.getHeader("Content-Type"), "application/gzip");
+                    sentJson = new ObjectMapper().readValue(inputStream, new TypeReference<List<Map<String, Object>>>()
+                    {
+                    });
+                    sentJson = Lists.newArrayList(sentJson);
+                }
                 sentJson.sort(Comparator.comparing(o -> ((String) o.get("name"))));
             }
             catch (Exception e) {
@@ -16,6 +16,9 @@
 package com.proofpoint.reporting;
 
 import com.google.common.collect.ImmutableMap;
+import com.proofpoint.reporting.ReportClientConfig.UploadFormat;
+import com.proofpoint.units.DataSize;
+import com.proofpoint.units.Duration;
 import org.testng.annotations.Test;
 
 import java.util.Map;
@@ -24,6 +27,9 @@ import static com.proofpoint.configuration.testing.ConfigAssertions.assertFullMa
 import static com.proofpoint.configuration.testing.ConfigAssertions.assertLegacyEquivalence;
 import static com.proofpoint.configuration.testing.ConfigAssertions.assertRecordedDefaults;
 import static com.proofpoint.configuration.testing.ConfigAssertions.recordDefaults;
+import static com.proofpoint.units.DataSize.Unit.MEGABYTE;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
 
 public class TestReportClientConfig
 {
@@ -33,6 +39,11 @@ public class TestReportClientConfig
         assertRecordedDefaults(recordDefaults(ReportClientConfig.class)
                 .setEnabled(true)
                 .setPulseIncludeHostTag(true)
+                .setSpoolPath(null)
+                .setMaxQueueSize(new DataSize(32, MEGABYTE))
+                .setUploadFormat(UploadFormat.JSON)
+                .setChangesOnly(false)
+                .setFullReportInterval(new Duration(10, MINUTES))
         );
     }
 
@@ -42,11 +53,21 @@ public class TestReportClientConfig
         Map<String, String> properties = new ImmutableMap.Builder<String, String>()
                 .put("reporting.enabled", "false")
                 .put("reporting.pulse.include-host-tag", "false")
+                .put("reporting.spool.path", "var/reporting")
+                .put("reporting.queue.max-size", "100MB")
+                .put("reporting.upload.format", "SMILE")
+                .put("reporting.changes-only", "true")
+                .put("reporting.full-report-interval", "1h")
                 .build();
 
         ReportClientConfig expected = new ReportClientConfig()
                 .setEnabled(false)
-                .setPulseIncludeHostTag(false);
+                .setPulseIncludeHostTag(false)
+                .setSpoolPath("var/reporting")
+                .setMaxQueueSize(new DataSize(100, MEGABYTE))
+                .setUploadFormat(UploadFormat.SMILE)
+                .setChangesOnly(true)
+                .setFullReportInterval(new Duration(1, HOURS));
 
         assertFullMapping(properties, expected);
     }
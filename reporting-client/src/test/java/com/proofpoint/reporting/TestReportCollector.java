@@ -20,15 +20,19 @@ import com.google.common.collect.ImmutableTable;
 import com.google.common.collect.Table;
 import com.proofpoint.node.NodeConfig;
 import com.proofpoint.node.NodeInfo;
+import com.proofpoint.reporting.MetricHistory.SeriesHistory;
+import com.proofpoint.units.Duration;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import javax.management.ObjectName;
+import java.util.List;
 import java.util.Map;
 
 import static com.proofpoint.testing.Assertions.assertEqualsIgnoreOrder;
+import static java.util.concurrent.TimeUnit.MINUTES;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -44,6 +48,7 @@ public class TestReportCollector
     private MinuteBucketIdProvider bucketIdProvider;
     private ReportedBeanRegistry reportedBeanRegistry;
     private ReportSink reportSink;
+    private MetricHistory metricHistory;
     private ReportCollector reportCollector;
 
     @Captor
@@ -57,7 +62,8 @@ public class TestReportCollector
         reportedBeanRegistry = new ReportedBeanRegistry();
         reportSink = mock(ReportQueue.class);
         NodeInfo nodeInfo = new NodeInfo("test-application", "1.2", "platform.1", new NodeConfig().setEnvironment("testing"));
-        reportCollector = new ReportCollector(nodeInfo, bucketIdProvider, reportedBeanRegistry, reportSink);
+        metricHistory = new MetricHistory(10, 100);
+        reportCollector = new ReportCollector(nodeInfo, bucketIdProvider, reportedBeanRegistry, reportSink, metricHistory, new ReportClientConfig());
     }
 
     @Test
@@ -90,6 +96,24 @@ public class TestReportCollector
         assertMetricsCollected("TestObject.Metric", ImmutableMap.of("foo", "bar"));
     }
 
+    @Test
+    public void testCollectionRecordsHistory()
+            throws Exception
+    {
+        Object reported = new ReportedObject();
+        reportedBeanRegistry.register(reported, ReportedBean.forTarget(reported, bucketIdProvider), false, "TestObject", ImmutableMap.of("foo", "bar"));
+
+        when(bucketIdProvider.getLastSystemTimeMillis()).thenReturn(12345L);
+        reportCollector.collectData();
+        when(bucketIdProvider.getLastSystemTimeMillis()).thenReturn(72345L);
+        reportCollector.collectData();
+
+        List<SeriesHistory> history = metricHistory.query("TestObject.Metric"::equals, 0, Long.MAX_VALUE);
+        assertEquals(history.size(), 1);
+        assertEquals(history.get(0).getTags(), ImmutableMap.of("foo", "bar"));
+        assertEquals(history.get(0).getValues(), ImmutableMap.of(12345L, 1.0, 72345L, 2.0));
+    }
+
     private void assertMetricsCollected(String expectedMetricName, Map<String, String> expectedTags)
     {
         when(bucketIdProvider.getLastSystemTimeMillis()).thenReturn(12345L);
@@ -282,6 +306,103 @@ public class TestReportCollector
                 .cellSet());
     }
 
+    @Test
+    public void testChangesOnly()
+            throws Exception
+    {
+        NodeInfo nodeInfo = new NodeInfo("test-application", "1.2", "platform.1", new NodeConfig().setEnvironment("testing"));
+        reportCollector = new ReportCollector(nodeInfo, bucketIdProvider, reportedBeanRegistry, reportSink, metricHistory,
+                new ReportClientConfig().setChangesOnly(true).setFullReportInterval(new Duration(4, MINUTES)));
+        ChangingObject reported = new ChangingObject();
+        reportedBeanRegistry.register(reported, ReportedBean.forTarget(reported, bucketIdProvider), false, "TestObject", ImmutableMap.of());
+
+        assertCollected(60_000, ImmutableTable.<String, Map<String, String>, Object>builder()
+                .put("TestObject.Changing", ImmutableMap.of(), 1)
+                .put("TestObject.Constant", ImmutableMap.of(), 5)
+                .put("TestObject.String", ImmutableMap.of(), "string")
+                .put("ReportCollector.NumMetrics", EXPECTED_VERSION_TAGS, 3)
+                .build());
+
+        reported.changing = 2;
+        assertCollected(120_000, ImmutableTable.<String, Map<String, String>, Object>builder()
+                .put("TestObject.Changing", ImmutableMap.of(), 2)
+                .put("ReportCollector.NumMetrics", EXPECTED_VERSION_TAGS, 3)
+                .build());
+
+        // Full report when a value is no longer reported
+        reported.string = null;
+        assertCollected(180_000, ImmutableTable.<String, Map<String, String>, Object>builder()
+                .put("TestObject.Changing", ImmutableMap.of(), 2)
+                .put("TestObject.Constant", ImmutableMap.of(), 5)
+                .put("ReportCollector.NumMetrics", EXPECTED_VERSION_TAGS, 2)
+                .build());
+
+        reported.string = "string";
+        reported.changing = 2.0;
+        assertCollected(240_000, ImmutableTable.<String, Map<String, String>, Object>builder()
+                .put("TestObject.Changing", ImmutableMap.of(), 2.0)
+                .put("TestObject.String", ImmutableMap.of(), "string")
+                .put("ReportCollector.NumMetrics", EXPECTED_VERSION_TAGS, 3)
+                .build());
+
+        assertCollected(360_000, ImmutableTable.<String, Map<String, String>, Object>builder()
+                .put("ReportCollector.NumMetrics", EXPECTED_VERSION_TAGS, 3)
+                .build());
+
+        // Full report
+        assertCollected(420_000, ImmutableTable.<String, Map<String, String>, Object>builder()
+                .put("TestObject.Changing", ImmutableMap.of(), 2.0)
+                .put("TestObject.Constant", ImmutableMap.of(), 5)
+                .put("TestObject.String", ImmutableMap.of(), "string")
+                .put("ReportCollector.NumMetrics", EXPECTED_VERSION_TAGS, 3)
+                .build());
+    }
+
+    @Test
+    public void testChangesOnlyUnregistered()
+            throws Exception
+    {
+        NodeInfo nodeInfo = new NodeInfo("test-application", "1.2", "platform.1", new NodeConfig().setEnvironment("testing"));
+        reportCollector = new ReportCollector(nodeInfo, bucketIdProvider, reportedBeanRegistry, reportSink, metricHistory,
+                new ReportClientConfig().setChangesOnly(true).setFullReportInterval(new Duration(4, MINUTES)));
+        ChangingObject reported = new ChangingObject();
+        ChangingObject unregistered = new ChangingObject();
+        reportedBeanRegistry.register(reported, ReportedBean.forTarget(reported, bucketIdProvider), false, "TestObject", ImmutableMap.of());
+        reportedBeanRegistry.register(unregistered, ReportedBean.forTarget(unregistered, bucketIdProvider), false, "Unregistered", ImmutableMap.of());
+
+        assertCollected(60_000, ImmutableTable.<String, Map<String, String>, Object>builder()
+                .put("TestObject.Changing", ImmutableMap.of(), 1)
+                .put("TestObject.Constant", ImmutableMap.of(), 5)
+                .put("TestObject.String", ImmutableMap.of(), "string")
+                .put("Unregistered.Changing", ImmutableMap.of(), 1)
+                .put("Unregistered.Constant", ImmutableMap.of(), 5)
+                .put("Unregistered.String", ImmutableMap.of(), "string")
+                .put("ReportCollector.NumMetrics", EXPECTED_VERSION_TAGS, 6)
+                .build());
+
+        reportedBeanRegistry.unregister(unregistered);
+        assertCollected(120_000, ImmutableTable.<String, Map<String, String>, Object>builder()
+                .put("TestObject.Changing", ImmutableMap.of(), 1)
+                .put("TestObject.Constant", ImmutableMap.of(), 5)
+                .put("TestObject.String", ImmutableMap.of(), "string")
+                .put("ReportCollector.NumMetrics", EXPECTED_VERSION_TAGS, 3)
+                .build());
+
+        assertCollected(180_000, ImmutableTable.<String, Map<String, String>, Object>builder()
+                .put("ReportCollector.NumMetrics", EXPECTED_VERSION_TAGS, 3)
+                .build());
+    }
+
+    private void assertCollected(long systemTimeMillis, Table<String, Map<String, String>, Object> expected)
+    {
+        when(bucketIdProvider.getLastSystemTimeMillis()).thenReturn(systemTimeMillis);
+        reportCollector.collectData();
+
+        verify(reportSink).report(eq(systemTimeMillis), tableCaptor.capture());
+        verifyNoMoreInteractions(reportSink);
+        assertEqualsIgnoreOrder(tableCaptor.getValue().cellSet(), expected.cellSet());
+    }
+
     private static class TestingValue
     {
         @Override
@@ -291,6 +412,30 @@ public class TestReportCollector
         }
     }
 
+    private static class ChangingObject
+    {
+        private volatile Number changing = 1;
+        private volatile String string = "string";
+
+        @Reported
+        public Number getChanging()
+        {
+            return changing;
+        }
+
+        @Reported
+        public int getConstant()
+        {
+            return 5;
+        }
+
+        @Reported
+        public String getString()
+        {
+            return string;
+        }
+    }
+
     private static class ReportedObject
     {
         private int metric = 0;
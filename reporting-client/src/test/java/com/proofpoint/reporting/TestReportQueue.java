@@ -15,55 +15,210 @@
  */
 package com.proofpoint.reporting;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableTable;
+import com.proofpoint.reporting.ReportClient.UploadResult;
 import com.proofpoint.testing.SerialScheduledExecutorService;
+import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
+import java.util.Queue;
 
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.proofpoint.testing.FileUtils.createTempDir;
+import static com.proofpoint.testing.FileUtils.deleteRecursively;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.mock;
-import static org.mockito.Mockito.spy;
-import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
 
 public class TestReportQueue
 {
     private static final ImmutableTable<String, Map<String, String>, Object> TESTING_METRIC_DATA = ImmutableTable.of("row", ImmutableMap.of("tag", "tagValue"), 3.14);
 
-    private ExecutorService clientExecutorService;
+    private SerialScheduledExecutorService clientExecutorService;
     private ReportClient reportClient;
+    private Queue<UploadResult> uploadResults;
+    private List<List<String>> uploads;
+    private File tempDir;
 
     @BeforeMethod
     public void setup()
+            throws Exception
     {
-        clientExecutorService = spy(new SerialScheduledExecutorService());
+        clientExecutorService = new SerialScheduledExecutorService();
         reportClient = mock(ReportClient.class);
+        uploadResults = new ArrayDeque<>();
+        uploads = new ArrayList<>();
+        tempDir = createTempDir("report-queue");
+
+        when(reportClient.serialize(anyLong(), any())).thenAnswer(invocation -> ("[" + invocation.getArgument(0) + "]").getBytes(UTF_8));
+        when(reportClient.upload(any())).thenAnswer(invocation -> {
+            List<byte[]> reports = invocation.getArgument(0);
+            uploads.add(reports.stream()
+                    .map(report -> new String(report, UTF_8))
+                    .collect(toImmutableList()));
+            UploadResult result = uploadResults.poll();
+            return result == null ? UploadResult.SUCCESS : result;
+        });
+    }
+
+    @AfterMethod(alwaysRun = true)
+    public void teardown()
+    {
+        deleteRecursively(tempDir);
     }
 
     @Test
     public void testSubmit()
+            throws Exception
     {
         ReportQueue reportQueue = new ReportQueue(new ReportClientConfig().setEnabled(true), clientExecutorService, reportClient);
 
         reportQueue.report(100, TESTING_METRIC_DATA);
 
-        verify(clientExecutorService).submit(any(Runnable.class));
-        verify(reportClient).report(100, TESTING_METRIC_DATA);
-        verifyNoMoreInteractions(reportClient);
+        assertEquals(uploads, ImmutableList.of(ImmutableList.of("[100]")));
+        assertEquals(reportQueue.getQueuedReports(), 0);
+        assertEquals(reportQueue.getSpooledBytes(), 0);
     }
 
     @Test
     public void testDisabled()
+            throws Exception
     {
         ReportQueue reportQueue = new ReportQueue(new ReportClientConfig().setEnabled(false), clientExecutorService, reportClient);
 
         reportQueue.report(100, TESTING_METRIC_DATA);
 
-        verifyNoMoreInteractions(clientExecutorService);
         verifyNoMoreInteractions(reportClient);
     }
+
+    @Test
+    public void testRetryWithBackoff()
+            throws Exception
+    {
+        ReportQueue reportQueue = new ReportQueue(new ReportClientConfig().setEnabled(true), clientExecutorService, reportClient);
+        uploadResults.add(UploadResult.FAILED);
+        uploadResults.add(UploadResult.FAILED);
+
+        reportQueue.report(100, TESTING_METRIC_DATA);
+        assertEquals(uploads.size(), 1);
+        assertEquals(reportQueue.getQueuedReports(), 1);
+
+        clientExecutorService.elapseTimeNanosecondBefore(ReportQueue.INITIAL_RETRY_DELAY.toMillis(), MILLISECONDS);
+        assertEquals(uploads.size(), 1);
+        clientExecutorService.elapseTime(1, NANOSECONDS);
+        assertEquals(uploads.size(), 2);
+
+        clientExecutorService.elapseTimeNanosecondBefore(ReportQueue.INITIAL_RETRY_DELAY.toMillis() * 2, MILLISECONDS);
+        assertEquals(uploads.size(), 2);
+        clientExecutorService.elapseTime(1, NANOSECONDS);
+        assertEquals(uploads.size(), 3);
+        assertEquals(uploads.get(2), ImmutableList.of("[100]"));
+        assertEquals(reportQueue.getQueuedReports(), 0);
+        assertEquals(reportQueue.getDropped().getTotalCount(), 0);
+    }
+
+    @Test
+    public void testCoalesceAfterFailure()
+            throws Exception
+    {
+        ReportQueue reportQueue = new ReportQueue(new ReportClientConfig().setEnabled(true), clientExecutorService, reportClient);
+        uploadResults.add(UploadResult.FAILED);
+
+        reportQueue.report(100, TESTING_METRIC_DATA);
+        reportQueue.report(200, TESTING_METRIC_DATA);
+        reportQueue.report(300, TESTING_METRIC_DATA);
+        assertEquals(uploads.size(), 1);
+        assertEquals(reportQueue.getQueuedReports(), 3);
+
+        clientExecutorService.elapseTime(1, SECONDS);
+        assertEquals(uploads, ImmutableList.of(
+                ImmutableList.of("[100]"),
+                ImmutableList.of("[100]", "[200]", "[300]")));
+        assertEquals(reportQueue.getQueuedReports(), 0);
+    }
+
+    @Test
+    public void testRejectedReportsDropped()
+            throws Exception
+    {
+        ReportQueue reportQueue = new ReportQueue(new ReportClientConfig().setEnabled(true), clientExecutorService, reportClient);
+        uploadResults.add(UploadResult.REJECTED);
+
+        reportQueue.report(100, TESTING_METRIC_DATA);
+        reportQueue.report(200, TESTING_METRIC_DATA);
+
+        assertEquals(uploads, ImmutableList.of(ImmutableList.of("[100]"), ImmutableList.of("[200]")));
+        assertEquals(reportQueue.getQueuedReports(), 0);
+        assertEquals(reportQueue.getDropped().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testTooLargeUploadSplit()
+            throws Exception
+    {
+        ReportQueue reportQueue = new ReportQueue(new ReportClientConfig().setEnabled(true), clientExecutorService, reportClient);
+        uploadResults.add(UploadResult.FAILED);
+
+        reportQueue.report(100, TESTING_METRIC_DATA);
+        reportQueue.report(200, TESTING_METRIC_DATA);
+        reportQueue.report(300, TESTING_METRIC_DATA);
+        reportQueue.report(400, TESTING_METRIC_DATA);
+        reportQueue.report(500, TESTING_METRIC_DATA);
+
+        uploadResults.add(UploadResult.TOO_LARGE);
+        uploadResults.add(UploadResult.TOO_LARGE);
+        uploadResults.add(UploadResult.SUCCESS);
+        uploadResults.add(UploadResult.TOO_LARGE);
+        clientExecutorService.elapseTime(1, SECONDS);
+        assertEquals(uploads, ImmutableList.of(
+                ImmutableList.of("[100]"),
+                ImmutableList.of("[100]", "[200]", "[300]", "[400]", "[500]"),
+                ImmutableList.of("[100]", "[200]"),
+                ImmutableList.of("[100]"),
+                ImmutableList.of("[200]"),
+                ImmutableList.of("[300]"),
+                ImmutableList.of("[400]"),
+                ImmutableList.of("[500]")));
+        assertEquals(reportQueue.getQueuedReports(), 0);
+        assertEquals(reportQueue.getDropped().getTotalCount(), 1);
+    }
+
+    @Test
+    public void testReplaySpooledReports()
+            throws Exception
+    {
+        ReportClientConfig config = new ReportClientConfig()
+                .setEnabled(true)
+                .setSpoolPath(tempDir.getPath());
+        ReportQueue reportQueue = new ReportQueue(config, clientExecutorService, reportClient);
+        uploadResults.add(UploadResult.FAILED);
+
+        reportQueue.report(100, TESTING_METRIC_DATA);
+        reportQueue.report(200, TESTING_METRIC_DATA);
+        reportQueue.stop();
+        assertEquals(uploads.size(), 1);
+
+        clientExecutorService = new SerialScheduledExecutorService();
+        uploads.clear();
+        reportQueue = new ReportQueue(config, clientExecutorService, reportClient);
+
+        assertEquals(uploads, ImmutableList.of(ImmutableList.of("[100]", "[200]")));
+        assertEquals(reportQueue.getQueuedReports(), 0);
+        reportQueue.stop();
+    }
 }
@@ -27,6 +27,7 @@ import com.proofpoint.json.JsonModule;
 import com.proofpoint.node.ApplicationNameModule;
 import com.proofpoint.node.testing.TestingNodeModule;
 import com.proofpoint.testing.SerialScheduledExecutorService;
+import com.proofpoint.units.Duration;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
@@ -39,7 +40,9 @@ import static com.proofpoint.testing.Assertions.assertBetweenInclusive;
 import static java.lang.System.currentTimeMillis;
 import static java.util.concurrent.TimeUnit.MINUTES;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -67,7 +70,7 @@ public class TestReportScheduler
         initMocks(this);
         when(reportCollector.getVersionTags()).thenReturn(EXPECTED_VERSION_TAGS);
         collectorExecutor = new SerialScheduledExecutorService();
-        reportScheduler = new ReportScheduler(reportCollector, reportSink, collectorExecutor);
+        reportScheduler = new ReportScheduler(reportCollector, reportSink, new ReportingConfig(), collectorExecutor);
     }
 
     @Test
@@ -127,4 +130,20 @@ public class TestReportScheduler
         verifyNoMoreInteractions(reportCollector);
         verifyNoMoreInteractions(reportSink);
     }
+
+    @Test
+    public void testSchedulingInterval()
+    {
+        reportScheduler = new ReportScheduler(reportCollector, reportSink, new ReportingConfig().setBucketInterval(new Duration(10, SECONDS)), collectorExecutor);
+        reportScheduler.start();
+
+        collectorExecutor.elapseTimeNanosecondBefore(10, SECONDS);
+        verify(reportCollector, never()).collectData();
+
+        collectorExecutor.elapseTime(1, NANOSECONDS);
+        verify(reportCollector).collectData();
+
+        collectorExecutor.elapseTime(10, SECONDS);
+        verify(reportCollector, times(2)).collectData();
+    }
 }
@@ -15,11 +15,7 @@
  */
 package com.proofpoint.reporting;
 
-import com.google.common.collect.ImmutableMap.Builder;
-import com.google.common.collect.ImmutableSortedMap;
-import com.google.common.collect.Iterables;
 import com.proofpoint.jaxrs.AccessDoesNotRequireAuthentication;
-import com.proofpoint.node.NodeInfo;
 
 import javax.inject.Inject;
 import javax.ws.rs.GET;
@@ -28,9 +24,6 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.core.StreamingOutput;
 import java.io.BufferedWriter;
 import java.io.OutputStreamWriter;
-import java.util.Collection;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
@@ -39,22 +32,11 @@ import static java.util.Objects.requireNonNull;
 public class MetricsResource
 {
     private final PrometheusCollector prometheusCollector;
-    private final Map<String, String> instanceTags;
 
     @Inject
-    public MetricsResource(PrometheusCollector prometheusCollector, NodeInfo nodeInfo, ReportTagConfig reportTagConfig)
+    public MetricsResource(PrometheusCollector prometheusCollector)
     {
         this.prometheusCollector = requireNonNull(prometheusCollector, "prometheusCollector is null");
-        requireNonNull(nodeInfo, "nodeInfo is null");
-        requireNonNull(reportTagConfig, "reportTagConfig is null");
-
-        Builder<String, String> builder = ImmutableSortedMap.naturalOrder();
-        builder.put("application", nodeInfo.getApplication());
-        builder.put("host", nodeInfo.getInternalHostname());
-        builder.put("environment", nodeInfo.getEnvironment());
-        builder.put("pool", nodeInfo.getPool());
-        builder.putAll(reportTagConfig.getTags());
-        this.instanceTags = builder.build();
     }
 
     @GET
@@ -63,27 +45,17 @@ public class MetricsResource
     public StreamingOutput getMetrics() {
         return output -> {
             try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(output, UTF_8))) {
-                for (Entry<String, Collection<TaggedValue>> entry : prometheusCollector.collectData().asMap().entrySet()) {
-                    boolean first = true;
-
-                    for (TaggedValue taggedValue : entry.getValue()) {
-                        if (first) {
-                            first = false;
-                            writer.write("#TYPE ");
-                            writer.write(entry.getKey());
-                            writer.write(" gauge\n");
-                        }
-
-                        taggedValue.getValueAndTimestamp().getValue().writeMetric(
-                                writer,
-                                entry.getKey(),
-                                Iterables.concat(taggedValue.getTags().entrySet(), instanceTags.entrySet()),
-                                taggedValue.getValueAndTimestamp().getTimestamp()
-                        );
-                    }
-                }
+                prometheusCollector.writeMetrics(writer);
             }
         };
     }
-}
 
+    // Lower source quality so that clients which accept anything get the text format
+    @GET
+    @AccessDoesNotRequireAuthentication
+    @Produces(PrometheusProtobufWriter.CONTENT_TYPE + "; qs=0.5")
+    public StreamingOutput getProtobufMetrics()
+    {
+        return prometheusCollector::writeProtobufMetrics;
+    }
+}
@@ -15,46 +15,72 @@
  */
 package com.proofpoint.reporting;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Iterables;
 import com.proofpoint.node.NodeInfo;
 import com.proofpoint.reporting.PrometheusBeanAttribute.ValueAndTimestamp;
 import com.proofpoint.reporting.ReportedBeanRegistry.RegistrationInfo;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.management.MBeanException;
 import javax.management.ReflectionException;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
 
 import static com.google.common.base.CaseFormat.LOWER_HYPHEN;
 import static com.google.common.base.CaseFormat.UPPER_CAMEL;
 import static com.proofpoint.reporting.PrometheusBeanAttribute.ValueAndTimestamp.valueAndTimestamp;
+import static com.proofpoint.reporting.ReportUtils.encodeLabels;
 import static com.proofpoint.reporting.SimplePrometheusValue.simplePrometheusValue;
-import static com.proofpoint.reporting.TaggedValue.taggedValue;
-import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Objects.requireNonNull;
 
 class PrometheusCollector
 {
     private static final Pattern NAME_NOT_ACCEPTED_CHARACTER_PATTERN = Pattern.compile("[^A-Za-z0-9_:]");
     private static final Pattern INITIAL_DIGIT_PATTERN = Pattern.compile("[0-9]");
+    private static final Comparator<PlannedMetric> METRIC_ORDER = Comparator.<PlannedMetric, String>comparing(metric -> metric.name)
+            .thenComparing(metric -> metric.tags, TaggedValue::compareTags);
+
     private final String applicationPrefix;
-    private final ReportedBeanRegistry reportedBeanRegistry;
-    private final Map<String, String> versionTags;
+    private final Map<String, String> instanceTags;
+    private final CollectionPlan<PlannedMetric> collectionPlan;
+    private final PlannedMetric numMetrics;
+    private final PlannedMetric serverStart;
     private final BucketIdProvider bucketIdProvider;
     private final long startupTimestamp;
 
     @Inject
     PrometheusCollector(
             NodeInfo nodeInfo,
+            ReportTagConfig reportTagConfig,
             ReportedBeanRegistry reportedBeanRegistry,
             BucketIdProvider bucketIdProvider)
     {
+        requireNonNull(nodeInfo, "nodeInfo is null");
+        requireNonNull(reportTagConfig, "reportTagConfig is null");
         applicationPrefix = sanitizeMetricName(LOWER_HYPHEN.to(UPPER_CAMEL, nodeInfo.getApplication())) + "_";
-        this.reportedBeanRegistry = requireNonNull(reportedBeanRegistry, "reportedBeanRegistry is null");
+
+        ImmutableMap.Builder<String, String> instanceTagsBuilder = ImmutableSortedMap.naturalOrder();
+        instanceTagsBuilder.put("application", nodeInfo.getApplication());
+        instanceTagsBuilder.put("host", nodeInfo.getInternalHostname());
+        instanceTagsBuilder.put("environment", nodeInfo.getEnvironment());
+        instanceTagsBuilder.put("pool", nodeInfo.getPool());
+        instanceTagsBuilder.putAll(reportTagConfig.getTags());
+        instanceTags = instanceTagsBuilder.build();
+
+        collectionPlan = new CollectionPlan<>(requireNonNull(reportedBeanRegistry, "reportedBeanRegistry is null"), this::planMetrics, METRIC_ORDER);
 
         ImmutableMap.Builder<String, String> versionTagsBuilder = ImmutableMap.builder();
         if (!nodeInfo.getApplicationVersion().isEmpty()) {
@@ -63,7 +89,10 @@ class PrometheusCollector
         if (!nodeInfo.getPlatformVersion().isEmpty()) {
             versionTagsBuilder.put("platformVersion", nodeInfo.getPlatformVersion());
         }
-        this.versionTags = versionTagsBuilder.build();
+        Map<String, String> versionTags = versionTagsBuilder.build();
+        numMetrics = plannedMetric("ReportCollector_NumMetrics", versionTags, null);
+        serverStart = plannedMetric("ReportCollector_ServerStart", versionTags, null);
+
         this.bucketIdProvider = bucketIdProvider;
         startupTimestamp = bucketIdProvider.get().getTimestamp();
     }
@@ -73,46 +102,192 @@ class PrometheusCollector
         return NAME_NOT_ACCEPTED_CHARACTER_PATTERN.matcher(name).replaceAll("_");
     }
 
-    Multimap<String, TaggedValue> collectData()
+    /**
+     * Writes all metrics in the Prometheus text exposition format, grouped by
+     * metric family. The samples are written directly from the precomputed
+     * collection plan, which is already in output order.
+     */
+    void writeMetrics(BufferedWriter writer)
+            throws IOException
+    {
+        collectMetrics(new MetricSink()
+        {
+            @Override
+            public void startMetricFamily(PlannedMetric metric, PrometheusValue value)
+                    throws IOException
+            {
+                writer.write("#TYPE ");
+                writer.write(metric.name);
+                writer.write(' ');
+                writer.write(value.getType());
+                writer.write('\n');
+            }
+
+            @Override
+            public void writeMetric(PlannedMetric metric, ValueAndTimestamp valueAndTimestamp)
+                    throws IOException
+            {
+                valueAndTimestamp.getValue().writeMetric(writer, metric.name, metric.labels, valueAndTimestamp.getTimestamp());
+            }
+        });
+    }
+
+    /**
+     * Writes all metrics as length-delimited Prometheus protobuf
+     * {@code MetricFamily} messages, from the same collection plan as
+     * {@link #writeMetrics(BufferedWriter)}.
+     */
+    void writeProtobufMetrics(OutputStream output)
+            throws IOException
+    {
+        PrometheusProtobufWriter writer = new PrometheusProtobufWriter(output);
+        collectMetrics(new MetricSink()
+        {
+            @Override
+            public void startMetricFamily(PlannedMetric metric, PrometheusValue value)
+                    throws IOException
+            {
+                writer.startMetricFamily(metric.protobufName, value.getType());
+            }
+
+            @Override
+            public void writeMetric(PlannedMetric metric, ValueAndTimestamp valueAndTimestamp)
+            {
+                writer.startMetric(metric.protobufLabels);
+                valueAndTimestamp.getValue().writeProtobufMetric(writer);
+                writer.endMetric(valueAndTimestamp.getTimestamp());
+            }
+        });
+        writer.flush();
+    }
+
+    private void collectMetrics(MetricSink sink)
+            throws IOException
     {
-        Multimap<String, TaggedValue> valuesByMetric = MultimapBuilder.treeKeys().treeSetValues().build();
+        List<PlannedMetric> metrics = collectionPlan.getEntries();
+        ValueAndTimestamp[] values = new ValueAndTimestamp[metrics.size()];
+        int numValues = 0;
+        PlannedMetric previous = null;
+
+        for (int i = 0; i < values.length; i++) {
+            PlannedMetric metric = metrics.get(i);
+            ValueAndTimestamp valueAndTimestamp = null;
 
-        for (RegistrationInfo registrationInfo : reportedBeanRegistry.getReportedBeans()) {
-            StringBuilder nameBuilder = new StringBuilder();
-            if (registrationInfo.isApplicationPrefix()) {
-                nameBuilder.append(applicationPrefix);
+            try {
+                valueAndTimestamp = metric.attribute.getValue(null);
             }
-            nameBuilder.append(sanitizeMetricName(registrationInfo.getNamePrefix()));
-
-            for (PrometheusBeanAttribute attribute : registrationInfo.getReportedBean().getPrometheusAttributes()) {
-                String metricName = sanitizeMetricName(attribute.getName());
-                String name;
-                if ("".equals(metricName)) {
-                    name = nameBuilder.toString();
-                }
-                else {
-                    name = nameBuilder + "_" + metricName;
-                }
-                if (INITIAL_DIGIT_PATTERN.matcher(name).lookingAt()) {
-                    name = "_" + name;
-                }
-                ValueAndTimestamp valueAndTimestamp = null;
-
-                try {
-                    valueAndTimestamp = attribute.getValue(null);
-                }
-                catch (MBeanException | ReflectionException ignored) {
-                }
-
-                if (valueAndTimestamp != null) {
-                    valuesByMetric.put(name, taggedValue(registrationInfo.getTags(), valueAndTimestamp));
-                }
+            catch (MBeanException | ReflectionException ignored) {
+            }
+
+            // Of several samples with the same name and tags, only the first is reported
+            if (valueAndTimestamp != null && (previous == null || !isSameSample(previous, metric))) {
+                values[i] = valueAndTimestamp;
+                previous = metric;
+                ++numValues;
             }
         }
-        valuesByMetric.put("ReportCollector_NumMetrics", taggedValue(versionTags, valueAndTimestamp(simplePrometheusValue(valuesByMetric.size()), null)));
+
+        PlannedMetric[] ownMetrics = {numMetrics, serverStart};
+        ValueAndTimestamp[] ownValues = {valueAndTimestamp(simplePrometheusValue(numValues), null), null};
         if (bucketIdProvider.get().getTimestamp() < startupTimestamp + TimeUnit.MINUTES.toMillis(10)) {
-            valuesByMetric.put("ReportCollector_ServerStart", taggedValue(versionTags, valueAndTimestamp(simplePrometheusValue(1), startupTimestamp)));
+            ownValues[1] = valueAndTimestamp(simplePrometheusValue(1), startupTimestamp);
+        }
+
+        // Merge the collector's own metrics into the sorted plan
+        int metricIndex = 0;
+        int ownIndex = 0;
+        PlannedMetric written = null;
+        while (metricIndex < metrics.size() || ownIndex < ownMetrics.length) {
+            PlannedMetric metric;
+            ValueAndTimestamp valueAndTimestamp;
+            if (ownIndex == ownMetrics.length ||
+                    (metricIndex < metrics.size() && METRIC_ORDER.compare(metrics.get(metricIndex), ownMetrics[ownIndex]) <= 0)) {
+                metric = metrics.get(metricIndex);
+                valueAndTimestamp = values[metricIndex];
+                ++metricIndex;
+            }
+            else {
+                metric = ownMetrics[ownIndex];
+                valueAndTimestamp = ownValues[ownIndex];
+                ++ownIndex;
+            }
+
+            if (valueAndTimestamp == null || (written != null && isSameSample(written, metric))) {
+                continue;
+            }
+            if (written == null || !written.name.equals(metric.name)) {
+                sink.startMetricFamily(metric, valueAndTimestamp.getValue());
+            }
+            sink.writeMetric(metric, valueAndTimestamp);
+            written = metric;
+        }
+    }
+
+    private List<PlannedMetric> planMetrics(RegistrationInfo registrationInfo)
+    {
+        StringBuilder nameBuilder = new StringBuilder();
+        if (registrationInfo.isApplicationPrefix()) {
+            nameBuilder.append(applicationPrefix);
+        }
+        nameBuilder.append(sanitizeMetricName(registrationInfo.getNamePrefix()));
+
+        ImmutableList.Builder<PlannedMetric> builder = ImmutableList.builder();
+        for (PrometheusBeanAttribute attribute : registrationInfo.getReportedBean().getPrometheusAttributes()) {
+            String metricName = sanitizeMetricName(attribute.getName());
+            String name;
+            if ("".equals(metricName)) {
+                name = nameBuilder.toString();
+            }
+            else {
+                name = nameBuilder + "_" + metricName;
+            }
+            if (INITIAL_DIGIT_PATTERN.matcher(name).lookingAt()) {
+                name = "_" + name;
+            }
+            builder.add(plannedMetric(name, registrationInfo.getTags(), attribute));
+        }
+        return builder.build();
+    }
+
+    private PlannedMetric plannedMetric(String name, Map<String, String> tags, @Nullable PrometheusBeanAttribute attribute)
+    {
+        SortedMap<String, String> sortedTags = ImmutableSortedMap.copyOf(tags);
+        Iterable<Entry<String, String>> labels = Iterables.concat(sortedTags.entrySet(), instanceTags.entrySet());
+        return new PlannedMetric(name, sortedTags, encodeLabels(labels), PrometheusProtobufWriter.encodeLabels(labels), attribute);
+    }
+
+    private static boolean isSameSample(PlannedMetric metric, PlannedMetric other)
+    {
+        return metric.name.equals(other.name) && metric.tags.equals(other.tags);
+    }
+
+    private interface MetricSink
+    {
+        void startMetricFamily(PlannedMetric metric, PrometheusValue value)
+                throws IOException;
+
+        void writeMetric(PlannedMetric metric, ValueAndTimestamp valueAndTimestamp)
+                throws IOException;
+    }
+
+    private static class PlannedMetric
+    {
+        private final String name;
+        private final byte[] protobufName;
+        private final SortedMap<String, String> tags;
+        private final String labels;
+        private final byte[] protobufLabels;
+        @Nullable
+        private final PrometheusBeanAttribute attribute;
+
+        PlannedMetric(String name, SortedMap<String, String> tags, String labels, byte[] protobufLabels, @Nullable PrometheusBeanAttribute attribute)
+        {
+            this.name = name;
+            protobufName = name.getBytes(UTF_8);
+            this.tags = tags;
+            this.labels = labels;
+            this.protobufLabels = protobufLabels;
+            this.attribute = attribute;
         }
-        return valuesByMetric;
     }
 }
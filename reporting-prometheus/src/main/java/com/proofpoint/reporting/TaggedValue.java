@@ -39,8 +39,13 @@ abstract class TaggedValue
     @Override
     public int compareTo(TaggedValue o)
     {
-        Iterator<Entry<String, String>> otherIterator = o.getTags().entrySet().iterator();
-        for (Entry<String, String> entry : getTags().entrySet()) {
+        return compareTags(getTags(), o.getTags());
+    }
+
+    static int compareTags(SortedMap<String, String> tags, SortedMap<String, String> otherTags)
+    {
+        Iterator<Entry<String, String>> otherIterator = otherTags.entrySet().iterator();
+        for (Entry<String, String> entry : tags.entrySet()) {
             if (!otherIterator.hasNext()) {
                 return 1;
             }
@@ -45,6 +45,7 @@ import static com.proofpoint.jaxrs.JaxrsModule.explicitJaxrsModule;
 import static com.proofpoint.reporting.BucketIdProvider.BucketId.bucketId;
 import static com.proofpoint.reporting.ReportBinder.reportBinder;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 public class TestReportingPrometheusModule
 {
@@ -100,6 +101,36 @@ public class TestReportingPrometheusModule
                         "TestObject_Metric{" + EXPECTED_INSTANCE_TAGS + "} 2\n");
     }
 
+    @Test
+    public void testContentNegotiation()
+    {
+        Injector injector = createServer(binder -> {
+            binder.bind(ReportedObject.class);
+            reportBinder(binder).export(ReportedObject.class).withNamePrefix("TestObject");
+        });
+
+        injector.getInstance(TestingBucketIdProvider.class).incrementBucket();
+
+        StringResponse response = client.execute(
+                prepareGet().setUri(uriFor("/metrics"))
+                        .setHeader("Accept", "application/vnd.google.protobuf;proto=io.prometheus.client.MetricFamily;encoding=delimited;q=0.7,text/plain;version=0.0.4;q=0.3,*/*;q=0.1")
+                        .build(),
+                createStringResponseHandler());
+
+        assertEquals(response.getStatusCode(), 200);
+        assertTrue(response.getHeader("Content-Type").startsWith("application/vnd.google.protobuf"), response.getHeader("Content-Type"));
+        assertTrue(response.getBody().contains("TestObject_Metric"));
+
+        response = client.execute(
+                prepareGet().setUri(uriFor("/metrics"))
+                        .setHeader("Accept", "*/*")
+                        .build(),
+                createStringResponseHandler());
+
+        assertEquals(response.getStatusCode(), 200);
+        assertTrue(response.getHeader("Content-Type").startsWith("text/plain"), response.getHeader("Content-Type"));
+    }
+
     @Test
     public void testVersionNumbers()
             throws Exception
@@ -227,6 +258,50 @@ public class TestReportingPrometheusModule
                         "TestObject_Metric{foo=\"bar\"," + EXPECTED_INSTANCE_TAGS + "} 2\n");
     }
 
+    @Test
+    public void testRegistrationChanges()
+            throws InstanceAlreadyExistsException
+    {
+        Injector injector = createServer(binder -> {
+        });
+        ReportedBeanRegistry reportedBeanRegistry = injector.getInstance(ReportedBeanRegistry.class);
+        TestingBucketIdProvider bucketIdProvider = injector.getInstance(TestingBucketIdProvider.class);
+        bucketIdProvider.incrementBucket();
+
+        ReportedObject first = new ReportedObject();
+        reportedBeanRegistry.register(first, ReportedBean.forTarget(first, bucketIdProvider), false, "TestObject", ImmutableMap.of("foo", "bar"));
+
+        StringResponse response = client.execute(
+                prepareGet().setUri(uriFor("/metrics")).build(),
+                createStringResponseHandler());
+
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(response.getBody(),
+                "#TYPE ReportCollector_LogErrors_Count gauge\n" +
+                        "ReportCollector_LogErrors_Count{" + EXPECTED_INSTANCE_TAGS + "} 0.0 1100\n" +
+                        "#TYPE ReportCollector_NumMetrics gauge\n" +
+                        "ReportCollector_NumMetrics{" + EXPECTED_INSTANCE_TAGS + "} 2\n" +
+                        "#TYPE TestObject_Metric gauge\n" +
+                        "TestObject_Metric{foo=\"bar\"," + EXPECTED_INSTANCE_TAGS + "} 2\n");
+
+        ReportedObject second = new ReportedObject();
+        reportedBeanRegistry.register(second, ReportedBean.forTarget(second, bucketIdProvider), false, "TestObject", ImmutableMap.of("a", "b"));
+        reportedBeanRegistry.unregister(first);
+
+        response = client.execute(
+                prepareGet().setUri(uriFor("/metrics")).build(),
+                createStringResponseHandler());
+
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(response.getBody(),
+                "#TYPE ReportCollector_LogErrors_Count gauge\n" +
+                        "ReportCollector_LogErrors_Count{" + EXPECTED_INSTANCE_TAGS + "} 0.0 1100\n" +
+                        "#TYPE ReportCollector_NumMetrics gauge\n" +
+                        "ReportCollector_NumMetrics{" + EXPECTED_INSTANCE_TAGS + "} 2\n" +
+                        "#TYPE TestObject_Metric gauge\n" +
+                        "TestObject_Metric{a=\"b\"," + EXPECTED_INSTANCE_TAGS + "} 2\n");
+    }
+
     @Test
     public void testUnreportedValues()
             throws InstanceAlreadyExistsException
@@ -505,6 +580,81 @@ public class TestReportingPrometheusModule
         );
     }
 
+    @Test
+    public void testDistributionExposition()
+    {
+        Injector injector = createServer(binder -> {
+            binder.bind(DistributionObject.class).in(SINGLETON);
+            reportBinder(binder).export(DistributionObject.class);
+        });
+        DistributionObject distributionObject = injector.getInstance(DistributionObject.class);
+        TestingBucketIdProvider bucketIdProvider = injector.getInstance(TestingBucketIdProvider.class);
+
+        for (int i = 0; i < 100; i++) {
+            distributionObject.getLatency().add(new Duration(i, TimeUnit.MILLISECONDS));
+            distributionObject.getSize().add(i);
+        }
+        bucketIdProvider.incrementBucket();
+
+        StringResponse response = client.execute(
+                prepareGet().setUri(uriFor("/metrics")).build(),
+                createStringResponseHandler());
+
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(response.getBody(),
+                "#TYPE DistributionObject_Latency histogram\n" +
+                        "DistributionObject_Latency_bucket{" + EXPECTED_INSTANCE_TAGS + ",le=\"0.01\"} 11.0 1100\n" +
+                        "DistributionObject_Latency_bucket{" + EXPECTED_INSTANCE_TAGS + ",le=\"0.1\"} 100.0 1100\n" +
+                        "DistributionObject_Latency_bucket{" + EXPECTED_INSTANCE_TAGS + ",le=\"1.0\"} 100.0 1100\n" +
+                        "DistributionObject_Latency_bucket{" + EXPECTED_INSTANCE_TAGS + ",le=\"+Inf\"} 100.0 1100\n" +
+                        "DistributionObject_Latency_sum{" + EXPECTED_INSTANCE_TAGS + "} 4.95 1100\n" +
+                        "DistributionObject_Latency_count{" + EXPECTED_INSTANCE_TAGS + "} 100.0 1100\n" +
+                        "#TYPE DistributionObject_Size summary\n" +
+                        "DistributionObject_Size{" + EXPECTED_INSTANCE_TAGS + ",quantile=\"0.5\"} 50.0 1100\n" +
+                        "DistributionObject_Size{" + EXPECTED_INSTANCE_TAGS + ",quantile=\"0.75\"} 75.0 1100\n" +
+                        "DistributionObject_Size{" + EXPECTED_INSTANCE_TAGS + ",quantile=\"0.9\"} 90.0 1100\n" +
+                        "DistributionObject_Size{" + EXPECTED_INSTANCE_TAGS + ",quantile=\"0.95\"} 95.0 1100\n" +
+                        "DistributionObject_Size{" + EXPECTED_INSTANCE_TAGS + ",quantile=\"0.99\"} 99.0 1100\n" +
+                        "DistributionObject_Size_sum{" + EXPECTED_INSTANCE_TAGS + "} 4950.0 1100\n" +
+                        "DistributionObject_Size_count{" + EXPECTED_INSTANCE_TAGS + "} 100.0 1100\n" +
+                        "#TYPE ReportCollector_LogErrors_Count gauge\n" +
+                        "ReportCollector_LogErrors_Count{" + EXPECTED_INSTANCE_TAGS + "} 0.0 1100\n" +
+                        "#TYPE ReportCollector_NumMetrics gauge\n" +
+                        "ReportCollector_NumMetrics{" + EXPECTED_INSTANCE_TAGS + "} 3\n");
+
+        for (int i = 0; i < 10; i++) {
+            distributionObject.getLatency().add(new Duration(1, TimeUnit.SECONDS));
+            distributionObject.getSize().add(1000);
+        }
+        bucketIdProvider.incrementBucket();
+
+        response = client.execute(
+                prepareGet().setUri(uriFor("/metrics")).build(),
+                createStringResponseHandler());
+
+        assertEquals(response.getStatusCode(), 200);
+        assertEquals(response.getBody(),
+                "#TYPE DistributionObject_Latency histogram\n" +
+                        "DistributionObject_Latency_bucket{" + EXPECTED_INSTANCE_TAGS + ",le=\"0.01\"} 11.0 1200\n" +
+                        "DistributionObject_Latency_bucket{" + EXPECTED_INSTANCE_TAGS + ",le=\"0.1\"} 100.0 1200\n" +
+                        "DistributionObject_Latency_bucket{" + EXPECTED_INSTANCE_TAGS + ",le=\"1.0\"} 110.0 1200\n" +
+                        "DistributionObject_Latency_bucket{" + EXPECTED_INSTANCE_TAGS + ",le=\"+Inf\"} 110.0 1200\n" +
+                        "DistributionObject_Latency_sum{" + EXPECTED_INSTANCE_TAGS + "} 14.95 1200\n" +
+                        "DistributionObject_Latency_count{" + EXPECTED_INSTANCE_TAGS + "} 110.0 1200\n" +
+                        "#TYPE DistributionObject_Size summary\n" +
+                        "DistributionObject_Size{" + EXPECTED_INSTANCE_TAGS + ",quantile=\"0.5\"} 1000.0 1200\n" +
+                        "DistributionObject_Size{" + EXPECTED_INSTANCE_TAGS + ",quantile=\"0.75\"} 1000.0 1200\n" +
+                        "DistributionObject_Size{" + EXPECTED_INSTANCE_TAGS + ",quantile=\"0.9\"} 1000.0 1200\n" +
+                        "DistributionObject_Size{" + EXPECTED_INSTANCE_TAGS + ",quantile=\"0.95\"} 1000.0 1200\n" +
+                        "DistributionObject_Size{" + EXPECTED_INSTANCE_TAGS + ",quantile=\"0.99\"} 1000.0 1200\n" +
+                        "DistributionObject_Size_sum{" + EXPECTED_INSTANCE_TAGS + "} 14950.0 1200\n" +
+                        "DistributionObject_Size_count{" + EXPECTED_INSTANCE_TAGS + "} 110.0 1200\n" +
+                        "#TYPE ReportCollector_LogErrors_Count gauge\n" +
+                        "ReportCollector_LogErrors_Count{" + EXPECTED_INSTANCE_TAGS + "} 0.0 1200\n" +
+                        "#TYPE ReportCollector_NumMetrics gauge\n" +
+                        "ReportCollector_NumMetrics{" + EXPECTED_INSTANCE_TAGS + "} 3\n");
+    }
+
     private static class TestingValue
     {
         @Override
@@ -699,6 +849,26 @@ public class TestReportingPrometheusModule
         }
     }
 
+    private static class DistributionObject
+    {
+        private final TimeStat latency = new TimeStat();
+        private final DistributionStat size = new DistributionStat();
+
+        @Nested
+        @PrometheusHistogram({0.01, 0.1, 1})
+        public TimeStat getLatency()
+        {
+            return latency;
+        }
+
+        @Nested
+        @PrometheusSummary
+        public DistributionStat getSize()
+        {
+            return size;
+        }
+    }
+
     private Injector createServer(Module module)
     {
         Injector injector;
@@ -18,11 +18,9 @@ package com.proofpoint.reporting;
 import javax.annotation.Nullable;
 import javax.management.MBeanException;
 import javax.management.ReflectionException;
-import java.lang.reflect.Method;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.proofpoint.reporting.PrometheusBeanAttribute.ValueAndTimestamp.valueAndTimestamp;
-import static com.proofpoint.reporting.ReflectionUtils.invoke;
 import static com.proofpoint.reporting.SimplePrometheusValue.simplePrometheusValue;
 import static java.util.Objects.requireNonNull;
 
@@ -30,9 +28,9 @@ class BooleanPrometheusBeanAttribute implements PrometheusBeanAttribute
 {
     private final Object target;
     private final String name;
-    private final Method getter;
+    private final GetterHandle getter;
 
-    BooleanPrometheusBeanAttribute(String name, Object target, Method getter)
+    BooleanPrometheusBeanAttribute(String name, Object target, GetterHandle getter)
     {
         this.name = requireNonNull(name, "name is null");
         this.target = requireNonNull(target, "target is null");
@@ -49,7 +47,7 @@ class BooleanPrometheusBeanAttribute implements PrometheusBeanAttribute
     public ValueAndTimestamp getValue(@Nullable Object target)
             throws MBeanException, ReflectionException
     {
-        Boolean value = (Boolean) invoke(firstNonNull(target, this.target), getter);
+        Boolean value = (Boolean) getter.invoke(firstNonNull(target, this.target));
         if (value == null) {
             return null;
         }
@@ -18,19 +18,17 @@ package com.proofpoint.reporting;
 import javax.annotation.Nullable;
 import javax.management.MBeanException;
 import javax.management.ReflectionException;
-import java.lang.reflect.Method;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
-import static com.proofpoint.reporting.ReflectionUtils.invoke;
 import static java.util.Objects.requireNonNull;
 
 class BooleanReportedBeanAttribute implements ReportedBeanAttribute
 {
     private final Object target;
     private final String name;
-    private final Method getter;
+    private final GetterHandle getter;
 
-    BooleanReportedBeanAttribute(String name, Object target, Method getter)
+    BooleanReportedBeanAttribute(String name, Object target, GetterHandle getter)
     {
         this.name = requireNonNull(name, "name is null");
         this.target = requireNonNull(target, "target is null");
@@ -47,7 +45,7 @@ class BooleanReportedBeanAttribute implements ReportedBeanAttribute
     public Object getValue(@Nullable Object target)
             throws MBeanException, ReflectionException
     {
-        Boolean value = (Boolean) invoke(firstNonNull(target, this.target), getter);
+        Boolean value = (Boolean) getter.invoke(firstNonNull(target, this.target));
         if (value == null) {
             return null;
         }
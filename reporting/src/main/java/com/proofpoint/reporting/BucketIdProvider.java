@@ -21,6 +21,16 @@ public interface BucketIdProvider
 {
     BucketId get();
 
+    /**
+     * Returns the id of the current bucket. Implementations should override
+     * this if the id can be computed more cheaply than by {@link #get()}, as it
+     * is called on every update of a {@link Bucketed} stat.
+     */
+    default int getCurrentId()
+    {
+        return get().getId();
+    }
+
     @AutoValue
     abstract class BucketId
     {
@@ -18,57 +18,125 @@ package com.proofpoint.reporting;
 import com.google.auto.value.AutoValue;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
 import com.proofpoint.reporting.BucketIdProvider.BucketId;
 
 import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.ObjLongConsumer;
 
 import static com.proofpoint.reporting.BucketIdProvider.BucketId.bucketId;
 import static com.proofpoint.reporting.Bucketed.BucketInfo.bucketInfo;
 
+/**
+ * Base class for stats which report values accumulated over a bucket, such as
+ * a minute, of time.
+ * <p>
+ * The current and previous buckets are held in an immutable state which is
+ * replaced by compare-and-set when the bucket id changes, so updates do not
+ * take any locks. Functions passed to {@link #applyToCurrentBucket(Function)}
+ * may therefore run concurrently and must update the bucket in a thread-safe
+ * manner. An update racing with a bucket rotation may be applied to the bucket
+ * which has just become the previous bucket.
+ */
 public abstract class Bucketed<T>
 {
     private static final BucketIdProvider INITIAL_BUCKET_ID_PROVIDER = () -> bucketId(-5, 0);
-    private BucketIdProvider bucketIdProvider = INITIAL_BUCKET_ID_PROVIDER;
-    private BucketId currentBucketId = bucketId(-10, 0);
-    private T previousBucket = null;
-    private T currentBucket = null;
+    private volatile BucketIdProvider bucketIdProvider = INITIAL_BUCKET_ID_PROVIDER;
+    private final AtomicReference<BucketState<T>> state = new AtomicReference<>(new BucketState<>(bucketId(-10, 0), null, null));
+    private volatile List<ObjLongConsumer<Object>> discardedBucketListeners = ImmutableList.of();
 
     protected abstract T createBucket(@Nullable T previousBucket);
 
-    protected final synchronized <R> R applyToCurrentBucket(Function<T, R> function)
+    protected final <R> R applyToCurrentBucket(Function<T, R> function)
+    {
+        return function.apply(rotateBucketIfNeeded().currentBucket);
+    }
+
+    BucketInfo getPreviousBucket()
+    {
+        BucketState<T> state = rotateBucketIfNeeded();
+        return bucketInfo(state.previousBucket, state.bucketId);
+    }
+
+    /**
+     * Registers a function to be called with each bucket when it is
+     * discarded, no longer being either the current or the previous bucket,
+     * and the bucket id under which it was, or would have been, the previous
+     * bucket. It is called on the thread which rotates the buckets, which may
+     * be recording into the stat, so it must not block.
+     */
+    synchronized void addDiscardedBucketListener(ObjLongConsumer<Object> listener)
     {
-        rotateBucketIfNeeded();
-        return function.apply(currentBucket);
+        discardedBucketListeners = ImmutableList.<ObjLongConsumer<Object>>builder()
+                .addAll(discardedBucketListeners)
+                .add(listener)
+                .build();
     }
 
-    @SuppressWarnings("UnusedDeclaration") // Called via reflection
-    private synchronized BucketInfo getPreviousBucket()
+    final void notifyDiscardedBucketListeners(@Nullable Object bucket, long bucketId)
     {
-        rotateBucketIfNeeded();
-        return bucketInfo(previousBucket, currentBucketId);
+        if (bucket != null) {
+            for (ObjLongConsumer<Object> listener : discardedBucketListeners) {
+                listener.accept(bucket, bucketId);
+            }
+        }
     }
 
     @VisibleForTesting
-    public synchronized void setBucketIdProvider(BucketIdProvider bucketIdProvider)
+    public void setBucketIdProvider(BucketIdProvider bucketIdProvider)
     {
         this.bucketIdProvider = bucketIdProvider;
-        currentBucketId = bucketIdProvider.get();
-        previousBucket = createBucket(null);
-        currentBucket = createBucket(previousBucket);
+        T previousBucket = createBucket(null);
+        state.set(new BucketState<>(bucketIdProvider.get(), previousBucket, createBucket(previousBucket)));
     }
 
-    private void rotateBucketIfNeeded()
+    private BucketState<T> rotateBucketIfNeeded()
     {
-        BucketId bucketId = bucketIdProvider.get();
-        if (bucketId.getId() != currentBucketId.getId()) {
-            if (currentBucketId.getId() + 1 == bucketId.getId()) {
-                previousBucket = currentBucket;
+        while (true) {
+            BucketState<T> currentState = state.get();
+            BucketIdProvider bucketIdProvider = this.bucketIdProvider;
+            if (bucketIdProvider.getCurrentId() == currentState.bucketId.getId()) {
+                return currentState;
+            }
+
+            BucketId bucketId = bucketIdProvider.get();
+            if (bucketId.getId() == currentState.bucketId.getId()) {
+                return currentState;
+            }
+
+            T previousBucket;
+            boolean skipped = currentState.bucketId.getId() + 1 != bucketId.getId();
+            if (skipped) {
+                previousBucket = createBucket(currentState.currentBucket);
             }
             else {
-                previousBucket = createBucket(currentBucket);
+                previousBucket = currentState.currentBucket;
             }
-            currentBucketId = bucketId;
-            currentBucket = createBucket(previousBucket);
+            BucketState<T> newState = new BucketState<>(bucketId, previousBucket, createBucket(previousBucket));
+            if (state.compareAndSet(currentState, newState)) {
+                notifyDiscardedBucketListeners(currentState.previousBucket, currentState.bucketId.getId());
+                if (skipped) {
+                    notifyDiscardedBucketListeners(currentState.currentBucket, currentState.bucketId.getId() + 1);
+                }
+                return newState;
+            }
+            // Another thread rotated concurrently; use its buckets
+        }
+    }
+
+    private static class BucketState<T>
+    {
+        private final BucketId bucketId;
+        private final T previousBucket;
+        private final T currentBucket;
+
+        BucketState(BucketId bucketId, @Nullable T previousBucket, @Nullable T currentBucket)
+        {
+            this.bucketId = bucketId;
+            this.previousBucket = previousBucket;
+            this.currentBucket = currentBucket;
         }
     }
 
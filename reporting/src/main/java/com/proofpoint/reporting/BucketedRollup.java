@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+import com.proofpoint.reporting.Bucketed.BucketInfo;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.proofpoint.reporting.Bucketed.BucketInfo.bucketInfo;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The aggregate of a set of {@link Bucketed} stats of the same type, for a
+ * report collection method annotated with {@link Rollup}. Its previous
+ * bucket is the merge of the previous buckets of its members, computed once
+ * per bucket and set of members when first reported. The buckets its
+ * members discard are passed on to its own discarded bucket listeners.
+ */
+final class BucketedRollup
+        extends Bucketed<Object>
+{
+    private final Bucketed<?> prototype;
+    private final Set<Bucketed<?>> members = ConcurrentHashMap.newKeySet();
+    private final AtomicLong membersVersion = new AtomicLong();
+
+    @GuardedBy("this")
+    private BucketInfo merged;
+
+    @GuardedBy("this")
+    private long mergedMembersVersion;
+
+    BucketedRollup(Bucketed<?> prototype)
+    {
+        this.prototype = requireNonNull(prototype, "prototype is null");
+        checkArgument(prototype.createBucket(null) instanceof MergeableBucket,
+                "%s buckets do not implement MergeableBucket", prototype.getClass().getName());
+    }
+
+    void addMember(Bucketed<?> member)
+    {
+        if (members.add(member)) {
+            membersVersion.incrementAndGet();
+            member.addDiscardedBucketListener((bucket, bucketId) -> {
+                if (members.contains(member)) {
+                    notifyDiscardedBucketListeners(bucket, bucketId);
+                }
+            });
+        }
+    }
+
+    void removeMember(Bucketed<?> member)
+    {
+        if (members.remove(member)) {
+            membersVersion.incrementAndGet();
+        }
+    }
+
+    boolean isEmpty()
+    {
+        return members.isEmpty();
+    }
+
+    @Override
+    protected Object createBucket(@Nullable Object previousBucket)
+    {
+        return prototype.createBucket(null);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    synchronized BucketInfo getPreviousBucket()
+    {
+        long version = membersVersion.get();
+        MergeableBucket<Object> bucket = null;
+        BucketInfo result = null;
+        for (Bucketed<?> member : members) {
+            BucketInfo memberBucket = member.getPreviousBucket();
+            if (bucket == null) {
+                if (merged != null && merged.getBucketId().equals(memberBucket.getBucketId()) && mergedMembersVersion == version) {
+                    return merged;
+                }
+                bucket = (MergeableBucket<Object>) createBucket(null);
+                result = bucketInfo(bucket, memberBucket.getBucketId());
+            }
+            bucket.merge(memberBucket.getBucket());
+        }
+        if (result == null) {
+            return super.getPreviousBucket();
+        }
+        merged = result;
+        mergedMembersVersion = version;
+        return result;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Ordering;
+import com.proofpoint.reporting.ReportedBeanRegistry.RegistrationInfo;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import javax.annotation.Nullable;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The per-attribute work of a collector which doesn't change between
+ * collections, such as computing metric names, precomputed for every
+ * registered bean.
+ *
+ * <p>The plan is brought up to date when {@link #getEntries()} notices that
+ * beans have been registered or unregistered. Entries for registrations
+ * which are still present are reused, so only new registrations are
+ * compiled.
+ *
+ * @param <T> the type of the precomputed entries
+ */
+@ThreadSafe
+class CollectionPlan<T>
+{
+    private final ReportedBeanRegistry registry;
+    private final Function<RegistrationInfo, List<T>> compiler;
+    @Nullable
+    private final Ordering<? super T> ordering;
+
+    @GuardedBy("this")
+    private long generation = -1;
+
+    @GuardedBy("this")
+    private Map<RegistrationInfo, List<T>> compiled = new IdentityHashMap<>();
+
+    @GuardedBy("this")
+    private List<T> entries = ImmutableList.of();
+
+    /**
+     * @param compiler Computes the entries for the attributes of a
+     * registered bean
+     */
+    CollectionPlan(ReportedBeanRegistry registry, Function<RegistrationInfo, List<T>> compiler)
+    {
+        this.registry = requireNonNull(registry, "registry is null");
+        this.compiler = requireNonNull(compiler, "compiler is null");
+        ordering = null;
+    }
+
+    /**
+     * @param compiler Computes the entries for the attributes of a
+     * registered bean
+     * @param comparator The order of the entries returned by
+     * {@link #getEntries()}. Entries which compare equal stay in registration
+     * order.
+     */
+    CollectionPlan(ReportedBeanRegistry registry, Function<RegistrationInfo, List<T>> compiler, Comparator<? super T> comparator)
+    {
+        this.registry = requireNonNull(registry, "registry is null");
+        this.compiler = requireNonNull(compiler, "compiler is null");
+        ordering = Ordering.from(requireNonNull(comparator, "comparator is null"));
+    }
+
+    synchronized List<T> getEntries()
+    {
+        long currentGeneration = registry.getGeneration();
+        if (currentGeneration != generation) {
+            Map<RegistrationInfo, List<T>> newCompiled = new IdentityHashMap<>();
+            ImmutableList.Builder<T> builder = ImmutableList.builder();
+            for (RegistrationInfo registrationInfo : registry.getReportedBeans()) {
+                List<T> registrationEntries = compiled.get(registrationInfo);
+                if (registrationEntries == null) {
+                    registrationEntries = compiler.apply(registrationInfo);
+                }
+                newCompiled.put(registrationInfo, registrationEntries);
+                builder.addAll(registrationEntries);
+            }
+            compiled = newCompiled;
+            if (ordering == null) {
+                entries = builder.build();
+            }
+            else {
+                entries = ordering.immutableSortedCopy(builder.build());
+            }
+            generation = currentGeneration;
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * How the distribution stats under a getter or report collection method are
+ * exposed to Prometheus, as requested by {@link PrometheusSummary} or
+ * {@link PrometheusHistogram}.
+ */
+final class DistributionExposition
+{
+    private static final DistributionExposition SUMMARY = new DistributionExposition(null);
+
+    @Nullable
+    private final double[] bucketUpperBounds;
+
+    private DistributionExposition(@Nullable double[] bucketUpperBounds)
+    {
+        this.bucketUpperBounds = bucketUpperBounds;
+    }
+
+    /**
+     * @return the exposition requested by the method's annotations, or null
+     * if there is none
+     */
+    @Nullable
+    static DistributionExposition forMethod(Method method)
+    {
+        PrometheusSummary summary = method.getAnnotation(PrometheusSummary.class);
+        PrometheusHistogram histogram = method.getAnnotation(PrometheusHistogram.class);
+        checkArgument(summary == null || histogram == null, "%s has both @PrometheusSummary and @PrometheusHistogram", method);
+
+        if (summary != null) {
+            return SUMMARY;
+        }
+        if (histogram != null) {
+            double[] bucketUpperBounds = histogram.value().clone();
+            for (int i = 0; i < bucketUpperBounds.length; i++) {
+                checkArgument(!Double.isNaN(bucketUpperBounds[i]) && !Double.isInfinite(bucketUpperBounds[i]),
+                        "%s @PrometheusHistogram bucket upper bounds must be finite", method);
+                checkArgument(i == 0 || bucketUpperBounds[i - 1] < bucketUpperBounds[i],
+                        "%s @PrometheusHistogram bucket upper bounds must be in increasing order", method);
+            }
+            return new DistributionExposition(bucketUpperBounds);
+        }
+        return null;
+    }
+
+    boolean isHistogram()
+    {
+        return bucketUpperBounds != null;
+    }
+
+    double[] getBucketUpperBounds()
+    {
+        checkState(bucketUpperBounds != null, "not a histogram");
+        return bucketUpperBounds;
+    }
+}
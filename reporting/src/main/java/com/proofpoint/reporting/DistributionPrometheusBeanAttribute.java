@@ -0,0 +1,157 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+import com.proofpoint.reporting.Bucketed.BucketInfo;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.management.MBeanException;
+import javax.management.ReflectionException;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.proofpoint.reporting.DistributionPrometheusValue.histogramPrometheusValue;
+import static com.proofpoint.reporting.DistributionPrometheusValue.summaryPrometheusValue;
+import static com.proofpoint.reporting.PrometheusBeanAttribute.ValueAndTimestamp.valueAndTimestamp;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reports the {@link ReportedDistribution} buckets of a {@link Bucketed}
+ * stat as a single Prometheus summary or histogram.
+ * <p>
+ * Prometheus requires the counts and sum to be cumulative. Once the stat
+ * has been scraped, the stat hands each bucket it discards to the next
+ * scrape, which adds it to running totals. A scrape reports those totals
+ * plus the previous bucket. The recording threads which rotate the stat
+ * neither take a lock nor traverse a bucket. Buckets discarded more than
+ * 16 bucket intervals after the last scrape are left out of the totals, so
+ * a stat which stops being scraped stops holding buckets.
+ */
+class DistributionPrometheusBeanAttribute implements PrometheusBeanAttribute
+{
+    private static final int MAX_PENDING_INTERVALS = 16;
+    private static final long NOT_SCRAPED = Long.MIN_VALUE;
+
+    private final Bucketed<?> holder;
+    private final DistributionExposition exposition;
+    private final Queue<PendingBucket> pendingBuckets = new ConcurrentLinkedQueue<>();
+    private volatile long scrapedBucketId = NOT_SCRAPED;
+
+    @GuardedBy("this")
+    private Totals totals;
+
+    DistributionPrometheusBeanAttribute(Bucketed<?> holder, DistributionExposition exposition)
+    {
+        this.holder = requireNonNull(holder, "holder is null");
+        this.exposition = requireNonNull(exposition, "exposition is null");
+        totals = new Totals(0, 0, new double[exposition.isHistogram() ? exposition.getBucketUpperBounds().length : 0]);
+        holder.addDiscardedBucketListener(this::bucketDiscarded);
+    }
+
+    private void bucketDiscarded(Object bucket, long bucketId)
+    {
+        long scrapedBucketId = this.scrapedBucketId;
+        if (scrapedBucketId == NOT_SCRAPED || bucketId - scrapedBucketId > MAX_PENDING_INTERVALS) {
+            return;
+        }
+        pendingBuckets.add(new PendingBucket((ReportedDistribution) bucket, bucketId));
+    }
+
+    /**
+     * Adds the pending buckets from before a previous bucket to the totals.
+     * A pending bucket with the previous bucket's id was discarded since the
+     * previous bucket was read, and is included in the scrape as the
+     * previous bucket, so it is left for the next scrape.
+     */
+    private synchronized Totals accumulateBefore(long previousBucketId)
+    {
+        scrapedBucketId = previousBucketId;
+        Iterator<PendingBucket> iterator = pendingBuckets.iterator();
+        while (iterator.hasNext()) {
+            PendingBucket pendingBucket = iterator.next();
+            if (pendingBucket.bucketId < previousBucketId) {
+                iterator.remove();
+                totals = totals.plus(pendingBucket.distribution, exposition);
+            }
+        }
+        return totals;
+    }
+
+    @Override
+    public String getName()
+    {
+        return "";
+    }
+
+    @Override
+    public ValueAndTimestamp getValue(@Nullable Object target)
+            throws MBeanException, ReflectionException
+    {
+        BucketInfo bucketInfo = ((Bucketed<?>) firstNonNull(target, holder)).getPreviousBucket();
+        ReportedDistribution distribution = (ReportedDistribution) bucketInfo.getBucket();
+        Totals result = accumulateBefore(bucketInfo.getBucketId().getId()).plus(distribution, exposition);
+
+        PrometheusValue value;
+        if (exposition.isHistogram()) {
+            value = histogramPrometheusValue(exposition.getBucketUpperBounds(), result.cumulativeCounts, result.sum, result.count);
+        }
+        else {
+            value = summaryPrometheusValue(distribution.getQuantileValues(), result.sum, result.count);
+        }
+        return valueAndTimestamp(value, bucketInfo.getBucketId().getTimestamp());
+    }
+
+    private static class PendingBucket
+    {
+        private final ReportedDistribution distribution;
+        private final long bucketId;
+
+        PendingBucket(ReportedDistribution distribution, long bucketId)
+        {
+            this.distribution = distribution;
+            this.bucketId = bucketId;
+        }
+    }
+
+    private static class Totals
+    {
+        private final double count;
+        private final double sum;
+        private final double[] cumulativeCounts;
+
+        Totals(double count, double sum, double[] cumulativeCounts)
+        {
+            this.count = count;
+            this.sum = sum;
+            this.cumulativeCounts = cumulativeCounts;
+        }
+
+        Totals plus(ReportedDistribution distribution, DistributionExposition exposition)
+        {
+            double[] newCounts = cumulativeCounts.clone();
+            if (exposition.isHistogram()) {
+                double[] counts = distribution.getCumulativeCounts(exposition.getBucketUpperBounds());
+                for (int i = 0; i < newCounts.length; i++) {
+                    newCounts[i] += counts[i];
+                }
+            }
+            return new Totals(count + distribution.getValueCount(), sum + distribution.getValueSum(), newCounts);
+        }
+    }
+}
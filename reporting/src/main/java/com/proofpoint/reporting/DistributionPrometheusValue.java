@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+import javax.annotation.Nullable;
+import java.io.BufferedWriter;
+import java.io.IOException;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * A Prometheus summary or cumulative histogram. Written as the samples of
+ * a single metric family.
+ */
+class DistributionPrometheusValue
+        implements PrometheusValue
+{
+    private final boolean histogram;
+    private final double[] labelValues;
+    private final double[] values;
+    private final double sum;
+    private final double count;
+
+    private DistributionPrometheusValue(boolean histogram, double[] labelValues, double[] values, double sum, double count)
+    {
+        this.histogram = histogram;
+        this.labelValues = labelValues;
+        this.values = values;
+        this.sum = sum;
+        this.count = count;
+    }
+
+    /**
+     * @param quantileValues The values at each of {@link ReportedDistribution#QUANTILES}
+     */
+    static PrometheusValue summaryPrometheusValue(double[] quantileValues, double sum, double count)
+    {
+        return new DistributionPrometheusValue(false, ReportedDistribution.QUANTILES, quantileValues, sum, count);
+    }
+
+    /**
+     * @param cumulativeCounts The number of values less than or equal to each
+     * of the upper bounds
+     */
+    static PrometheusValue histogramPrometheusValue(double[] upperBounds, double[] cumulativeCounts, double sum, double count)
+    {
+        return new DistributionPrometheusValue(true, upperBounds, cumulativeCounts, sum, count);
+    }
+
+    @Override
+    public String getType()
+    {
+        return histogram ? "histogram" : "summary";
+    }
+
+    @Override
+    public void writeMetric(BufferedWriter writer, String name, String labels, @Nullable Long timestamp)
+            throws IOException
+    {
+        String sampleName = histogram ? name + "_bucket" : name;
+        for (int i = 0; i < values.length; i++) {
+            writeSample(writer, sampleName, labels, Double.toString(labelValues[i]), values[i], timestamp);
+        }
+        if (histogram) {
+            writeSample(writer, sampleName, labels, "+Inf", count, timestamp);
+        }
+        writeSample(writer, name + "_sum", labels, null, sum, timestamp);
+        writeSample(writer, name + "_count", labels, null, count, timestamp);
+    }
+
+    @Override
+    public void writeProtobufMetric(PrometheusProtobufWriter writer)
+    {
+        if (histogram) {
+            writer.writeHistogram(labelValues, values, sum, count);
+        }
+        else {
+            writer.writeSummary(labelValues, values, sum, count);
+        }
+    }
+
+    private void writeSample(BufferedWriter writer, String name, String labels, @Nullable String labelValue, double value, @Nullable Long timestamp)
+            throws IOException
+    {
+        writer.write(name);
+        if (labelValue != null) {
+            writer.append('{');
+            writer.write(labels);
+            if (!labels.isEmpty()) {
+                writer.append(',');
+            }
+            writer.write(histogram ? "le" : "quantile");
+            writer.append("=\"");
+            writer.write(labelValue);
+            writer.append("\"}");
+        }
+        else if (!labels.isEmpty()) {
+            writer.append('{');
+            writer.write(labels);
+            writer.append('}');
+        }
+        writer.append(' ');
+        writer.write(Double.toString(value));
+        if (timestamp != null) {
+            writer.append(' ');
+            writer.write(Long.toString(NANOSECONDS.toMillis(timestamp)));
+        }
+        writer.append('\n');
+    }
+}
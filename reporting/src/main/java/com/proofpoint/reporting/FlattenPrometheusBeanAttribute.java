@@ -17,17 +17,15 @@ package com.proofpoint.reporting;
 
 import javax.management.MBeanException;
 import javax.management.ReflectionException;
-import java.lang.reflect.Method;
 
-import static com.proofpoint.reporting.ReflectionUtils.invoke;
 
 class FlattenPrometheusBeanAttribute implements PrometheusBeanAttribute
 {
-    private final Method flattenGetter;
+    private final GetterHandle flattenGetter;
     private final PrometheusBeanAttribute delegate;
     private final String name;
 
-    FlattenPrometheusBeanAttribute(Method flattenGetter, PrometheusBeanAttribute delegate)
+    FlattenPrometheusBeanAttribute(GetterHandle flattenGetter, PrometheusBeanAttribute delegate)
     {
         this.flattenGetter = flattenGetter;
         this.delegate = delegate;
@@ -45,7 +43,7 @@ class FlattenPrometheusBeanAttribute implements PrometheusBeanAttribute
             throws MBeanException, ReflectionException
     {
         if (target != null) {
-            target = invoke(target, flattenGetter);
+            target = flattenGetter.invoke(target);
         }
         return delegate.getValue(target);
     }
@@ -17,17 +17,15 @@ package com.proofpoint.reporting;
 
 import javax.management.MBeanException;
 import javax.management.ReflectionException;
-import java.lang.reflect.Method;
 
-import static com.proofpoint.reporting.ReflectionUtils.invoke;
 
 class FlattenReportedBeanAttribute implements ReportedBeanAttribute
 {
-    private final Method flattenGetter;
+    private final GetterHandle flattenGetter;
     private final ReportedBeanAttribute delegate;
     private final String name;
 
-    FlattenReportedBeanAttribute(Method flattenGetter, ReportedBeanAttribute delegate)
+    FlattenReportedBeanAttribute(GetterHandle flattenGetter, ReportedBeanAttribute delegate)
     {
         this.flattenGetter = flattenGetter;
         this.delegate = delegate;
@@ -45,7 +43,7 @@ class FlattenReportedBeanAttribute implements ReportedBeanAttribute
             throws MBeanException, ReflectionException
     {
         if (target != null) {
-            target = invoke(target, flattenGetter);
+            target = flattenGetter.invoke(target);
         }
         return delegate.getValue(target);
     }
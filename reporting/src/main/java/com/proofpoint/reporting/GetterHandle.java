@@ -0,0 +1,213 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import javax.annotation.Nullable;
+import javax.management.MBeanException;
+import javax.management.ReflectionException;
+import javax.management.RuntimeErrorException;
+import javax.management.RuntimeOperationsException;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodHandles.Lookup;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.function.Function;
+
+import static java.lang.invoke.MethodType.methodType;
+import static java.lang.reflect.Modifier.isPublic;
+import static java.lang.reflect.Modifier.isStatic;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A getter method of a reported or health attribute, prepared when the bean
+ * is registered. Equality is that of the method.
+ * <p>
+ * The getter is called through a {@link Function} generated with
+ * {@link LambdaMetafactory}, which the JIT inlines like a direct call,
+ * unlike a {@link MethodHandle} which is not a static constant. Getters
+ * which the generated function could not call, those of non-public classes
+ * or of classes not visible from this class's loader, are instead made
+ * accessible and called with {@link Method#invoke(Object, Object...)}.
+ * Either way, primitive values are returned boxed.
+ */
+final class GetterHandle
+{
+    private final Method method;
+    @Nullable
+    private final Function<Object, Object> accessor;
+
+    private GetterHandle(Method method)
+    {
+        this.method = requireNonNull(method, "method is null");
+        accessor = generateAccessor(method);
+        if (accessor == null) {
+            method.setAccessible(true);
+        }
+    }
+
+    static GetterHandle getterHandle(Method method)
+    {
+        return new GetterHandle(method);
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> generateAccessor(Method method)
+    {
+        Class<?> declaringClass = method.getDeclaringClass();
+        if (isStatic(method.getModifiers()) || !isPublic(method.getModifiers()) || !isPublic(declaringClass.getModifiers())
+                || !isVisible(declaringClass) || !isVisible(method.getReturnType())) {
+            return null;
+        }
+        try {
+            Lookup lookup = MethodHandles.lookup();
+            MethodHandle handle = lookup.unreflect(method);
+            CallSite callSite = LambdaMetafactory.metafactory(lookup, "apply", methodType(Function.class),
+                    methodType(Object.class, Object.class), handle, handle.type().wrap());
+            return (Function<Object, Object>) callSite.getTarget().invokeExact();
+        }
+        catch (Throwable ignored) {
+            // Fall back to reflection
+            return null;
+        }
+    }
+
+    private static boolean isVisible(Class<?> type)
+    {
+        if (type.isPrimitive()) {
+            return true;
+        }
+        try {
+            return Class.forName(type.getName(), false, GetterHandle.class.getClassLoader()) == type;
+        }
+        catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    Method getMethod()
+    {
+        return method;
+    }
+
+    @VisibleForTesting
+    boolean isGenerated()
+    {
+        return accessor != null;
+    }
+
+    Object invoke(Object target)
+            throws MBeanException, ReflectionException
+    {
+        requireNonNull(target, "target is null");
+
+        if (accessor != null) {
+            try {
+                return accessor.apply(target);
+            }
+            catch (Throwable targetException) {
+                throw translateTargetException(targetException);
+            }
+        }
+
+        try {
+            return method.invoke(target);
+        }
+        catch (InvocationTargetException e) {
+            throw translateTargetException(e.getTargetException());
+        }
+        catch (RuntimeException e) {
+            throw new RuntimeOperationsException(e, "RuntimeException occurred while invoking " + toSimpleName());
+        }
+        catch (IllegalAccessException e) {
+            throw new ReflectionException(e, "IllegalAccessException occurred while invoking " + toSimpleName());
+        }
+        catch (Error err) {
+            throw new RuntimeErrorException(err, "Error occurred while invoking " + toSimpleName());
+        }
+    }
+
+    /**
+     * Throws the exception for one thrown by the getter itself, or returns
+     * it if unchecked.
+     */
+    private RuntimeErrorException translateTargetException(Throwable targetException)
+            throws MBeanException, ReflectionException
+    {
+        if (targetException instanceof RuntimeException) {
+            throw new MBeanException(
+                    (RuntimeException) targetException,
+                    "RuntimeException occurred while invoking " + toSimpleName());
+        }
+        else if (targetException instanceof ReflectionException) {
+            // allow ReflectionException to passthrough
+            throw (ReflectionException) targetException;
+        }
+        else if (targetException instanceof MBeanException) {
+            // allow MBeanException to passthrough
+            throw (MBeanException) targetException;
+        }
+        else if (targetException instanceof Exception) {
+            throw new MBeanException(
+                    (Exception) targetException,
+                    "Exception occurred while invoking " + toSimpleName());
+        }
+        else if (targetException instanceof Error) {
+            return new RuntimeErrorException(
+                    (Error) targetException,
+                    "Error occurred while invoking " + toSimpleName());
+        }
+        else {
+            return new RuntimeErrorException(
+                    new AssertionError(targetException),
+                    "Unexpected throwable occurred while invoking " + toSimpleName());
+        }
+    }
+
+    private String toSimpleName()
+    {
+        return method.getName() + "()";
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return method.equals(((GetterHandle) o).method);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return method.hashCode();
+    }
+
+    @Override
+    public String toString()
+    {
+        return method.toString();
+    }
+}
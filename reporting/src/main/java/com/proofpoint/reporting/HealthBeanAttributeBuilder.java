@@ -26,6 +26,7 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.proofpoint.reporting.FieldHealthBeanAttribute.fieldHealthBeanAttribute;
+import static com.proofpoint.reporting.GetterHandle.getterHandle;
 import static com.proofpoint.reporting.MethodHealthBeanAttribute.methodHealthBeanAttribute;
 import static com.proofpoint.reporting.ReflectionUtils.isValidGetter;
 import static java.util.Objects.requireNonNull;
@@ -145,7 +146,7 @@ class HealthBeanAttributeBuilder
                 type = Type.NORMAL;
             }
 
-            return ImmutableList.of(methodHealthBeanAttribute(description, type, target, concreteGetter));
+            return ImmutableList.of(methodHealthBeanAttribute(description, type, target, getterHandle(concreteGetter)));
         }
     }
 }
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.proofpoint.reporting.HealthBeanAttribute.Type;
+import com.proofpoint.units.Duration;
+
+import javax.annotation.Nullable;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.concurrent.GuardedBy;
+import javax.inject.Inject;
+import javax.management.MBeanException;
+import javax.management.ReflectionException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Runs the registered health checks in parallel in the background and caches
+ * their results, so that the liveness and rotation resources do not wait for
+ * slow checks.
+ * <p>
+ * Each check is run every {@code reporting.health-check.interval} on a pool
+ * of {@code reporting.health-check.threads} threads. A check which has not
+ * returned within {@code reporting.health-check.timeout} has its result
+ * replaced by a failure, without being interrupted, and is not run again
+ * until it returns. A newly registered check is run when its result is first
+ * asked for, and the caller waits for it for up to the timeout.
+ * <p>
+ * Checks of {@link java.util.concurrent.atomic.AtomicReference} fields only
+ * read the field, so they are evaluated on the calling thread each time
+ * their results are asked for, without being cached.
+ * <p>
+ * The latency, age, and number of timeouts of each check are reported under
+ * {@code HealthCheck} with the check's description as the {@code check} tag.
+ */
+class HealthChecker
+{
+    private final HealthBeanRegistry registry;
+    private final ReportExporter reportExporter;
+    private final Ticker ticker;
+    private final long intervalNanos;
+    private final long timeoutNanos;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService checkExecutor;
+    private final ConcurrentMap<String, CheckState> checks = new ConcurrentHashMap<>();
+
+    @Inject
+    HealthChecker(HealthBeanRegistry registry, ReportExporter reportExporter, ReportingConfig config)
+    {
+        this(registry, reportExporter, config, Ticker.systemTicker(),
+                newScheduler(),
+                newFixedThreadPool(config.getHealthCheckThreads(), new ThreadFactoryBuilder().setNameFormat("health-check-%s").setDaemon(true).build()));
+    }
+
+    @VisibleForTesting
+    HealthChecker(HealthBeanRegistry registry, ReportExporter reportExporter, ReportingConfig config, Ticker ticker,
+            ScheduledExecutorService scheduler, ExecutorService checkExecutor)
+    {
+        this.registry = requireNonNull(registry, "registry is null");
+        this.reportExporter = requireNonNull(reportExporter, "reportExporter is null");
+        this.ticker = requireNonNull(ticker, "ticker is null");
+        intervalNanos = config.getHealthCheckInterval().roundTo(NANOSECONDS);
+        timeoutNanos = config.getHealthCheckTimeout().roundTo(NANOSECONDS);
+        this.scheduler = requireNonNull(scheduler, "scheduler is null");
+        this.checkExecutor = requireNonNull(checkExecutor, "checkExecutor is null");
+    }
+
+    private static ScheduledExecutorService newScheduler()
+    {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+                new ThreadFactoryBuilder().setNameFormat("health-check-scheduler-%s").setDaemon(true).build());
+        // Timeouts are cancelled as each run completes, so drop them from the queue
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    @PostConstruct
+    public void start()
+    {
+        scheduler.scheduleWithFixedDelay(this::runChecks, 0, intervalNanos, NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        scheduler.shutdownNow();
+        checkExecutor.shutdownNow();
+    }
+
+    /**
+     * Gets the most recent result of each registered health check, waiting
+     * for up to the timeout for checks which have not yet completed a run.
+     */
+    Collection<Result> getResults()
+    {
+        Collection<CheckState> states = updateChecks();
+
+        boolean pending = false;
+        for (CheckState state : states) {
+            if (state.inline || state.result == null) {
+                state.start();
+                pending |= state.result == null;
+            }
+        }
+
+        ImmutableList.Builder<Result> results = ImmutableList.builder();
+        // A run which times out records a result, so the extra wait only matters once stopped
+        long deadline = ticker.read() + 2 * timeoutNanos;
+        for (CheckState state : states) {
+            if (pending) {
+                state.awaitFirstResult(deadline);
+            }
+            Result result = state.result;
+            if (result == null) {
+                result = new Result(state.attribute.getType(), state.description + " has not completed a check", 0, false);
+            }
+            results.add(result);
+        }
+        return results.build();
+    }
+
+    @VisibleForTesting
+    void runChecks()
+    {
+        for (CheckState state : updateChecks()) {
+            state.start();
+        }
+    }
+
+    private Collection<CheckState> updateChecks()
+    {
+        Map<String, HealthBeanAttribute> attributes = registry.getHealthAttributes();
+        if (isCurrent(attributes)) {
+            return checks.values();
+        }
+
+        synchronized (checks) {
+            for (Iterator<CheckState> iterator = checks.values().iterator(); iterator.hasNext(); ) {
+                CheckState state = iterator.next();
+                if (attributes.get(state.description) != state.attribute) {
+                    iterator.remove();
+                    reportExporter.unexportObject(state.stats);
+                }
+            }
+            for (Entry<String, HealthBeanAttribute> entry : attributes.entrySet()) {
+                if (!checks.containsKey(entry.getKey())) {
+                    CheckState state = new CheckState(entry.getKey(), entry.getValue());
+                    reportExporter.export(state.stats, false, "HealthCheck", ImmutableMap.of("check", entry.getKey()));
+                    checks.put(entry.getKey(), state);
+                }
+            }
+            return checks.values();
+        }
+    }
+
+    private boolean isCurrent(Map<String, HealthBeanAttribute> attributes)
+    {
+        if (attributes.size() != checks.size()) {
+            return false;
+        }
+        for (Entry<String, HealthBeanAttribute> entry : attributes.entrySet()) {
+            CheckState state = checks.get(entry.getKey());
+            if (state == null || state.attribute != entry.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The result of a run of a health check.
+     */
+    static final class Result
+    {
+        private final Type type;
+        @Nullable
+        private final String value;
+        private final long completedNanos;
+        private final boolean checked;
+
+        private Result(Type type, @Nullable String value, long completedNanos, boolean checked)
+        {
+            this.type = type;
+            this.value = value;
+            this.completedNanos = completedNanos;
+            this.checked = checked;
+        }
+
+        Type getType()
+        {
+            return type;
+        }
+
+        /**
+         * @return the failure message, or null if the check passed
+         */
+        @Nullable
+        String getValue()
+        {
+            return value;
+        }
+
+        /**
+         * @return false if the check has not completed a run
+         */
+        boolean isChecked()
+        {
+            return checked;
+        }
+    }
+
+    private final class CheckState
+    {
+        private final String description;
+        private final HealthBeanAttribute attribute;
+        private final boolean inline;
+        private final CheckStats stats = new CheckStats();
+        private final CountDownLatch firstResult = new CountDownLatch(1);
+        private volatile Result result;
+        @GuardedBy("this")
+        private CheckRun currentRun;
+
+        CheckState(String description, HealthBeanAttribute attribute)
+        {
+            this.description = description;
+            this.attribute = attribute;
+            inline = attribute instanceof FieldHealthBeanAttribute;
+        }
+
+        synchronized void start()
+        {
+            if (inline) {
+                CheckRun run = new CheckRun(ticker.read());
+                complete(evaluate(), run, ticker.read());
+                return;
+            }
+            if (currentRun != null) {
+                // Still running, possibly past its timeout
+                return;
+            }
+            CheckRun run = new CheckRun(ticker.read());
+            try {
+                run.future = checkExecutor.submit(() -> execute(run));
+                run.timeoutFuture = scheduler.schedule(() -> timeout(run), timeoutNanos, NANOSECONDS);
+            }
+            catch (RejectedExecutionException ignored) {
+                // Shutting down
+                return;
+            }
+            currentRun = run;
+        }
+
+        void awaitFirstResult(long deadline)
+        {
+            try {
+                firstResult.await(deadline - ticker.read(), NANOSECONDS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void execute(CheckRun run)
+        {
+            synchronized (this) {
+                if (currentRun != run) {
+                    return;
+                }
+                run.started = true;
+            }
+
+            String value = evaluate();
+            long now = ticker.read();
+            synchronized (this) {
+                currentRun = null;
+                run.timeoutFuture.cancel(false);
+                if (!run.timedOut) {
+                    complete(value, run, now);
+                }
+            }
+        }
+
+        @Nullable
+        private String evaluate()
+        {
+            try {
+                return attribute.getValue();
+            }
+            catch (MBeanException | ReflectionException | RuntimeException e) {
+                return e.toString();
+            }
+        }
+
+        private synchronized void timeout(CheckRun run)
+        {
+            if (currentRun != run) {
+                return;
+            }
+            run.timedOut = true;
+            // The check's code is not interrupted, as it may not expect to be
+            run.future.cancel(false);
+            if (!run.started) {
+                currentRun = null;
+            }
+            // Otherwise keep currentRun so the check isn't started again until it returns
+            stats.timeouts.incrementAndGet();
+            complete(description + " timed out after " + new Duration(timeoutNanos, NANOSECONDS).convertToMostSuccinctTimeUnit(), run, ticker.read());
+        }
+
+        @GuardedBy("this")
+        private void complete(@Nullable String value, CheckRun run, long now)
+        {
+            result = new Result(attribute.getType(), value, now, true);
+            stats.latencyNanos = now - run.startNanos;
+            firstResult.countDown();
+        }
+
+        private final class CheckStats
+        {
+            private final AtomicLong timeouts = new AtomicLong();
+            private volatile long latencyNanos = -1;
+
+            @Reported
+            public Double getLatency()
+            {
+                long latency = latencyNanos;
+                if (latency < 0) {
+                    return null;
+                }
+                return latency / 1.0e9;
+            }
+
+            @Reported
+            public Double getAge()
+            {
+                Result result = CheckState.this.result;
+                if (result == null) {
+                    return null;
+                }
+                return (ticker.read() - result.completedNanos) / 1.0e9;
+            }
+
+            @Reported
+            public long getTimeouts()
+            {
+                return timeouts.get();
+            }
+
+            @Reported
+            public boolean isFailed()
+            {
+                Result result = CheckState.this.result;
+                return result != null && result.value != null;
+            }
+        }
+    }
+
+    private static final class CheckRun
+    {
+        private final long startNanos;
+        @GuardedBy("CheckState.this")
+        private Future<?> future;
+        @GuardedBy("CheckState.this")
+        private Future<?> timeoutFuture;
+        @GuardedBy("CheckState.this")
+        private boolean started = false;
+        @GuardedBy("CheckState.this")
+        private boolean timedOut = false;
+
+        CheckRun(long startNanos)
+        {
+            this.startNanos = startNanos;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+/**
+ * A bucket of a {@link Bucketed} stat which can absorb the values of another
+ * bucket of the same stat type, for reporting the stats of a report
+ * collection method annotated with {@link Rollup}.
+ *
+ * @param <T> The type of the bucket
+ */
+public interface MergeableBucket<T>
+{
+    /**
+     * Adds the values recorded in another bucket to this one. The other
+     * bucket may still be receiving values, but must not be modified.
+     */
+    void merge(T other);
+}
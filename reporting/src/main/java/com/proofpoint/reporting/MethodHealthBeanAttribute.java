@@ -19,28 +19,26 @@ import com.google.auto.value.AutoValue;
 
 import javax.management.MBeanException;
 import javax.management.ReflectionException;
-import java.lang.reflect.Method;
 
-import static com.proofpoint.reporting.ReflectionUtils.invoke;
 
 @AutoValue
 abstract class MethodHealthBeanAttribute
         implements HealthBeanAttribute
 {
-    static MethodHealthBeanAttribute methodHealthBeanAttribute(String description, Type type, Object target, Method getter)
+    static MethodHealthBeanAttribute methodHealthBeanAttribute(String description, Type type, Object target, GetterHandle getter)
     {
         return new AutoValue_MethodHealthBeanAttribute(description, type, target, getter);
     }
 
     abstract Object getTarget();
 
-    abstract Method getGetter();
+    abstract GetterHandle getGetter();
 
     @Override
     public String getValue()
             throws MBeanException, ReflectionException
     {
-        Object value = invoke(getTarget(), getGetter());
+        Object value = getGetter().invoke(getTarget());
         if (value == null) {
             return null;
         }
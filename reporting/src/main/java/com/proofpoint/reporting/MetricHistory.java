@@ -0,0 +1,370 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.proofpoint.units.Duration;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.inject.Inject;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.Math.toIntExact;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Keeps the numeric values of the last {@code reporting.history.retention}
+ * of report collections in memory, so that recent metrics can be looked at
+ * when the reporting collector is unavailable.
+ * <p>
+ * Values are held off-heap in a fixed-size ring of columns, one column per
+ * collection and one row per series, so that recording a value is a single
+ * store into the current column. Each collection is recorded under a single
+ * lock, so queries only contend with recording once per collection. Series
+ * are given rows on first use, up to
+ * {@code reporting.history.max-series}; when all the rows are in use, the
+ * rows of series without a value for the whole retention period are reused.
+ * The values take {@code 8 * slots * max-series} bytes of direct memory,
+ * which may be at most {@link #MAX_SIZE_BYTES}.
+ */
+class MetricHistory
+{
+    static final long MAX_SIZE_BYTES = 256L * 1024 * 1024;
+
+    private final int slotCount;
+    private final int maxSeries;
+
+    @GuardedBy("this")
+    private DoubleBuffer values;
+    @GuardedBy("this")
+    private final long[] slotTimestamps;
+    @GuardedBy("this")
+    private long currentSlot = -1;
+
+    @GuardedBy("this")
+    private final Map<SeriesKey, Series> seriesMap = new HashMap<>();
+    @GuardedBy("this")
+    private Series[] seriesById = new Series[0];
+    @GuardedBy("this")
+    private long[] lastRecordedSlot = new long[0];
+    @GuardedBy("this")
+    private final Deque<Integer> freeIds = new ArrayDeque<>();
+    @GuardedBy("this")
+    private int nextId = 0;
+    @GuardedBy("this")
+    private long reclaimFailedSlot = -1;
+
+    @Inject
+    MetricHistory(ReportingConfig config)
+    {
+        this(toIntExact(slotCount(config.getHistoryRetention(), config.getBucketInterval())), config.getHistoryMaxSeries());
+    }
+
+    @VisibleForTesting
+    MetricHistory(int slotCount, int maxSeries)
+    {
+        checkArgument(slotCount >= 0, "slotCount is negative");
+        checkArgument(maxSeries > 0, "maxSeries must be positive");
+        checkArgument(sizeBytes(slotCount, maxSeries) <= MAX_SIZE_BYTES,
+                "history of %s slots of %s series is larger than %s bytes", slotCount, maxSeries, MAX_SIZE_BYTES);
+        this.slotCount = slotCount;
+        this.maxSeries = maxSeries;
+        slotTimestamps = new long[slotCount];
+    }
+
+    /**
+     * Gets the number of bytes of direct memory which a history with the
+     * specified configuration would use.
+     */
+    static long sizeBytes(Duration retention, Duration bucketInterval, int maxSeries)
+    {
+        return sizeBytes(slotCount(retention, bucketInterval), maxSeries);
+    }
+
+    private static long sizeBytes(long slotCount, int maxSeries)
+    {
+        return slotCount * maxSeries * Double.BYTES;
+    }
+
+    private static long slotCount(Duration retention, Duration bucketInterval)
+    {
+        return (long) Math.ceil(retention.getValue(MILLISECONDS) / bucketInterval.getValue(MILLISECONDS));
+    }
+
+    boolean isEnabled()
+    {
+        return slotCount > 0;
+    }
+
+    /**
+     * Records the values of a collection, replacing the oldest collection
+     * once the history is full. Values of series for which the history has
+     * no room are dropped.
+     */
+    synchronized void recordSlot(long timestampMillis, List<? extends Sample> samples)
+    {
+        if (!isEnabled()) {
+            return;
+        }
+        startSlot(timestampMillis);
+        int offset = column(currentSlot) * maxSeries;
+        for (int i = 0; i < samples.size(); i++) {
+            Sample sample = samples.get(i);
+            Series series = sample.getSeries();
+            if (series == null || series.removed) {
+                series = getSeries(sample.getName(), sample.getTags());
+                if (series == null) {
+                    continue;
+                }
+                sample.setSeries(series);
+            }
+            values.put(offset + series.id, sample.getValue());
+            lastRecordedSlot[series.id] = currentSlot;
+        }
+    }
+
+    @GuardedBy("this")
+    private void startSlot(long timestampMillis)
+    {
+        if (values == null) {
+            // Allocated on first use, so an unused history takes no memory
+            values = ByteBuffer.allocateDirect(toIntExact(sizeBytes(slotCount, maxSeries)))
+                    .order(ByteOrder.nativeOrder())
+                    .asDoubleBuffer();
+        }
+        ++currentSlot;
+        int column = column(currentSlot);
+        slotTimestamps[column] = timestampMillis;
+        int offset = column * maxSeries;
+        for (int id = 0; id < nextId; id++) {
+            values.put(offset + id, Double.NaN);
+        }
+    }
+
+    @GuardedBy("this")
+    @Nullable
+    private Series getSeries(String name, Map<String, String> tags)
+    {
+        SeriesKey key = new SeriesKey(name, tags);
+        Series series = seriesMap.get(key);
+        if (series != null) {
+            return series;
+        }
+
+        int id;
+        if (!freeIds.isEmpty()) {
+            id = freeIds.removeFirst();
+        }
+        else if (nextId < maxSeries) {
+            id = nextId++;
+            if (id >= seriesById.length) {
+                int length = Math.min(maxSeries, Math.max(16, seriesById.length * 2));
+                seriesById = Arrays.copyOf(seriesById, length);
+                lastRecordedSlot = Arrays.copyOf(lastRecordedSlot, length);
+            }
+            if (values != null) {
+                for (int column = 0; column < slotCount; column++) {
+                    values.put(column * maxSeries + id, Double.NaN);
+                }
+            }
+        }
+        else if (reclaimFailedSlot != currentSlot && reclaimStaleSeries()) {
+            id = freeIds.removeFirst();
+        }
+        else {
+            // Series only become stale when a slot starts, so don't scan again until then
+            reclaimFailedSlot = currentSlot;
+            return null;
+        }
+
+        series = new Series(key, id);
+        seriesMap.put(key, series);
+        seriesById[id] = series;
+        lastRecordedSlot[id] = currentSlot;
+        return series;
+    }
+
+    /**
+     * Gets the recorded values of the series whose names match a predicate
+     * for the collections between two times, inclusive.
+     */
+    synchronized List<SeriesHistory> query(Predicate<String> namePredicate, long fromMillis, long toMillis)
+    {
+        ImmutableList.Builder<SeriesHistory> builder = ImmutableList.builder();
+        if (values == null) {
+            return builder.build();
+        }
+
+        long firstSlot = Math.max(0, currentSlot - slotCount + 1);
+        for (Entry<SeriesKey, Series> entry : seriesMap.entrySet()) {
+            if (!namePredicate.test(entry.getKey().name)) {
+                continue;
+            }
+            int id = entry.getValue().id;
+            ImmutableMap.Builder<Long, Double> points = ImmutableMap.builder();
+            for (long slot = firstSlot; slot <= currentSlot; slot++) {
+                int column = column(slot);
+                long timestamp = slotTimestamps[column];
+                double value = values.get(column * maxSeries + id);
+                if (timestamp >= fromMillis && timestamp <= toMillis && !Double.isNaN(value)) {
+                    points.put(timestamp, value);
+                }
+            }
+            Map<Long, Double> builtPoints = points.build();
+            if (!builtPoints.isEmpty()) {
+                builder.add(new SeriesHistory(entry.getKey().name, entry.getKey().tags, builtPoints));
+            }
+        }
+        return builder.build();
+    }
+
+    @GuardedBy("this")
+    private boolean reclaimStaleSeries()
+    {
+        for (int id = 0; id < nextId; id++) {
+            Series series = seriesById[id];
+            if (series != null && currentSlot - lastRecordedSlot[id] >= slotCount) {
+                series.removed = true;
+                seriesMap.remove(series.key);
+                seriesById[id] = null;
+                freeIds.add(id);
+            }
+        }
+        return !freeIds.isEmpty();
+    }
+
+    private int column(long slot)
+    {
+        return (int) (slot % slotCount);
+    }
+
+    /**
+     * A value of a metric to record. The history gives each metric a
+     * series, which the sample keeps so that it is only looked up again
+     * once the history has removed it, which happens when it has not been
+     * recorded for the retention period.
+     */
+    interface Sample
+    {
+        String getName();
+
+        Map<String, String> getTags();
+
+        double getValue();
+
+        @Nullable
+        Series getSeries();
+
+        void setSeries(Series series);
+    }
+
+    static final class Series
+    {
+        private final SeriesKey key;
+        private final int id;
+        private volatile boolean removed = false;
+
+        private Series(SeriesKey key, int id)
+        {
+            this.key = key;
+            this.id = id;
+        }
+
+        boolean isRemoved()
+        {
+            return removed;
+        }
+    }
+
+    /**
+     * The recorded values of a series, keyed by collection time in
+     * milliseconds since the epoch.
+     */
+    static final class SeriesHistory
+    {
+        private final String name;
+        private final Map<String, String> tags;
+        private final Map<Long, Double> values;
+
+        private SeriesHistory(String name, Map<String, String> tags, Map<Long, Double> values)
+        {
+            this.name = name;
+            this.tags = tags;
+            this.values = values;
+        }
+
+        String getName()
+        {
+            return name;
+        }
+
+        Map<String, String> getTags()
+        {
+            return tags;
+        }
+
+        Map<Long, Double> getValues()
+        {
+            return values;
+        }
+    }
+
+    private static final class SeriesKey
+    {
+        private final String name;
+        private final Map<String, String> tags;
+
+        SeriesKey(String name, Map<String, String> tags)
+        {
+            this.name = requireNonNull(name, "name is null");
+            this.tags = requireNonNull(tags, "tags is null");
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            SeriesKey that = (SeriesKey) o;
+            return name.equals(that.name) && tags.equals(that.tags);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * name.hashCode() + tags.hashCode();
+        }
+    }
+}
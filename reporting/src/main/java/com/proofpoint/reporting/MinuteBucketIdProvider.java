@@ -16,45 +16,73 @@
 package com.proofpoint.reporting;
 
 import com.google.common.base.Ticker;
+import com.proofpoint.units.Duration;
 
 import javax.inject.Inject;
 import java.util.concurrent.TimeUnit;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.proofpoint.reporting.BucketIdProvider.BucketId.bucketId;
 import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
+/**
+ * Provides bucket ids for buckets of a fixed width, counted from the
+ * creation of the provider. The width defaults to one minute and is
+ * configured by {@link ReportingConfig#getBucketInterval()}.
+ */
 public class MinuteBucketIdProvider
     implements BucketIdProvider
 {
-    private static final long ONE_MINUTE_IN_NANOS = 60_000_000_000L;
+    private static final Duration ONE_MINUTE = new Duration(1, MINUTES);
     private final Ticker ticker;
     private final long initialValue;
+    private final long bucketNanos;
 
-    @Inject
     public MinuteBucketIdProvider()
     {
         this(Ticker.systemTicker());
     }
 
     public MinuteBucketIdProvider(Ticker ticker)
+    {
+        this(ticker, ONE_MINUTE);
+    }
+
+    @Inject
+    public MinuteBucketIdProvider(ReportingConfig reportingConfig)
+    {
+        this(Ticker.systemTicker(), reportingConfig.getBucketInterval());
+    }
+
+    public MinuteBucketIdProvider(Ticker ticker, Duration bucketInterval)
     {
         this.ticker = ticker;
         this.initialValue = ticker.read();
+        this.bucketNanos = bucketInterval.roundTo(NANOSECONDS);
+        checkArgument(bucketNanos > 0, "bucketInterval must be positive");
     }
 
     @Override
     public BucketId get()
     {
         long nanosSinceInitial = ticker.read() - initialValue;
-        int id = (int) (nanosSinceInitial / ONE_MINUTE_IN_NANOS);
-        long nanosSinceBoundary = nanosSinceInitial % ONE_MINUTE_IN_NANOS;
+        int id = (int) (nanosSinceInitial / bucketNanos);
+        long nanosSinceBoundary = nanosSinceInitial % bucketNanos;
         long timeAtBoundary = TimeUnit.MILLISECONDS.toNanos(currentTimeMillis()) - nanosSinceBoundary;
         return bucketId(id, timeAtBoundary);
     }
 
+    @Override
+    public int getCurrentId()
+    {
+        return (int) ((ticker.read() - initialValue) / bucketNanos);
+    }
+
     public long getLastSystemTimeMillis()
     {
-        long nanosSinceBoundary = (ticker.read() - initialValue) % ONE_MINUTE_IN_NANOS;
+        long nanosSinceBoundary = (ticker.read() - initialValue) % bucketNanos;
         return currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(nanosSinceBoundary);
     }
 }
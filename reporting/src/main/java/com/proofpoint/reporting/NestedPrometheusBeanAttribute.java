@@ -17,17 +17,15 @@ package com.proofpoint.reporting;
 
 import javax.management.MBeanException;
 import javax.management.ReflectionException;
-import java.lang.reflect.Method;
 
-import static com.proofpoint.reporting.ReflectionUtils.invoke;
 
 class NestedPrometheusBeanAttribute implements PrometheusBeanAttribute
 {
-    private final Method nestedGetter;
+    private final GetterHandle nestedGetter;
     private final PrometheusBeanAttribute delegate;
     private final String name;
 
-    NestedPrometheusBeanAttribute(String prefix, Method nestedGetter, PrometheusBeanAttribute delegate)
+    NestedPrometheusBeanAttribute(String prefix, GetterHandle nestedGetter, PrometheusBeanAttribute delegate)
     {
         this.nestedGetter = nestedGetter;
         this.delegate = delegate;
@@ -51,7 +49,7 @@ class NestedPrometheusBeanAttribute implements PrometheusBeanAttribute
             throws MBeanException, ReflectionException
     {
         if (target != null) {
-            target = invoke(target, nestedGetter);
+            target = nestedGetter.invoke(target);
         }
         return delegate.getValue(target);
     }
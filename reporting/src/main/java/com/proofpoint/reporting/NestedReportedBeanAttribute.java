@@ -17,17 +17,15 @@ package com.proofpoint.reporting;
 
 import javax.management.MBeanException;
 import javax.management.ReflectionException;
-import java.lang.reflect.Method;
 
-import static com.proofpoint.reporting.ReflectionUtils.invoke;
 
 class NestedReportedBeanAttribute implements ReportedBeanAttribute
 {
-    private final Method nestedGetter;
+    private final GetterHandle nestedGetter;
     private final ReportedBeanAttribute delegate;
     private final String name;
 
-    NestedReportedBeanAttribute(String prefix, Method nestedGetter, ReportedBeanAttribute delegate)
+    NestedReportedBeanAttribute(String prefix, GetterHandle nestedGetter, ReportedBeanAttribute delegate)
     {
         this.nestedGetter = nestedGetter;
         this.delegate = delegate;
@@ -45,7 +43,7 @@ class NestedReportedBeanAttribute implements ReportedBeanAttribute
             throws MBeanException, ReflectionException
     {
         if (target != null) {
-            target = invoke(target, nestedGetter);
+            target = nestedGetter.invoke(target);
         }
         return delegate.getValue(target);
     }
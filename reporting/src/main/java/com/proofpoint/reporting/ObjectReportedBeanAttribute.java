@@ -18,19 +18,17 @@ package com.proofpoint.reporting;
 import javax.annotation.Nullable;
 import javax.management.MBeanException;
 import javax.management.ReflectionException;
-import java.lang.reflect.Method;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
-import static com.proofpoint.reporting.ReflectionUtils.invoke;
 import static java.util.Objects.requireNonNull;
 
 class ObjectReportedBeanAttribute implements ReportedBeanAttribute
 {
     private final Object target;
     private final String name;
-    private final Method getter;
+    private final GetterHandle getter;
 
-    ObjectReportedBeanAttribute(String name, Object target, Method getter)
+    ObjectReportedBeanAttribute(String name, Object target, GetterHandle getter)
     {
         this.name = requireNonNull(name, "name is null");
         this.target = requireNonNull(target, "target is null");
@@ -47,6 +45,6 @@ class ObjectReportedBeanAttribute implements ReportedBeanAttribute
     public Object getValue(@Nullable Object target)
             throws MBeanException, ReflectionException
     {
-        return invoke(firstNonNull(target, this.target), getter);
+        return getter.invoke(firstNonNull(target, this.target));
     }
 }
\ No newline at end of file
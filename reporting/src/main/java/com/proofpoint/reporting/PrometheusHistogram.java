@@ -0,0 +1,44 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Exposes the distribution stats under the annotated getter or report
+ * collection method to Prometheus as cumulative histogram metrics instead of
+ * as a gauge per attribute. Each histogram has a running {@code _bucket}
+ * count for each of the upper bounds and for {@code +Inf}, along with a
+ * running {@code _sum} and {@code _count}.
+ * <p>
+ * The running totals only include reporting intervals which were scraped,
+ * so the scrape interval must not be longer than the reporting interval.
+ *
+ * @see ReportedDistribution
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface PrometheusHistogram
+{
+    /**
+     * The upper bounds of the histogram buckets, in increasing order. The
+     * bounds are in reported units, so are in seconds for time stats.
+     */
+    double[] value();
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map.Entry;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.proofpoint.reporting.ReportUtils.sanitizeLabelName;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Writes a stream of length-delimited {@code io.prometheus.client.MetricFamily}
+ * protobuf messages.
+ * <p>
+ * Messages are encoded into a reusable buffer. The length of a nested
+ * message is written in front of it once the message is complete, moving
+ * the message along if the length needs more than one byte. The buffer is
+ * written to the output stream after each metric family which brings it
+ * over {@link #FLUSH_THRESHOLD} bytes.
+ */
+final class PrometheusProtobufWriter
+{
+    static final String CONTENT_TYPE = "application/vnd.google.protobuf; proto=io.prometheus.client.MetricFamily; encoding=delimited";
+
+    private static final int FLUSH_THRESHOLD = 16 * 1024;
+    private static final int MAX_DEPTH = 4;
+
+    private static final int WIRE_TYPE_VARINT = 0;
+    private static final int WIRE_TYPE_FIXED64 = 1;
+    private static final int WIRE_TYPE_LENGTH_DELIMITED = 2;
+
+    // io.prometheus.client.MetricFamily
+    private static final int FAMILY_NAME = 1;
+    private static final int FAMILY_TYPE = 3;
+    private static final int FAMILY_METRIC = 4;
+
+    // io.prometheus.client.MetricType
+    private static final int TYPE_GAUGE = 1;
+    private static final int TYPE_SUMMARY = 2;
+    private static final int TYPE_UNTYPED = 3;
+    private static final int TYPE_HISTOGRAM = 4;
+
+    // io.prometheus.client.Metric
+    private static final int METRIC_LABEL = 1;
+    private static final int METRIC_GAUGE = 2;
+    private static final int METRIC_SUMMARY = 4;
+    private static final int METRIC_TIMESTAMP_MS = 6;
+    private static final int METRIC_HISTOGRAM = 7;
+
+    // io.prometheus.client.LabelPair
+    private static final int LABEL_NAME = 1;
+    private static final int LABEL_VALUE = 2;
+
+    // io.prometheus.client.Gauge
+    private static final int GAUGE_VALUE = 1;
+
+    // io.prometheus.client.Summary and io.prometheus.client.Histogram
+    private static final int SAMPLE_COUNT = 1;
+    private static final int SAMPLE_SUM = 2;
+    private static final int SUMMARY_QUANTILE = 3;
+    private static final int HISTOGRAM_BUCKET = 3;
+
+    // io.prometheus.client.Quantile
+    private static final int QUANTILE_QUANTILE = 1;
+    private static final int QUANTILE_VALUE = 2;
+
+    // io.prometheus.client.Bucket
+    private static final int BUCKET_CUMULATIVE_COUNT = 1;
+    private static final int BUCKET_UPPER_BOUND = 2;
+
+    @Nullable
+    private final OutputStream output;
+    private byte[] buffer = new byte[FLUSH_THRESHOLD * 2];
+    private int position = 0;
+    private final int[] messageStarts = new int[MAX_DEPTH];
+    private int depth = 0;
+
+    PrometheusProtobufWriter(OutputStream output)
+    {
+        this.output = requireNonNull(output, "output is null");
+    }
+
+    private PrometheusProtobufWriter()
+    {
+        output = null;
+    }
+
+    /**
+     * Encodes tags as the {@code label} fields of a {@code Metric} message,
+     * for passing to {@link #startMetric(byte[])}.
+     */
+    static byte[] encodeLabels(Iterable<Entry<String, String>> tags)
+    {
+        PrometheusProtobufWriter writer = new PrometheusProtobufWriter();
+        for (Entry<String, String> tag : tags) {
+            writer.startMessage(METRIC_LABEL);
+            writer.writeBytes(LABEL_NAME, sanitizeLabelName(tag.getKey()).getBytes(UTF_8));
+            writer.writeBytes(LABEL_VALUE, tag.getValue().getBytes(UTF_8));
+            writer.endMessage();
+        }
+        return Arrays.copyOf(writer.buffer, writer.position);
+    }
+
+    /**
+     * Starts a new metric family, ending the current one if there is one.
+     *
+     * @param name The UTF-8 encoded name of the metric family
+     * @param type The Prometheus metric type, as returned by {@link PrometheusValue#getType()}
+     */
+    void startMetricFamily(byte[] name, String type)
+            throws IOException
+    {
+        endMetricFamily();
+        messageStarts[depth++] = position;
+        reserveLength();
+        writeBytes(FAMILY_NAME, name);
+        writeTag(FAMILY_TYPE, WIRE_TYPE_VARINT);
+        writeVarint(metricType(type));
+    }
+
+    /**
+     * Starts a metric within the current metric family. The value is then
+     * written by one of the {@code write} methods, and the metric completed
+     * by {@link #endMetric(Long)}.
+     *
+     * @param labels The labels of the metric, as encoded by {@link #encodeLabels(Iterable)}
+     */
+    void startMetric(byte[] labels)
+    {
+        checkState(depth == 1, "not in a metric family");
+        startMessage(FAMILY_METRIC);
+        ensureCapacity(labels.length);
+        System.arraycopy(labels, 0, buffer, position, labels.length);
+        position += labels.length;
+    }
+
+    void writeGauge(double value)
+    {
+        startMessage(METRIC_GAUGE);
+        writeDouble(GAUGE_VALUE, value);
+        endMessage();
+    }
+
+    void writeSummary(double[] quantiles, double[] values, double sum, double count)
+    {
+        startMessage(METRIC_SUMMARY);
+        writeUInt64(SAMPLE_COUNT, (long) count);
+        writeDouble(SAMPLE_SUM, sum);
+        for (int i = 0; i < quantiles.length; i++) {
+            startMessage(SUMMARY_QUANTILE);
+            writeDouble(QUANTILE_QUANTILE, quantiles[i]);
+            writeDouble(QUANTILE_VALUE, values[i]);
+            endMessage();
+        }
+        endMessage();
+    }
+
+    void writeHistogram(double[] upperBounds, double[] cumulativeCounts, double sum, double count)
+    {
+        startMessage(METRIC_HISTOGRAM);
+        writeUInt64(SAMPLE_COUNT, (long) count);
+        writeDouble(SAMPLE_SUM, sum);
+        for (int i = 0; i < upperBounds.length; i++) {
+            startMessage(HISTOGRAM_BUCKET);
+            writeUInt64(BUCKET_CUMULATIVE_COUNT, (long) cumulativeCounts[i]);
+            writeDouble(BUCKET_UPPER_BOUND, upperBounds[i]);
+            endMessage();
+        }
+        endMessage();
+    }
+
+    /**
+     * @param timestamp The timestamp of the metric, in nanoseconds
+     */
+    void endMetric(@Nullable Long timestamp)
+    {
+        checkState(depth == 2, "not in a metric");
+        if (timestamp != null) {
+            writeTag(METRIC_TIMESTAMP_MS, WIRE_TYPE_VARINT);
+            writeVarint(NANOSECONDS.toMillis(timestamp));
+        }
+        endMessage();
+    }
+
+    /**
+     * Ends the current metric family, if there is one, and writes out
+     * everything buffered.
+     */
+    void flush()
+            throws IOException
+    {
+        endMetricFamily();
+        writeBuffer();
+        output.flush();
+    }
+
+    private void endMetricFamily()
+            throws IOException
+    {
+        if (depth == 0) {
+            return;
+        }
+        checkState(depth == 1, "metric not ended");
+        endMessage();
+        if (position >= FLUSH_THRESHOLD) {
+            writeBuffer();
+        }
+    }
+
+    private void writeBuffer()
+            throws IOException
+    {
+        output.write(buffer, 0, position);
+        position = 0;
+    }
+
+    private static int metricType(String type)
+    {
+        switch (type) {
+            case "gauge":
+                return TYPE_GAUGE;
+            case "summary":
+                return TYPE_SUMMARY;
+            case "histogram":
+                return TYPE_HISTOGRAM;
+            default:
+                return TYPE_UNTYPED;
+        }
+    }
+
+    private void startMessage(int field)
+    {
+        writeTag(field, WIRE_TYPE_LENGTH_DELIMITED);
+        messageStarts[depth++] = position;
+        reserveLength();
+    }
+
+    private void reserveLength()
+    {
+        // Assume the length fits in one byte; endMessage() makes room if it doesn't
+        ensureCapacity(1);
+        ++position;
+    }
+
+    private void endMessage()
+    {
+        int start = messageStarts[--depth];
+        int length = position - start - 1;
+        int lengthSize = varintSize(length);
+        if (lengthSize > 1) {
+            ensureCapacity(lengthSize - 1);
+            System.arraycopy(buffer, start + 1, buffer, start + lengthSize, length);
+            position += lengthSize - 1;
+        }
+        int end = position;
+        position = start;
+        writeVarint(length);
+        position = end;
+    }
+
+    private void writeBytes(int field, byte[] value)
+    {
+        writeTag(field, WIRE_TYPE_LENGTH_DELIMITED);
+        writeVarint(value.length);
+        ensureCapacity(value.length);
+        System.arraycopy(value, 0, buffer, position, value.length);
+        position += value.length;
+    }
+
+    private void writeUInt64(int field, long value)
+    {
+        writeTag(field, WIRE_TYPE_VARINT);
+        writeVarint(value);
+    }
+
+    private void writeDouble(int field, double value)
+    {
+        writeTag(field, WIRE_TYPE_FIXED64);
+        ensureCapacity(Long.BYTES);
+        long bits = Double.doubleToRawLongBits(value);
+        for (int i = 0; i < Long.BYTES; i++) {
+            buffer[position++] = (byte) bits;
+            bits >>>= 8;
+        }
+    }
+
+    private void writeTag(int field, int wireType)
+    {
+        writeVarint((field << 3) | wireType);
+    }
+
+    private void writeVarint(long value)
+    {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private static int varintSize(int value)
+    {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            ++size;
+            value >>>= 7;
+        }
+        return size;
+    }
+
+    private void ensureCapacity(int length)
+    {
+        if (position + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+        }
+    }
+}
@@ -18,10 +18,25 @@ package com.proofpoint.reporting;
 import javax.annotation.Nullable;
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.util.Map.Entry;
 
 interface PrometheusValue
 {
-    void writeMetric(BufferedWriter writer, String name, Iterable<Entry<String, String>> tags, @Nullable Long timestamp)
+    /**
+     * @return the Prometheus metric type, such as {@code gauge}
+     */
+    String getType();
+
+    /**
+     * @param labels The encoded labels of the sample, without the enclosing
+     * braces, as produced by {@link ReportUtils#encodeLabels(Iterable)}
+     */
+    void writeMetric(BufferedWriter writer, String name, String labels, @Nullable Long timestamp)
             throws IOException;
+
+    /**
+     * Writes the value of a metric in the Prometheus protobuf format, between
+     * {@link PrometheusProtobufWriter#startMetric(byte[])} and
+     * {@link PrometheusProtobufWriter#endMetric(Long)}.
+     */
+    void writeProtobufMetric(PrometheusProtobufWriter writer);
 }
@@ -16,14 +16,11 @@
 package com.proofpoint.reporting;
 
 import com.google.common.base.Ticker;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
-import com.google.common.cache.RemovalListener;
-import com.google.common.cache.RemovalNotification;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableMap.Builder;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.reflect.TypeToken;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 
 import javax.annotation.Nullable;
@@ -35,33 +32,74 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Supplier;
 
 import static com.google.common.base.CaseFormat.LOWER_CAMEL;
 import static com.google.common.base.CaseFormat.UPPER_CAMEL;
-import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Throwables.throwIfUnchecked;
+import static com.proofpoint.reporting.Rollup.ALL_KEY_VALUE;
 import static java.lang.reflect.Proxy.newProxyInstance;
+import static java.util.Collections.nCopies;
 import static java.util.Objects.requireNonNull;
-
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Creates report collections: proxies of interfaces whose methods return
+ * stat objects which are exported to the metrics reporting system.
+ * <p>
+ * A method with {@link Key} parameters creates and exports a separate stat
+ * for each set of key values, removing it when it has not been used for
+ * {@code reporting.collection.expiration}. To protect the reporting system
+ * from unbounded numbers of key values, a method has at most
+ * {@code reporting.collection.max-series} stats and all methods together at
+ * most {@code reporting.collection.max-total-series}. Once a limit has been
+ * reached, calls with new key values get an overflow stat with every key
+ * tagged {@value #OVERFLOW_KEY_VALUE}, and the number of rejected calls is
+ * reported as {@code RejectedKeys} under the method's name followed by
+ * {@code .Cardinality}. The overflow stat does not count towards the limits,
+ * and it and the rejected call count expire like any other stat. The limits
+ * are checked without blocking lookups of existing stats, so concurrent
+ * calls may briefly exceed them. Expired stats are looked for every quarter
+ * of the expiration. Until then, or until another method removes expired
+ * stats, new key values keep getting the overflow stat without taking any
+ * lock.
+ * <p>
+ * A method annotated with {@link Rollup} also reports, or reports only, its
+ * stats aggregated over some of its keys.
+ */
 public class ReportCollectionFactory
 {
-    private static final Object[] EMPTY_OBJECT_ARRAY = new Object[0];
+    static final String OVERFLOW_KEY_VALUE = "__other__";
+
+    private static final Set<Class<?>> VALUE_TYPES = ImmutableSet.of(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class, Float.class, Double.class);
     private static final Method OBJECT_EQUALS_METHOD;
     private static final Method OBJECT_HASH_CODE_METHOD;
     private static final Method OBJECT_TO_STRING_METHOD;
     private final Ticker ticker;
     private final ReportExporter reportExporter;
+    private final long expirationNanos;
+    private final long expirationCheckNanos;
+    private final long accessGranularityNanos;
+    private final int maxSeries;
+    private final int maxTotalSeries;
+    private final AtomicInteger totalSeries = new AtomicInteger();
+    // Incremented whenever expired stats are removed, so methods rejecting new keys check the limits again
+    private final AtomicInteger seriesRemovals = new AtomicInteger();
 
     static {
         try {
@@ -74,16 +112,31 @@ public class ReportCollectionFactory
         }
     }
 
-    @Inject
     public ReportCollectionFactory(ReportExporter reportExporter)
     {
-        this(reportExporter, Ticker.systemTicker());
+        this(reportExporter, new ReportingConfig());
+    }
+
+    @Inject
+    public ReportCollectionFactory(ReportExporter reportExporter, ReportingConfig config)
+    {
+        this(reportExporter, Ticker.systemTicker(), config);
     }
 
     protected ReportCollectionFactory(ReportExporter reportExporter, Ticker ticker)
+    {
+        this(reportExporter, ticker, new ReportingConfig());
+    }
+
+    protected ReportCollectionFactory(ReportExporter reportExporter, Ticker ticker, ReportingConfig config)
     {
         this.reportExporter = reportExporter;
         this.ticker = ticker;
+        expirationNanos = config.getCollectionExpiration().roundTo(NANOSECONDS);
+        expirationCheckNanos = expirationNanos / 4;
+        accessGranularityNanos = expirationNanos / 64;
+        maxSeries = config.getCollectionMaxSeries();
+        maxTotalSeries = config.getCollectionMaxTotalSeries();
     }
 
     /**
@@ -214,20 +267,7 @@ public class ReportCollectionFactory
         @Override
         @SuppressFBWarnings(value = "NP_NULL_ON_SOME_PATH", justification = "All possible methods covered")
         public Object invoke(Object proxy, Method method, Object[] args)
-                throws Throwable
         {
-            ImmutableList.Builder<Optional<String>> argBuilder = ImmutableList.builder();
-            for (Object arg : firstNonNull(args, EMPTY_OBJECT_ARRAY)) {
-                if (arg == null) {
-                    argBuilder.add(Optional.empty());
-                }
-                else if (arg instanceof Optional) {
-                    argBuilder.add(((Optional<?>)arg).map(Object::toString));
-                }
-                else {
-                    argBuilder.add(Optional.of(arg.toString()));
-                }
-            }
             MethodImplementation implementation = implementationMap.get(method);
             if (implementation == null) {
                 if (OBJECT_EQUALS_METHOD.equals(method)) {
@@ -240,15 +280,14 @@ public class ReportCollectionFactory
                     return proxy.getClass().getName() + "@" + Integer.toHexString(hashCode());
                 }
             }
-            return implementation.get(argBuilder.build());
+            return implementation.get(args);
         }
 
     }
 
     private interface MethodImplementation
     {
-        Object get(List<Optional<String>> key)
-                throws ExecutionException;
+        Object get(@Nullable Object[] args);
     }
 
     private class SingletonImplementation implements MethodImplementation
@@ -260,29 +299,69 @@ public class ReportCollectionFactory
             checkArgument(method.getParameterTypes().length == 0, "method has parameters");
             returnValue = getReturnValueSupplier(method).get();
 
-            reportExporter.export(returnValue, applicationPrefix, namePrefix, tags);
+            export(returnValue, applicationPrefix, namePrefix, tags, DistributionExposition.forMethod(method));
         }
 
         @Override
-        public Object get(List<Optional<String>> key)
+        public Object get(@Nullable Object[] args)
         {
             return returnValue;
         }
     }
 
+    /**
+     * Looks up the stat for a set of arguments in a concurrent map keyed by
+     * the arguments themselves, probing the map with a per-thread reusable
+     * key so that the lookup for existing stats does not allocate. The proxy
+     * call itself still allocates the argument array and any boxed primitive
+     * arguments outside the JDK's box caches. Only a miss converts the
+     * arguments to strings and takes the lock on {@link #registeredMap},
+     * where stats are keyed by the string values of their arguments and so
+     * may be reached through several argument keys.
+     * <p>
+     * A stat expires once it has not been used for the expiration time.
+     * Expired stats are removed by whichever call first finds that the
+     * expiration check interval has passed.
+     */
     private class CacheImplementation implements MethodImplementation
     {
-        private final LoadingCache<List<Optional<String>>, Object> loadingCache;
+        private final Supplier<Object> returnValueSupplier;
+        private final DistributionExposition distributionExposition;
+        private final List<String> keyNames;
+        private final boolean applicationPrefix;
+        private final String namePrefix;
+        private final Map<String, String> tags;
+        private final List<Optional<String>> overflowKey;
+        @Nullable
+        private final boolean[] rollupKeys;
+        private final boolean rollupOnly;
+        private final CardinalityStats cardinalityStats = new CardinalityStats();
+        private final ConcurrentMap<ArgumentKey, StatEntry> argumentMap = new ConcurrentHashMap<>();
+        private final ThreadLocal<ArgumentKey> probeKey;
         @GuardedBy("registeredMap")
-        private final Map<List<Optional<String>>, Object> registeredMap = new HashMap<>();
+        private final Map<List<Optional<String>>, StatEntry> registeredMap = new HashMap<>();
         @GuardedBy("registeredMap")
-        private final Set<Object> reinsertedSet = new HashSet<>();
+        private final Map<List<Optional<String>>, BucketedRollup> rollupMap = new HashMap<>();
+        @GuardedBy("registeredMap")
+        private boolean cardinalityStatsExported = false;
+        private volatile long nextExpirationCheckNanos;
+        // Set while new keys are rejected, until the next expiration check
+        private volatile boolean rejecting = false;
+        // The value of seriesRemovals when new keys started being rejected
+        private volatile int rejectingSeriesRemovals;
+        @Nullable
+        private volatile StatEntry overflowEntry = null;
 
         CacheImplementation(Method method, boolean applicationPrefix, String namePrefix, Map<String, String> tags)
         {
-            checkState(method.getParameterTypes().length != 0);
+            int parameterCount = method.getParameterTypes().length;
+            checkState(parameterCount != 0);
+            this.applicationPrefix = applicationPrefix;
+            this.namePrefix = namePrefix;
+            this.tags = tags;
 
-            final Supplier<Object> returnValueSupplier = getReturnValueSupplier(method);
+            returnValueSupplier = getReturnValueSupplier(method);
+            distributionExposition = DistributionExposition.forMethod(method);
 
             ImmutableList.Builder<String> keyNameBuilder = ImmutableList.builder();
             int argPosition = 0;
@@ -303,61 +382,372 @@ public class ReportCollectionFactory
                             + " has no @com.proofpoint.reporting.Key annotation");
                 }
             }
-            List<String> keyNames = keyNameBuilder.build();
-            loadingCache = CacheBuilder.newBuilder()
-                    .ticker(ticker)
-                    .expireAfterAccess(15, TimeUnit.MINUTES)
-                    .removalListener(new UnexportRemovalListener())
-                    .build(new CacheLoader<List<Optional<String>>, Object>()
-                    {
-                        @Override
-                        public Object load(List<Optional<String>> key)
-                        {
-                            Object returnValue = returnValueSupplier.get();
-
-                            synchronized (registeredMap) {
-                                Object existingStat = registeredMap.get(key);
-                                if (existingStat != null) {
-                                    reinsertedSet.add(existingStat);
-                                    return existingStat;
-                                }
-                                registeredMap.put(key, returnValue);
-                                Builder<String, String> tagBuilder = ImmutableMap.builder();
-                                tagBuilder.putAll(tags);
-                                for (int i = 0; i < keyNames.size(); ++i) {
-                                    Optional<String> keyValue = key.get(i);
-                                    if (keyValue.isPresent()) {
-                                        tagBuilder.put(keyNames.get(i), keyValue.get());
-                                    }
-                                }
-                                reportExporter.export(returnValue, applicationPrefix, namePrefix, tagBuilder.build());
-                            }
-                            return returnValue;
-                        }
-                    });
+            keyNames = keyNameBuilder.build();
+            overflowKey = ImmutableList.copyOf(nCopies(keyNames.size(), Optional.of(OVERFLOW_KEY_VALUE)));
+
+            Rollup rollup = method.getAnnotation(Rollup.class);
+            if (rollup == null) {
+                rollupKeys = null;
+                rollupOnly = false;
+            }
+            else {
+                rollupKeys = new boolean[parameterCount];
+                for (String keyName : rollup.value()) {
+                    int index = keyNames.indexOf(keyName);
+                    checkArgument(index != -1, methodName(method) + " @Rollup key \"" + keyName + "\" is not a @Key of the method");
+                    rollupKeys[index] = true;
+                }
+                rollupOnly = rollup.only();
+                if (!rollupOnly) {
+                    checkArgument(hasMergeableBuckets(method.getReturnType()), methodName(method) + " return type " + method.getReturnType().getSimpleName()
+                            + " is not a Bucketed stat with MergeableBucket buckets, so can only be used with @Rollup(only = true)");
+                }
+            }
+
+            boolean[] ignoredKeys = rollupOnly ? rollupKeys : null;
+            probeKey = ThreadLocal.withInitial(() -> new ArgumentKey(parameterCount, ignoredKeys));
+            nextExpirationCheckNanos = ticker.read();
         }
 
         @Override
-        public Object get(List<Optional<String>> key)
-                throws ExecutionException
+        public Object get(@Nullable Object[] args)
         {
-            return loadingCache.get(key);
+            long now = ticker.read();
+            if (now - nextExpirationCheckNanos >= 0) {
+                synchronized (registeredMap) {
+                    if (now - nextExpirationCheckNanos >= 0) {
+                        removeExpired(now);
+                    }
+                }
+            }
+
+            ArgumentKey argumentKey = probeKey.get();
+            argumentKey.set(args);
+            try {
+                StatEntry entry = argumentMap.get(argumentKey);
+                if (entry == null && rejecting && rejectingSeriesRemovals == seriesRemovals.get()) {
+                    // Rejected arguments neither take the lock nor allocate beyond the proxy call
+                    entry = overflowEntry;
+                    if (entry != null) {
+                        cardinalityStats.rejectedKeys.incrementAndGet();
+                    }
+                }
+                if (entry == null) {
+                    entry = load(argumentKey, args, now);
+                }
+                entry.recordAccess(now);
+                return entry.stat;
+            }
+            finally {
+                argumentKey.clear();
+            }
         }
 
-        private class UnexportRemovalListener implements RemovalListener<List<Optional<String>>, Object>
+        private StatEntry load(ArgumentKey argumentKey, Object[] args, long now)
         {
-            @Override
-            public void onRemoval(RemovalNotification<List<Optional<String>>, Object> notification)
-            {
-                synchronized (registeredMap) {
-                    if (reinsertedSet.remove(notification.getValue())) {
-                        return;
+            // Copy the probe before creating any stat, in case the stat's constructor uses this collection
+            ArgumentKey storedKey = argumentKey.copy();
+            List<Optional<String>> key = toKey(args, rollupOnly ? rollupKeys : null);
+            synchronized (registeredMap) {
+                StatEntry entry = registeredMap.get(key);
+                if (entry == null && !hasCapacity(now)) {
+                    // Rejected arguments aren't added to argumentMap, so it stays within the limits
+                    cardinalityStats.rejectedKeys.incrementAndGet();
+                    entry = overflowEntry;
+                    if (entry == null) {
+                        entry = createEntry(overflowKey, now);
+                        overflowEntry = entry;
                     }
-                    reportExporter.unexportObject(notification.getValue());
-                    registeredMap.remove(notification.getKey());
+                    rejectingSeriesRemovals = seriesRemovals.get();
+                    rejecting = true;
+                    return entry;
                 }
+                if (entry == null) {
+                    entry = register(key, now);
+                }
+                argumentMap.put(storedKey, entry);
+                return entry;
             }
         }
+
+        @GuardedBy("registeredMap")
+        private boolean hasCapacity(long now)
+        {
+            if (isBelowLimits()) {
+                return true;
+            }
+            if (now - nextExpirationCheckNanos >= 0) {
+                removeExpired(now);
+                if (isBelowLimits()) {
+                    return true;
+                }
+            }
+            if (!cardinalityStatsExported) {
+                reportExporter.export(cardinalityStats, applicationPrefix, namePrefix + ".Cardinality", tags);
+                cardinalityStatsExported = true;
+            }
+            return false;
+        }
+
+        @GuardedBy("registeredMap")
+        private boolean isBelowLimits()
+        {
+            return registeredMap.size() < maxSeries && totalSeries.get() < maxTotalSeries;
+        }
+
+        @GuardedBy("registeredMap")
+        private StatEntry register(List<Optional<String>> key, long now)
+        {
+            StatEntry entry = createEntry(key, now);
+            registeredMap.put(key, entry);
+            totalSeries.incrementAndGet();
+            return entry;
+        }
+
+        @GuardedBy("registeredMap")
+        private StatEntry createEntry(List<Optional<String>> key, long now)
+        {
+            Object returnValue = returnValueSupplier.get();
+            export(returnValue, applicationPrefix, namePrefix, keyTags(key), distributionExposition);
+
+            BucketedRollup rollup = null;
+            if (rollupKeys != null && !rollupOnly) {
+                ImmutableList.Builder<Optional<String>> rollupKeyBuilder = ImmutableList.builder();
+                for (int i = 0; i < key.size(); ++i) {
+                    rollupKeyBuilder.add(rollupKeys[i] ? Optional.of(ALL_KEY_VALUE) : key.get(i));
+                }
+                List<Optional<String>> rollupKey = rollupKeyBuilder.build();
+                rollup = rollupMap.get(rollupKey);
+                if (rollup == null) {
+                    rollup = new BucketedRollup((Bucketed<?>) returnValue);
+                    rollup.addMember((Bucketed<?>) returnValue);
+                    export(rollup, applicationPrefix, namePrefix, keyTags(rollupKey), distributionExposition);
+                    rollupMap.put(rollupKey, rollup);
+                }
+                else {
+                    rollup.addMember((Bucketed<?>) returnValue);
+                }
+            }
+
+            return new StatEntry(returnValue, rollup, now);
+        }
+
+        private Map<String, String> keyTags(List<Optional<String>> key)
+        {
+            Builder<String, String> tagBuilder = ImmutableMap.builder();
+            tagBuilder.putAll(tags);
+            for (int i = 0; i < keyNames.size(); ++i) {
+                Optional<String> keyValue = key.get(i);
+                if (keyValue.isPresent()) {
+                    tagBuilder.put(keyNames.get(i), keyValue.get());
+                }
+            }
+            return tagBuilder.build();
+        }
+
+        @GuardedBy("registeredMap")
+        private void removeExpired(long now)
+        {
+            nextExpirationCheckNanos = now + expirationCheckNanos;
+            rejecting = false;
+            boolean removed = false;
+            for (Iterator<StatEntry> iterator = registeredMap.values().iterator(); iterator.hasNext(); ) {
+                StatEntry entry = iterator.next();
+                if (now - entry.lastAccessNanos >= expirationNanos) {
+                    iterator.remove();
+                    totalSeries.decrementAndGet();
+                    unexport(entry);
+                    removed = true;
+                }
+            }
+            StatEntry overflow = overflowEntry;
+            if (overflow != null && now - overflow.lastAccessNanos >= expirationNanos) {
+                overflowEntry = null;
+                unexport(overflow);
+                if (cardinalityStatsExported) {
+                    reportExporter.unexportObject(cardinalityStats);
+                    cardinalityStatsExported = false;
+                }
+            }
+            if (removed) {
+                argumentMap.values().removeIf(entry -> entry.expired);
+                seriesRemovals.incrementAndGet();
+            }
+            rollupMap.values().removeIf(BucketedRollup::isEmpty);
+        }
+
+        @GuardedBy("registeredMap")
+        private void unexport(StatEntry entry)
+        {
+            entry.expired = true;
+            reportExporter.unexportObject(entry.stat);
+            if (entry.rollup != null) {
+                entry.rollup.removeMember((Bucketed<?>) entry.stat);
+                if (entry.rollup.isEmpty()) {
+                    reportExporter.unexportObject(entry.rollup);
+                }
+            }
+        }
+    }
+
+    private class StatEntry
+    {
+        private final Object stat;
+        @Nullable
+        private final BucketedRollup rollup;
+        private volatile long lastAccessNanos;
+        @GuardedBy("registeredMap")
+        private boolean expired = false;
+
+        StatEntry(Object stat, @Nullable BucketedRollup rollup, long now)
+        {
+            this.stat = stat;
+            this.rollup = rollup;
+            lastAccessNanos = now;
+        }
+
+        void recordAccess(long now)
+        {
+            // Avoid writing the shared cache line on every call
+            if (now - lastAccessNanos >= accessGranularityNanos) {
+                lastAccessNanos = now;
+            }
+        }
+    }
+
+    /**
+     * The arguments of a call, with those not of an immutable value type
+     * replaced by their string values and those rolled up by
+     * {@code @Rollup(only = true)} replaced by null.
+     */
+    private static final class ArgumentKey
+    {
+        private final Object[] elements;
+        @Nullable
+        private final boolean[] ignoredKeys;
+        private int hashCode;
+
+        ArgumentKey(int size, @Nullable boolean[] ignoredKeys)
+        {
+            elements = new Object[size];
+            this.ignoredKeys = ignoredKeys;
+        }
+
+        private ArgumentKey(Object[] elements, int hashCode)
+        {
+            this.elements = elements;
+            ignoredKeys = null;
+            this.hashCode = hashCode;
+        }
+
+        void set(Object[] args)
+        {
+            int hash = 1;
+            for (int i = 0; i < elements.length; i++) {
+                Object element = ignoredKeys != null && ignoredKeys[i] ? null : keyElement(args[i]);
+                elements[i] = element;
+                hash = 31 * hash + Objects.hashCode(element);
+            }
+            hashCode = hash;
+        }
+
+        void clear()
+        {
+            Arrays.fill(elements, null);
+        }
+
+        ArgumentKey copy()
+        {
+            return new ArgumentKey(elements.clone(), hashCode);
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof ArgumentKey)) {
+                return false;
+            }
+            ArgumentKey that = (ArgumentKey) o;
+            return hashCode == that.hashCode && Arrays.equals(elements, that.elements);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hashCode;
+        }
+
+        @Nullable
+        private static Object keyElement(@Nullable Object arg)
+        {
+            if (arg == null || isValueType(arg)) {
+                return arg;
+            }
+            if (arg instanceof Optional) {
+                Optional<?> optional = (Optional<?>) arg;
+                if (!optional.isPresent() || isValueType(optional.get())) {
+                    return arg;
+                }
+                return Optional.of(optional.get().toString());
+            }
+            return arg.toString();
+        }
+
+        private static boolean isValueType(Object arg)
+        {
+            return VALUE_TYPES.contains(arg.getClass()) || arg instanceof Enum;
+        }
+    }
+
+    private static List<Optional<String>> toKey(Object[] args, @Nullable boolean[] ignoredKeys)
+    {
+        ImmutableList.Builder<Optional<String>> builder = ImmutableList.builder();
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg == null || (ignoredKeys != null && ignoredKeys[i])) {
+                builder.add(Optional.empty());
+            }
+            else if (arg instanceof Optional) {
+                builder.add(((Optional<?>) arg).map(Object::toString));
+            }
+            else {
+                builder.add(Optional.of(arg.toString()));
+            }
+        }
+        return builder.build();
+    }
+
+    public static class CardinalityStats
+    {
+        private final AtomicLong rejectedKeys = new AtomicLong();
+
+        @Reported
+        public long getRejectedKeys()
+        {
+            return rejectedKeys.get();
+        }
+    }
+
+    private static boolean hasMergeableBuckets(Class<?> returnType)
+    {
+        if (!Bucketed.class.isAssignableFrom(returnType)) {
+            return false;
+        }
+        TypeToken<?> bucketType = TypeToken.of(returnType).resolveType(Bucketed.class.getTypeParameters()[0]);
+        return MergeableBucket.class.isAssignableFrom(bucketType.getRawType());
+    }
+
+    private void export(Object returnValue, boolean applicationPrefix, String namePrefix, Map<String, String> tags, @Nullable DistributionExposition distributionExposition)
+    {
+        if (distributionExposition == null) {
+            reportExporter.export(returnValue, applicationPrefix, namePrefix, tags);
+        }
+        else {
+            reportExporter.export(returnValue, applicationPrefix, namePrefix, tags, distributionExposition);
+        }
     }
 
     protected Supplier<Object> getReturnValueSupplier(Method method) {
@@ -17,6 +17,7 @@ package com.proofpoint.reporting;
 
 import com.proofpoint.reporting.ReportException.Reason;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
@@ -52,7 +53,12 @@ public class ReportExporter
      */
     public void export(Object object, boolean applicationPrefix, String namePrefix, Map<String, String> tags)
     {
-        ReportedBean reportedBean = ReportedBean.forTarget(object, bucketIdProvider);
+        export(object, applicationPrefix, namePrefix, tags, null);
+    }
+
+    void export(Object object, boolean applicationPrefix, String namePrefix, Map<String, String> tags, @Nullable DistributionExposition distributionExposition)
+    {
+        ReportedBean reportedBean = ReportedBean.forTarget(object, bucketIdProvider, distributionExposition);
         if (!reportedBean.getAttributes().isEmpty()) {
             try {
                 registry.register(object, reportedBean, applicationPrefix, namePrefix, tags);
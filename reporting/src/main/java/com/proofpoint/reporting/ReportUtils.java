@@ -15,8 +15,6 @@
  */
 package com.proofpoint.reporting;
 
-import java.io.BufferedWriter;
-import java.io.IOException;
 import java.util.Map.Entry;
 import java.util.regex.Pattern;
 
@@ -48,40 +46,46 @@ public final class ReportUtils
         return true;
     }
 
-    static void writeTags(BufferedWriter writer, Iterable<Entry<String, String>> tags)
-            throws IOException
+    /**
+     * Encodes tags as Prometheus labels, without the enclosing braces.
+     */
+    static String encodeLabels(Iterable<Entry<String, String>> tags)
     {
-        char prefix = '{';
+        StringBuilder builder = new StringBuilder();
         for (Entry<String, String> tag : tags) {
-            writer.append(prefix);
-            prefix = ',';
-            String label = LABEL_NOT_ACCEPTED_CHARACTER_PATTERN.matcher(tag.getKey()).replaceAll("_");
-            String value = tag.getValue();
-            if (INITIAL_DIGIT_PATTERN.matcher(label).lookingAt()) {
-                writer.append('_');
+            if (builder.length() != 0) {
+                builder.append(',');
             }
-            writer.write(label);
-            writer.append("=\"");
+            String value = tag.getValue();
+            builder.append(sanitizeLabelName(tag.getKey()));
+            builder.append("=\"");
             for (int i = 0; i < value.length(); i++) {
                 char c = value.charAt(i);
                 switch (c) {
                     case '\\':
-                        writer.append("\\\\");
+                        builder.append("\\\\");
                         break;
                     case '\"':
-                        writer.append("\\\"");
+                        builder.append("\\\"");
                         break;
                     case '\n':
-                        writer.append("\\n");
+                        builder.append("\\n");
                         break;
                     default:
-                        writer.append(c);
+                        builder.append(c);
                 }
             }
-            writer.append("\"");
+            builder.append("\"");
         }
-        if (prefix == ',') {
-            writer.append('}');
+        return builder.toString();
+    }
+
+    static String sanitizeLabelName(String name)
+    {
+        String label = LABEL_NOT_ACCEPTED_CHARACTER_PATTERN.matcher(name).replaceAll("_");
+        if (INITIAL_DIGIT_PATTERN.matcher(label).lookingAt()) {
+            return "_" + label;
         }
+        return label;
     }
 }
@@ -20,6 +20,7 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.proofpoint.reporting.Bucketed.BucketInfo;
 
+import javax.annotation.Nullable;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -38,22 +39,9 @@ class ReportedBean
     private static final LoadingCache<Class<?>, Iterable<Entry<Method, Method>>> METHODS_CACHE = CacheBuilder.newBuilder()
             .build(CacheLoader.from(clazz -> AnnotationUtils.findAnnotatedMethods(clazz, ReportedAnnotation.class).entrySet()));
 
-    static Method GET_PREVIOUS_BUCKET;
-
     private final Map<String, ReportedBeanAttribute> attributes;
     private final Map<String, PrometheusBeanAttribute> prometheusAttributes;
 
-    static {
-        try {
-            Method getPreviousBucket = Bucketed.class.getDeclaredMethod("getPreviousBucket");
-            getPreviousBucket.setAccessible(true);
-            GET_PREVIOUS_BUCKET = getPreviousBucket;
-        }
-        catch (NoSuchMethodException ignored) {
-            GET_PREVIOUS_BUCKET = null;
-        }
-    }
-
     private ReportedBean(Collection<ReportedBeanAttribute> attributes, Collection<PrometheusBeanAttribute> prometheusAttributes)
     {
         Map<String, ReportedBeanAttribute> attributesBuilder = new TreeMap<>();
@@ -80,6 +68,16 @@ class ReportedBean
     }
 
     static ReportedBean forTarget(Object target, BucketIdProvider bucketIdProvider)
+    {
+        return forTarget(target, bucketIdProvider, null);
+    }
+
+    /**
+     * @param distributionExposition How to expose {@link ReportedDistribution}
+     * buckets to Prometheus, or null to expose each of their attributes as a
+     * gauge
+     */
+    static ReportedBean forTarget(Object target, BucketIdProvider bucketIdProvider, @Nullable DistributionExposition distributionExposition)
     {
         requireNonNull(target, "target is null");
 
@@ -88,18 +86,15 @@ class ReportedBean
 
         if (target instanceof Bucketed) {
             ((Bucketed<?>) target).setBucketIdProvider(bucketIdProvider);
-            BucketInfo bucketInfo = null;
-            try {
-                bucketInfo = (BucketInfo) GET_PREVIOUS_BUCKET.invoke(target);
+            BucketInfo bucketInfo = ((Bucketed<?>) target).getPreviousBucket();
+            ReportedBean reportedBean = ReportedBean.forTarget(bucketInfo.getBucket(), bucketIdProvider);
+            for (ReportedBeanAttribute attribute : reportedBean.getAttributes()) {
+                attributes.add(new BucketedReportedBeanAttribute(target, attribute));
             }
-            catch (Exception ignored) {
-                // todo log me
+            if (distributionExposition != null && bucketInfo.getBucket() instanceof ReportedDistribution) {
+                prometheusAttributes.add(new DistributionPrometheusBeanAttribute((Bucketed<?>) target, distributionExposition));
             }
-            if (bucketInfo != null) {
-                ReportedBean reportedBean = ReportedBean.forTarget(bucketInfo.getBucket(), bucketIdProvider);
-                for (ReportedBeanAttribute attribute : reportedBean.getAttributes()) {
-                    attributes.add(new BucketedReportedBeanAttribute(target, attribute));
-                }
+            else {
                 for (PrometheusBeanAttribute prometheusAttribute : reportedBean.getPrometheusAttributes()) {
                     prometheusAttributes.add(new BucketedPrometheusBeanAttribute(target, prometheusAttribute));
                 }
@@ -120,7 +115,7 @@ class ReportedBean
 
             ReportedMethodInfoBuilder attributeBuilder = methodInfoBuilders.get(attributeName);
             if (attributeBuilder == null) {
-                attributeBuilder = new ReportedMethodInfoBuilder(bucketIdProvider).named(attributeName).onInstance(target);
+                attributeBuilder = new ReportedMethodInfoBuilder(bucketIdProvider, distributionExposition).named(attributeName).onInstance(target);
             }
 
             attributeBuilder = attributeBuilder
@@ -27,6 +27,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -42,12 +43,23 @@ class ReportedBeanRegistry
 
     private final ConcurrentMap<Reference, RegistrationInfo> reportedBeans = new ConcurrentHashMap<>();
     private final ConcurrentMap<ObjectName, ReportedBean> legacyReportedBeans = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
 
     Collection<RegistrationInfo> getReportedBeans()
     {
         return reportedBeans.values();
     }
 
+    /**
+     * Returns a number which changes whenever a bean is registered or
+     * unregistered. It is incremented after the change is visible through
+     * {@link #getReportedBeans()}.
+     */
+    long getGeneration()
+    {
+        return generation.get();
+    }
+
     void register(Object object, ReportedBean reportedBean, boolean applicationPrefix, String namePrefix, Map<String, String> tags)
             throws InstanceAlreadyExistsException
     {
@@ -55,6 +67,7 @@ class ReportedBeanRegistry
         if (reportedBeans.putIfAbsent(new Reference(object), registrationInfo(reportedBean, applicationPrefix, namePrefix, tags)) != null) {
             throw new InstanceAlreadyExistsException(object + " is already registered");
         }
+        generation.incrementAndGet();
     }
 
     void unregister(Object object)
@@ -63,6 +76,7 @@ class ReportedBeanRegistry
         if (reportedBeans.remove(new Reference(object)) == null) {
             throw new InstanceNotFoundException(object + " not found");
         }
+        generation.incrementAndGet();
     }
 
     void register(ReportedBean reportedBean, ObjectName name)
@@ -111,6 +125,7 @@ class ReportedBeanRegistry
             throw new InstanceNotFoundException(name.getCanonicalName() + " not found");
         }
         reportedBeans.remove(new Reference(remove));
+        generation.incrementAndGet();
     }
 
     private static String dequote(String value)
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+/**
+ * A bucket of a {@link Bucketed} stat which records a distribution of
+ * values. Such a bucket can be exposed to Prometheus as a single summary or
+ * histogram metric, as requested by {@link PrometheusSummary} or
+ * {@link PrometheusHistogram}, instead of as a gauge per reported attribute.
+ * <p>
+ * Values are in reported units, for example seconds for time stats.
+ */
+public interface ReportedDistribution
+{
+    double[] QUANTILES = {0.5, 0.75, 0.90, 0.95, 0.99};
+
+    /**
+     * @return the number of values recorded in the bucket
+     */
+    double getValueCount();
+
+    /**
+     * @return the sum of the values recorded in the bucket
+     */
+    double getValueSum();
+
+    /**
+     * @return the values at each of {@link #QUANTILES}, or NaN if the
+     * bucket is empty
+     */
+    double[] getQuantileValues();
+
+    /**
+     * @param upperBounds Histogram bucket upper bounds, sorted in increasing order
+     * @return the approximate number of values recorded in the bucket which
+     * are less than or equal to each of the upper bounds
+     */
+    double[] getCumulativeCounts(double[] upperBounds);
+}
@@ -17,10 +17,12 @@ package com.proofpoint.reporting;
 
 import com.google.common.collect.ImmutableList;
 
+import javax.annotation.Nullable;
 import java.lang.reflect.Method;
 import java.util.List;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.proofpoint.reporting.GetterHandle.getterHandle;
 import static com.proofpoint.reporting.ReflectionUtils.isValidGetter;
 import static com.proofpoint.reporting.ReportedMethodInfo.reportedMethodInfo;
 import static java.util.Objects.requireNonNull;
@@ -29,14 +31,17 @@ import static java.util.stream.Collectors.toList;
 class ReportedMethodInfoBuilder
 {
     private final BucketIdProvider bucketIdProvider;
+    @Nullable
+    private final DistributionExposition distributionExposition;
     private Object target;
     private String name;
     private Method concreteGetter;
     private Method annotatedGetter;
 
-    ReportedMethodInfoBuilder(BucketIdProvider bucketIdProvider)
+    ReportedMethodInfoBuilder(BucketIdProvider bucketIdProvider, @Nullable DistributionExposition distributionExposition)
     {
         this.bucketIdProvider = bucketIdProvider;
+        this.distributionExposition = distributionExposition;
     }
 
     ReportedMethodInfoBuilder onInstance(Object target)
@@ -69,16 +74,30 @@ class ReportedMethodInfoBuilder
         return this;
     }
 
+    @Nullable
+    private DistributionExposition getNestedDistributionExposition()
+    {
+        DistributionExposition exposition = DistributionExposition.forMethod(annotatedGetter);
+        if (exposition == null) {
+            exposition = DistributionExposition.forMethod(concreteGetter);
+        }
+        if (exposition == null) {
+            return distributionExposition;
+        }
+        return exposition;
+    }
+
     ReportedMethodInfo build()
     {
         checkArgument(target != null, "JmxAttribute must have a target object");
 
         if (AnnotationUtils.isFlatten(annotatedGetter)) {
             checkArgument(concreteGetter != null, "Flattened JmxAttribute must have a concrete getter");
+            GetterHandle getter = getterHandle(concreteGetter);
 
             Object value = null;
             try {
-                value = concreteGetter.invoke(target);
+                value = getter.invoke(target);
             }
             catch (Exception ignored) {
                 // todo log me
@@ -87,21 +106,22 @@ class ReportedMethodInfoBuilder
                 return reportedMethodInfo(ImmutableList.of(), ImmutableList.of());
             }
 
-            ReportedBean reportedBean = ReportedBean.forTarget(value, bucketIdProvider);
+            ReportedBean reportedBean = ReportedBean.forTarget(value, bucketIdProvider, getNestedDistributionExposition());
             List<ReportedBeanAttribute> attributes = reportedBean.getAttributes().stream()
-                    .map(attribute -> new FlattenReportedBeanAttribute(concreteGetter, attribute))
+                    .map(attribute -> new FlattenReportedBeanAttribute(getter, attribute))
                     .collect(toList());
             List<PrometheusBeanAttribute> prometheusAttributes = reportedBean.getPrometheusAttributes().stream()
-                    .map(attribute -> new FlattenPrometheusBeanAttribute(concreteGetter, attribute))
+                    .map(attribute -> new FlattenPrometheusBeanAttribute(getter, attribute))
                     .collect(toList());
             return reportedMethodInfo(attributes, prometheusAttributes);
         }
         else if (AnnotationUtils.isNested(annotatedGetter)) {
             checkArgument(concreteGetter != null, "Nested JmxAttribute must have a concrete getter");
+            GetterHandle getter = getterHandle(concreteGetter);
 
             Object value = null;
             try {
-                value = concreteGetter.invoke(target);
+                value = getter.invoke(target);
             }
             catch (Exception ignored) {
                 // todo log me
@@ -110,12 +130,12 @@ class ReportedMethodInfoBuilder
                 return reportedMethodInfo(ImmutableList.of(), ImmutableList.of());
             }
 
-            ReportedBean reportedBean = ReportedBean.forTarget(value, bucketIdProvider);
+            ReportedBean reportedBean = ReportedBean.forTarget(value, bucketIdProvider, getNestedDistributionExposition());
             List<ReportedBeanAttribute> attributes = reportedBean.getAttributes().stream()
-                    .map(attribute -> new NestedReportedBeanAttribute(name, concreteGetter, attribute))
+                    .map(attribute -> new NestedReportedBeanAttribute(name, getter, attribute))
                     .collect(toList());
             List<PrometheusBeanAttribute> prometheusAttributes = reportedBean.getPrometheusAttributes().stream()
-                    .map(attribute -> new NestedPrometheusBeanAttribute(name, concreteGetter, attribute))
+                    .map(attribute -> new NestedPrometheusBeanAttribute(name, getter, attribute))
                     .collect(toList());
             return reportedMethodInfo(attributes, prometheusAttributes);
         }
@@ -123,21 +143,22 @@ class ReportedMethodInfoBuilder
             checkArgument (concreteGetter != null, "JmxAttribute must have a concrete getter");
 
             Class<?> attributeType = concreteGetter.getReturnType();
+            GetterHandle getter = getterHandle(concreteGetter);
 
             if (Boolean.class.isAssignableFrom(attributeType) || attributeType == boolean.class) {
                 return reportedMethodInfo(
                         AnnotationUtils.isReported(annotatedGetter) ?
-                                ImmutableList.of(new BooleanReportedBeanAttribute(name, target, concreteGetter)) :
+                                ImmutableList.of(new BooleanReportedBeanAttribute(name, target, getter)) :
                                 ImmutableList.of(),
-                        ImmutableList.of(new BooleanPrometheusBeanAttribute(name, target, concreteGetter))
+                        ImmutableList.of(new BooleanPrometheusBeanAttribute(name, target, getter))
                 );
             }
 
             return reportedMethodInfo(
                     AnnotationUtils.isReported(annotatedGetter) ?
-                            ImmutableList.of(new ObjectReportedBeanAttribute(name, target, concreteGetter)) :
+                            ImmutableList.of(new ObjectReportedBeanAttribute(name, target, getter)) :
                             ImmutableList.of(),
-                    ImmutableList.of(new ObjectPrometheusBeanAttribute(name, target, concreteGetter))
+                    ImmutableList.of(new ObjectPrometheusBeanAttribute(name, target, getter))
             );
         }
     }
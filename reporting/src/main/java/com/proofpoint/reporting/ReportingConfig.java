@@ -0,0 +1,180 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+import com.proofpoint.configuration.Config;
+import com.proofpoint.configuration.ConfigDescription;
+import com.proofpoint.units.Duration;
+import com.proofpoint.units.MinDuration;
+
+import javax.validation.constraints.AssertFalse;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class ReportingConfig
+{
+    private Duration bucketInterval = new Duration(1, MINUTES);
+    private Duration collectionExpiration = new Duration(15, MINUTES);
+    private int collectionMaxSeries = 10_000;
+    private int collectionMaxTotalSeries = 100_000;
+    private Duration healthCheckInterval = new Duration(10, SECONDS);
+    private Duration healthCheckTimeout = new Duration(5, SECONDS);
+    private int healthCheckThreads = 4;
+    private Duration historyRetention = new Duration(0, SECONDS);
+    private int historyMaxSeries = 10_000;
+
+    @NotNull
+    @MinDuration(value = "10s", message = "must be greater than or equal to 10s")
+    public Duration getBucketInterval()
+    {
+        return bucketInterval;
+    }
+
+    @Config("reporting.bucket-interval")
+    @ConfigDescription("Width of the buckets of bucketed stats, which is also the period at which reports are collected")
+    public ReportingConfig setBucketInterval(Duration bucketInterval)
+    {
+        this.bucketInterval = bucketInterval;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration(value = "1s", message = "must be greater than or equal to 1s")
+    public Duration getCollectionExpiration()
+    {
+        return collectionExpiration;
+    }
+
+    @Config("reporting.collection.expiration")
+    @ConfigDescription("Time after which a report collection's stat for a set of @Key values is removed if it has not been used")
+    public ReportingConfig setCollectionExpiration(Duration collectionExpiration)
+    {
+        this.collectionExpiration = collectionExpiration;
+        return this;
+    }
+
+    @Min(1)
+    public int getCollectionMaxSeries()
+    {
+        return collectionMaxSeries;
+    }
+
+    @Config("reporting.collection.max-series")
+    @ConfigDescription("Maximum number of stats, each for a set of @Key values, of a report collection method")
+    public ReportingConfig setCollectionMaxSeries(int collectionMaxSeries)
+    {
+        this.collectionMaxSeries = collectionMaxSeries;
+        return this;
+    }
+
+    @Min(1)
+    public int getCollectionMaxTotalSeries()
+    {
+        return collectionMaxTotalSeries;
+    }
+
+    @Config("reporting.collection.max-total-series")
+    @ConfigDescription("Maximum number of stats for sets of @Key values over all report collections")
+    public ReportingConfig setCollectionMaxTotalSeries(int collectionMaxTotalSeries)
+    {
+        this.collectionMaxTotalSeries = collectionMaxTotalSeries;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration(value = "1s", message = "must be greater than or equal to 1s")
+    public Duration getHealthCheckInterval()
+    {
+        return healthCheckInterval;
+    }
+
+    @Config("reporting.health-check.interval")
+    @ConfigDescription("Period at which health checks are run in the background")
+    public ReportingConfig setHealthCheckInterval(Duration healthCheckInterval)
+    {
+        this.healthCheckInterval = healthCheckInterval;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration(value = "1ms", message = "must be greater than or equal to 1ms")
+    public Duration getHealthCheckTimeout()
+    {
+        return healthCheckTimeout;
+    }
+
+    @Config("reporting.health-check.timeout")
+    @ConfigDescription("Time after which a running health check is reported as failed")
+    public ReportingConfig setHealthCheckTimeout(Duration healthCheckTimeout)
+    {
+        this.healthCheckTimeout = healthCheckTimeout;
+        return this;
+    }
+
+    @Min(1)
+    public int getHealthCheckThreads()
+    {
+        return healthCheckThreads;
+    }
+
+    @Config("reporting.health-check.threads")
+    @ConfigDescription("Number of threads which run health checks in parallel")
+    public ReportingConfig setHealthCheckThreads(int healthCheckThreads)
+    {
+        this.healthCheckThreads = healthCheckThreads;
+        return this;
+    }
+
+    @NotNull
+    public Duration getHistoryRetention()
+    {
+        return historyRetention;
+    }
+
+    @Config("reporting.history.retention")
+    @ConfigDescription("Time for which collected report values are kept in memory for the metrics history admin resource, or 0s to disable")
+    public ReportingConfig setHistoryRetention(Duration historyRetention)
+    {
+        this.historyRetention = historyRetention;
+        return this;
+    }
+
+    @Min(1)
+    public int getHistoryMaxSeries()
+    {
+        return historyMaxSeries;
+    }
+
+    @Config("reporting.history.max-series")
+    @ConfigDescription("Maximum number of series kept in the metrics history")
+    public ReportingConfig setHistoryMaxSeries(int historyMaxSeries)
+    {
+        this.historyMaxSeries = historyMaxSeries;
+        return this;
+    }
+
+    @AssertFalse
+    public boolean isHistoryTooLarge()
+    {
+        if (historyRetention == null || bucketInterval == null) {
+            return false;
+        }
+        return MetricHistory.sizeBytes(historyRetention, bucketInterval, historyMaxSeries) > MetricHistory.MAX_SIZE_BYTES;
+    }
+}
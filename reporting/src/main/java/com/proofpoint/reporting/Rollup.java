@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.reporting;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Reports the stats of the annotated report collection method aggregated
+ * over the named {@link Key} parameters, so that dimensions which are only
+ * ever looked at summed don't produce a series for each of their values.
+ * <p>
+ * By default the aggregate is reported in addition to the stat for each set
+ * of key values, with the aggregated keys tagged {@value #ALL_KEY_VALUE}.
+ * The aggregate is computed when the stats are reported by merging the
+ * previous buckets of the stats, so the method must return a
+ * {@link Bucketed} stat whose buckets implement {@link MergeableBucket},
+ * such as {@code SparseCounterStat} or {@code SparseTimeStat}.
+ * <p>
+ * With {@link #only()}, calls which differ only in the aggregated keys share
+ * a single stat, which is reported without tags for those keys. This works
+ * for any stat type.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Rollup
+{
+    String ALL_KEY_VALUE = "__all__";
+
+    /**
+     * @return the names of the {@link Key} parameters to aggregate over
+     */
+    String[] value();
+
+    /**
+     * @return whether to report only the aggregate
+     */
+    boolean only() default false;
+}
@@ -20,7 +20,6 @@ import com.google.auto.value.AutoValue;
 import javax.annotation.Nullable;
 import java.io.BufferedWriter;
 import java.io.IOException;
-import java.util.Map.Entry;
 
 import static com.proofpoint.reporting.ReportUtils.isReportable;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
@@ -39,11 +38,21 @@ abstract class SimplePrometheusValue implements PrometheusValue
     abstract Object getValue();
 
     @Override
-    public void writeMetric(BufferedWriter writer, String name, Iterable<Entry<String, String>> tags, @Nullable Long timestamp)
+    public String getType()
+    {
+        return "gauge";
+    }
+
+    @Override
+    public void writeMetric(BufferedWriter writer, String name, String labels, @Nullable Long timestamp)
             throws IOException
     {
         writer.write(name);
-        ReportUtils.writeTags(writer, tags);
+        if (!labels.isEmpty()) {
+            writer.append('{');
+            writer.write(labels);
+            writer.append('}');
+        }
         writer.append(' ');
         writer.write(getValue().toString());
         if (timestamp != null) {
@@ -52,4 +61,10 @@ abstract class SimplePrometheusValue implements PrometheusValue
         }
         writer.append('\n');
     }
+
+    @Override
+    public void writeProtobufMetric(PrometheusProtobufWriter writer)
+    {
+        writer.writeGauge(((Number) getValue()).doubleValue());
+    }
 }
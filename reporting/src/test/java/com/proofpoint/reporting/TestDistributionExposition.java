@@ -0,0 +1,95 @@
+package com.proofpoint.reporting;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestDistributionExposition
+{
+    @Test
+    public void testNoAnnotation()
+            throws Exception
+    {
+        assertNull(DistributionExposition.forMethod(AnnotatedObject.class.getMethod("getGauge")));
+    }
+
+    @Test
+    public void testSummary()
+            throws Exception
+    {
+        DistributionExposition exposition = DistributionExposition.forMethod(AnnotatedObject.class.getMethod("getSummary"));
+        assertFalse(exposition.isHistogram());
+    }
+
+    @Test
+    public void testHistogram()
+            throws Exception
+    {
+        DistributionExposition exposition = DistributionExposition.forMethod(AnnotatedObject.class.getMethod("getHistogram"));
+        assertTrue(exposition.isHistogram());
+        assertEquals(exposition.getBucketUpperBounds(), new double[] {0.1, 1, 10});
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".* has both @PrometheusSummary and @PrometheusHistogram")
+    public void testBothAnnotations()
+            throws Exception
+    {
+        DistributionExposition.forMethod(AnnotatedObject.class.getMethod("getBoth"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".* bucket upper bounds must be in increasing order")
+    public void testUnsortedHistogram()
+            throws Exception
+    {
+        DistributionExposition.forMethod(AnnotatedObject.class.getMethod("getUnsorted"));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = ".* bucket upper bounds must be finite")
+    public void testInfiniteHistogramBound()
+            throws Exception
+    {
+        DistributionExposition.forMethod(AnnotatedObject.class.getMethod("getInfinite"));
+    }
+
+    public static class AnnotatedObject
+    {
+        public Object getGauge()
+        {
+            return null;
+        }
+
+        @PrometheusSummary
+        public Object getSummary()
+        {
+            return null;
+        }
+
+        @PrometheusHistogram({0.1, 1, 10})
+        public Object getHistogram()
+        {
+            return null;
+        }
+
+        @PrometheusSummary
+        @PrometheusHistogram({0.1, 1, 10})
+        public Object getBoth()
+        {
+            return null;
+        }
+
+        @PrometheusHistogram({1, 0.1})
+        public Object getUnsorted()
+        {
+            return null;
+        }
+
+        @PrometheusHistogram({1, Double.POSITIVE_INFINITY})
+        public Object getInfinite()
+        {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.proofpoint.reporting;
+
+import com.google.common.base.Function;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.annotation.Nullable;
+import java.io.BufferedWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.proofpoint.reporting.BucketIdProvider.BucketId.bucketId;
+import static org.testng.Assert.assertEquals;
+
+public class TestDistributionPrometheusBeanAttribute
+{
+    private int bucketId;
+    private TestingStat stat;
+    private DistributionPrometheusBeanAttribute attribute;
+
+    @BeforeMethod
+    public void setup()
+            throws Exception
+    {
+        bucketId = 0;
+        stat = new TestingStat();
+        stat.setBucketIdProvider(() -> bucketId(bucketId, 0));
+        DistributionExposition exposition = DistributionExposition.forMethod(TestDistributionPrometheusBeanAttribute.class.getMethod("getHistogram"));
+        attribute = new DistributionPrometheusBeanAttribute(stat, exposition);
+    }
+
+    @Test
+    public void testAccumulatesEachBucket()
+            throws Exception
+    {
+        stat.add(5);
+        bucketId = 1;
+        assertEquals(scrape(),
+                "Stat_bucket{le=\"1.0\"} 0.0\n" +
+                        "Stat_bucket{le=\"10.0\"} 1.0\n" +
+                        "Stat_bucket{le=\"+Inf\"} 1.0\n" +
+                        "Stat_sum 5.0\n" +
+                        "Stat_count 1.0\n");
+        assertEquals(scrape(),
+                "Stat_bucket{le=\"1.0\"} 0.0\n" +
+                        "Stat_bucket{le=\"10.0\"} 1.0\n" +
+                        "Stat_bucket{le=\"+Inf\"} 1.0\n" +
+                        "Stat_sum 5.0\n" +
+                        "Stat_count 1.0\n");
+    }
+
+    @Test
+    public void testAccumulatesBucketsCompletedBetweenScrapes()
+            throws Exception
+    {
+        scrape();
+        stat.add(5);
+        bucketId = 1;
+        stat.add(50);
+        bucketId = 2;
+        stat.add(0);
+        bucketId = 3;
+        assertEquals(scrape(),
+                "Stat_bucket{le=\"1.0\"} 1.0\n" +
+                        "Stat_bucket{le=\"10.0\"} 2.0\n" +
+                        "Stat_bucket{le=\"+Inf\"} 3.0\n" +
+                        "Stat_sum 55.0\n" +
+                        "Stat_count 3.0\n");
+    }
+
+    @Test
+    public void testAccumulatesSkippedBucket()
+            throws Exception
+    {
+        scrape();
+        stat.add(5);
+        bucketId = 5;
+        assertEquals(scrape(),
+                "Stat_bucket{le=\"1.0\"} 0.0\n" +
+                        "Stat_bucket{le=\"10.0\"} 1.0\n" +
+                        "Stat_bucket{le=\"+Inf\"} 1.0\n" +
+                        "Stat_sum 5.0\n" +
+                        "Stat_count 1.0\n");
+    }
+
+    @Test
+    public void testBucketsBeforeFirstScrapeNotAccumulated()
+            throws Exception
+    {
+        stat.add(5);
+        bucketId = 1;
+        stat.add(50);
+        bucketId = 2;
+        assertEquals(scrape(),
+                "Stat_bucket{le=\"1.0\"} 0.0\n" +
+                        "Stat_bucket{le=\"10.0\"} 0.0\n" +
+                        "Stat_bucket{le=\"+Inf\"} 1.0\n" +
+                        "Stat_sum 50.0\n" +
+                        "Stat_count 1.0\n");
+    }
+
+    @Test
+    public void testIncludesValuesAddedAfterRotation()
+            throws Exception
+    {
+        scrape();
+        stat.add(5);
+        bucketId = 1;
+        stat.add(0);
+        // A recording thread racing with the rotation adds to the bucket which has just been completed
+        ((TestingStat.Bucket) stat.getPreviousBucket().getBucket()).add(6);
+        assertEquals(scrape(),
+                "Stat_bucket{le=\"1.0\"} 0.0\n" +
+                        "Stat_bucket{le=\"10.0\"} 2.0\n" +
+                        "Stat_bucket{le=\"+Inf\"} 2.0\n" +
+                        "Stat_sum 11.0\n" +
+                        "Stat_count 2.0\n");
+        bucketId = 2;
+        assertEquals(scrape(),
+                "Stat_bucket{le=\"1.0\"} 1.0\n" +
+                        "Stat_bucket{le=\"10.0\"} 3.0\n" +
+                        "Stat_bucket{le=\"+Inf\"} 3.0\n" +
+                        "Stat_sum 11.0\n" +
+                        "Stat_count 3.0\n");
+    }
+
+    @Test
+    public void testStopsHoldingBucketsWhenNotScraped()
+            throws Exception
+    {
+        scrape();
+        for (int i = 1; i <= 20; i++) {
+            bucketId = i;
+            stat.add(1);
+        }
+        bucketId = 21;
+        // Buckets are held for 16 intervals after the scrape, so those of ids 16 to 19 are left out
+        assertEquals(scrape(),
+                "Stat_bucket{le=\"1.0\"} 16.0\n" +
+                        "Stat_bucket{le=\"10.0\"} 16.0\n" +
+                        "Stat_bucket{le=\"+Inf\"} 16.0\n" +
+                        "Stat_sum 16.0\n" +
+                        "Stat_count 16.0\n");
+        stat.add(1);
+        bucketId = 22;
+        assertEquals(scrape(),
+                "Stat_bucket{le=\"1.0\"} 17.0\n" +
+                        "Stat_bucket{le=\"10.0\"} 17.0\n" +
+                        "Stat_bucket{le=\"+Inf\"} 17.0\n" +
+                        "Stat_sum 17.0\n" +
+                        "Stat_count 17.0\n");
+    }
+
+    @Test
+    public void testRollup()
+            throws Exception
+    {
+        TestingStat other = new TestingStat();
+        other.setBucketIdProvider(() -> bucketId(bucketId, 0));
+        BucketedRollup rollup = new BucketedRollup(stat);
+        rollup.addMember(stat);
+        rollup.addMember(other);
+        attribute = new DistributionPrometheusBeanAttribute(rollup, DistributionExposition.forMethod(TestDistributionPrometheusBeanAttribute.class.getMethod("getHistogram")));
+
+        scrape();
+        stat.add(5);
+        other.add(50);
+        bucketId = 1;
+        assertEquals(scrape(),
+                "Stat_bucket{le=\"1.0\"} 0.0\n" +
+                        "Stat_bucket{le=\"10.0\"} 1.0\n" +
+                        "Stat_bucket{le=\"+Inf\"} 2.0\n" +
+                        "Stat_sum 55.0\n" +
+                        "Stat_count 2.0\n");
+
+        stat.add(0);
+        bucketId = 2;
+        other.add(7);
+        bucketId = 3;
+        assertEquals(scrape(),
+                "Stat_bucket{le=\"1.0\"} 1.0\n" +
+                        "Stat_bucket{le=\"10.0\"} 3.0\n" +
+                        "Stat_bucket{le=\"+Inf\"} 4.0\n" +
+                        "Stat_sum 62.0\n" +
+                        "Stat_count 4.0\n");
+    }
+
+    @PrometheusHistogram({1, 10})
+    public Object getHistogram()
+    {
+        return null;
+    }
+
+    private String scrape()
+            throws Exception
+    {
+        StringWriter stringWriter = new StringWriter();
+        try (BufferedWriter writer = new BufferedWriter(stringWriter)) {
+            attribute.getValue(null).getValue().writeMetric(writer, "Stat", "", null);
+        }
+        return stringWriter.toString();
+    }
+
+    private static class TestingStat
+            extends Bucketed<TestingStat.Bucket>
+    {
+        void add(long value)
+        {
+            applyToCurrentBucket((Function<Bucket, Void>) bucket -> {
+                bucket.add(value);
+                return null;
+            });
+        }
+
+        @Override
+        protected Bucket createBucket(@Nullable Bucket previousBucket)
+        {
+            return new Bucket();
+        }
+
+        private static class Bucket
+                implements ReportedDistribution, MergeableBucket<Bucket>
+        {
+            private final List<Long> values = new ArrayList<>();
+
+            synchronized void add(long value)
+            {
+                values.add(value);
+            }
+
+            @Override
+            public synchronized void merge(Bucket other)
+            {
+                synchronized (other) {
+                    values.addAll(other.values);
+                }
+            }
+
+            @Override
+            public synchronized double getValueCount()
+            {
+                return values.size();
+            }
+
+            @Override
+            public synchronized double getValueSum()
+            {
+                return values.stream().mapToLong(Long::longValue).sum();
+            }
+
+            @Override
+            public double[] getQuantileValues()
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public synchronized double[] getCumulativeCounts(double[] upperBounds)
+            {
+                double[] counts = new double[upperBounds.length];
+                for (int i = 0; i < upperBounds.length; i++) {
+                    for (long value : values) {
+                        if (value <= upperBounds[i]) {
+                            counts[i]++;
+                        }
+                    }
+                }
+                return counts;
+            }
+        }
+    }
+}
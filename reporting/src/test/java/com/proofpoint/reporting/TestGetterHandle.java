@@ -0,0 +1,125 @@
+package com.proofpoint.reporting;
+
+import org.testng.annotations.Test;
+
+import javax.management.MBeanException;
+import javax.management.RuntimeErrorException;
+import java.io.IOException;
+
+import static com.proofpoint.reporting.GetterHandle.getterHandle;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestGetterHandle
+{
+    @Test
+    public void testGenerated()
+            throws Exception
+    {
+        GetterHandle getter = getterHandle(PublicObject.class.getMethod("getValue"));
+        assertTrue(getter.isGenerated());
+        assertEquals(getter.invoke(new PublicObject()), 3L);
+        assertEquals(getterHandle(PublicObject.class.getMethod("getName")).invoke(new PublicObject()), "name");
+    }
+
+    @Test
+    public void testNonPublicClass()
+            throws Exception
+    {
+        GetterHandle getter = getterHandle(PrivateObject.class.getMethod("getValue"));
+        assertFalse(getter.isGenerated());
+        assertEquals(getter.invoke(new PrivateObject()), 5);
+    }
+
+    @Test
+    public void testExceptions()
+            throws Exception
+    {
+        for (Class<?> type : new Class<?>[] {PublicObject.class, PrivateObject.class}) {
+            Object target = type.getConstructor().newInstance();
+            try {
+                getterHandle(type.getMethod("getRuntimeException")).invoke(target);
+                fail("expected MBeanException");
+            }
+            catch (MBeanException e) {
+                assertEquals(e.getMessage(), "RuntimeException occurred while invoking getRuntimeException()");
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+            try {
+                getterHandle(type.getMethod("getCheckedException")).invoke(target);
+                fail("expected MBeanException");
+            }
+            catch (MBeanException e) {
+                assertEquals(e.getMessage(), "Exception occurred while invoking getCheckedException()");
+                assertTrue(e.getCause() instanceof IOException);
+            }
+            try {
+                getterHandle(type.getMethod("getError")).invoke(target);
+                fail("expected RuntimeErrorException");
+            }
+            catch (RuntimeErrorException e) {
+                assertEquals(e.getMessage(), "Error occurred while invoking getError()");
+                assertTrue(e.getCause() instanceof AssertionError);
+            }
+        }
+    }
+
+    public static class PublicObject
+    {
+        public long getValue()
+        {
+            return 3;
+        }
+
+        public String getName()
+        {
+            return "name";
+        }
+
+        public Object getRuntimeException()
+        {
+            throw new IllegalStateException();
+        }
+
+        public Object getCheckedException()
+                throws IOException
+        {
+            throw new IOException();
+        }
+
+        public Object getError()
+        {
+            throw new AssertionError();
+        }
+    }
+
+    private static class PrivateObject
+    {
+        public PrivateObject()
+        {
+        }
+
+        public int getValue()
+        {
+            return 5;
+        }
+
+        public Object getRuntimeException()
+        {
+            throw new IllegalStateException();
+        }
+
+        public Object getCheckedException()
+                throws IOException
+        {
+            throw new IOException();
+        }
+
+        public Object getError()
+        {
+            throw new AssertionError();
+        }
+    }
+}
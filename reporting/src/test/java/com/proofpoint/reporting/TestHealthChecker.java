@@ -0,0 +1,262 @@
+package com.proofpoint.reporting;
+
+import com.google.common.base.Ticker;
+import com.proofpoint.reporting.HealthBeanAttribute.Type;
+import com.proofpoint.reporting.HealthChecker.Result;
+import com.proofpoint.units.Duration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestHealthChecker
+{
+    private HealthBeanRegistry registry;
+    private HealthExporter healthExporter;
+    private HealthChecker healthChecker;
+
+    @BeforeMethod
+    public void setup()
+    {
+        registry = new HealthBeanRegistry();
+        healthExporter = new HealthExporter(registry);
+        healthChecker = new HealthChecker(
+                registry,
+                new ReportExporter(new ReportedBeanRegistry(), new MinuteBucketIdProvider()),
+                new ReportingConfig().setHealthCheckTimeout(new Duration(200, MILLISECONDS)).setHealthCheckThreads(2),
+                Ticker.systemTicker(),
+                newSingleThreadScheduledExecutor(),
+                newFixedThreadPool(2));
+    }
+
+    @AfterMethod
+    public void teardown()
+    {
+        healthChecker.stop();
+    }
+
+    @Test
+    public void testNothingRegistered()
+    {
+        assertTrue(healthChecker.getResults().isEmpty());
+    }
+
+    @Test
+    public void testResultIsCached()
+            throws Exception
+    {
+        CountingCheck check = new CountingCheck();
+        healthExporter.export(null, check);
+
+        Result result = getOnlyResult();
+        assertTrue(result.isChecked());
+        assertEquals(result.getType(), Type.REMOVE_FROM_ROTATION);
+        assertNull(result.getValue());
+        assertEquals(check.count.get(), 1);
+
+        getOnlyResult();
+        assertEquals(check.count.get(), 1);
+
+        check.failure = "failed";
+        runUntilCount(check, 2);
+        assertEquals(getOnlyResult().getValue(), "failed");
+    }
+
+    @Test
+    public void testException()
+            throws Exception
+    {
+        healthExporter.export(null, new Object() {
+            @HealthCheckRestartDesired("Check one")
+            public String getCheckOne()
+            {
+                throw new IllegalStateException("broken");
+            }
+        });
+
+        Result result = getOnlyResult();
+        assertEquals(result.getType(), Type.RESTART);
+        assertEquals(result.getValue(), "javax.management.MBeanException: RuntimeException occurred while invoking getCheckOne()");
+    }
+
+    @Test
+    public void testTimeoutNotRerunWhileRunning()
+            throws Exception
+    {
+        BlockingCheck check = new BlockingCheck();
+        healthExporter.export(null, check);
+
+        assertEquals(getOnlyResult().getValue(), "Check one timed out after 200.00ms");
+        healthChecker.runChecks();
+        assertEquals(check.count.get(), 1);
+
+        check.release.countDown();
+        runUntilCount(check, 2);
+        assertEquals(check.interrupted.getCount(), 1, "check was interrupted");
+    }
+
+    @Test
+    public void testTimeoutCancelledWhenCheckCompletes()
+            throws Exception
+    {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1);
+        scheduler.setRemoveOnCancelPolicy(true);
+        healthChecker.stop();
+        healthChecker = new HealthChecker(
+                registry,
+                new ReportExporter(new ReportedBeanRegistry(), new MinuteBucketIdProvider()),
+                new ReportingConfig().setHealthCheckTimeout(new Duration(1, MINUTES)),
+                Ticker.systemTicker(),
+                scheduler,
+                newFixedThreadPool(2));
+        CountingCheck check = new CountingCheck();
+        healthExporter.export(null, check);
+
+        getOnlyResult();
+        runUntilCount(check, 3);
+        for (int i = 0; i < 100 && !scheduler.getQueue().isEmpty(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(scheduler.getQueue().isEmpty(), "timeouts left scheduled");
+    }
+
+    @Test
+    public void testFieldCheckNotCached()
+            throws Exception
+    {
+        FieldCheck check = new FieldCheck();
+        healthExporter.export(null, check);
+
+        Result result = getOnlyResult();
+        assertTrue(result.isChecked());
+        assertEquals(result.getType(), Type.REMOVE_FROM_ROTATION);
+        assertNull(result.getValue());
+
+        check.failure.set("failed");
+        assertEquals(getOnlyResult().getValue(), "failed");
+    }
+
+    @Test
+    public void testChecksRunInParallel()
+            throws Exception
+    {
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        AtomicBoolean parallel = new AtomicBoolean();
+        for (String name : new String[] {"one", "two"}) {
+            healthExporter.export(name, new Object() {
+                @HealthCheck("Check")
+                public String getCheck()
+                        throws InterruptedException
+                {
+                    bothRunning.countDown();
+                    parallel.set(bothRunning.await(10, SECONDS));
+                    return null;
+                }
+            });
+        }
+
+        Collection<Result> results = healthChecker.getResults();
+        assertEquals(results.size(), 2);
+        assertTrue(parallel.get());
+    }
+
+    @Test
+    public void testUnregistered()
+            throws Exception
+    {
+        healthExporter.export(null, new CountingCheck());
+        assertEquals(healthChecker.getResults().size(), 1);
+
+        registry.unregister("Check one");
+        assertTrue(healthChecker.getResults().isEmpty());
+    }
+
+    private Result getOnlyResult()
+    {
+        Collection<Result> results = healthChecker.getResults();
+        assertEquals(results.size(), 1);
+        return results.iterator().next();
+    }
+
+    private void runUntilCount(CountingCheck check, int expected)
+            throws InterruptedException
+    {
+        // The previous run may not yet have finished
+        for (int i = 0; i < 1000 && check.completed.get() < expected; i++) {
+            healthChecker.runChecks();
+            Thread.sleep(10);
+        }
+        assertEquals(check.completed.get(), expected);
+    }
+
+    public static class CountingCheck
+    {
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicInteger completed = new AtomicInteger();
+        volatile String failure;
+
+        @HealthCheckRemoveFromRotation("Check one")
+        public String getCheckOne()
+                throws InterruptedException
+        {
+            count.incrementAndGet();
+            try {
+                return check();
+            }
+            finally {
+                completed.incrementAndGet();
+            }
+        }
+
+        String check()
+                throws InterruptedException
+        {
+            return failure;
+        }
+    }
+
+    public static class BlockingCheck
+            extends CountingCheck
+    {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+
+        @Override
+        String check()
+                throws InterruptedException
+        {
+            if (count.get() > 1) {
+                return null;
+            }
+            try {
+                release.await();
+                return null;
+            }
+            catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+        }
+    }
+
+    public static class FieldCheck
+    {
+        @HealthCheckRemoveFromRotation("Check one")
+        final AtomicReference<String> failure = new AtomicReference<>();
+    }
+}
@@ -0,0 +1,181 @@
+package com.proofpoint.reporting;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.proofpoint.reporting.MetricHistory.Sample;
+import com.proofpoint.reporting.MetricHistory.Series;
+import com.proofpoint.reporting.MetricHistory.SeriesHistory;
+import com.proofpoint.units.Duration;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class TestMetricHistory
+{
+    private static final Map<String, String> TAGS = ImmutableMap.of("foo", "bar");
+
+    @Test
+    public void testRecordAndQuery()
+    {
+        MetricHistory history = new MetricHistory(3, 10);
+        TestingSample metric = new TestingSample("Foo.Metric", 1);
+        history.recordSlot(1000, ImmutableList.of(metric, new TestingSample("Foo.Other", 10), new TestingSample("Bar.Metric", 100)));
+        Series series = metric.getSeries();
+        assertNotNull(series);
+        history.recordSlot(2000, ImmutableList.of(metric.setValue(2)));
+        assertSame(metric.getSeries(), series);
+
+        assertHistory(history.query("Foo.Metric"::equals, 0, Long.MAX_VALUE), "Foo.Metric", ImmutableMap.of(1000L, 1.0, 2000L, 2.0));
+        assertHistory(history.query("Foo.Metric"::equals, 1500, 2500), "Foo.Metric", ImmutableMap.of(2000L, 2.0));
+        assertEquals(history.query(name -> name.startsWith("Foo."), 0, Long.MAX_VALUE).size(), 2);
+        assertEquals(history.query("Baz.Metric"::equals, 0, Long.MAX_VALUE).size(), 0);
+    }
+
+    @Test
+    public void testWrapsAround()
+    {
+        MetricHistory history = new MetricHistory(3, 10);
+        TestingSample metric = new TestingSample("Foo.Metric", 0);
+        for (int i = 1; i <= 5; i++) {
+            history.recordSlot(i * 1000, i == 4 ? ImmutableList.of() : ImmutableList.of(metric.setValue(i)));
+        }
+
+        assertHistory(history.query("Foo.Metric"::equals, 0, Long.MAX_VALUE), "Foo.Metric", ImmutableMap.of(3000L, 3.0, 5000L, 5.0));
+    }
+
+    @Test
+    public void testMaxSeries()
+    {
+        MetricHistory history = new MetricHistory(2, 2);
+        TestingSample first = new TestingSample("First", 1);
+        TestingSample second = new TestingSample("Second", 2);
+        TestingSample third = new TestingSample("Third", 3);
+        history.recordSlot(1000, ImmutableList.of(first, second, third));
+        Series firstSeries = first.getSeries();
+        assertNotNull(firstSeries);
+        assertNotNull(second.getSeries());
+        assertNull(third.getSeries());
+
+        history.recordSlot(2000, ImmutableList.of(second, third));
+        assertNull(third.getSeries());
+
+        history.recordSlot(3000, ImmutableList.of(second, third, first));
+        assertNotNull(third.getSeries());
+        assertTrue(firstSeries.isRemoved());
+        assertSame(first.getSeries(), firstSeries);
+        assertFalse(second.getSeries().isRemoved());
+
+        assertEquals(history.query("First"::equals, 0, Long.MAX_VALUE).size(), 0);
+        assertHistory(history.query("Third"::equals, 0, Long.MAX_VALUE), "Third", ImmutableMap.of(3000L, 3.0));
+    }
+
+    @Test
+    public void testStaleSeriesKeptWhileRoomRemains()
+    {
+        MetricHistory history = new MetricHistory(2, 2);
+        TestingSample first = new TestingSample("First", 1);
+        TestingSample second = new TestingSample("Second", 2);
+        history.recordSlot(1000, ImmutableList.of(first));
+        Series firstSeries = first.getSeries();
+        history.recordSlot(2000, ImmutableList.of());
+        history.recordSlot(3000, ImmutableList.of(second, first));
+
+        assertNotNull(second.getSeries());
+        assertFalse(firstSeries.isRemoved());
+        assertSame(first.getSeries(), firstSeries);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "history of 8193 slots of 4096 series is larger than 268435456 bytes")
+    public void testTooLarge()
+    {
+        new MetricHistory(8193, 4096);
+    }
+
+    @Test
+    public void testSizeBytes()
+    {
+        assertEquals(MetricHistory.sizeBytes(new Duration(1, HOURS), new Duration(1, MINUTES), 10_000), 4_800_000);
+        assertEquals(MetricHistory.sizeBytes(new Duration(1_000, DAYS), new Duration(10, SECONDS), 100_000), 6_912_000_000_000L);
+    }
+
+    @Test
+    public void testDisabled()
+    {
+        MetricHistory history = new MetricHistory(0, 10);
+        assertFalse(history.isEnabled());
+        TestingSample metric = new TestingSample("Foo.Metric", 1);
+        history.recordSlot(1000, ImmutableList.of(metric));
+        assertNull(metric.getSeries());
+        assertEquals(history.query(name -> true, 0, Long.MAX_VALUE).size(), 0);
+    }
+
+    private static void assertHistory(List<SeriesHistory> actual, String name, Map<Long, Double> values)
+    {
+        assertEquals(actual.size(), 1);
+        assertEquals(actual.get(0).getName(), name);
+        assertEquals(actual.get(0).getTags(), TAGS);
+        assertEquals(actual.get(0).getValues(), values);
+    }
+
+    private static class TestingSample
+            implements Sample
+    {
+        private final String name;
+        private double value;
+        private Series series;
+
+        TestingSample(String name, double value)
+        {
+            this.name = name;
+            this.value = value;
+        }
+
+        TestingSample setValue(double value)
+        {
+            this.value = value;
+            return this;
+        }
+
+        @Override
+        public String getName()
+        {
+            return name;
+        }
+
+        @Override
+        public Map<String, String> getTags()
+        {
+            return TAGS;
+        }
+
+        @Override
+        public double getValue()
+        {
+            return value;
+        }
+
+        @Override
+        public Series getSeries()
+        {
+            return series;
+        }
+
+        @Override
+        public void setSeries(Series series)
+        {
+            this.series = series;
+        }
+    }
+}
@@ -17,6 +17,7 @@ package com.proofpoint.reporting;
 
 import com.proofpoint.reporting.BucketIdProvider.BucketId;
 import com.proofpoint.testing.TestingTicker;
+import com.proofpoint.units.Duration;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
@@ -70,6 +71,7 @@ public class TestMinuteBucketIdProvider
         startTime = getCurrentTimeNanos();
         bucketId = idProvider.get();
         assertEquals(bucketId.getId(), 0, "before minute boundary");
+        assertEquals(idProvider.getCurrentId(), 0, "before minute boundary");
         assertGreaterThanOrEqual(bucketId.getTimestamp(), startTime - 59_999_999_999L);
         assertLessThanOrEqual(bucketId.getTimestamp(), getCurrentTimeNanos() - 59_999_999_999L);
 
@@ -77,10 +79,37 @@ public class TestMinuteBucketIdProvider
         startTime = getCurrentTimeNanos();
         bucketId = idProvider.get();
         assertEquals(bucketId.getId(), 1, "on minute boundary");
+        assertEquals(idProvider.getCurrentId(), 1, "on minute boundary");
         assertGreaterThanOrEqual(bucketId.getTimestamp(), startTime);
         assertLessThanOrEqual(bucketId.getTimestamp(), getCurrentTimeNanos());
     }
 
+    @Test
+    public void testBucketInterval()
+    {
+        BucketIdProvider idProvider = new MinuteBucketIdProvider(ticker, new Duration(10, TimeUnit.SECONDS));
+        assertEquals(idProvider.get().getId(), 0, "initial state");
+
+        ticker.elapseTime(9_999_999_999L, TimeUnit.NANOSECONDS);
+        long startTime = getCurrentTimeNanos();
+        BucketId bucketId = idProvider.get();
+        assertEquals(bucketId.getId(), 0, "before boundary");
+        assertEquals(idProvider.getCurrentId(), 0, "before boundary");
+        assertGreaterThanOrEqual(bucketId.getTimestamp(), startTime - 9_999_999_999L);
+        assertLessThanOrEqual(bucketId.getTimestamp(), getCurrentTimeNanos() - 9_999_999_999L);
+
+        ticker.elapseTime(1, TimeUnit.NANOSECONDS);
+        startTime = getCurrentTimeNanos();
+        bucketId = idProvider.get();
+        assertEquals(bucketId.getId(), 1, "on boundary");
+        assertEquals(idProvider.getCurrentId(), 1, "on boundary");
+        assertGreaterThanOrEqual(bucketId.getTimestamp(), startTime);
+        assertLessThanOrEqual(bucketId.getTimestamp(), getCurrentTimeNanos());
+
+        ticker.elapseTime(1, TimeUnit.MINUTES);
+        assertEquals(idProvider.getCurrentId(), 7);
+    }
+
     private static long getCurrentTimeNanos()
     {
         return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
@@ -0,0 +1,95 @@
+package com.proofpoint.reporting;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.testng.Assert.assertEquals;
+
+public class TestPrometheusProtobufWriter
+{
+    @Test
+    public void testEncodeLabels()
+    {
+        assertEquals(PrometheusProtobufWriter.encodeLabels(ImmutableMap.of("a", "b", "1-c", "d").entrySet()), new byte[] {
+                0x0a, 0x06, 0x0a, 0x01, 'a', 0x12, 0x01, 'b',
+                0x0a, 0x09, 0x0a, 0x04, '_', '1', '_', 'c', 0x12, 0x01, 'd'
+        });
+    }
+
+    @Test
+    public void testEncodeLongLabel()
+    {
+        String value = Strings.repeat("x", 200);
+        byte[] encoded = PrometheusProtobufWriter.encodeLabels(ImmutableMap.of("a", value).entrySet());
+
+        assertEquals(encoded.length, 209);
+        assertEquals(new byte[] {encoded[0], encoded[1], encoded[2], encoded[3], encoded[4], encoded[5], encoded[6], encoded[7], encoded[8]},
+                new byte[] {0x0a, (byte) 0xce, 0x01, 0x0a, 0x01, 'a', 0x12, (byte) 0xc8, 0x01});
+        assertEquals(new String(encoded, 9, 200, UTF_8), value);
+    }
+
+    @Test
+    public void testGauge()
+            throws Exception
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrometheusProtobufWriter writer = new PrometheusProtobufWriter(output);
+
+        writer.startMetricFamily("m".getBytes(UTF_8), "gauge");
+        writer.startMetric(PrometheusProtobufWriter.encodeLabels(ImmutableMap.of("a", "b").entrySet()));
+        writer.writeGauge(1.0);
+        writer.endMetric(MILLISECONDS.toNanos(1));
+        writer.flush();
+
+        assertEquals(output.toByteArray(), new byte[] {
+                // MetricFamily, length-delimited
+                0x1c,
+                // name
+                0x0a, 0x01, 'm',
+                // type GAUGE
+                0x18, 0x01,
+                // metric
+                0x22, 0x15,
+                0x0a, 0x06, 0x0a, 0x01, 'a', 0x12, 0x01, 'b',
+                0x12, 0x09, 0x09, 0, 0, 0, 0, 0, 0, (byte) 0xf0, 0x3f,
+                0x30, 0x01
+        });
+    }
+
+    @Test
+    public void testHistogram()
+            throws Exception
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrometheusProtobufWriter writer = new PrometheusProtobufWriter(output);
+
+        writer.startMetricFamily("h".getBytes(UTF_8), "histogram");
+        writer.startMetric(new byte[0]);
+        writer.writeHistogram(new double[] {2.0}, new double[] {3}, 0.0, 4);
+        writer.endMetric(null);
+        writer.flush();
+
+        assertEquals(output.toByteArray(), new byte[] {
+                0x21,
+                0x0a, 0x01, 'h',
+                // type HISTOGRAM
+                0x18, 0x04,
+                0x22, 0x1a,
+                // histogram
+                0x3a, 0x18,
+                // sample_count
+                0x08, 0x04,
+                // sample_sum
+                0x11, 0, 0, 0, 0, 0, 0, 0, 0,
+                // bucket
+                0x1a, 0x0b,
+                0x08, 0x03,
+                0x11, 0, 0, 0, 0, 0, 0, 0, 0x40
+        });
+    }
+}
@@ -16,7 +16,9 @@
 package com.proofpoint.reporting;
 
 import com.google.common.collect.ImmutableMap;
+import com.proofpoint.reporting.ReportCollectionFactory.CardinalityStats;
 import com.proofpoint.testing.TestingTicker;
+import com.proofpoint.units.Duration;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
 import org.mockito.Mock;
@@ -28,14 +30,22 @@ import javax.validation.constraints.NotNull;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.google.common.base.Preconditions.checkState;
+import static com.proofpoint.reporting.BucketIdProvider.BucketId.bucketId;
 import static com.proofpoint.testing.EquivalenceTester.equivalenceTester;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.verify;
 import static org.mockito.MockitoAnnotations.initMocks;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNotSame;
 import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
@@ -100,6 +110,266 @@ public class TestReportCollectionFactory
         assertSame(reportCaptor.getValue(), someObject);
     }
 
+    @Test
+    public void testSeriesLimit()
+    {
+        TestingTicker ticker = new TestingTicker();
+        reportCollectionFactory = new ReportCollectionFactory(reportExporter, ticker, new ReportingConfig().setCollectionMaxSeries(2));
+        KeyedDistribution keyedDistribution = reportCollectionFactory.createReportCollection(KeyedDistribution.class);
+        SomeObject first = keyedDistribution.add("first", false);
+        SomeObject second = keyedDistribution.add("second", false);
+        SomeObject overflow = keyedDistribution.add("third", false);
+
+        assertNotSame(overflow, first);
+        assertNotSame(overflow, second);
+        assertSame(keyedDistribution.add("fourth", true), overflow);
+        assertSame(keyedDistribution.add("first", false), first);
+        verify(reportExporter).export(same(overflow), eq(false), eq("KeyedDistribution.Add"), eq(ImmutableMap.of("foo", "__other__", "bar", "__other__")));
+
+        ArgumentCaptor<CardinalityStats> statsCaptor = ArgumentCaptor.forClass(CardinalityStats.class);
+        verify(reportExporter).export(statsCaptor.capture(), eq(false), eq("KeyedDistribution.Add.Cardinality"), eq(ImmutableMap.of()));
+        assertEquals(statsCaptor.getValue().getRejectedKeys(), 2);
+
+        ticker.increment(15, MINUTES);
+        SomeObject third = keyedDistribution.add("third", false);
+        assertNotSame(third, overflow);
+        verify(reportExporter).export(same(third), eq(false), eq("KeyedDistribution.Add"), eq(ImmutableMap.of("foo", "third", "bar", "false")));
+        assertEquals(statsCaptor.getValue().getRejectedKeys(), 2);
+    }
+
+    @Test
+    public void testSeriesLimitRecoveredAtExpirationCheck()
+    {
+        TestingTicker ticker = new TestingTicker();
+        reportCollectionFactory = new ReportCollectionFactory(reportExporter, ticker, new ReportingConfig()
+                .setCollectionMaxSeries(2)
+                .setCollectionExpiration(new Duration(1, MINUTES)));
+        KeyedDistribution keyedDistribution = reportCollectionFactory.createReportCollection(KeyedDistribution.class);
+        keyedDistribution.add("first", false);
+        keyedDistribution.add("second", false);
+
+        ticker.increment(50, SECONDS);
+        SomeObject overflow = keyedDistribution.add("third", false);
+
+        // The stats have expired but are not removed until the next expiration check
+        ticker.increment(10, SECONDS);
+        assertSame(keyedDistribution.add("third", false), overflow);
+
+        ticker.increment(5, SECONDS);
+        SomeObject third = keyedDistribution.add("third", false);
+        assertNotSame(third, overflow);
+        verify(reportExporter).export(same(third), eq(false), eq("KeyedDistribution.Add"), eq(ImmutableMap.of("foo", "third", "bar", "false")));
+    }
+
+    @Test
+    public void testTotalSeriesLimit()
+    {
+        reportCollectionFactory = new ReportCollectionFactory(reportExporter, new TestingTicker(), new ReportingConfig().setCollectionMaxTotalSeries(2));
+        KeyedDistribution keyedDistribution = reportCollectionFactory.createReportCollection(KeyedDistribution.class);
+        OptionalKeyedDistribution optionalKeyedDistribution = reportCollectionFactory.createReportCollection(OptionalKeyedDistribution.class);
+        SomeObject first = keyedDistribution.add("first", false);
+        SomeObject second = optionalKeyedDistribution.add(Optional.of("second"), Optional.empty());
+        SomeObject overflow = optionalKeyedDistribution.add(Optional.of("third"), Optional.empty());
+
+        assertNotSame(overflow, first);
+        assertNotSame(overflow, second);
+        assertSame(optionalKeyedDistribution.add(Optional.of("second"), Optional.empty()), second);
+        verify(reportExporter).export(same(overflow), eq(false), eq("OptionalKeyedDistribution.Add"), eq(ImmutableMap.of("foo", "__other__", "bar", "__other__")));
+        verify(reportExporter).export(any(CardinalityStats.class), eq(false), eq("OptionalKeyedDistribution.Add.Cardinality"), eq(ImmutableMap.of()));
+    }
+
+    @Test
+    public void testOverflowNotCountedInLimits()
+    {
+        reportCollectionFactory = new ReportCollectionFactory(reportExporter, new TestingTicker(), new ReportingConfig()
+                .setCollectionMaxSeries(2)
+                .setCollectionMaxTotalSeries(3));
+        KeyedDistribution keyedDistribution = reportCollectionFactory.createReportCollection(KeyedDistribution.class);
+        OptionalKeyedDistribution optionalKeyedDistribution = reportCollectionFactory.createReportCollection(OptionalKeyedDistribution.class);
+        keyedDistribution.add("first", false);
+        keyedDistribution.add("second", false);
+        SomeObject overflow = keyedDistribution.add("third", false);
+
+        SomeObject other = optionalKeyedDistribution.add(Optional.of("other"), Optional.empty());
+        assertNotSame(other, overflow);
+        verify(reportExporter).export(same(other), eq(false), eq("OptionalKeyedDistribution.Add"), eq(ImmutableMap.of("foo", "other")));
+    }
+
+    @Test
+    public void testOverflowExpires()
+    {
+        TestingTicker ticker = new TestingTicker();
+        reportCollectionFactory = new ReportCollectionFactory(reportExporter, ticker, new ReportingConfig()
+                .setCollectionMaxSeries(1)
+                .setCollectionExpiration(new Duration(1, MINUTES)));
+        KeyedDistribution keyedDistribution = reportCollectionFactory.createReportCollection(KeyedDistribution.class);
+        keyedDistribution.add("first", false);
+        SomeObject overflow = keyedDistribution.add("second", false);
+        ArgumentCaptor<CardinalityStats> statsCaptor = ArgumentCaptor.forClass(CardinalityStats.class);
+        verify(reportExporter).export(statsCaptor.capture(), eq(false), eq("KeyedDistribution.Add.Cardinality"), eq(ImmutableMap.of()));
+
+        ticker.increment(30, SECONDS);
+        keyedDistribution.add("first", false);
+        ticker.increment(35, SECONDS);
+        keyedDistribution.add("first", false);
+
+        verify(reportExporter).unexportObject(overflow);
+        verify(reportExporter).unexportObject(statsCaptor.getValue());
+        assertNotSame(keyedDistribution.add("second", false), overflow);
+    }
+
+    @Test
+    public void testRejectionEndsWhenAnotherMethodRemovesSeries()
+    {
+        TestingTicker ticker = new TestingTicker();
+        reportCollectionFactory = new ReportCollectionFactory(reportExporter, ticker, new ReportingConfig()
+                .setCollectionMaxTotalSeries(3)
+                .setCollectionExpiration(new Duration(1, MINUTES)));
+        KeyedDistribution keyedDistribution = reportCollectionFactory.createReportCollection(KeyedDistribution.class);
+        OptionalKeyedDistribution optionalKeyedDistribution = reportCollectionFactory.createReportCollection(OptionalKeyedDistribution.class);
+        keyedDistribution.add("first", false);
+        keyedDistribution.add("second", false);
+
+        ticker.increment(10, SECONDS);
+        optionalKeyedDistribution.add(Optional.of("first"), Optional.empty());
+        SomeObject overflow = optionalKeyedDistribution.add(Optional.of("second"), Optional.empty());
+
+        ticker.increment(40, SECONDS);
+        optionalKeyedDistribution.add(Optional.of("first"), Optional.empty());
+        assertSame(optionalKeyedDistribution.add(Optional.of("second"), Optional.empty()), overflow);
+
+        // Removes both of the other method's stats before recreating one, well before this method's next expiration check
+        ticker.increment(11, SECONDS);
+        keyedDistribution.add("first", false);
+
+        ticker.increment(1, SECONDS);
+        assertNotSame(optionalKeyedDistribution.add(Optional.of("second"), Optional.empty()), overflow);
+    }
+
+    @Test
+    public void testCollectionExpiration()
+    {
+        TestingTicker ticker = new TestingTicker();
+        reportCollectionFactory = new ReportCollectionFactory(reportExporter, ticker, new ReportingConfig().setCollectionExpiration(new Duration(1, MINUTES)));
+        KeyedDistribution keyedDistribution = reportCollectionFactory.createReportCollection(KeyedDistribution.class);
+        SomeObject someObject = keyedDistribution.add("value", false);
+
+        ticker.increment(59, SECONDS);
+        assertSame(keyedDistribution.add("value", false), someObject);
+
+        ticker.increment(1, MINUTES);
+        assertNotSame(keyedDistribution.add("value", false), someObject);
+        verify(reportExporter).unexportObject(someObject);
+    }
+
+    @Test
+    public void testArgumentsWithSameStringValue()
+    {
+        ObjectKeyedDistribution objectKeyedDistribution = reportCollectionFactory.createReportCollection(ObjectKeyedDistribution.class);
+        StringBuilder mutableKey = new StringBuilder("1");
+        SomeObject someObject = objectKeyedDistribution.add("1");
+
+        assertSame(objectKeyedDistribution.add(1), someObject);
+        assertSame(objectKeyedDistribution.add(1L), someObject);
+        assertSame(objectKeyedDistribution.add(Optional.of(1)), someObject);
+        assertSame(objectKeyedDistribution.add(mutableKey), someObject);
+        verify(reportExporter).export(same(someObject), eq(false), eq("ObjectKeyedDistribution.Add"), eq(ImmutableMap.of("foo", "1")));
+
+        mutableKey.append('0');
+        SomeObject otherObject = objectKeyedDistribution.add(mutableKey);
+        assertNotSame(otherObject, someObject);
+        verify(reportExporter).export(same(otherObject), eq(false), eq("ObjectKeyedDistribution.Add"), eq(ImmutableMap.of("foo", "10")));
+    }
+
+    @Test
+    public void testRollupOnly()
+    {
+        RollupOnlyDistribution rollupOnlyDistribution = reportCollectionFactory.createReportCollection(RollupOnlyDistribution.class);
+        SomeObject someObject = rollupOnlyDistribution.add("value", false);
+
+        assertSame(rollupOnlyDistribution.add("value", true), someObject);
+        assertNotSame(rollupOnlyDistribution.add("other", false), someObject);
+        verify(reportExporter).export(same(someObject), eq(false), eq("RollupOnlyDistribution.Add"), eq(ImmutableMap.of("foo", "value")));
+    }
+
+    @Test
+    public void testRollup()
+    {
+        RollupDistribution rollupDistribution = reportCollectionFactory.createReportCollection(RollupDistribution.class);
+        MergeableStat first = rollupDistribution.add("value", false);
+        MergeableStat second = rollupDistribution.add("value", true);
+        MergeableStat other = rollupDistribution.add("other", true);
+
+        verify(reportExporter).export(same(first), eq(false), eq("RollupDistribution.Add"), eq(ImmutableMap.of("foo", "value", "bar", "false")));
+        verify(reportExporter).export(same(second), eq(false), eq("RollupDistribution.Add"), eq(ImmutableMap.of("foo", "value", "bar", "true")));
+        ArgumentCaptor<BucketedRollup> rollupCaptor = ArgumentCaptor.forClass(BucketedRollup.class);
+        verify(reportExporter).export(rollupCaptor.capture(), eq(false), eq("RollupDistribution.Add"), eq(ImmutableMap.of("foo", "value", "bar", "__all__")));
+        BucketedRollup rollup = rollupCaptor.getValue();
+        verify(reportExporter).export(any(BucketedRollup.class), eq(false), eq("RollupDistribution.Add"), eq(ImmutableMap.of("foo", "other", "bar", "__all__")));
+
+        AtomicInteger bucket = new AtomicInteger();
+        BucketIdProvider bucketIdProvider = () -> bucketId(bucket.get(), bucket.get() * 60_000);
+        for (Bucketed<?> bucketed : new Bucketed<?>[] {first, second, other, rollup}) {
+            bucketed.setBucketIdProvider(bucketIdProvider);
+        }
+        first.add(1);
+        second.add(2);
+        other.add(4);
+        bucket.incrementAndGet();
+
+        assertEquals(((MergeableStat.Bucket) rollup.getPreviousBucket().getBucket()).getCount(), 3);
+        assertEquals(((MergeableStat.Bucket) first.getPreviousBucket().getBucket()).getCount(), 1);
+
+        // Members removed or added within a bucket change that bucket's merge
+        rollup.removeMember(second);
+        assertEquals(((MergeableStat.Bucket) rollup.getPreviousBucket().getBucket()).getCount(), 1);
+        rollup.addMember(second);
+        assertEquals(((MergeableStat.Bucket) rollup.getPreviousBucket().getBucket()).getCount(), 3);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,
+            expectedExceptionsMessageRegExp = ".*RollupNotMergeable\\.add\\(java\\.lang\\.String, boolean\\) return type SomeObject is not a Bucketed stat with MergeableBucket buckets.*")
+    public void testRollupNotMergeable()
+    {
+        reportCollectionFactory.createReportCollection(RollupNotMergeable.class);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,
+            expectedExceptionsMessageRegExp = ".*RollupUnknownKey\\.add\\(java\\.lang\\.String, boolean\\) @Rollup key \"baz\" is not a @Key of the method")
+    public void testRollupUnknownKey()
+    {
+        reportCollectionFactory.createReportCollection(RollupUnknownKey.class);
+    }
+
+    private interface RollupOnlyDistribution
+    {
+        @Rollup(value = "bar", only = true)
+        SomeObject add(@Key("foo") String key, @Key("bar") boolean bool);
+    }
+
+    private interface RollupDistribution
+    {
+        @Rollup("bar")
+        MergeableStat add(@Key("foo") String key, @Key("bar") boolean bool);
+    }
+
+    private interface RollupNotMergeable
+    {
+        @Rollup("bar")
+        SomeObject add(@Key("foo") String key, @Key("bar") boolean bool);
+    }
+
+    private interface RollupUnknownKey
+    {
+        @Rollup(value = "baz", only = true)
+        SomeObject add(@Key("foo") String key, @Key("bar") boolean bool);
+    }
+
+    private interface ObjectKeyedDistribution
+    {
+        SomeObject add(@Key("foo") Object key);
+    }
+
     private interface KeyedDistribution
     {
         SomeObject add(@Key("foo") String key, @NotNull @Key("bar") boolean bool);
@@ -376,6 +646,39 @@ public class TestReportCollectionFactory
     {
     }
 
+    public static class MergeableStat
+            extends Bucketed<MergeableStat.Bucket>
+    {
+        public void add(long value)
+        {
+            applyToCurrentBucket(bucket -> bucket.count.addAndGet(value));
+        }
+
+        @Override
+        protected Bucket createBucket(Bucket previousBucket)
+        {
+            return new Bucket();
+        }
+
+        static class Bucket
+                implements MergeableBucket<Bucket>
+        {
+            private final AtomicLong count = new AtomicLong();
+
+            @Override
+            public void merge(Bucket other)
+            {
+                count.addAndGet(other.count.get());
+            }
+
+            @Reported
+            public long getCount()
+            {
+                return count.get();
+            }
+        }
+    }
+
     public static class ConstructorNeedsArgument
     {
         public ConstructorNeedsArgument(int something)
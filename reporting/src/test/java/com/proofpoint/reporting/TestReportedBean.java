@@ -18,6 +18,8 @@ import static com.proofpoint.reporting.Util.getMethod;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
 import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
 
 public class TestReportedBean
 {
@@ -90,6 +92,45 @@ public class TestReportedBean
         }, bucketIdProvider);
     }
 
+    @Test
+    public void testGetterOfNonPublicClass()
+            throws Exception
+    {
+        Object object = new Object() {
+            @Reported
+            public int getValue()
+            {
+                return 3;
+            }
+        };
+        ReportedBeanAttribute attribute = ReportedBean.forTarget(object, bucketIdProvider).getAttributes().iterator().next();
+        assertEquals(attribute.getValue(null), 3);
+    }
+
+    @Test
+    public void testGetterThrows()
+    {
+        IllegalStateException exception = new IllegalStateException("test exception");
+        Object object = new Object() {
+            @Reported
+            public int getValue()
+            {
+                throw exception;
+            }
+        };
+        ReportedBeanAttribute attribute = ReportedBean.forTarget(object, bucketIdProvider).getAttributes().iterator().next();
+        try {
+            attribute.getValue(null);
+            fail("expected MBeanException");
+        }
+        catch (MBeanException e) {
+            assertSame(e.getCause(), exception);
+        }
+        catch (ReflectionException e) {
+            fail("expected MBeanException", e);
+        }
+    }
+
     @Test(dataProvider = "fixtures")
     public void testGetterAttributeInfo(String attribute, boolean isIs, Object[] values, Class<?> clazz)
     {
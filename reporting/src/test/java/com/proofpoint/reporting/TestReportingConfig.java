@@ -0,0 +1,92 @@
+package com.proofpoint.reporting;
+
+import com.google.common.collect.ImmutableMap;
+import com.proofpoint.units.Duration;
+import com.proofpoint.units.MinDuration;
+import org.testng.annotations.Test;
+
+import javax.validation.constraints.AssertFalse;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.Map;
+
+import static com.proofpoint.configuration.testing.ConfigAssertions.assertFullMapping;
+import static com.proofpoint.configuration.testing.ConfigAssertions.assertRecordedDefaults;
+import static com.proofpoint.configuration.testing.ConfigAssertions.recordDefaults;
+import static com.proofpoint.testing.ValidationAssertions.assertFailsValidation;
+import static com.proofpoint.testing.ValidationAssertions.assertValidates;
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+public class TestReportingConfig
+{
+    @Test
+    public void testDefaults()
+    {
+        assertRecordedDefaults(recordDefaults(ReportingConfig.class)
+                .setBucketInterval(new Duration(1, MINUTES))
+                .setCollectionExpiration(new Duration(15, MINUTES))
+                .setCollectionMaxSeries(10_000)
+                .setCollectionMaxTotalSeries(100_000)
+                .setHealthCheckInterval(new Duration(10, SECONDS))
+                .setHealthCheckTimeout(new Duration(5, SECONDS))
+                .setHealthCheckThreads(4)
+                .setHistoryRetention(new Duration(0, SECONDS))
+                .setHistoryMaxSeries(10_000));
+    }
+
+    @Test
+    public void testExplicitPropertyMappings()
+    {
+        Map<String, String> properties = new ImmutableMap.Builder<String, String>()
+                .put("reporting.bucket-interval", "10s")
+                .put("reporting.collection.expiration", "1h")
+                .put("reporting.collection.max-series", "100")
+                .put("reporting.collection.max-total-series", "1000")
+                .put("reporting.health-check.interval", "1m")
+                .put("reporting.health-check.timeout", "30s")
+                .put("reporting.health-check.threads", "2")
+                .put("reporting.history.retention", "10m")
+                .put("reporting.history.max-series", "500")
+                .build();
+
+        ReportingConfig expected = new ReportingConfig()
+                .setBucketInterval(new Duration(10, SECONDS))
+                .setCollectionExpiration(new Duration(1, HOURS))
+                .setCollectionMaxSeries(100)
+                .setCollectionMaxTotalSeries(1000)
+                .setHealthCheckInterval(new Duration(1, MINUTES))
+                .setHealthCheckTimeout(new Duration(30, SECONDS))
+                .setHealthCheckThreads(2)
+                .setHistoryRetention(new Duration(10, MINUTES))
+                .setHistoryMaxSeries(500);
+
+        assertFullMapping(properties, expected);
+    }
+
+    @Test
+    public void testValidation()
+    {
+        assertFailsValidation(new ReportingConfig().setBucketInterval(null), "bucketInterval", "must not be null", NotNull.class);
+        assertFailsValidation(new ReportingConfig().setBucketInterval(new Duration(9999, MILLISECONDS)), "bucketInterval", "must be greater than or equal to 10s", MinDuration.class);
+        assertFailsValidation(new ReportingConfig().setCollectionExpiration(new Duration(999, MILLISECONDS)), "collectionExpiration", "must be greater than or equal to 1s", MinDuration.class);
+        assertFailsValidation(new ReportingConfig().setCollectionMaxSeries(0), "collectionMaxSeries", "must be greater than or equal to 1", Min.class);
+        assertFailsValidation(new ReportingConfig().setCollectionMaxTotalSeries(0), "collectionMaxTotalSeries", "must be greater than or equal to 1", Min.class);
+        assertFailsValidation(new ReportingConfig().setHealthCheckInterval(new Duration(999, MILLISECONDS)), "healthCheckInterval", "must be greater than or equal to 1s", MinDuration.class);
+        assertFailsValidation(new ReportingConfig().setHealthCheckTimeout(new Duration(0, MILLISECONDS)), "healthCheckTimeout", "must be greater than or equal to 1ms", MinDuration.class);
+        assertFailsValidation(new ReportingConfig().setHealthCheckThreads(0), "healthCheckThreads", "must be greater than or equal to 1", Min.class);
+        assertFailsValidation(new ReportingConfig().setHistoryRetention(null), "historyRetention", "must not be null", NotNull.class);
+        assertFailsValidation(new ReportingConfig().setHistoryMaxSeries(0), "historyMaxSeries", "must be greater than or equal to 1", Min.class);
+        assertFailsValidation(new ReportingConfig().setHistoryRetention(new Duration(1, DAYS)).setBucketInterval(new Duration(10, SECONDS)).setHistoryMaxSeries(10_000),
+                "historyTooLarge", "must be false", AssertFalse.class);
+    }
+
+    @Test
+    public void testHistorySizeLimit()
+    {
+        assertValidates(new ReportingConfig().setHistoryRetention(new Duration(1, DAYS)).setBucketInterval(new Duration(1, MINUTES)).setHistoryMaxSeries(10_000));
+    }
+}
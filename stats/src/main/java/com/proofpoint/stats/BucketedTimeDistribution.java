@@ -18,19 +18,56 @@ package com.proofpoint.stats;
 import com.google.common.base.Function;
 import com.proofpoint.reporting.Bucketed;
 import com.proofpoint.reporting.Reported;
+import com.proofpoint.units.Duration;
 
-import javax.annotation.concurrent.GuardedBy;
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 public final class BucketedTimeDistribution
     extends Bucketed<BucketedTimeDistribution.Distribution>
 {
+    static final Duration DEFAULT_HIGHEST_TRACKABLE_TIME = new Duration(1, HOURS);
+
+    private final DistributionEngine engine;
+    private final long highestTrackableNanos;
+
+    public BucketedTimeDistribution()
+    {
+        this(DistributionEngine.getDefault());
+    }
+
+    public BucketedTimeDistribution(DistributionEngine engine)
+    {
+        this(engine, DEFAULT_HIGHEST_TRACKABLE_TIME);
+    }
+
+    /**
+     * @param highestTrackableTime The longest time the
+     * {@link DistributionEngine#LOG_LINEAR_HISTOGRAM} engine distinguishes.
+     * Longer times are counted as this time in the percentiles and max, but
+     * not in the count or total.
+     */
+    public BucketedTimeDistribution(DistributionEngine engine, Duration highestTrackableTime)
+    {
+        this.engine = requireNonNull(engine, "engine is null");
+        highestTrackableNanos = highestTrackableNanos(highestTrackableTime);
+    }
+
+    static long highestTrackableNanos(Duration highestTrackableTime)
+    {
+        requireNonNull(highestTrackableTime, "highestTrackableTime is null");
+        long nanos = highestTrackableTime.roundTo(NANOSECONDS);
+        checkArgument(nanos >= MICROSECONDS.toNanos(1), "highestTrackableTime must be at least 1us");
+        return nanos;
+    }
+
     public void add(final long value)
     {
         applyToCurrentBucket((Function<Distribution, Void>) input -> {
-            synchronized (input) {
-                input.digest.add(value);
-                input.total += value;
-            }
+            input.summary.add(value);
             return null;
         });
     }
@@ -38,70 +75,68 @@ public final class BucketedTimeDistribution
     @Override
     protected Distribution createBucket(Distribution previousBucket)
     {
-        return new Distribution();
+        return new Distribution(engine, highestTrackableNanos);
     }
 
     protected static class Distribution
+            extends DistributionBucket
     {
-        private static final double MAX_ERROR = 0.01;
-
-        @GuardedBy("this")
-        private final QuantileDigest digest = new QuantileDigest(MAX_ERROR);
-
-        @GuardedBy("this")
-        private long total = 0;
+        Distribution(DistributionEngine engine, long highestTrackableNanos)
+        {
+            super(engine, highestTrackableNanos, 1_000_000_000);
+        }
 
         @Reported
-        public synchronized double getCount()
+        public double getCount()
         {
-            return digest.getCount();
+            return summary.snapshot().getCount();
         }
 
         @Reported
-        public synchronized double getTotal() {
-            return convertToSeconds(total);
+        public double getTotal() {
+            return convertToSeconds(summary.snapshot().getTotal());
         }
 
         @Reported
-        public synchronized double getP50()
+        public double getP50()
         {
-            return convertToSeconds(digest.getQuantile(0.5));
+            return convertToSeconds(summary.snapshot().getP50());
         }
 
         @Reported
-        public synchronized double getP75()
+        public double getP75()
         {
-            return convertToSeconds(digest.getQuantile(0.75));
+            return convertToSeconds(summary.snapshot().getP75());
         }
 
         @Reported
-        public synchronized double getP90()
+        public double getP90()
         {
-            return convertToSeconds(digest.getQuantile(0.90));
+            return convertToSeconds(summary.snapshot().getP90());
         }
 
         @Reported
-        public synchronized double getP95()
+        public double getP95()
         {
-            return convertToSeconds(digest.getQuantile(0.95));
+            return convertToSeconds(summary.snapshot().getP95());
         }
 
         @Reported
-        public synchronized double getP99()
+        public double getP99()
         {
-            return convertToSeconds(digest.getQuantile(0.99));
+            return convertToSeconds(summary.snapshot().getP99());
         }
 
         @Reported
-        public synchronized double getMin()
+        public double getMin()
         {
-            return convertToSeconds(digest.getMin());
+            return convertToSeconds(summary.snapshot().getMin());
         }
 
         @Reported
-        public synchronized double getMax()
+        public double getMax()
         {
-            return convertToSeconds(digest.getMax());
+            return convertToSeconds(summary.snapshot().getMax());
         }
 
         private static double convertToSeconds(long nanos)
@@ -17,30 +17,64 @@ package com.proofpoint.stats;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.base.Ticker;
 import com.proofpoint.stats.DecayCounter.DecayCounterSnapshot;
 import org.weakref.jmx.Flatten;
 import org.weakref.jmx.Managed;
 import org.weakref.jmx.Nested;
 
-import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.LongAdder;
 
 import static java.util.Objects.requireNonNull;
 
 public class CounterStat
 {
-    private final AtomicLong count = new AtomicLong(0);
-    private final DecayCounter oneMinute = new DecayCounter(ExponentialDecay.oneMinute());
-    private final DecayCounter fiveMinute = new DecayCounter(ExponentialDecay.fiveMinutes());
-    private final DecayCounter fifteenMinute = new DecayCounter(ExponentialDecay.fifteenMinutes());
+    private final LongAdder count = new LongAdder();
+    private final DecayCounter oneMinute;
+    private final DecayCounter fiveMinute;
+    private final DecayCounter fifteenMinute;
     private final BucketedCounter bucket = new BucketedCounter();
+    @Nullable
+    private final LongAdder pending;
+
+    public CounterStat()
+    {
+        this(false);
+    }
+
+    /**
+     * @param striped If true, counts are accumulated in a {@link LongAdder}
+     * and only folded into the decaying counters when they are read.
+     */
+    CounterStat(boolean striped)
+    {
+        if (striped) {
+            pending = new LongAdder();
+            oneMinute = new DecayCounter(ExponentialDecay.oneMinute(), Ticker.systemTicker(), this::flushPendingCounts);
+            fiveMinute = new DecayCounter(ExponentialDecay.fiveMinutes(), Ticker.systemTicker(), this::flushPendingCounts);
+            fifteenMinute = new DecayCounter(ExponentialDecay.fifteenMinutes(), Ticker.systemTicker(), this::flushPendingCounts);
+        }
+        else {
+            pending = null;
+            oneMinute = new DecayCounter(ExponentialDecay.oneMinute());
+            fiveMinute = new DecayCounter(ExponentialDecay.fiveMinutes());
+            fifteenMinute = new DecayCounter(ExponentialDecay.fifteenMinutes());
+        }
+    }
 
     public void add(long count)
     {
-        oneMinute.add(count);
-        fiveMinute.add(count);
-        fifteenMinute.add(count);
+        if (pending == null) {
+            oneMinute.add(count);
+            fiveMinute.add(count);
+            fifteenMinute.add(count);
+        }
+        else {
+            pending.add(count);
+        }
         bucket.add(count);
-        this.count.addAndGet(count);
+        this.count.add(count);
     }
 
     /**
@@ -49,29 +83,42 @@ public class CounterStat
     @Deprecated
     public void update(long count)
     {
-        oneMinute.add(count);
-        fiveMinute.add(count);
-        fifteenMinute.add(count);
-        bucket.add(count);
-        this.count.addAndGet(count);
+        add(count);
+    }
+
+    private void flushPendingCounts()
+    {
+        if (pending != null) {
+            long count = pending.sumThenReset();
+            if (count != 0) {
+                oneMinute.add(count);
+                fiveMinute.add(count);
+                fifteenMinute.add(count);
+            }
+        }
     }
 
     public void merge(CounterStat counterStat)
     {
         requireNonNull(counterStat, "counterStat is null");
+        counterStat.flushPendingCounts();
+        flushPendingCounts();
         oneMinute.merge(counterStat.getOneMinute());
         fiveMinute.merge(counterStat.getFiveMinute());
         fifteenMinute.merge(counterStat.getFifteenMinute());
-        count.addAndGet(counterStat.getTotalCount());
+        count.add(counterStat.getTotalCount());
     }
 
     @Managed
     public void reset()
     {
+        if (pending != null) {
+            pending.reset();
+        }
         oneMinute.reset();
         fiveMinute.reset();
         fifteenMinute.reset();
-        count.set(0);
+        count.reset();
     }
 
     /**
@@ -80,16 +127,21 @@ public class CounterStat
     @Deprecated
     public void resetTo(CounterStat counterStat)
     {
+        counterStat.flushPendingCounts();
+        if (pending != null) {
+            pending.reset();
+        }
         oneMinute.resetTo(counterStat.getOneMinute());
         fiveMinute.resetTo(counterStat.getFiveMinute());
         fifteenMinute.resetTo(counterStat.getFifteenMinute());
-        count.set(counterStat.getTotalCount());
+        count.reset();
+        count.add(counterStat.getTotalCount());
     }
 
     @Managed
     public long getTotalCount()
     {
-        return count.get();
+        return count.sum();
     }
 
     @Nested
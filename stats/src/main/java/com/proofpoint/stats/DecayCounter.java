@@ -24,8 +24,11 @@ public final class DecayCounter
     // needs to be such that Math.exp(alpha * seconds) does not grow too big
     static final long RESCALE_THRESHOLD_SECONDS = 50;
 
+    private static final Runnable NO_PENDING_COUNTS = () -> {};
+
     private final double alpha;
     private final Ticker ticker;
+    private final Runnable flushPendingCounts;
 
     private long landmarkInSeconds;
     private double count = 0.0;
@@ -36,10 +39,20 @@ public final class DecayCounter
     }
 
     public DecayCounter(double alpha, Ticker ticker)
+    {
+        this(alpha, ticker, NO_PENDING_COUNTS);
+    }
+
+    /**
+     * @param flushPendingCounts Invoked before every read, outside of the
+     * counter's lock, to fold in counts buffered by the owner
+     */
+    DecayCounter(double alpha, Ticker ticker, Runnable flushPendingCounts)
     {
         checkArgument(alpha >= 0.0, "alpha is negative");
         this.alpha = alpha;
         this.ticker = ticker;
+        this.flushPendingCounts = requireNonNull(flushPendingCounts, "flushPendingCounts is null");
         landmarkInSeconds = getTickInSeconds();
     }
 
@@ -104,14 +117,17 @@ public final class DecayCounter
     }
 
     @Managed
-    public synchronized double getCount()
+    public double getCount()
     {
-        long nowInSeconds = getTickInSeconds();
-        return count / weight(nowInSeconds, landmarkInSeconds);
+        flushPendingCounts.run();
+        synchronized (this) {
+            long nowInSeconds = getTickInSeconds();
+            return count / weight(nowInSeconds, landmarkInSeconds);
+        }
     }
 
     @Managed
-    public synchronized double getRate()
+    public double getRate()
     {
         // The total time covered by this counter is equivalent to the integral of the weight function from 0 to Infinity,
         // which equals 1/alpha. The count per unit time is, therefore, count / (1/alpha)
@@ -2,12 +2,10 @@ package com.proofpoint.stats;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.google.common.collect.ImmutableList;
 import org.weakref.jmx.Managed;
 
 import javax.annotation.concurrent.GuardedBy;
 import javax.annotation.concurrent.ThreadSafe;
-import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -18,6 +16,14 @@ import static com.google.common.base.MoreObjects.toStringHelper;
 public class Distribution
 {
     private static final double MAX_ERROR = 0.01;
+    private static final double[] SNAPSHOT_QUANTILES = {0.01, 0.05, 0.10, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99};
+    private static final double[] PERCENTILES = new double[100];
+
+    static {
+        for (int i = 0; i < PERCENTILES.length; ++i) {
+            PERCENTILES[i] = i / 100.0;
+        }
+    }
 
     @GuardedBy("this")
     private final QuantileDigest digest;
@@ -58,6 +64,23 @@ public class Distribution
         total.add(value * count);
     }
 
+    /**
+     * Adds the values in {@code values[offset..offset+length)}, taking the
+     * distribution's lock once for the batch.
+     */
+    public void add(long[] values, int offset, int length)
+    {
+        double sum = 0;
+        for (int i = offset; i < offset + length; i++) {
+            sum += values[i];
+        }
+
+        synchronized (this) {
+            digest.add(values, offset, length);
+            total.add(sum);
+        }
+    }
+
     @Managed
     public synchronized double getMaxError()
     {
@@ -145,19 +168,14 @@ public class Distribution
     @Managed
     public Map<Double, Long> getPercentiles()
     {
-        List<Double> percentiles = new ArrayList<>(100);
-        for (int i = 0; i < 100; ++i) {
-            percentiles.add(i / 100.0);
-        }
-
-        List<Long> values;
+        long[] values;
         synchronized (this) {
-            values = digest.getQuantiles(percentiles);
+            values = digest.getQuantiles(PERCENTILES);
         }
 
-        Map<Double, Long> result = new LinkedHashMap<>(values.size());
-        for (int i = 0; i < percentiles.size(); ++i) {
-            result.put(percentiles.get(i), values.get(i));
+        Map<Double, Long> result = new LinkedHashMap<>(values.length);
+        for (int i = 0; i < PERCENTILES.length; ++i) {
+            result.put(PERCENTILES[i], values[i]);
         }
 
         return result;
@@ -170,20 +188,20 @@ public class Distribution
 
     public synchronized DistributionSnapshot snapshot()
     {
-        List<Long> quantiles = digest.getQuantiles(ImmutableList.of(0.01, 0.05, 0.10, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99));
+        long[] quantiles = digest.getQuantiles(SNAPSHOT_QUANTILES);
         return new DistributionSnapshot(
                 getMaxError(),
                 getCount(),
                 getTotal(),
-                quantiles.get(0),
-                quantiles.get(1),
-                quantiles.get(2),
-                quantiles.get(3),
-                quantiles.get(4),
-                quantiles.get(5),
-                quantiles.get(6),
-                quantiles.get(7),
-                quantiles.get(8),
+                quantiles[0],
+                quantiles[1],
+                quantiles[2],
+                quantiles[3],
+                quantiles[4],
+                quantiles[5],
+                quantiles[6],
+                quantiles[7],
+                quantiles[8],
                 getMin(),
                 getMax());
     }
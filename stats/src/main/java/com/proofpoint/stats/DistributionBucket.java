@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.stats;
+
+import com.proofpoint.reporting.MergeableBucket;
+import com.proofpoint.reporting.ReportedDistribution;
+
+/**
+ * Base class of the buckets of the distribution stats. Exposes the bucket's
+ * samples, scaled to reported units, for reporting as a single Prometheus
+ * summary or histogram, and merges buckets for report collection rollups.
+ */
+abstract class DistributionBucket
+        implements ReportedDistribution, MergeableBucket<DistributionBucket>
+{
+    final SampleSummary summary;
+    private final double valuesPerUnit;
+
+    /**
+     * @param valuesPerUnit The number of recorded values per reported unit,
+     * for example 1e9 for stats which record nanoseconds and report seconds
+     */
+    DistributionBucket(DistributionEngine engine, long highestTrackableValue, double valuesPerUnit)
+    {
+        summary = engine.createSummary(highestTrackableValue);
+        this.valuesPerUnit = valuesPerUnit;
+    }
+
+    @Override
+    public void merge(DistributionBucket other)
+    {
+        summary.merge(other.summary);
+    }
+
+    @Override
+    public double getValueCount()
+    {
+        return summary.snapshot().getCount();
+    }
+
+    @Override
+    public double getValueSum()
+    {
+        return summary.snapshot().getTotal() / valuesPerUnit;
+    }
+
+    @Override
+    public double[] getQuantileValues()
+    {
+        SampleSummary.Snapshot snapshot = summary.snapshot();
+        return new double[] {
+                toReportedUnits(snapshot.getP50()),
+                toReportedUnits(snapshot.getP75()),
+                toReportedUnits(snapshot.getP90()),
+                toReportedUnits(snapshot.getP95()),
+                toReportedUnits(snapshot.getP99())
+        };
+    }
+
+    @Override
+    public double[] getCumulativeCounts(double[] upperBounds)
+    {
+        long[] valueBounds = new long[upperBounds.length];
+        for (int i = 0; i < upperBounds.length; i++) {
+            valueBounds[i] = (long) Math.floor(upperBounds[i] * valuesPerUnit);
+        }
+        return summary.getCumulativeCounts(valueBounds);
+    }
+
+    private double toReportedUnits(long value)
+    {
+        if (value == Long.MAX_VALUE || value == Long.MIN_VALUE) {
+            return Double.NaN;
+        }
+        return value / valuesPerUnit;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.stats;
+
+import com.proofpoint.stats.QuantileDigest.Bucket;
+
+import javax.annotation.concurrent.GuardedBy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Locale.ENGLISH;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The data structure backing the reported percentiles of
+ * {@link TimeStat}, {@link SparseTimeStat}, {@link DistributionStat} and
+ * {@link SparseDistributionStat}.
+ *
+ * <p>A stat's engine is passed to its constructor. Stats constructed
+ * without one use the value of the {@value #SYSTEM_PROPERTY} system
+ * property at startup, either {@code quantile-digest} (the default) or
+ * {@code log-linear-histogram}. The summaries of different engines cannot
+ * be merged.
+ */
+public enum DistributionEngine
+{
+    /**
+     * A {@link QuantileDigest} with 1% maximum error. Memory use grows with
+     * the number of distinct values recorded.
+     */
+    QUANTILE_DIGEST {
+        @Override
+        SampleSummary createSummary(long highestTrackableValue)
+        {
+            return new QuantileDigestSummary();
+        }
+    },
+
+    /**
+     * A {@link LogLinearHistogram}. Memory use is fixed and recording is a
+     * single atomic increment, with quantiles accurate to within 0.8%.
+     * Negative values are included in the total as recorded, but are
+     * counted as zero in the quantiles and min, so distributions of signed
+     * values should use {@link #QUANTILE_DIGEST}. Time stats clamp times
+     * above their highest trackable time, an hour by default, in the same
+     * way.
+     */
+    LOG_LINEAR_HISTOGRAM {
+        @Override
+        SampleSummary createSummary(long highestTrackableValue)
+        {
+            return new LogLinearHistogramSummary(highestTrackableValue);
+        }
+    };
+
+    public static final String SYSTEM_PROPERTY = "com.proofpoint.stats.distribution-engine";
+
+    private static final DistributionEngine DEFAULT_ENGINE = fromName(System.getProperty(SYSTEM_PROPERTY, "quantile-digest"));
+
+    /**
+     * Gets the engine of stats constructed without one, as set by the
+     * {@value #SYSTEM_PROPERTY} system property.
+     */
+    public static DistributionEngine getDefault()
+    {
+        return DEFAULT_ENGINE;
+    }
+
+    public static DistributionEngine fromName(String name)
+    {
+        requireNonNull(name, "name is null");
+        return valueOf(name.replace('-', '_').toUpperCase(ENGLISH));
+    }
+
+    /**
+     * @param highestTrackableValue The largest value which engines with a
+     * fixed range need to represent
+     */
+    abstract SampleSummary createSummary(long highestTrackableValue);
+
+    private static class QuantileDigestSummary
+            implements SampleSummary
+    {
+        private static final double MAX_ERROR = 0.01;
+
+        @GuardedBy("this")
+        private final QuantileDigest digest = new QuantileDigest(MAX_ERROR);
+
+        @GuardedBy("this")
+        private long total = 0;
+
+        @GuardedBy("this")
+        private Snapshot snapshot;
+
+        @Override
+        public synchronized void add(long value)
+        {
+            digest.add(value);
+            total += value;
+            snapshot = null;
+        }
+
+        @Override
+        public synchronized Snapshot snapshot()
+        {
+            if (snapshot == null) {
+                snapshot = new Snapshot(digest.getCount(), total, digest.getMin(), digest.getMax(), digest.getQuantiles(REPORTED_QUANTILES));
+            }
+            return snapshot;
+        }
+
+        @Override
+        public double[] getCumulativeCounts(long[] upperBounds)
+        {
+            // The digest's histogram buckets exclude their upper bounds
+            List<Long> bucketUpperBounds = new ArrayList<>(upperBounds.length);
+            for (long upperBound : upperBounds) {
+                bucketUpperBounds.add(upperBound == Long.MAX_VALUE ? upperBound : upperBound + 1);
+            }
+
+            List<Bucket> buckets;
+            synchronized (this) {
+                buckets = digest.getHistogram(bucketUpperBounds);
+            }
+
+            double[] result = new double[buckets.size()];
+            double sum = 0;
+            for (int i = 0; i < result.length; i++) {
+                sum += buckets.get(i).getCount();
+                result[i] = sum;
+            }
+            return result;
+        }
+
+        @Override
+        public void merge(SampleSummary other)
+        {
+            checkArgument(other instanceof QuantileDigestSummary, "Cannot merge %s into a quantile digest summary", other.getClass().getSimpleName());
+            QuantileDigestSummary summary = (QuantileDigestSummary) other;
+
+            // Copy the other digest rather than nesting the locks, so that merges can't deadlock
+            QuantileDigest otherDigest;
+            long otherTotal;
+            synchronized (summary) {
+                otherDigest = new QuantileDigest(summary.digest);
+                otherTotal = summary.total;
+            }
+            synchronized (this) {
+                digest.merge(otherDigest);
+                total += otherTotal;
+                snapshot = null;
+            }
+        }
+    }
+
+    private static class LogLinearHistogramSummary
+            implements SampleSummary
+    {
+        // Published before a snapshot is computed, so that a concurrent add() can invalidate it
+        private static final Snapshot COMPUTING = new Snapshot(0, 0, 0, 0, new long[0]);
+
+        private final LogLinearHistogram histogram;
+        private final LongAdder total = new LongAdder();
+        private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+
+        LogLinearHistogramSummary(long highestTrackableValue)
+        {
+            histogram = new LogLinearHistogram(highestTrackableValue);
+        }
+
+        @Override
+        public void add(long value)
+        {
+            histogram.add(Math.max(value, 0));
+            total.add(value);
+            if (snapshot.get() != null) {
+                snapshot.set(null);
+            }
+        }
+
+        @Override
+        public Snapshot snapshot()
+        {
+            Snapshot cached = snapshot.get();
+            if (cached != null && cached != COMPUTING) {
+                return cached;
+            }
+
+            snapshot.set(COMPUTING);
+            long[] quantiles = histogram.getQuantiles(REPORTED_QUANTILES);
+            Snapshot result = new Snapshot(histogram.getCount(), total.sum(), histogram.getMin(), histogram.getMax(), quantiles);
+            snapshot.compareAndSet(COMPUTING, result);
+            return result;
+        }
+
+        @Override
+        public double[] getCumulativeCounts(long[] upperBounds)
+        {
+            long[] counts = histogram.getCumulativeCounts(upperBounds);
+            double[] result = new double[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                result[i] = counts[i];
+            }
+            return result;
+        }
+
+        @Override
+        public void merge(SampleSummary other)
+        {
+            checkArgument(other instanceof LogLinearHistogramSummary, "Cannot merge %s into a log-linear histogram summary", other.getClass().getSimpleName());
+            LogLinearHistogramSummary summary = (LogLinearHistogramSummary) other;
+            histogram.merge(summary.histogram);
+            total.add(summary.total.sum());
+            if (snapshot.get() != null) {
+                snapshot.set(null);
+            }
+        }
+    }
+}
@@ -14,10 +14,19 @@ public class DistributionStat
     private final Distribution fiveMinutes;
     private final Distribution fifteenMinutes;
     private final Distribution allTime;
-    private final BucketedDistribution bucket = new BucketedDistribution();
+    private final BucketedDistribution bucket;
 
     public DistributionStat()
     {
+        this(DistributionEngine.getDefault());
+    }
+
+    /**
+     * @param engine The engine backing the reported percentiles
+     */
+    public DistributionStat(DistributionEngine engine)
+    {
+        bucket = new BucketedDistribution(engine);
         oneMinute = new Distribution(ExponentialDecay.oneMinute());
         fiveMinutes = new Distribution(ExponentialDecay.fiveMinutes());
         fifteenMinutes = new Distribution(ExponentialDecay.fifteenMinutes());
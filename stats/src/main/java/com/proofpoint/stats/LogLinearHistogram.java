@@ -0,0 +1,265 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.stats;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A fixed-memory histogram of non-negative {@code long} values with
+ * logarithmically sized groups of linearly spaced buckets, in the style of
+ * HdrHistogram.
+ *
+ * <p>Values below 128 are counted exactly. Larger values fall into buckets
+ * no wider than 1/64th of their lower bound, so reported quantiles, which
+ * use the midpoint of the bucket, are within 0.8% of a recorded value.
+ * Negative values are rejected and values above the highest trackable
+ * value are counted as the highest trackable value.
+ *
+ * <p>Recording a value is a single atomic increment and never allocates.
+ * Unlike {@link QuantileDigest}, the histogram does not decay.
+ */
+@ThreadSafe
+public class LogLinearHistogram
+{
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+    private final long highestTrackableValue;
+    private final AtomicLongArray counts;
+
+    public LogLinearHistogram()
+    {
+        this(Long.MAX_VALUE);
+    }
+
+    /**
+     * @param highestTrackableValue The largest value which is counted
+     * without being clamped. Memory use grows with the logarithm of this
+     * value; the full {@code long} range needs 3712 buckets.
+     */
+    public LogLinearHistogram(long highestTrackableValue)
+    {
+        checkArgument(highestTrackableValue >= SUB_BUCKET_COUNT, "highestTrackableValue must be at least %s", SUB_BUCKET_COUNT);
+        this.highestTrackableValue = highestTrackableValue;
+        counts = new AtomicLongArray(bucketIndex(highestTrackableValue) + 1);
+    }
+
+    public long getHighestTrackableValue()
+    {
+        return highestTrackableValue;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value is negative
+     */
+    public void add(long value)
+    {
+        counts.incrementAndGet(bucketIndex(clamp(value)));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value or count is negative
+     */
+    public void add(long value, long count)
+    {
+        checkArgument(count >= 0, "count is negative");
+        counts.addAndGet(bucketIndex(clamp(value)), count);
+    }
+
+    /**
+     * Adds the counts of another histogram to this one.
+     *
+     * @throws IllegalArgumentException if the other histogram has a
+     * different highest trackable value
+     */
+    public void merge(LogLinearHistogram other)
+    {
+        checkArgument(other.highestTrackableValue == highestTrackableValue,
+                "Cannot merge histograms with different highest trackable values: %s vs %s",
+                highestTrackableValue, other.highestTrackableValue);
+        for (int i = 0; i < counts.length(); i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    public long getCount()
+    {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return the lower bound of the lowest non-empty bucket, or
+     * {@link Long#MAX_VALUE} if the histogram is empty
+     */
+    public long getMin()
+    {
+        for (int i = 0; i < counts.length(); i++) {
+            if (counts.get(i) != 0) {
+                return lowerBound(i);
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /**
+     * @return the upper bound of the highest non-empty bucket, or
+     * {@link Long#MIN_VALUE} if the histogram is empty
+     */
+    public long getMax()
+    {
+        for (int i = counts.length() - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) {
+                return Math.min(upperBound(i), highestTrackableValue);
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    /**
+     * Gets the value at the specified quantile, or {@link Long#MIN_VALUE}
+     * if the histogram is empty.
+     */
+    public long getQuantile(double quantile)
+    {
+        return getQuantiles(new double[] {quantile})[0];
+    }
+
+    /**
+     * Gets the values at the specified quantiles in a single pass over the
+     * buckets. The quantiles must be sorted in increasing order. Returns
+     * {@link Long#MIN_VALUE} for each quantile if the histogram is empty.
+     */
+    public long[] getQuantiles(double[] quantiles)
+    {
+        for (int i = 0; i < quantiles.length; i++) {
+            checkArgument(i == 0 || quantiles[i - 1] <= quantiles[i], "quantiles must be sorted in increasing order");
+            checkArgument(quantiles[i] >= 0 && quantiles[i] <= 1, "quantile must be between [0,1]");
+        }
+
+        // Take a copy so that the count and the walk agree with each other
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        int highest = -1;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            if (snapshot[i] != 0) {
+                total += snapshot[i];
+                highest = i;
+            }
+        }
+
+        long[] result = new long[quantiles.length];
+        if (total == 0) {
+            Arrays.fill(result, Long.MIN_VALUE);
+            return result;
+        }
+
+        int index = 0;
+        long sum = 0;
+        for (int i = 0; i <= highest && index < quantiles.length; i++) {
+            sum += snapshot[i];
+            while (index < quantiles.length && sum > quantiles[index] * total) {
+                result[index++] = midpoint(i);
+            }
+        }
+        Arrays.fill(result, index, result.length, Math.min(upperBound(highest), highestTrackableValue));
+        return result;
+    }
+
+    /**
+     * Gets the number of values less than or equal to each of the specified
+     * upper bounds in a single pass over the buckets. The upper bounds must
+     * be sorted in increasing order. A bucket is counted in full if its
+     * lower bound is not above an upper bound, so the counts may include
+     * values up to 1/64th above the upper bound.
+     */
+    public long[] getCumulativeCounts(long[] upperBounds)
+    {
+        for (int i = 1; i < upperBounds.length; i++) {
+            checkArgument(upperBounds[i - 1] <= upperBounds[i], "upper bounds must be sorted in increasing order");
+        }
+
+        long[] result = new long[upperBounds.length];
+        int index = 0;
+        long sum = 0;
+        for (int i = 0; i < counts.length() && index < upperBounds.length; i++) {
+            while (index < upperBounds.length && upperBounds[index] < lowerBound(i)) {
+                result[index++] = sum;
+            }
+            sum += counts.get(i);
+        }
+        Arrays.fill(result, index, result.length, sum);
+        return result;
+    }
+
+    private long clamp(long value)
+    {
+        checkArgument(value >= 0, "value is negative: %s", value);
+        return Math.min(value, highestTrackableValue);
+    }
+
+    @VisibleForTesting
+    static int bucketIndex(long value)
+    {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - (SUB_BUCKET_BITS - 1);
+        return shift * SUB_BUCKET_HALF_COUNT + (int) (value >>> shift);
+    }
+
+    @VisibleForTesting
+    static long lowerBound(int index)
+    {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        long subBucket = index - shift * SUB_BUCKET_HALF_COUNT;
+        return subBucket << shift;
+    }
+
+    @VisibleForTesting
+    static long upperBound(int index)
+    {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_BUCKET_HALF_COUNT - 1;
+        return lowerBound(index) + ((1L << shift) - 1);
+    }
+
+    private long midpoint(int index)
+    {
+        long lower = lowerBound(index);
+        long upper = Math.min(upperBound(index), highestTrackableValue);
+        return lower + (upper - lower) / 2;
+    }
+}
@@ -9,6 +9,7 @@ import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.PeekingIterator;
+import com.google.common.primitives.Longs;
 import com.google.common.util.concurrent.AtomicDouble;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.airlift.slice.BasicSliceInput;
@@ -32,6 +33,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkPositionIndexes;
 import static com.google.common.base.Preconditions.checkState;
 import static com.proofpoint.stats.QuantileDigest.MiddleFunction.DEFAULT;
 import static java.lang.String.format;
@@ -64,6 +66,7 @@ public class QuantileDigest
     static final double ZERO_WEIGHT_THRESHOLD = 1e-5;
 
     private static final int INITIAL_CAPACITY = 1;
+    private static final int MAX_VAR_LONG_SIZE = 10;
 
     private final double maxError;
     private final Ticker ticker;
@@ -160,14 +163,17 @@ public class QuantileDigest
         this.firstFree = other.firstFree;
     }
 
+    /**
+     * Deserializes a digest in either the original format produced by
+     * {@link #serialize()} or the compact format produced by
+     * {@link #serializeCompact()}.
+     */
     public QuantileDigest(Slice serialized)
     {
-        SliceInput input = new BasicSliceInput(serialized);
+        SerializedNodeReader reader = new SerializedNodeReader(serialized);
 
-        byte format = input.readByte();
-        checkArgument(format == 0, "Invalid format");
-        maxError = input.readDouble();
-        alpha = input.readDouble();
+        maxError = reader.maxError;
+        alpha = reader.alpha;
 
         if (alpha == 0.0) {
             ticker = noOpTicker();
@@ -175,18 +181,11 @@ public class QuantileDigest
         else {
             ticker = Ticker.systemTicker();
         }
-        landmarkInSeconds = input.readLong();
+        landmarkInSeconds = reader.landmarkInSeconds;
 
-        min = input.readLong();
-        max = input.readLong();
-        int nodeCount = input.readInt();
-
-        // non-zero-nodes < 3 * k, and k <= log2(domain-size) / max-error
-        // To be conservative, assume all non-zero-nodes can be leaves and we need a complete tree => total-nodes <= 2 * non-zero-nodes
-        // => total-nodes <= 2 * 3 * log2(domain-size) / max-error
-        int numberOfLevels = MAX_BITS - Long.numberOfLeadingZeros(min ^ max) + 1;
-        double k = 3 * numberOfLevels / maxError;
-        checkArgument(nodeCount <= 2 * k, "Too many nodes in deserialized tree. Possible corruption");
+        min = reader.min;
+        max = reader.max;
+        int nodeCount = reader.nodeCount;
 
         counts = new double[nodeCount];
         levels = new byte[nodeCount];
@@ -200,26 +199,17 @@ public class QuantileDigest
         lefts = new int[nodeCount];
         rights = new int[nodeCount];
         for (int node = 0; node < nodeCount; node++) {
-            byte nodeStructure = input.readByte();
-            boolean hasRight = (nodeStructure & Flags.HAS_RIGHT) != 0;
-            boolean hasLeft = (nodeStructure & Flags.HAS_LEFT) != 0;
-            byte level = (byte) ((nodeStructure >>> 2) & 0b111111);
-
-            // Branch node levels are serialized as 0-indexed to save a bit, therefore if this is not a leaf node then
-            // add back one to the level.
-            if (hasLeft || hasRight) {
-                level++;
-            }
-            levels[node] = level;
+            reader.readNode();
+            levels[node] = reader.level;
 
-            if (hasRight) {
+            if (reader.hasRight) {
                 rights[node] = stack[top--];
             }
             else {
                 rights[node] = -1;
             }
 
-            if (hasLeft) {
+            if (reader.hasLeft) {
                 lefts[node] = stack[top--];
             }
             else {
@@ -228,12 +218,11 @@ public class QuantileDigest
 
             stack[++top] = node;
 
-            double count = input.readDouble();
-            weightedCount += count;
-            counts[node] = count;
-            values[node] = input.readLong();
+            weightedCount += reader.count;
+            counts[node] = reader.count;
+            values[node] = reader.value;
         }
-        checkArgument(nodeCount == 0 || top == 0, "Tree is corrupted. Expected a single root node");
+        reader.checkComplete();
         root = nodeCount - 1; // last node in post-order
 
         nextNode = nodeCount;
@@ -288,6 +277,46 @@ public class QuantileDigest
         }
     }
 
+    /**
+     * Adds the values in {@code values[offset..offset+length)} to this digest,
+     * each with a count of 1. Decay weights are computed once for the batch.
+     */
+    public void add(long[] values, int offset, int length)
+    {
+        checkPositionIndexes(offset, offset + length, values.length);
+
+        boolean needsCompression = false;
+        double weight = 1;
+        if (alpha > 0.0) {
+            long nowInSeconds = TimeUnit.NANOSECONDS.toSeconds(ticker.read());
+            if (nowInSeconds - landmarkInSeconds >= RESCALE_THRESHOLD_SECONDS) {
+                rescale(nowInSeconds);
+                needsCompression = true; // rescale affects weights globally, so force compression
+            }
+
+            weight = weight(nowInSeconds);
+        }
+
+        for (int i = offset; i < offset + length; i++) {
+            long value = values[i];
+            max = Math.max(max, value);
+            min = Math.min(min, value);
+
+            double previousCount = weightedCount;
+            insert(longToBits(value), weight);
+
+            int compressionFactor = calculateCompressionFactor();
+            if (needsCompression || ((long) previousCount) / compressionFactor != ((long) weightedCount) / compressionFactor) {
+                compress();
+                needsCompression = false;
+            }
+        }
+
+        if (needsCompression) {
+            compress();
+        }
+    }
+
     public void merge(QuantileDigest other)
     {
         rescaleToCommonLandmark(this, other);
@@ -302,6 +331,42 @@ public class QuantileDigest
         compress();
     }
 
+    /**
+     * Merges a serialized digest into this one, reading the nodes directly
+     * from the slice instead of deserializing them into a {@code QuantileDigest}
+     * first. Accepts both the original and the compact format.
+     */
+    public void merge(Slice serialized)
+    {
+        SerializedNodeReader reader = new SerializedNodeReader(serialized);
+
+        long nowInSeconds = TimeUnit.NANOSECONDS.toSeconds(ticker.read());
+        long targetLandmark = Math.max(landmarkInSeconds, reader.landmarkInSeconds);
+        if (nowInSeconds - targetLandmark >= RESCALE_THRESHOLD_SECONDS) {
+            targetLandmark = nowInSeconds;
+        }
+        if (targetLandmark != landmarkInSeconds) {
+            rescale(targetLandmark);
+        }
+        double factor = Math.exp(-reader.alpha * (targetLandmark - reader.landmarkInSeconds));
+
+        // Inserting the nodes one at a time in post-order produces the same
+        // tree as merging the reconstructed digest would. Levels strictly
+        // decrease along a path, so it holds at most MAX_BITS + 1 nodes.
+        int[] path = new int[MAX_BITS + 1];
+        int pathLength = 0;
+        for (int node = 0; node < reader.nodeCount; node++) {
+            reader.readNode();
+            pathLength = insertNode(reader.value, reader.level, reader.count * factor, path, pathLength);
+        }
+        reader.checkComplete();
+
+        max = Math.max(max, reader.max);
+        min = Math.min(min, reader.min);
+
+        compress();
+    }
+
     /**
      * Get a lower bound on the quantiles for the given proportions. A returned q quantile is guaranteed to be within
      * the q - maxError and q quantiles.
@@ -361,45 +426,35 @@ public class QuantileDigest
      */
     public List<Long> getQuantilesUpperBound(List<Double> quantiles)
     {
-        checkArgument(Ordering.natural().isOrdered(quantiles), "quantiles must be sorted in increasing order");
-        for (double quantile : quantiles) {
-            checkArgument(quantile >= 0 && quantile <= 1, "quantile must be between [0,1]");
+        double[] proportions = new double[quantiles.size()];
+        for (int i = 0; i < proportions.length; i++) {
+            proportions[i] = quantiles.get(i);
         }
+        return ImmutableList.copyOf(Longs.asList(getQuantiles(proportions)));
+    }
 
-        final ImmutableList.Builder<Long> builder = ImmutableList.builder();
-        final PeekingIterator<Double> iterator = Iterators.peekingIterator(quantiles.iterator());
-
-        postOrderTraversal(root, new Callback()
-        {
-            private double sum = 0;
-
-            @Override
-            public boolean process(int node)
-            {
-                sum += counts[node];
-
-                while (iterator.hasNext() && sum > iterator.peek() * weightedCount) {
-                    iterator.next();
-
-                    // we know the max value ever seen, so cap the percentile to provide better error
-                    // bounds in this case
-                    long value = Math.min(upperBound(node), max);
-
-                    builder.add(value);
-                }
+    /**
+     * Get an upper bound on the quantiles for the given proportions in a single traversal of the tree.
+     * A returned q quantile is guaranteed to be within the q and q + maxError quantiles.
+     * <p>
+     * The input array of quantile proportions must be sorted in increasing order, and each value must be in the range [0, 1]
+     */
+    public long[] getQuantiles(double[] quantiles)
+    {
+        for (int i = 0; i < quantiles.length; i++) {
+            checkArgument(i == 0 || quantiles[i - 1] <= quantiles[i], "quantiles must be sorted in increasing order");
+            checkArgument(quantiles[i] >= 0 && quantiles[i] <= 1, "quantile must be between [0,1]");
+        }
 
-                return iterator.hasNext();
-            }
-        });
+        long[] result = new long[quantiles.length];
+        UpperBoundCallback callback = new UpperBoundCallback(quantiles, result);
+        postOrderTraversal(root, callback);
 
         // we finished the traversal without consuming all quantiles. This means the remaining quantiles
         // correspond to the max known value
-        while (iterator.hasNext()) {
-            builder.add(max);
-            iterator.next();
-        }
+        Arrays.fill(result, callback.index, result.length, max);
 
-        return builder.build();
+        return result;
     }
 
     public List<Long> getQuantiles(List<Double> quantiles)
@@ -412,7 +467,7 @@ public class QuantileDigest
      */
     public long getQuantile(double quantile)
     {
-        return getQuantiles(ImmutableList.of(quantile)).get(0);
+        return getQuantiles(new double[] {quantile})[0];
     }
 
     public long getQuantileLowerBound(double quantile)
@@ -578,17 +633,7 @@ public class QuantileDigest
         });
 
         for (int node : nodes) {
-            // The max value for a level is 64.  Non-leaf nodes are decremented by 1
-            // to save a bit (so max serialized value is 63 (111111, 6 bits needed)).
-            // This is shifted 2 bits to give space for left/right child flags.
-            byte nodeStructure = (byte) (Math.max(levels[node] - 1, 0) << 2);
-            if (lefts[node] != -1) {
-                nodeStructure |= Flags.HAS_LEFT;
-            }
-            if (rights[node] != -1) {
-                nodeStructure |= Flags.HAS_RIGHT;
-            }
-            output.writeByte(nodeStructure);
+            output.writeByte(nodeStructure(node));
             output.writeDouble(counts[node]);
             output.writeLong(values[node]);
         }
@@ -596,6 +641,90 @@ public class QuantileDigest
         return output.slice();
     }
 
+    /**
+     * Serializes the digest in a compact format, which {@link #QuantileDigest(Slice)}
+     * and {@link #merge(Slice)} also accept. Counts are stored as floats and
+     * node values as variable-length deltas from the preceding node, which
+     * typically takes less than half the space of {@link #serialize()}.
+     */
+    public Slice serializeCompact()
+    {
+        compress();
+
+        int nodeCount = getNodeCount();
+        SliceOutput output = new DynamicSliceOutput(estimatedCompactSerializedSizeInBytes());
+
+        output.writeByte(Flags.COMPACT_FORMAT);
+        output.writeDouble(maxError);
+        output.writeDouble(alpha);
+        writeVarLong(output, zigZagEncode(landmarkInSeconds));
+        writeVarLong(output, zigZagEncode(min));
+        writeVarLong(output, max - min);
+        writeVarLong(output, nodeCount);
+
+        int[] nodes = new int[nodeCount];
+        postOrderTraversal(root, new Callback()
+        {
+            int index = 0;
+
+            @Override
+            public boolean process(int node)
+            {
+                nodes[index++] = node;
+                return true;
+            }
+        });
+
+        long previousValue = 0;
+        for (int node : nodes) {
+            output.writeByte(nodeStructure(node));
+            output.writeFloat((float) counts[node]);
+
+            // Only the bits above the node's level are significant. Adjacent
+            // nodes in post-order share most of their high bits.
+            byte level = levels[node];
+            long delta = level == MAX_BITS ? 0 : (values[node] ^ previousValue) >>> level;
+            writeVarLong(output, delta);
+            previousValue = applyDelta(previousValue, delta, level);
+        }
+
+        return output.slice();
+    }
+
+    /**
+     * An upper bound on the size of {@link #serializeCompact()}
+     */
+    public int estimatedCompactSerializedSizeInBytes()
+    {
+        int nodeSize = SizeOf.SIZE_OF_BYTE + // levels and left/right flags
+                SizeOf.SIZE_OF_FLOAT + // counts
+                MAX_VAR_LONG_SIZE; // values
+
+        return SizeOf.SIZE_OF_BYTE + // format
+                SizeOf.SIZE_OF_DOUBLE + // maxError
+                SizeOf.SIZE_OF_DOUBLE + // alpha
+                MAX_VAR_LONG_SIZE + // landmarkInSeconds
+                MAX_VAR_LONG_SIZE + // min
+                MAX_VAR_LONG_SIZE + // max
+                MAX_VAR_LONG_SIZE + // node count
+                getNodeCount() * nodeSize;
+    }
+
+    private byte nodeStructure(int node)
+    {
+        // The max value for a level is 64.  Non-leaf nodes are decremented by 1
+        // to save a bit (so max serialized value is 63 (111111, 6 bits needed)).
+        // This is shifted 2 bits to give space for left/right child flags.
+        byte nodeStructure = (byte) (Math.max(levels[node] - 1, 0) << 2);
+        if (lefts[node] != -1) {
+            nodeStructure |= Flags.HAS_LEFT;
+        }
+        if (rights[node] != -1) {
+            nodeStructure |= Flags.HAS_RIGHT;
+        }
+        return nodeStructure;
+    }
+
     @VisibleForTesting
     int getNodeCount()
     {
@@ -713,6 +842,91 @@ public class QuantileDigest
         }
     }
 
+    /**
+     * Adds weight to the node covering the values which share the bits of
+     * {@code value} above {@code level}, creating the node if needed.
+     *
+     * <p>{@code path} holds the first {@code pathLength} nodes descended
+     * through by the previous call. The search resumes from the deepest of
+     * them which covers the node, so inserting nodes in post-order only
+     * walks the part of the tree which differs between consecutive nodes.
+     *
+     * @return the number of nodes in {@code path} for the next call
+     */
+    private int insertNode(long value, int level, double count, int[] path, int pathLength)
+    {
+        if (count < ZERO_WEIGHT_THRESHOLD) {
+            return pathLength;
+        }
+
+        while (pathLength > 0) {
+            int ancestor = path[pathLength - 1];
+            if (levels[ancestor] > level && inSameSubtree(value, values[ancestor], levels[ancestor])) {
+                break;
+            }
+            pathLength--;
+        }
+
+        long lastBranch = 0;
+        int parent = -1;
+        int current = root;
+        if (pathLength > 0) {
+            parent = path[pathLength - 1];
+            lastBranch = value & getBranchMask(levels[parent]);
+            current = lastBranch == 0 ? lefts[parent] : rights[parent];
+        }
+
+        while (true) {
+            if (current == -1) {
+                setChild(parent, lastBranch, createNode(value, level, count));
+                return pathLength;
+            }
+
+            long currentValue = values[current];
+            byte currentLevel = levels[current];
+            if (!inSameSubtree(value, currentValue, Math.max(currentLevel, level))) {
+                // if value and node.value are not in the same branch given node's level,
+                // insert a parent above them at the point at which branches diverge
+                setChild(parent, lastBranch, makeSiblings(current, createNode(value, level, count)));
+                return pathLength;
+            }
+
+            if (currentLevel == level) {
+                // found the node
+                counts[current] += count;
+                weightedCount += count;
+                return pathLength;
+            }
+
+            if (currentLevel < level) {
+                // the current subtree falls within the range of the new node, so hang it below
+                int node = createNode(value, level, count);
+                if ((currentValue & getBranchMask((byte) level)) == 0) {
+                    lefts[node] = current;
+                }
+                else {
+                    rights[node] = current;
+                }
+                setChild(parent, lastBranch, node);
+                return pathLength;
+            }
+
+            // we're on the correct branch of the tree and we haven't reached a leaf, so keep going down
+            long branch = value & getBranchMask(currentLevel);
+
+            parent = current;
+            lastBranch = branch;
+            path[pathLength++] = current;
+
+            if (branch == 0) {
+                current = lefts[current];
+            }
+            else {
+                current = rights[current];
+            }
+        }
+    }
+
     private void setChild(int parent, long branch, int child)
     {
         if (parent == -1) {
@@ -1170,6 +1384,46 @@ public class QuantileDigest
         return String.format("node_%x", node);
     }
 
+    private static long applyDelta(long previousValue, long delta, byte level)
+    {
+        if (level == MAX_BITS) {
+            return previousValue;
+        }
+        return previousValue ^ (delta << level);
+    }
+
+    private static void writeVarLong(SliceOutput output, long value)
+    {
+        while ((value & ~0x7FL) != 0) {
+            output.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        output.writeByte((int) value);
+    }
+
+    private static long readVarLong(SliceInput input)
+    {
+        long result = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte b = input.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable-length long. Possible corruption");
+    }
+
+    private static long zigZagEncode(long value)
+    {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long zigZagDecode(long value)
+    {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
     /**
      * Convert a java long (two's complement representation) to a 64-bit lexicographically-sortable binary
      */
@@ -1296,6 +1550,130 @@ public class QuantileDigest
         }
     }
 
+    private class UpperBoundCallback
+            implements Callback
+    {
+        private final double[] quantiles;
+        private final long[] result;
+        private double sum;
+        private int index;
+
+        UpperBoundCallback(double[] quantiles, long[] result)
+        {
+            this.quantiles = quantiles;
+            this.result = result;
+        }
+
+        @Override
+        public boolean process(int node)
+        {
+            sum += counts[node];
+
+            while (index < quantiles.length && sum > quantiles[index] * weightedCount) {
+                // we know the max value ever seen, so cap the percentile to provide better error
+                // bounds in this case
+                result[index++] = Math.min(upperBound(node), max);
+            }
+
+            return index < quantiles.length;
+        }
+    }
+
+    /**
+     * Reads the header and then, one at a time, the post-order nodes of a
+     * serialized digest in any supported format
+     */
+    private static class SerializedNodeReader
+    {
+        private final SliceInput input;
+        private final boolean compact;
+
+        final double maxError;
+        final double alpha;
+        final long landmarkInSeconds;
+        final long min;
+        final long max;
+        final int nodeCount;
+
+        boolean hasLeft;
+        boolean hasRight;
+        byte level;
+        double count;
+        long value;
+
+        private int nodesRead;
+        // Number of subtrees read which haven't been attached to a parent yet
+        private int pendingSubtrees;
+
+        SerializedNodeReader(Slice serialized)
+        {
+            input = new BasicSliceInput(serialized);
+
+            byte format = input.readByte();
+            checkArgument(format == Flags.FORMAT || format == Flags.COMPACT_FORMAT, "Invalid format");
+            compact = format == Flags.COMPACT_FORMAT;
+
+            maxError = input.readDouble();
+            alpha = input.readDouble();
+            if (compact) {
+                landmarkInSeconds = zigZagDecode(readVarLong(input));
+                min = zigZagDecode(readVarLong(input));
+                max = min + readVarLong(input);
+                long count = readVarLong(input);
+                checkArgument(count >= 0 && count <= Integer.MAX_VALUE, "Invalid node count. Possible corruption");
+                nodeCount = (int) count;
+            }
+            else {
+                landmarkInSeconds = input.readLong();
+                min = input.readLong();
+                max = input.readLong();
+                nodeCount = input.readInt();
+            }
+
+            // non-zero-nodes < 3 * k, and k <= log2(domain-size) / max-error
+            // To be conservative, assume all non-zero-nodes can be leaves and we need a complete tree => total-nodes <= 2 * non-zero-nodes
+            // => total-nodes <= 2 * 3 * log2(domain-size) / max-error
+            int numberOfLevels = MAX_BITS - Long.numberOfLeadingZeros(min ^ max) + 1;
+            double k = 3 * numberOfLevels / maxError;
+            checkArgument(nodeCount <= 2 * k, "Too many nodes in deserialized tree. Possible corruption");
+        }
+
+        void readNode()
+        {
+            checkState(nodesRead < nodeCount, "All nodes have been read");
+            nodesRead++;
+
+            byte nodeStructure = input.readByte();
+            hasRight = (nodeStructure & Flags.HAS_RIGHT) != 0;
+            hasLeft = (nodeStructure & Flags.HAS_LEFT) != 0;
+            level = (byte) ((nodeStructure >>> 2) & 0b111111);
+
+            // Branch node levels are serialized as 0-indexed to save a bit, therefore if this is not a leaf node then
+            // add back one to the level.
+            if (hasLeft || hasRight) {
+                level++;
+            }
+
+            pendingSubtrees -= (hasLeft ? 1 : 0) + (hasRight ? 1 : 0);
+            checkArgument(pendingSubtrees >= 0, "Tree is corrupted. Node has missing children");
+            pendingSubtrees++;
+
+            if (compact) {
+                count = input.readFloat();
+                value = applyDelta(value, readVarLong(input), level);
+            }
+            else {
+                count = input.readDouble();
+                value = input.readLong();
+            }
+        }
+
+        void checkComplete()
+        {
+            checkArgument(nodeCount == 0 || pendingSubtrees == 1, "Tree is corrupted. Expected a single root node");
+        }
+    }
+
     private interface Callback
     {
         /**
@@ -1309,7 +1687,8 @@ public class QuantileDigest
     {
         public static final int HAS_LEFT = 1 << 0;
         public static final int HAS_RIGHT = 1 << 1;
-        public static final byte FORMAT = 0; // Currently there is just one format
+        public static final byte FORMAT = 0;
+        public static final byte COMPACT_FORMAT = 1;
     }
 
     public interface MiddleFunction
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.stats;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Collects samples for a {@link Distribution} or {@link TimeDistribution} in a
+ * thread-confined array and adds them to the distribution in bulk, taking the
+ * distribution's lock once per batch instead of once per sample.
+ * <p>
+ * Samples are not visible in the distribution until the accumulator fills up
+ * or is flushed, so an accumulator should be flushed or closed at the end of
+ * each unit of work.
+ */
+@NotThreadSafe
+public final class SampleAccumulator
+        implements AutoCloseable
+{
+    private final BulkAdder target;
+    private final long[] values;
+    private int count;
+
+    public SampleAccumulator(Distribution distribution, int capacity)
+    {
+        this(requireNonNull(distribution, "distribution is null")::add, capacity);
+    }
+
+    public SampleAccumulator(TimeDistribution distribution, int capacity)
+    {
+        this(requireNonNull(distribution, "distribution is null")::add, capacity);
+    }
+
+    private SampleAccumulator(BulkAdder target, int capacity)
+    {
+        checkArgument(capacity > 0, "capacity must be positive");
+        this.target = target;
+        values = new long[capacity];
+    }
+
+    public void add(long value)
+    {
+        values[count++] = value;
+        if (count == values.length) {
+            flush();
+        }
+    }
+
+    public void flush()
+    {
+        if (count > 0) {
+            target.add(values, 0, count);
+            count = 0;
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        flush();
+    }
+
+    private interface BulkAdder
+    {
+        void add(long[] values, int offset, int length);
+    }
+}
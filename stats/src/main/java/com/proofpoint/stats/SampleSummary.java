@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.stats;
+
+/**
+ * The samples recorded into a single reporting bucket of a distribution
+ * stat. Implementations are thread-safe.
+ */
+interface SampleSummary
+{
+    double[] REPORTED_QUANTILES = {0.5, 0.75, 0.90, 0.95, 0.99};
+
+    void add(long value);
+
+    /**
+     * Gets all the reported values, computed in a single pass over the
+     * samples. The result is cached until another value is added, so the
+     * reporting of a bucket which has been rotated out only computes it once.
+     */
+    Snapshot snapshot();
+
+    /**
+     * Gets the approximate number of values less than or equal to each of
+     * the upper bounds, which must be sorted in increasing order.
+     */
+    double[] getCumulativeCounts(long[] upperBounds);
+
+    /**
+     * Adds the samples of another summary to this one, leaving the other
+     * summary unchanged.
+     *
+     * @throws IllegalArgumentException if the other summary was created by
+     * a different engine
+     */
+    void merge(SampleSummary other);
+
+    /**
+     * Empty summaries report a min of {@link Long#MAX_VALUE} and a max and
+     * quantiles of {@link Long#MIN_VALUE}, as {@link QuantileDigest} does.
+     */
+    final class Snapshot
+    {
+        private final double count;
+        private final long total;
+        private final long min;
+        private final long max;
+        private final long[] quantiles;
+
+        Snapshot(double count, long total, long min, long max, long[] quantiles)
+        {
+            this.count = count;
+            this.total = total;
+            this.min = min;
+            this.max = max;
+            this.quantiles = quantiles;
+        }
+
+        double getCount()
+        {
+            return count;
+        }
+
+        long getTotal()
+        {
+            return total;
+        }
+
+        long getMin()
+        {
+            return min;
+        }
+
+        long getMax()
+        {
+            return max;
+        }
+
+        long getP50()
+        {
+            return quantiles[0];
+        }
+
+        long getP75()
+        {
+            return quantiles[1];
+        }
+
+        long getP90()
+        {
+            return quantiles[2];
+        }
+
+        long getP95()
+        {
+            return quantiles[3];
+        }
+
+        long getP99()
+        {
+            return quantiles[4];
+        }
+    }
+}
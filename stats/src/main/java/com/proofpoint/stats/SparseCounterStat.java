@@ -17,8 +17,11 @@ package com.proofpoint.stats;
 
 import com.google.common.base.Function;
 import com.proofpoint.reporting.Bucketed;
+import com.proofpoint.reporting.MergeableBucket;
 import com.proofpoint.reporting.Reported;
 
+import java.util.concurrent.atomic.DoubleAdder;
+
 public class SparseCounterStat
     extends Bucketed<SparseCounterStat.Counter>
 {
@@ -34,7 +37,7 @@ public class SparseCounterStat
     private void addInternal(final double count)
     {
         applyToCurrentBucket((Function<Counter, Void>) input -> {
-            input.count += count;
+            input.count.add(count);
             return null;
         });
     }
@@ -46,16 +49,24 @@ public class SparseCounterStat
     }
 
     protected static class Counter
+        implements MergeableBucket<Counter>
     {
-        private double count = 0;
+        private final DoubleAdder count = new DoubleAdder();
+
+        @Override
+        public void merge(Counter other)
+        {
+            count.add(other.count.sum());
+        }
 
         @Reported
         public Double getCount()
         {
-            if (count == 0.0) {
+            double sum = count.sum();
+            if (sum == 0.0) {
                 return null;
             }
-            return count;
+            return sum;
         }
     }
 }
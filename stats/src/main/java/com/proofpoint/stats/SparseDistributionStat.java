@@ -19,18 +19,27 @@ import com.google.common.base.Function;
 import com.proofpoint.reporting.Bucketed;
 import com.proofpoint.reporting.Reported;
 
-import javax.annotation.concurrent.GuardedBy;
+import static java.util.Objects.requireNonNull;
 
 public class SparseDistributionStat
     extends Bucketed<SparseDistributionStat.Distribution>
 {
+    private final DistributionEngine engine;
+
+    public SparseDistributionStat()
+    {
+        this(DistributionEngine.getDefault());
+    }
+
+    public SparseDistributionStat(DistributionEngine engine)
+    {
+        this.engine = requireNonNull(engine, "engine is null");
+    }
+
     public void add(final long value)
     {
         applyToCurrentBucket((Function<Distribution, Void>) input -> {
-            synchronized (input) {
-                input.digest.add(value);
-                input.total += value;
-            }
+            input.summary.add(value);
             return null;
         });
     }
@@ -38,23 +47,21 @@ public class SparseDistributionStat
     @Override
     protected final Distribution createBucket(Distribution previousBucket)
     {
-        return new Distribution();
+        return new Distribution(engine);
     }
 
     protected static class Distribution
+            extends DistributionBucket
     {
-        private static final double MAX_ERROR = 0.01;
-
-        @GuardedBy("this")
-        private final QuantileDigest digest = new QuantileDigest(MAX_ERROR);
-
-        @GuardedBy("this")
-        private long total = 0;
+        Distribution(DistributionEngine engine)
+        {
+            super(engine, Long.MAX_VALUE, 1);
+        }
 
         @Reported
-        public synchronized double getCount()
+        public double getCount()
         {
-            double count = digest.getCount();
+            double count = summary.snapshot().getCount();
             if (count == 0.0) {
                 return Double.NaN;
             }
@@ -62,54 +69,55 @@ public class SparseDistributionStat
         }
 
         @Reported
-        public synchronized long getTotal()
+        public long getTotal()
         {
-            if (digest.getCount() == 0.0) {
+            SampleSummary.Snapshot snapshot = summary.snapshot();
+            if (snapshot.getCount() == 0.0) {
                 return Long.MIN_VALUE;
             }
-            return total;
+            return snapshot.getTotal();
         }
     
         @Reported
-        public synchronized long getP50()
+        public long getP50()
         {
-            return digest.getQuantile(0.5);
+            return summary.snapshot().getP50();
         }
     
         @Reported
-        public synchronized long getP75()
+        public long getP75()
         {
-            return digest.getQuantile(0.75);
+            return summary.snapshot().getP75();
         }
     
         @Reported
-        public synchronized long getP90()
+        public long getP90()
         {
-            return digest.getQuantile(0.90);
+            return summary.snapshot().getP90();
         }
     
         @Reported
-        public synchronized long getP95()
+        public long getP95()
         {
-            return digest.getQuantile(0.95);
+            return summary.snapshot().getP95();
         }
     
         @Reported
-        public synchronized long getP99()
+        public long getP99()
         {
-            return digest.getQuantile(0.99);
+            return summary.snapshot().getP99();
         }
     
         @Reported
-        public synchronized long getMin()
+        public long getMin()
         {
-            return digest.getMin();
+            return summary.snapshot().getMin();
         }
     
         @Reported
-        public synchronized long getMax()
+        public long getMax()
         {
-            return digest.getMax();
+            return summary.snapshot().getMax();
         }
     }
 }
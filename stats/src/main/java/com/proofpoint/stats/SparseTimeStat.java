@@ -21,17 +21,21 @@ import com.proofpoint.reporting.Bucketed;
 import com.proofpoint.reporting.Reported;
 import com.proofpoint.units.Duration;
 
-import javax.annotation.concurrent.GuardedBy;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.proofpoint.stats.BucketedTimeDistribution.DEFAULT_HIGHEST_TRACKABLE_TIME;
+import static com.proofpoint.stats.BucketedTimeDistribution.highestTrackableNanos;
+import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 public class SparseTimeStat
     extends Bucketed<SparseTimeStat.Distribution>
 {
     private final Ticker ticker;
+    private final DistributionEngine engine;
+    private final long highestTrackableNanos;
 
     public SparseTimeStat()
     {
@@ -39,8 +43,30 @@ public class SparseTimeStat
     }
 
     public SparseTimeStat(Ticker ticker)
+    {
+        this(ticker, DistributionEngine.getDefault());
+    }
+
+    /**
+     * With the {@link DistributionEngine#LOG_LINEAR_HISTOGRAM} engine, times
+     * longer than an hour are counted as an hour in the percentiles and max.
+     */
+    public SparseTimeStat(Ticker ticker, DistributionEngine engine)
+    {
+        this(ticker, engine, DEFAULT_HIGHEST_TRACKABLE_TIME);
+    }
+
+    /**
+     * @param highestTrackableTime The longest time the
+     * {@link DistributionEngine#LOG_LINEAR_HISTOGRAM} engine distinguishes.
+     * Longer times are counted as this time in the percentiles and max, but
+     * not in the count or total.
+     */
+    public SparseTimeStat(Ticker ticker, DistributionEngine engine, Duration highestTrackableTime)
     {
         this.ticker = ticker;
+        this.engine = requireNonNull(engine, "engine is null");
+        highestTrackableNanos = highestTrackableNanos(highestTrackableTime);
     }
 
     public void add(long value, TimeUnit timeUnit)
@@ -61,10 +87,7 @@ public class SparseTimeStat
     private void add(final long value)
     {
         applyToCurrentBucket((Function<Distribution, Void>) input -> {
-            synchronized (input) {
-                input.digest.add(value);
-                input.total += value;
-            }
+            input.summary.add(value);
             return null;
         });
     }
@@ -108,23 +131,21 @@ public class SparseTimeStat
     @Override
     protected final Distribution createBucket(Distribution previousBucket)
     {
-        return new Distribution();
+        return new Distribution(engine, highestTrackableNanos);
     }
 
     protected static class Distribution
+            extends DistributionBucket
     {
-        private static final double MAX_ERROR = 0.01;
-
-        @GuardedBy("this")
-        private final QuantileDigest digest = new QuantileDigest(MAX_ERROR);
-
-        @GuardedBy("this")
-        private long total = 0;
+        Distribution(DistributionEngine engine, long highestTrackableNanos)
+        {
+            super(engine, highestTrackableNanos, 1_000_000_000);
+        }
 
         @Reported
-        public synchronized double getCount()
+        public double getCount()
         {
-            double count = digest.getCount();
+            double count = summary.snapshot().getCount();
             if (count == 0.0) {
                 return Double.NaN;
             }
@@ -132,53 +153,54 @@ public class SparseTimeStat
         }
 
         @Reported
-        public synchronized double getTotal() {
-            if (digest.getCount() == 0.0) {
+        public double getTotal() {
+            SampleSummary.Snapshot snapshot = summary.snapshot();
+            if (snapshot.getCount() == 0.0) {
                 return Double.NaN;
             }
-            return convertToSeconds(total);
+            return convertToSeconds(snapshot.getTotal());
         }
     
         @Reported
-        public synchronized double getP50()
+        public double getP50()
         {
-            return convertToSeconds(digest.getQuantile(0.5));
+            return convertToSeconds(summary.snapshot().getP50());
         }
     
         @Reported
-        public synchronized double getP75()
+        public double getP75()
         {
-            return convertToSeconds(digest.getQuantile(0.75));
+            return convertToSeconds(summary.snapshot().getP75());
         }
     
         @Reported
-        public synchronized double getP90()
+        public double getP90()
         {
-            return convertToSeconds(digest.getQuantile(0.90));
+            return convertToSeconds(summary.snapshot().getP90());
         }
     
         @Reported
-        public synchronized double getP95()
+        public double getP95()
         {
-            return convertToSeconds(digest.getQuantile(0.95));
+            return convertToSeconds(summary.snapshot().getP95());
         }
     
         @Reported
-        public synchronized double getP99()
+        public double getP99()
         {
-            return convertToSeconds(digest.getQuantile(0.99));
+            return convertToSeconds(summary.snapshot().getP99());
         }
     
         @Reported
-        public synchronized double getMin()
+        public double getMin()
         {
-            return convertToSeconds(digest.getMin());
+            return convertToSeconds(summary.snapshot().getMin());
         }
     
         @Reported
-        public synchronized double getMax()
+        public double getMax()
         {
-            return convertToSeconds(digest.getMax());
+            return convertToSeconds(summary.snapshot().getMax());
         }
 
         private static double convertToSeconds(long nanos)
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.stats;
+
+/**
+ * A {@link CounterStat} for counters which are updated from many threads concurrently.
+ * <p>
+ * Counts are accumulated in striped cells and only folded into the decaying
+ * counters when one of them is read. As decay is applied at the time counts
+ * are folded in, the decaying counters of infrequently-read stats may weigh
+ * counts as more recent than they are. The total count and the per-minute
+ * bucket are updated on every call.
+ */
+public class StripedCounterStat
+        extends CounterStat
+{
+    public StripedCounterStat()
+    {
+        super(true);
+    }
+}
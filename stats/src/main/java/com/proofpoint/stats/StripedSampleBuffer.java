@@ -0,0 +1,166 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.stats;
+
+import com.google.common.annotations.VisibleForTesting;
+
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.math.IntMath.ceilingPowerOfTwo;
+
+/**
+ * A set of bounded, lock-free ring buffers of {@code long} samples. Writers are
+ * spread over the stripes by thread, so concurrent writers rarely touch the
+ * same cache lines. Samples are removed in bulk by {@link #drainTo(SampleBatchConsumer)},
+ * which is serialized on the buffer's monitor.
+ */
+@ThreadSafe
+final class StripedSampleBuffer
+{
+    private static final int MAX_STRIPES = 64;
+    @VisibleForTesting
+    static final int STRIPE_CAPACITY = 64;
+    private static final int STRIPE_MASK = STRIPE_CAPACITY - 1;
+
+    // Marks a slot which has been claimed by a writer but not yet published
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    private final AtomicReferenceArray<Stripe> stripes;
+    private final int stripeMask;
+
+    @GuardedBy("this")
+    private final long[] scratch = new long[STRIPE_CAPACITY];
+
+    StripedSampleBuffer()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    @VisibleForTesting
+    StripedSampleBuffer(int concurrency)
+    {
+        checkArgument(concurrency > 0, "concurrency must be positive");
+        int stripeCount = ceilingPowerOfTwo(Math.min(concurrency, MAX_STRIPES));
+        stripes = new AtomicReferenceArray<>(stripeCount);
+        stripeMask = stripeCount - 1;
+    }
+
+    /**
+     * Adds a sample to the buffer of the calling thread's stripe.
+     *
+     * @return false if the sample could not be buffered, either because the
+     * stripe is full or because the value is not representable. The caller
+     * is then responsible for recording the sample itself.
+     */
+    boolean offer(long value)
+    {
+        if (value == EMPTY) {
+            return false;
+        }
+
+        int index = stripeIndex(Thread.currentThread().getId());
+        Stripe stripe = stripes.get(index);
+        if (stripe == null) {
+            stripes.compareAndSet(index, null, new Stripe());
+            stripe = stripes.get(index);
+        }
+        return stripe.offer(value);
+    }
+
+    /**
+     * Removes all published samples, passing them to the consumer in one or
+     * more batches. The consumer is invoked while holding the buffer's
+     * monitor and must not retain the passed array.
+     */
+    synchronized void drainTo(SampleBatchConsumer consumer)
+    {
+        for (int i = 0; i < stripes.length(); i++) {
+            Stripe stripe = stripes.get(i);
+            if (stripe != null) {
+                int count = stripe.drainTo(scratch);
+                if (count > 0) {
+                    consumer.accept(scratch, count);
+                }
+            }
+        }
+    }
+
+    private int stripeIndex(long threadId)
+    {
+        long hash = threadId * 0x9E37_79B9_7F4A_7C15L;
+        return (int) (hash >>> 32) & stripeMask;
+    }
+
+    interface SampleBatchConsumer
+    {
+        void accept(long[] values, int length);
+    }
+
+    private static final class Stripe
+    {
+        private final AtomicLongArray values = new AtomicLongArray(STRIPE_CAPACITY);
+        private final AtomicLong writeCounter = new AtomicLong();
+        private volatile long readCounter;
+
+        Stripe()
+        {
+            for (int i = 0; i < STRIPE_CAPACITY; i++) {
+                values.lazySet(i, EMPTY);
+            }
+        }
+
+        boolean offer(long value)
+        {
+            while (true) {
+                long head = readCounter;
+                long tail = writeCounter.get();
+                if (tail - head >= STRIPE_CAPACITY) {
+                    return false;
+                }
+                if (writeCounter.compareAndSet(tail, tail + 1)) {
+                    values.lazySet((int) (tail & STRIPE_MASK), value);
+                    return true;
+                }
+            }
+        }
+
+        // Only called by a single thread at a time
+        int drainTo(long[] target)
+        {
+            long head = readCounter;
+            long tail = writeCounter.get();
+            int count = 0;
+            while (head < tail) {
+                int index = (int) (head & STRIPE_MASK);
+                long value = values.get(index);
+                if (value == EMPTY) {
+                    // Slot claimed by a writer which hasn't published yet; pick it up next time
+                    break;
+                }
+                values.lazySet(index, EMPTY);
+                target[count++] = value;
+                head++;
+            }
+            readCounter = head;
+            return count;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.stats;
+
+import com.google.common.base.Ticker;
+
+/**
+ * A {@link TimeStat} for stats which are updated from many threads concurrently.
+ * <p>
+ * Samples are recorded into lock-free per-thread stripes and only folded into
+ * the decaying distributions when one of them is read or a stripe fills up.
+ * As decay is applied at the time samples are folded in, the decaying
+ * distributions of infrequently-updated stats may weigh samples as more recent
+ * than they are. The per-minute bucket is updated on every sample.
+ */
+public class StripedTimeStat
+        extends TimeStat
+{
+    public StripedTimeStat()
+    {
+        this(Ticker.systemTicker());
+    }
+
+    public StripedTimeStat(Ticker ticker)
+    {
+        super(ticker, true, DistributionEngine.getDefault(), BucketedTimeDistribution.DEFAULT_HIGHEST_TRACKABLE_TIME);
+    }
+}
@@ -5,16 +5,24 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import org.weakref.jmx.Managed;
 
 import javax.annotation.concurrent.GuardedBy;
-import java.util.ArrayList;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
+import static java.util.Objects.requireNonNull;
 
 public class TimeDistribution
 {
     private static final double MAX_ERROR = 0.01;
+    private static final Runnable NO_PENDING_SAMPLES = () -> {};
+    private static final double[] SNAPSHOT_QUANTILES = {0.5, 0.75, 0.90, 0.95, 0.99};
+    private static final double[] PERCENTILES = new double[100];
+
+    static {
+        for (int i = 0; i < PERCENTILES.length; ++i) {
+            PERCENTILES[i] = i / 100.0;
+        }
+    }
 
     @GuardedBy("this")
     private final QuantileDigest digest;
@@ -22,16 +30,29 @@ public class TimeDistribution
     @GuardedBy("this")
     private final DecayCounter total;
 
+    private final Runnable flushPendingSamples;
+
     public TimeDistribution()
     {
         digest = new QuantileDigest(MAX_ERROR);
         total = new DecayCounter(0);
+        flushPendingSamples = NO_PENDING_SAMPLES;
     }
 
     public TimeDistribution(double alpha)
+    {
+        this(alpha, NO_PENDING_SAMPLES);
+    }
+
+    /**
+     * @param flushPendingSamples Invoked before every read, outside of the
+     * distribution's lock, to fold in samples buffered by the owner
+     */
+    TimeDistribution(double alpha, Runnable flushPendingSamples)
     {
         digest = new QuantileDigest(MAX_ERROR, alpha);
         total = new DecayCounter(alpha);
+        this.flushPendingSamples = requireNonNull(flushPendingSamples, "flushPendingSamples is null");
     }
 
     public synchronized void add(long value)
@@ -40,86 +61,122 @@ public class TimeDistribution
         total.add(value);
     }
 
+    /**
+     * Adds the values in {@code values[offset..offset+length)}, taking the
+     * distribution's lock once for the batch.
+     */
+    public void add(long[] values, int offset, int length)
+    {
+        double sum = 0;
+        for (int i = offset; i < offset + length; i++) {
+            sum += values[i];
+        }
+
+        synchronized (this) {
+            digest.add(values, offset, length);
+            total.add(sum);
+        }
+    }
+
     @Managed
-    public synchronized double getMaxError()
+    public double getMaxError()
     {
-        return digest.getConfidenceFactor();
+        flushPendingSamples.run();
+        synchronized (this) {
+            return digest.getConfidenceFactor();
+        }
     }
 
     @Managed
-    public synchronized double getCount()
+    public double getCount()
     {
-        return digest.getCount();
+        flushPendingSamples.run();
+        synchronized (this) {
+            return digest.getCount();
+        }
     }
 
     @Managed
-    public synchronized double getTotal() {
-        return convertToSeconds((long) total.getCount());
+    public double getTotal() {
+        flushPendingSamples.run();
+        synchronized (this) {
+            return convertToSeconds((long) total.getCount());
+        }
     }
 
     @Managed
-    public synchronized double getP50()
+    public double getP50()
     {
-        return convertToSeconds(digest.getQuantile(0.5));
+        return getQuantile(0.5);
     }
 
     @Managed
-    public synchronized double getP75()
+    public double getP75()
     {
-        return convertToSeconds(digest.getQuantile(0.75));
+        return getQuantile(0.75);
     }
 
     @Managed
-    public synchronized double getP90()
+    public double getP90()
     {
-        return convertToSeconds(digest.getQuantile(0.90));
+        return getQuantile(0.90);
     }
 
     @Managed
-    public synchronized double getP95()
+    public double getP95()
     {
-        return convertToSeconds(digest.getQuantile(0.95));
+        return getQuantile(0.95);
     }
 
     @Managed
-    public synchronized double getP99()
+    public double getP99()
     {
-        return convertToSeconds(digest.getQuantile(0.99));
+        return getQuantile(0.99);
     }
 
     @Managed
-    public synchronized double getMin()
+    public double getMin()
     {
-        return convertToSeconds(digest.getMin());
+        flushPendingSamples.run();
+        synchronized (this) {
+            return convertToSeconds(digest.getMin());
+        }
     }
 
     @Managed
-    public synchronized double getMax()
+    public double getMax()
     {
-        return convertToSeconds(digest.getMax());
+        flushPendingSamples.run();
+        synchronized (this) {
+            return convertToSeconds(digest.getMax());
+        }
     }
 
     @Managed
     public Map<Double, Double> getPercentiles()
     {
-        List<Double> percentiles = new ArrayList<>(100);
-        for (int i = 0; i < 100; ++i) {
-            percentiles.add(i / 100.0);
-        }
-
-        List<Long> values;
+        flushPendingSamples.run();
+        long[] values;
         synchronized (this) {
-            values = digest.getQuantiles(percentiles);
+            values = digest.getQuantiles(PERCENTILES);
         }
 
-        Map<Double, Double> result = new LinkedHashMap<>(values.size());
-        for (int i = 0; i < percentiles.size(); ++i) {
-            result.put(percentiles.get(i), convertToSeconds(values.get(i)));
+        Map<Double, Double> result = new LinkedHashMap<>(values.length);
+        for (int i = 0; i < PERCENTILES.length; ++i) {
+            result.put(PERCENTILES[i], convertToSeconds(values[i]));
         }
 
         return result;
     }
 
+    private double getQuantile(double quantile)
+    {
+        flushPendingSamples.run();
+        synchronized (this) {
+            return convertToSeconds(digest.getQuantile(quantile));
+        }
+    }
+
     private static double convertToSeconds(long nanos)
     {
         if (nanos == Long.MAX_VALUE || nanos == Long.MIN_VALUE) {
@@ -130,17 +187,21 @@ public class TimeDistribution
 
     public TimeDistributionSnapshot snapshot()
     {
-        return new TimeDistributionSnapshot(
-                getMaxError(),
-                getCount(),
-                getTotal(),
-                getP50(),
-                getP75(),
-                getP90(),
-                getP95(),
-                getP99(),
-                getMin(),
-                getMax());
+        flushPendingSamples.run();
+        synchronized (this) {
+            long[] quantiles = digest.getQuantiles(SNAPSHOT_QUANTILES);
+            return new TimeDistributionSnapshot(
+                    digest.getConfidenceFactor(),
+                    digest.getCount(),
+                    convertToSeconds((long) total.getCount()),
+                    convertToSeconds(quantiles[0]),
+                    convertToSeconds(quantiles[1]),
+                    convertToSeconds(quantiles[2]),
+                    convertToSeconds(quantiles[3]),
+                    convertToSeconds(quantiles[4]),
+                    convertToSeconds(digest.getMin()),
+                    convertToSeconds(digest.getMax()));
+        }
     }
 
     public static class TimeDistributionSnapshot
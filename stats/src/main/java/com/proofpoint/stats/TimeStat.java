@@ -23,6 +23,7 @@ import com.proofpoint.units.Duration;
 import org.weakref.jmx.Flatten;
 import org.weakref.jmx.Nested;
 
+import javax.annotation.Nullable;
 import java.util.concurrent.Callable;
 import java.util.concurrent.TimeUnit;
 
@@ -35,8 +36,10 @@ public class TimeStat
     private final TimeDistribution fiveMinutes;
     private final TimeDistribution fifteenMinutes;
     private final TimeDistribution allTime;
-    private final BucketedTimeDistribution bucket = new BucketedTimeDistribution();
+    private final BucketedTimeDistribution bucket;
     private final Ticker ticker;
+    @Nullable
+    private final StripedSampleBuffer buffer;
 
     public TimeStat()
     {
@@ -44,12 +47,54 @@ public class TimeStat
     }
 
     public TimeStat(Ticker ticker)
+    {
+        this(ticker, DistributionEngine.getDefault());
+    }
+
+    /**
+     * @param engine The engine backing the reported percentiles. With the
+     * {@link DistributionEngine#LOG_LINEAR_HISTOGRAM} engine, times longer
+     * than an hour are counted as an hour in the percentiles and max of the
+     * per-bucket values.
+     */
+    public TimeStat(Ticker ticker, DistributionEngine engine)
+    {
+        this(ticker, false, engine, BucketedTimeDistribution.DEFAULT_HIGHEST_TRACKABLE_TIME);
+    }
+
+    /**
+     * @param highestTrackableTime The longest time the
+     * {@link DistributionEngine#LOG_LINEAR_HISTOGRAM} engine distinguishes
+     * in the per-bucket values
+     */
+    public TimeStat(Ticker ticker, DistributionEngine engine, Duration highestTrackableTime)
+    {
+        this(ticker, false, engine, highestTrackableTime);
+    }
+
+    /**
+     * @param striped If true, samples are recorded into per-thread striped
+     * buffers and only folded into the decaying distributions when they are
+     * read or a buffer fills up.
+     */
+    TimeStat(Ticker ticker, boolean striped, DistributionEngine engine, Duration highestTrackableTime)
     {
         this.ticker = ticker;
-        oneMinute = new TimeDistribution(ExponentialDecay.oneMinute());
-        fiveMinutes = new TimeDistribution(ExponentialDecay.fiveMinutes());
-        fifteenMinutes = new TimeDistribution(ExponentialDecay.fifteenMinutes());
-        allTime = new TimeDistribution();
+        bucket = new BucketedTimeDistribution(engine, highestTrackableTime);
+        if (striped) {
+            buffer = new StripedSampleBuffer();
+            oneMinute = new TimeDistribution(ExponentialDecay.oneMinute(), this::flushPendingSamples);
+            fiveMinutes = new TimeDistribution(ExponentialDecay.fiveMinutes(), this::flushPendingSamples);
+            fifteenMinutes = new TimeDistribution(ExponentialDecay.fifteenMinutes(), this::flushPendingSamples);
+            allTime = new TimeDistribution(0, this::flushPendingSamples);
+        }
+        else {
+            buffer = null;
+            oneMinute = new TimeDistribution(ExponentialDecay.oneMinute());
+            fiveMinutes = new TimeDistribution(ExponentialDecay.fiveMinutes());
+            fifteenMinutes = new TimeDistribution(ExponentialDecay.fifteenMinutes());
+            allTime = new TimeDistribution();
+        }
     }
 
     public void add(long value, TimeUnit timeUnit)
@@ -68,12 +113,34 @@ public class TimeStat
     }
 
     private void add(long value)
+    {
+        if (buffer == null) {
+            addToDistributions(value);
+        }
+        else if (!buffer.offer(value)) {
+            // The stripe is full, so fold in what has been buffered and record directly
+            flushPendingSamples();
+            addToDistributions(value);
+        }
+        bucket.add(value);
+    }
+
+    private void addToDistributions(long value)
     {
         oneMinute.add(value);
         fiveMinutes.add(value);
         fifteenMinutes.add(value);
         allTime.add(value);
-        bucket.add(value);
+    }
+
+    private void flushPendingSamples()
+    {
+        buffer.drainTo((values, length) -> {
+            oneMinute.add(values, 0, length);
+            fiveMinutes.add(values, 0, length);
+            fifteenMinutes.add(values, 0, length);
+            allTime.add(values, 0, length);
+        });
     }
 
     public <T> T time(Callable<T> callable)
@@ -0,0 +1,96 @@
+package com.proofpoint.reporting;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Compares reading a reported attribute through {@link GetterHandle} with
+ * calling the getter through reflection and through a {@link MethodHandle}
+ * held in a field, as each attribute would hold it.
+ */
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+public class BenchmarkGetterHandle
+{
+    @State(Scope.Thread)
+    public static class Getter
+    {
+        private ReportedObject target;
+        private GetterHandle getterHandle;
+        private Method method;
+        private MethodHandle methodHandle;
+
+        @Setup
+        public void setup()
+                throws Exception
+        {
+            target = new ReportedObject();
+            method = ReportedObject.class.getMethod("getValue");
+            getterHandle = GetterHandle.getterHandle(method);
+            methodHandle = MethodHandles.lookup().unreflect(method)
+                    .asType(methodType(Object.class, Object.class));
+        }
+    }
+
+    @Benchmark
+    public Object benchmarkGetterHandle(Getter getter)
+            throws Exception
+    {
+        return getter.getterHandle.invoke(getter.target);
+    }
+
+    @Benchmark
+    public Object benchmarkReflection(Getter getter)
+            throws Exception
+    {
+        return getter.method.invoke(getter.target);
+    }
+
+    @Benchmark
+    public Object benchmarkMethodHandle(Getter getter)
+            throws Throwable
+    {
+        return (Object) getter.methodHandle.invokeExact((Object) getter.target);
+    }
+
+    public static class ReportedObject
+    {
+        private long value = 0;
+
+        public long getValue()
+        {
+            return ++value;
+        }
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .verbosity(VerboseMode.NORMAL)
+                .include(".*" + BenchmarkGetterHandle.class.getSimpleName() + ".*")
+                .build();
+
+        new Runner(options).run();
+    }
+}
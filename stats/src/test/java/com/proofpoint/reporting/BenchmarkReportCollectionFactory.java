@@ -0,0 +1,81 @@
+package com.proofpoint.reporting;
+
+import com.proofpoint.stats.CounterStat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of keyed report collection calls, both for keys
+ * within the series limit and for keys sent to the overflow stat.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+public class BenchmarkReportCollectionFactory
+{
+    @State(Scope.Benchmark)
+    public static class Collection
+    {
+        @Param({"100", "100000"})
+        private int keyCount;
+
+        private KeyedStats keyedStats;
+        private String[] keys;
+
+        @Setup
+        public void setup()
+        {
+            ReportExporter reportExporter = new ReportExporter(new ReportedBeanRegistry(), new MinuteBucketIdProvider());
+            ReportCollectionFactory factory = new ReportCollectionFactory(reportExporter, new ReportingConfig());
+            keyedStats = factory.createReportCollection(KeyedStats.class);
+            keys = new String[keyCount];
+            for (int i = 0; i < keyCount; i++) {
+                keys[i] = "key" + i;
+                keyedStats.requests(keys[i], 200);
+            }
+        }
+    }
+
+    @Benchmark
+    public CounterStat benchmarkKeyedLookup(Collection collection)
+    {
+        String key = collection.keys[ThreadLocalRandom.current().nextInt(collection.keys.length)];
+        return collection.keyedStats.requests(key, 200);
+    }
+
+    public interface KeyedStats
+    {
+        CounterStat requests(@Key("method") String method, @Key("status") int status);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Options options = new OptionsBuilder()
+                    .verbosity(VerboseMode.NORMAL)
+                    .include(".*" + BenchmarkReportCollectionFactory.class.getSimpleName() + ".*")
+                    .threads(threads)
+                    .build();
+
+            new Runner(options).run();
+        }
+    }
+}
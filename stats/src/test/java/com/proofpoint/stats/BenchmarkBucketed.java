@@ -0,0 +1,73 @@
+package com.proofpoint.stats;
+
+import com.proofpoint.reporting.MinuteBucketIdProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures update throughput of bucketed stats as the number of writer threads grows.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+public class BenchmarkBucketed
+{
+    @State(Scope.Benchmark)
+    public static class Stats
+    {
+        private MaxGauge maxGauge;
+        private SparseTimeStat sparseTimeStat;
+
+        @Setup
+        public void setup()
+        {
+            MinuteBucketIdProvider bucketIdProvider = new MinuteBucketIdProvider();
+            maxGauge = new MaxGauge();
+            maxGauge.setBucketIdProvider(bucketIdProvider);
+            sparseTimeStat = new SparseTimeStat();
+            sparseTimeStat.setBucketIdProvider(bucketIdProvider);
+        }
+    }
+
+    @Benchmark
+    public void benchmarkMaxGaugeUpdate(Stats stats)
+    {
+        stats.maxGauge.update(ThreadLocalRandom.current().nextLong(1_000));
+    }
+
+    @Benchmark
+    public void benchmarkSparseTimeStatAdd(Stats stats)
+    {
+        stats.sparseTimeStat.add(ThreadLocalRandom.current().nextLong(1_000_000_000), TimeUnit.NANOSECONDS);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Options options = new OptionsBuilder()
+                    .verbosity(VerboseMode.NORMAL)
+                    .include(".*" + BenchmarkBucketed.class.getSimpleName() + ".*")
+                    .threads(threads)
+                    .build();
+
+            new Runner(options).run();
+        }
+    }
+}
@@ -63,6 +63,7 @@ public class BenchmarkQuantileDigest
         private QuantileDigest digest1;
         private QuantileDigest digest2;
         private Slice serializedDigest;
+        private Slice compactSerializedDigest;
 
         @Setup
         public void setup(Data data)
@@ -70,6 +71,7 @@ public class BenchmarkQuantileDigest
             digest1 = makeDigest(data.values1);
             digest2 = makeDigest(data.values2);
             serializedDigest = digest1.serialize();
+            compactSerializedDigest = digest1.serializeCompact();
         }
 
         private QuantileDigest makeDigest(long[] values)
@@ -95,6 +97,15 @@ public class BenchmarkQuantileDigest
         return digest;
     }
 
+    @Benchmark
+    @OperationsPerInvocation(NUMBER_OF_ENTRIES)
+    public QuantileDigest benchmarkBatchInserts(Data data)
+    {
+        QuantileDigest digest = new QuantileDigest(0.01);
+        digest.add(data.values1, 0, data.values1.length);
+        return digest;
+    }
+
     @Benchmark
     public QuantileDigest benchmarkCopy(Digest data)
     {
@@ -121,6 +132,54 @@ public class BenchmarkQuantileDigest
         return data.digest1.serialize();
     }
 
+    @Benchmark
+    public QuantileDigest benchmarkDeserializeCompact(Digest data)
+    {
+        return new QuantileDigest(data.compactSerializedDigest);
+    }
+
+    @Benchmark
+    public Slice benchmarkSerializeCompact(Digest data)
+    {
+        return data.digest1.serializeCompact();
+    }
+
+    @Benchmark
+    public QuantileDigest benchmarkDeserializeAndMerge(Digest data)
+    {
+        QuantileDigest merged = new QuantileDigest(data.digest2);
+        merged.merge(new QuantileDigest(data.serializedDigest));
+        return merged;
+    }
+
+    @Benchmark
+    public QuantileDigest benchmarkMergeSerialized(Digest data)
+    {
+        QuantileDigest merged = new QuantileDigest(data.digest2);
+        merged.merge(data.serializedDigest);
+        return merged;
+    }
+
+    @Benchmark
+    public QuantileDigest benchmarkMergeCompactSerialized(Digest data)
+    {
+        QuantileDigest merged = new QuantileDigest(data.digest2);
+        merged.merge(data.compactSerializedDigest);
+        return merged;
+    }
+
+    @Benchmark
+    public List<Long> benchmarkQuantilesList(Digest data)
+    {
+        return data.digest1.getQuantiles(ImmutableList.of(0.5, 0.75, 0.9, 0.95, 0.99));
+    }
+
+    @Benchmark
+    public long[] benchmarkQuantilesArray(Digest data)
+    {
+        return data.digest1.getQuantiles(new double[] {0.5, 0.75, 0.9, 0.95, 0.99});
+    }
+
     @Benchmark
     public List<Bucket> benchmarkHistogram(Digest data)
     {
@@ -0,0 +1,80 @@
+package com.proofpoint.stats;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures recording throughput of {@link TimeStat} and {@link CounterStat}
+ * against their striped variants as the number of writer threads grows.
+ */
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(3)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+public class BenchmarkStripedStats
+{
+    @State(Scope.Benchmark)
+    public static class Stats
+    {
+        @Param({"false", "true"})
+        private boolean striped;
+
+        private TimeStat timeStat;
+        private CounterStat counterStat;
+
+        @Setup
+        public void setup()
+        {
+            if (striped) {
+                timeStat = new StripedTimeStat();
+                counterStat = new StripedCounterStat();
+            }
+            else {
+                timeStat = new TimeStat();
+                counterStat = new CounterStat();
+            }
+        }
+    }
+
+    @Benchmark
+    public void benchmarkTimeStatAdd(Stats stats)
+    {
+        stats.timeStat.add(ThreadLocalRandom.current().nextLong(1_000_000_000), TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    public void benchmarkCounterStatAdd(Stats stats)
+    {
+        stats.counterStat.add(1);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        int maxThreads = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Options options = new OptionsBuilder()
+                    .verbosity(VerboseMode.NORMAL)
+                    .include(".*" + BenchmarkStripedStats.class.getSimpleName() + ".*")
+                    .threads(threads)
+                    .build();
+
+            new Runner(options).run();
+        }
+    }
+}
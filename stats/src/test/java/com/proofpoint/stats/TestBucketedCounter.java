@@ -7,6 +7,11 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.testng.Assert.assertEquals;
 
@@ -70,6 +75,35 @@ public class TestBucketedCounter
         assertPreviousCount(counter, 0);
     }
 
+    @Test
+    public void testConcurrentAdds()
+            throws Exception
+    {
+        int threads = 8;
+        int addsPerThread = 10_000;
+        BucketedCounter counter = new BucketedCounter();
+        counter.setBucketIdProvider(bucketIdProvider);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < addsPerThread; j++) {
+                        counter.add(1);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+        ++bucketIdProvider.id;
+        assertPreviousCount(counter, threads * addsPerThread);
+    }
+
     private void assertPreviousCount(BucketedCounter counter, double expected)
             throws Exception
     {
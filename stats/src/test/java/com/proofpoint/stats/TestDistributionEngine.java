@@ -0,0 +1,151 @@
+package com.proofpoint.stats;
+
+import com.proofpoint.stats.SampleSummary.Snapshot;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+public class TestDistributionEngine
+{
+    @Test
+    public void testFromName()
+    {
+        assertEquals(DistributionEngine.fromName("quantile-digest"), DistributionEngine.QUANTILE_DIGEST);
+        assertEquals(DistributionEngine.fromName("log-linear-histogram"), DistributionEngine.LOG_LINEAR_HISTOGRAM);
+        assertEquals(DistributionEngine.fromName("LOG_LINEAR_HISTOGRAM"), DistributionEngine.LOG_LINEAR_HISTOGRAM);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testFromInvalidName()
+    {
+        DistributionEngine.fromName("t-digest");
+    }
+
+    @Test
+    public void testQuantileDigestSnapshot()
+    {
+        assertSnapshot(DistributionEngine.QUANTILE_DIGEST.createSummary(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testLogLinearHistogramSnapshot()
+    {
+        assertSnapshot(DistributionEngine.LOG_LINEAR_HISTOGRAM.createSummary(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testQuantileDigestCumulativeCounts()
+    {
+        assertCumulativeCounts(DistributionEngine.QUANTILE_DIGEST.createSummary(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testLogLinearHistogramCumulativeCounts()
+    {
+        assertCumulativeCounts(DistributionEngine.LOG_LINEAR_HISTOGRAM.createSummary(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testQuantileDigestMerge()
+    {
+        assertMerge(DistributionEngine.QUANTILE_DIGEST);
+    }
+
+    @Test
+    public void testLogLinearHistogramMerge()
+    {
+        assertMerge(DistributionEngine.LOG_LINEAR_HISTOGRAM);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMergeDifferentEngineRejected()
+    {
+        SampleSummary summary = DistributionEngine.QUANTILE_DIGEST.createSummary(Long.MAX_VALUE);
+        SampleSummary other = DistributionEngine.LOG_LINEAR_HISTOGRAM.createSummary(Long.MAX_VALUE);
+
+        summary.merge(other);
+    }
+
+    @Test
+    public void testLogLinearHistogramCountsNegativeValuesAsZero()
+    {
+        SampleSummary summary = DistributionEngine.LOG_LINEAR_HISTOGRAM.createSummary(Long.MAX_VALUE);
+        summary.add(-5);
+        summary.add(10);
+
+        Snapshot snapshot = summary.snapshot();
+        assertEquals(snapshot.getCount(), 2.0);
+        assertEquals(snapshot.getTotal(), 5);
+        assertEquals(snapshot.getMin(), 0);
+    }
+
+    private static void assertMerge(DistributionEngine engine)
+    {
+        SampleSummary summary = engine.createSummary(Long.MAX_VALUE);
+        SampleSummary other = engine.createSummary(Long.MAX_VALUE);
+        for (long value = 1; value <= 50; value++) {
+            summary.add(value);
+        }
+        assertEquals(summary.snapshot().getCount(), 50.0);
+        for (long value = 51; value <= 100; value++) {
+            other.add(value);
+        }
+
+        summary.merge(other);
+
+        Snapshot snapshot = summary.snapshot();
+        assertEquals(snapshot.getCount(), 100.0);
+        assertEquals(snapshot.getTotal(), 5050);
+        assertEquals(snapshot.getMin(), 1);
+        assertEquals(snapshot.getMax(), 100);
+        assertEquals(snapshot.getP50(), 51);
+        assertEquals(other.snapshot().getCount(), 50.0);
+        assertEquals(other.snapshot().getTotal(), 3775);
+    }
+
+    private static void assertCumulativeCounts(SampleSummary summary)
+    {
+        long[] upperBounds = {0, 10, 50, 100, 1000};
+        assertEquals(summary.getCumulativeCounts(upperBounds), new double[] {0, 0, 0, 0, 0});
+
+        for (long value = 1; value <= 100; value++) {
+            summary.add(value);
+        }
+
+        assertEquals(summary.getCumulativeCounts(upperBounds), new double[] {0, 10, 50, 100, 100});
+    }
+
+    private static void assertSnapshot(SampleSummary summary)
+    {
+        Snapshot empty = summary.snapshot();
+        assertEquals(empty.getCount(), 0.0);
+        assertEquals(empty.getTotal(), 0);
+        assertEquals(empty.getMin(), Long.MAX_VALUE);
+        assertEquals(empty.getMax(), Long.MIN_VALUE);
+        assertEquals(empty.getP50(), Long.MIN_VALUE);
+
+        for (long value = 1; value <= 100; value++) {
+            summary.add(value);
+        }
+
+        Snapshot snapshot = summary.snapshot();
+        assertSame(summary.snapshot(), snapshot, "snapshot is cached");
+        assertEquals(snapshot.getCount(), 100.0);
+        assertEquals(snapshot.getTotal(), 5050);
+        assertEquals(snapshot.getMin(), 1);
+        assertEquals(snapshot.getMax(), 100);
+        assertEquals(snapshot.getP50(), 51);
+        assertEquals(snapshot.getP75(), 76);
+        assertEquals(snapshot.getP90(), 91);
+        assertEquals(snapshot.getP95(), 96);
+        assertEquals(snapshot.getP99(), 100);
+
+        summary.add(1000);
+
+        Snapshot updated = summary.snapshot();
+        assertEquals(updated.getCount(), 101.0);
+        assertEquals(updated.getTotal(), 6050);
+        assertEquals(updated.getMax(), 1000, 1000 * 0.016);
+    }
+}
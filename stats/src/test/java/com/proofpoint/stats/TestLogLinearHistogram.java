@@ -0,0 +1,198 @@
+package com.proofpoint.stats;
+
+import org.testng.annotations.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestLogLinearHistogram
+{
+    @Test
+    public void testEmpty()
+    {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        assertEquals(histogram.getCount(), 0);
+        assertEquals(histogram.getMin(), Long.MAX_VALUE);
+        assertEquals(histogram.getMax(), Long.MIN_VALUE);
+        assertEquals(histogram.getQuantile(0.5), Long.MIN_VALUE);
+    }
+
+    @Test
+    public void testSmallValuesAreExact()
+    {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (long value = 0; value < 100; value++) {
+            histogram.add(value);
+        }
+
+        assertEquals(histogram.getCount(), 100);
+        assertEquals(histogram.getMin(), 0);
+        assertEquals(histogram.getMax(), 99);
+        assertEquals(histogram.getQuantile(0.0), 0);
+        assertEquals(histogram.getQuantile(0.5), 50);
+        assertEquals(histogram.getQuantile(0.99), 99);
+        assertEquals(histogram.getQuantile(1.0), 99);
+    }
+
+    @Test
+    public void testBucketBoundaries()
+    {
+        int previousIndex = -1;
+        for (long value : new long[] {0, 1, 127, 128, 129, 255, 256, 257, 1_000_000, Long.MAX_VALUE / 3, Long.MAX_VALUE - 1, Long.MAX_VALUE}) {
+            int index = LogLinearHistogram.bucketIndex(value);
+            assertTrue(index >= previousIndex, "bucket index is monotonic");
+            assertTrue(LogLinearHistogram.lowerBound(index) <= value, "lower bound of " + value);
+            assertTrue(LogLinearHistogram.upperBound(index) >= value, "upper bound of " + value);
+            previousIndex = index;
+        }
+
+        for (int index = 0; index < LogLinearHistogram.bucketIndex(Long.MAX_VALUE); index++) {
+            assertEquals(LogLinearHistogram.upperBound(index) + 1, LogLinearHistogram.lowerBound(index + 1), "buckets are contiguous at " + index);
+        }
+        assertEquals(LogLinearHistogram.bucketIndex(Long.MAX_VALUE), 3711);
+        assertEquals(LogLinearHistogram.upperBound(3711), Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testRelativeError()
+    {
+        LogLinearHistogram histogram = new LogLinearHistogram(TimeUnit.HOURS.toNanos(1));
+        Random random = new Random(42);
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 25);
+            histogram.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double quantile : new double[] {0.01, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99}) {
+            long expected = values[(int) (quantile * values.length)];
+            long actual = histogram.getQuantile(quantile);
+            assertTrue(Math.abs(actual - expected) <= expected * 0.008, "quantile " + quantile + ": expected " + expected + " but got " + actual);
+        }
+    }
+
+    @Test
+    public void testGetQuantiles()
+    {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (long value = 0; value < 1000; value++) {
+            histogram.add(value * 1000);
+        }
+
+        double[] quantiles = {0.0, 0.5, 0.5, 0.9, 0.99, 1.0};
+        long[] result = histogram.getQuantiles(quantiles);
+        for (int i = 0; i < quantiles.length; i++) {
+            assertEquals(result[i], histogram.getQuantile(quantiles[i]));
+        }
+        assertEquals(new LogLinearHistogram().getQuantiles(quantiles), new long[] {Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE});
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testGetQuantilesUnsorted()
+    {
+        new LogLinearHistogram().getQuantiles(new double[] {0.9, 0.5});
+    }
+
+    @Test
+    public void testGetCumulativeCounts()
+    {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        assertEquals(histogram.getCumulativeCounts(new long[] {0, 100}), new long[] {0, 0});
+
+        for (long value = 0; value < 1000; value++) {
+            histogram.add(value);
+        }
+
+        assertEquals(histogram.getCumulativeCounts(new long[] {-1, 0, 99, 99, 127, 2000}), new long[] {0, 1, 100, 100, 128, 1000});
+        long[] counts = histogram.getCumulativeCounts(new long[] {500});
+        assertTrue(counts[0] >= 501 && counts[0] <= 501 + 500 / 64, "count at 500 is " + counts[0]);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testGetCumulativeCountsUnsorted()
+    {
+        new LogLinearHistogram().getCumulativeCounts(new long[] {100, 10});
+    }
+
+    @Test
+    public void testClampsValuesAboveRange()
+    {
+        LogLinearHistogram histogram = new LogLinearHistogram(1000);
+        histogram.add(5);
+        histogram.add(5000);
+
+        assertEquals(histogram.getCount(), 2);
+        assertEquals(histogram.getMin(), 5);
+        assertEquals(histogram.getMax(), 1000);
+        assertEquals(histogram.getQuantile(1.0), 1000);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "value is negative: -5")
+    public void testRejectsNegativeValue()
+    {
+        new LogLinearHistogram().add(-5);
+    }
+
+    @Test
+    public void testMerge()
+    {
+        LogLinearHistogram a = new LogLinearHistogram();
+        LogLinearHistogram b = new LogLinearHistogram();
+        for (long value = 0; value < 50; value++) {
+            a.add(value);
+        }
+        for (long value = 50; value < 100; value++) {
+            b.add(value);
+        }
+        b.add(10, 3);
+
+        a.merge(b);
+
+        assertEquals(a.getCount(), 103);
+        assertEquals(a.getMin(), 0);
+        assertEquals(a.getMax(), 99);
+        assertEquals(b.getCount(), 53);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testMergeDifferentRange()
+    {
+        new LogLinearHistogram().merge(new LogLinearHistogram(1000));
+    }
+
+    @Test
+    public void testConcurrentAdds()
+            throws Exception
+    {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        int threads = 4;
+        int addsPerThread = 100_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Future<?>[] futures = new Future<?>[threads];
+            for (int i = 0; i < threads; i++) {
+                futures[i] = executor.submit(() -> {
+                    for (int j = 0; j < addsPerThread; j++) {
+                        histogram.add(j);
+                    }
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(histogram.getCount(), (long) threads * addsPerThread);
+    }
+}
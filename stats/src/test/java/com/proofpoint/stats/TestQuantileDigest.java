@@ -47,6 +47,51 @@ public class TestQuantileDigest
         assertEquals(digest.getCount(), (double) 11);
     }
 
+    @Test
+    public void testBatchAdd()
+    {
+        long[] values = new long[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = ThreadLocalRandom.current().nextLong(-1_000_000, 1_000_000);
+        }
+
+        QuantileDigest expected = new QuantileDigest(0.01);
+        for (long value : values) {
+            expected.add(value);
+        }
+
+        QuantileDigest digest = new QuantileDigest(0.01);
+        digest.add(values, 0, 3_000);
+        digest.add(values, 3_000, 0);
+        digest.add(values, 3_000, 7_000);
+        digest.validate();
+
+        assertTrue(digest.equivalent(expected));
+        assertEquals(digest.getQuantiles(ImmutableList.of(0.1, 0.5, 0.9, 0.99)), expected.getQuantiles(ImmutableList.of(0.1, 0.5, 0.9, 0.99)));
+    }
+
+    @Test
+    public void testBatchAddWithDecay()
+    {
+        TestingTicker ticker = new TestingTicker();
+        QuantileDigest digest = new QuantileDigest(1, ExponentialDecay.computeAlpha(0.5, 60), ticker);
+
+        digest.add(new long[] {1, 2, 3, 4}, 1, 2);
+        ticker.elapseTime(60, TimeUnit.SECONDS);
+        digest.add(new long[] {5, 6}, 0, 2);
+        digest.validate();
+
+        assertEquals(digest.getCount(), 3.0);
+        assertEquals(digest.getMin(), 2);
+        assertEquals(digest.getMax(), 6);
+    }
+
+    @Test(expectedExceptions = IndexOutOfBoundsException.class)
+    public void testBatchAddOutOfBounds()
+    {
+        new QuantileDigest(1).add(new long[4], 2, 3);
+    }
+
     @Test
     public void testRepeatedValue()
     {
@@ -808,6 +853,159 @@ public class TestQuantileDigest
         assertTrue(digest.equivalent(deserialize(digest.serialize())), format("Serialization roundtrip failed for input: %s", values));
     }
 
+    @Test
+    public void testGetQuantilesArray()
+    {
+        QuantileDigest digest = new QuantileDigest(0.01);
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            values.add(ThreadLocalRandom.current().nextInt(1_000_000));
+        }
+        addAll(digest, values);
+
+        List<Double> quantiles = asList(0.0, 0.01, 0.25, 0.5, 0.5, 0.9, 0.99, 1.0);
+        long[] result = digest.getQuantiles(new double[] {0.0, 0.01, 0.25, 0.5, 0.5, 0.9, 0.99, 1.0});
+
+        List<Long> expected = digest.getQuantiles(quantiles);
+        for (int i = 0; i < result.length; i++) {
+            assertEquals(result[i], (long) expected.get(i));
+            assertEquals(result[i], digest.getQuantile(quantiles.get(i)));
+        }
+    }
+
+    @Test
+    public void testGetQuantilesArrayEmpty()
+    {
+        QuantileDigest digest = new QuantileDigest(0.01);
+        long[] result = digest.getQuantiles(new double[] {0.5, 0.99});
+
+        assertEquals(result.length, 2);
+        assertEquals(result[0], Long.MIN_VALUE);
+        assertEquals(result[1], Long.MIN_VALUE);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "quantiles must be sorted in increasing order")
+    public void testGetQuantilesArrayUnsorted()
+    {
+        new QuantileDigest(0.01).getQuantiles(new double[] {0.9, 0.5});
+    }
+
+    @Test
+    public void testCompactSerializationEmpty()
+    {
+        QuantileDigest digest = new QuantileDigest(0.01);
+        QuantileDigest deserialized = deserialize(digest.serializeCompact());
+
+        assertTrue(digest.equivalent(deserialized));
+    }
+
+    @Test
+    public void testCompactSerializationWithExtremeEndsOfLong()
+    {
+        QuantileDigest digest = new QuantileDigest(1);
+        digest.add(Long.MIN_VALUE);
+        digest.add(Long.MAX_VALUE);
+
+        assertTrue(digest.equivalent(deserialize(digest.serializeCompact())));
+        assertEquals(deserialize(digest.serializeCompact()).getQuantiles(asList(0.0, 1.0)), asList(Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    @Test(invocationCount = 100)
+    public void testCompactSerializationRandom()
+    {
+        QuantileDigest digest = new QuantileDigest(0.01);
+
+        List<Integer> values = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            values.add(ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE));
+        }
+
+        addAll(digest, values);
+
+        Slice compact = digest.serializeCompact();
+        QuantileDigest deserialized = deserialize(compact);
+        assertTrue(digest.equivalent(deserialized), format("Serialization roundtrip failed for input: %s", values));
+        List<Double> quantiles = asList(0.0, 0.1, 0.5, 0.9, 0.99, 1.0);
+        assertEquals(deserialized.getQuantiles(quantiles), digest.getQuantiles(quantiles));
+        assertTrue(compact.length() <= digest.estimatedCompactSerializedSizeInBytes());
+        assertTrue(compact.length() < digest.serialize().length() / 2, "compact format is less than half the size");
+    }
+
+    @Test
+    public void testCompactSerializationSizeForGaussian()
+    {
+        QuantileDigest digest = new QuantileDigest(0.01);
+        for (int i = 0; i < 10_000; i++) {
+            digest.add(Math.abs((long) (ThreadLocalRandom.current().nextGaussian() * 1_000_000_000)));
+        }
+
+        assertTrue(digest.serializeCompact().length() < digest.serialize().length() / 2, "compact format is less than half the size");
+    }
+
+    @Test
+    public void testMergeSerialized()
+    {
+        for (boolean compact : new boolean[] {false, true}) {
+            QuantileDigest a = new QuantileDigest(0.01);
+            QuantileDigest b = new QuantileDigest(0.01);
+            for (int i = 0; i < 1000; i++) {
+                a.add(ThreadLocalRandom.current().nextInt(1_000_000));
+                b.add(ThreadLocalRandom.current().nextInt(500_000, 2_000_000));
+            }
+            QuantileDigest expected = new QuantileDigest(a);
+            expected.merge(b);
+
+            a.merge(compact ? b.serializeCompact() : b.serialize());
+            a.validate();
+
+            assertTrue(a.equivalent(expected));
+            List<Double> quantiles = asList(0.0, 0.1, 0.5, 0.9, 0.99, 1.0);
+            assertEquals(a.getQuantiles(quantiles), expected.getQuantiles(quantiles));
+        }
+    }
+
+    @Test
+    public void testMergeSerializedIntoEmpty()
+    {
+        QuantileDigest a = new QuantileDigest(0.01);
+        QuantileDigest b = new QuantileDigest(0.01);
+        addAll(b, asList(0, 2, 2, 2, 2, 3, 3, 3, 3, 3, 3, 4, 5, 6, 7));
+
+        a.merge(b.serializeCompact());
+        a.validate();
+
+        assertTrue(a.equivalent(b));
+    }
+
+    @Test
+    public void testMergeSerializedWithDecay()
+    {
+        TestingTicker ticker = new TestingTicker();
+        QuantileDigest a = new QuantileDigest(0.01, ExponentialDecay.computeAlpha(0.5, 60), ticker);
+        QuantileDigest b = new QuantileDigest(0.01, ExponentialDecay.computeAlpha(0.5, 60), ticker);
+
+        addAll(a, asList(1, 2, 3));
+        ticker.elapseTime(60, TimeUnit.SECONDS);
+        addAll(b, asList(4, 5, 6));
+
+        a.merge(b.serializeCompact());
+        a.validate();
+
+        // a's values have decayed by half
+        assertEquals(a.getCount(), 1.5 + 3, 1e-6);
+        assertEquals(a.getMin(), 1);
+        assertEquals(a.getMax(), 6);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testDeserializeInvalidFormat()
+    {
+        QuantileDigest digest = new QuantileDigest(0.01);
+        Slice serialized = digest.serializeCompact();
+        serialized.setByte(0, 2);
+        new QuantileDigest(serialized);
+    }
+
     private QuantileDigest deserialize(Slice serialized)
     {
         QuantileDigest result = new QuantileDigest(serialized);
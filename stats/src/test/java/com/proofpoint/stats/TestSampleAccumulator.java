@@ -0,0 +1,72 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.stats;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+public class TestSampleAccumulator
+{
+    @Test
+    public void testDistribution()
+    {
+        Distribution distribution = new Distribution();
+        try (SampleAccumulator accumulator = new SampleAccumulator(distribution, 4)) {
+            for (int i = 1; i <= 10; i++) {
+                accumulator.add(i);
+            }
+            assertEquals(distribution.getCount(), 8.0);
+            assertEquals(distribution.getTotal(), 36.0);
+        }
+
+        assertEquals(distribution.getCount(), 10.0);
+        assertEquals(distribution.getTotal(), 55.0);
+        assertEquals(distribution.getMin(), 1);
+        assertEquals(distribution.getMax(), 10);
+    }
+
+    @Test
+    public void testTotalDoesNotOverflow()
+    {
+        Distribution distribution = new Distribution();
+        try (SampleAccumulator accumulator = new SampleAccumulator(distribution, 4)) {
+            accumulator.add(Long.MAX_VALUE);
+            accumulator.add(Long.MAX_VALUE);
+        }
+
+        assertEquals(distribution.getCount(), 2.0);
+        assertEquals(distribution.getTotal(), 2.0 * Long.MAX_VALUE);
+    }
+
+    @Test
+    public void testTimeDistribution()
+    {
+        TimeDistribution distribution = new TimeDistribution(ExponentialDecay.oneMinute());
+        SampleAccumulator accumulator = new SampleAccumulator(distribution, 100);
+        accumulator.add(1_000_000);
+        accumulator.add(3_000_000);
+        assertEquals(distribution.getCount(), 0.0);
+
+        accumulator.flush();
+        assertEquals(distribution.getCount(), 2.0, 0.001);
+        assertEquals(distribution.getMin(), 0.001);
+        assertEquals(distribution.getMax(), 0.003);
+
+        accumulator.flush();
+        assertEquals(distribution.getCount(), 2.0, 0.001);
+    }
+}
@@ -71,6 +71,35 @@ public class TestSparseCounterStat
         assertPreviousCountNull(counter);
     }
 
+    @Test
+    public void testMergeBuckets()
+            throws Exception
+    {
+        SparseCounterStat counter = new SparseCounterStat();
+        SparseCounterStat other = new SparseCounterStat();
+        counter.setBucketIdProvider(bucketIdProvider);
+        other.setBucketIdProvider(bucketIdProvider);
+        counter.add(1);
+        other.add(2.5);
+        ++bucketIdProvider.id;
+
+        Counter merged = new Counter();
+        merged.merge(getPreviousBucket(counter));
+        merged.merge(getPreviousBucket(other));
+
+        assertEquals(merged.getCount(), 3.5);
+        assertPreviousCount(other, 2.5);
+    }
+
+    private static Counter getPreviousBucket(SparseCounterStat counter)
+            throws Exception
+    {
+        Method method = Bucketed.class.getDeclaredMethod("getPreviousBucket");
+        method.setAccessible(true);
+        BucketInfo bucketInfo = (BucketInfo) method.invoke(counter);
+        return (Counter) bucketInfo.getBucket();
+    }
+
     private void assertPreviousCount(SparseCounterStat counter, double expected)
             throws Exception
     {
@@ -11,6 +11,8 @@ import org.testng.annotations.Test;
 import java.lang.reflect.Method;
 import java.util.concurrent.TimeUnit;
 
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.HOURS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
@@ -166,6 +168,66 @@ public class TestSparseTimeStat
         assertPreviousDistributionEmpty(oldStat);
     }
 
+    @Test
+    public void testLogLinearHistogramEngine()
+            throws Exception
+    {
+        SparseTimeStat stat = new SparseTimeStat(ticker, DistributionEngine.LOG_LINEAR_HISTOGRAM);
+        stat.setBucketIdProvider(bucketIdProvider);
+        assertPreviousDistributionEmpty(stat);
+        ++bucketIdProvider.id;
+        for (int i = 1; i <= 100; i++) {
+            stat.add(i, MILLISECONDS);
+        }
+        ++bucketIdProvider.id;
+
+        SparseTimeStat.Distribution previousBucket = getPreviousBucket(stat);
+        assertEquals(previousBucket.getCount(), 100.0);
+        assertEquals(previousBucket.getTotal(), 5.05, 0.000_001);
+        assertEquals(previousBucket.getMin(), .001, .001 * 0.016);
+        assertEquals(previousBucket.getMax(), .1, .1 * 0.016);
+        assertEquals(previousBucket.getP50(), .051, .051 * 0.008);
+        assertEquals(previousBucket.getP90(), .091, .091 * 0.008);
+        assertEquals(previousBucket.getP99(), .1, .1 * 0.008);
+    }
+
+    @Test
+    public void testLogLinearHistogramClampsLongTimes()
+            throws Exception
+    {
+        SparseTimeStat stat = new SparseTimeStat(ticker, DistributionEngine.LOG_LINEAR_HISTOGRAM);
+        stat.setBucketIdProvider(bucketIdProvider);
+        stat.add(2, HOURS);
+        ++bucketIdProvider.id;
+
+        SparseTimeStat.Distribution previousBucket = getPreviousBucket(stat);
+        assertEquals(previousBucket.getCount(), 1.0);
+        assertEquals(previousBucket.getTotal(), 7200.0);
+        assertEquals(previousBucket.getMax(), 3600.0);
+        assertEquals(previousBucket.getP50(), 3600.0, 3600 * 0.008);
+    }
+
+    @Test
+    public void testHighestTrackableTime()
+            throws Exception
+    {
+        SparseTimeStat stat = new SparseTimeStat(ticker, DistributionEngine.LOG_LINEAR_HISTOGRAM, new Duration(1, DAYS));
+        stat.setBucketIdProvider(bucketIdProvider);
+        stat.add(2, HOURS);
+        ++bucketIdProvider.id;
+
+        SparseTimeStat.Distribution previousBucket = getPreviousBucket(stat);
+        assertEquals(previousBucket.getTotal(), 7200.0);
+        assertEquals(previousBucket.getMax(), 7200.0, 7200 * 0.016);
+        assertEquals(previousBucket.getP50(), 7200.0, 7200 * 0.008);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class, expectedExceptionsMessageRegExp = "highestTrackableTime must be at least 1us")
+    public void testHighestTrackableTimeTooShort()
+    {
+        new SparseTimeStat(ticker, DistributionEngine.LOG_LINEAR_HISTOGRAM, new Duration(100, NANOSECONDS));
+    }
+
     private void assertPreviousDistributionEmpty(SparseTimeStat distribution)
             throws Exception
     {
@@ -175,13 +237,19 @@ public class TestSparseTimeStat
     private void assertPreviousDistribution(SparseTimeStat distribution, double expectedCount, double expectedMin, double expectedMax, double expectedTotal)
             throws Exception
     {
-        Method method = Bucketed.class.getDeclaredMethod("getPreviousBucket");
-        method.setAccessible(true);
-        BucketInfo bucketInfo = (BucketInfo) method.invoke(distribution);
-        SparseTimeStat.Distribution previousBucket = (SparseTimeStat.Distribution) bucketInfo.getBucket();
+        SparseTimeStat.Distribution previousBucket = getPreviousBucket(distribution);
         assertEquals(previousBucket.getCount(), expectedCount);
         assertEquals(previousBucket.getMin(), expectedMin);
         assertEquals(previousBucket.getMax(), expectedMax);
         assertEquals(previousBucket.getTotal(), expectedTotal);
     }
+
+    private static SparseTimeStat.Distribution getPreviousBucket(SparseTimeStat distribution)
+            throws Exception
+    {
+        Method method = Bucketed.class.getDeclaredMethod("getPreviousBucket");
+        method.setAccessible(true);
+        BucketInfo bucketInfo = (BucketInfo) method.invoke(distribution);
+        return (SparseTimeStat.Distribution) bucketInfo.getBucket();
+    }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.stats;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.testng.Assert.assertEquals;
+
+public class TestStripedCounterStat
+{
+    @Test
+    public void testBasic()
+    {
+        CounterStat stat = new StripedCounterStat();
+        stat.add(3);
+        stat.add(4);
+        assertEquals(stat.getTotalCount(), 7);
+        assertEquals(stat.getOneMinute().getCount(), 7.0, 0.001);
+        assertEquals(stat.getFiveMinute().getCount(), 7.0, 0.001);
+        assertEquals(stat.getFifteenMinute().snapshot().getCount(), 7.0, 0.001);
+
+        stat.add(5);
+        assertEquals(stat.getOneMinute().getCount(), 12.0, 0.001);
+    }
+
+    @Test
+    public void testReset()
+    {
+        CounterStat stat = new StripedCounterStat();
+        stat.add(3);
+        stat.reset();
+        assertEquals(stat.getTotalCount(), 0);
+        assertEquals(stat.getOneMinute().getCount(), 0.0);
+    }
+
+    @Test
+    public void testMerge()
+    {
+        CounterStat stat = new StripedCounterStat();
+        CounterStat other = new StripedCounterStat();
+        stat.add(3);
+        other.add(4);
+        stat.merge(other);
+        assertEquals(stat.getTotalCount(), 7);
+        assertEquals(stat.getOneMinute().getCount(), 7.0, 0.001);
+    }
+
+    @Test
+    public void testConcurrentWriters()
+            throws Exception
+    {
+        int threads = 8;
+        int addsPerThread = 100_000;
+        CounterStat stat = new StripedCounterStat();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    for (int j = 0; j < addsPerThread; j++) {
+                        stat.add(1);
+                        if (j % 10_000 == 0) {
+                            stat.getOneMinute().getCount();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(stat.getTotalCount(), (long) threads * addsPerThread);
+        assertEquals(stat.getFifteenMinute().getCount(), (double) threads * addsPerThread, threads * addsPerThread * 0.01);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.stats;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.math.DoubleMath.fuzzyEquals;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestStripedTimeStat
+{
+    private static final int VALUES = 1000;
+
+    @Test
+    public void testBasic()
+    {
+        TimeStat stat = new StripedTimeStat();
+        List<Long> values = new ArrayList<>(VALUES);
+        for (long i = 0; i < VALUES; i++) {
+            values.add(i);
+        }
+        Collections.shuffle(values);
+        for (Long value : values) {
+            stat.add(value, TimeUnit.MILLISECONDS);
+        }
+
+        TimeDistribution allTime = stat.getAllTime();
+        assertEquals(allTime.getCount(), (double) VALUES);
+        assertEquals(allTime.getMin(), 0.0);
+        assertTrue(fuzzyEquals(allTime.getMax(), (VALUES - 1) * 0.001, 0.000_000_000_1));
+        assertEquals(stat.getOneMinute().getCount(), (double) VALUES, 0.1);
+        assertEquals(stat.getFiveMinutes().getCount(), (double) VALUES, 0.1);
+        assertEquals(stat.getFifteenMinutes().getCount(), (double) VALUES, 0.1);
+    }
+
+    @Test
+    public void testFoldedOnRead()
+    {
+        TimeStat stat = new StripedTimeStat();
+        stat.add(10, TimeUnit.MILLISECONDS);
+        assertEquals(stat.getAllTime().getCount(), 1.0);
+        assertEquals(stat.getAllTime().getMax(), 0.010);
+
+        stat.add(20, TimeUnit.MILLISECONDS);
+        assertEquals(stat.getAllTime().snapshot().getCount(), 2.0);
+        assertEquals(stat.snapshot().getAllTime().getMax(), 0.020);
+    }
+
+    @Test
+    public void testStripeOverflow()
+    {
+        TimeStat stat = new StripedTimeStat();
+        int count = StripedSampleBuffer.STRIPE_CAPACITY * 3 + 1;
+        for (int i = 0; i < count; i++) {
+            stat.add(i, TimeUnit.NANOSECONDS);
+        }
+        assertEquals(stat.getAllTime().getCount(), (double) count);
+    }
+
+    @Test
+    public void testConcurrentWriters()
+            throws Exception
+    {
+        int threads = 8;
+        int valuesPerThread = 10_000;
+        TimeStat stat = new StripedTimeStat();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int j = 0; j < valuesPerThread; j++) {
+                        stat.add(j, TimeUnit.MICROSECONDS);
+                        if (j % 1000 == 0) {
+                            stat.getOneMinute().getP50();
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(stat.getAllTime().getCount(), (double) threads * valuesPerThread);
+    }
+}